@@ -35,6 +35,11 @@ public class TestableTimelineReader extends TimelineReader {
 		super(fileName, tryMemoryMapping);
 	}
 
+	public TestableTimelineReader(String fileName, long maxMappedSegmentSize) throws Exception {
+		super();
+		load(fileName, true, maxMappedSegmentSize);
+	}
+
 	@Override
 	public Pair<ByteBuffer, Long> getByteBufferAtTime(long targetTimeInSamples) throws IOException, BufferUnderflowException {
 		return super.getByteBufferAtTime(targetTimeInSamples);
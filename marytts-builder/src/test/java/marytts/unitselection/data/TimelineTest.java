@@ -460,6 +460,33 @@ public class TimelineTest {
 		Assert.assertEquals(origDatagrams[1].getLength(), ds[0].getLength());
 	}
 
+	@Test
+	public void canReadSegmentedMapping() throws Exception {
+		// setup custom fixture for this method
+		TimelineReader timeline = new TestableTimelineReader(tlFileName, 1000); // datagrams straddle many windows
+		// exercise
+		Datagram[] ds = timeline.getDatagrams(0, NUMDATAGRAMS, timeline.getSampleRate(), null);
+		// verify
+		Assert.assertEquals(NUMDATAGRAMS, ds.length);
+		for (int i = 0; i < NUMDATAGRAMS; i++) {
+			Assert.assertEquals(origDatagrams[i], ds[i]);
+		}
+		Assert.assertEquals(tlr.getTotalDuration(), timeline.getTotalDuration());
+	}
+
+	@Test
+	public void canReadFromLaterSegment() throws Exception {
+		// setup custom fixture for this method
+		TimelineReader timeline = new TestableTimelineReader(tlFileName, 1000);
+		long time = origDatagrams[0].getDuration() + origDatagrams[1].getDuration();
+		// exercise
+		Datagram[] ds = timeline.getDatagrams(time, origDatagrams[2].getDuration() + 1);
+		// verify
+		Assert.assertEquals(2, ds.length);
+		Assert.assertEquals(origDatagrams[2], ds[0]);
+		Assert.assertEquals(origDatagrams[3], ds[1]);
+	}
+
 	@AfterClass
 	public static void tearDown() throws IOException {
 		/* Delete the test file */
@@ -23,10 +23,17 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import marytts.client.http.MaryHttpClient;
+import marytts.util.LatencyStatistics;
 
 /**
  * Copyright 2006 DFKI GmbH. All Rights Reserved. Use is subject to license terms.
@@ -51,6 +58,11 @@ public class BatchSynth {
 	 * Generate a set of audio files from text. Example call: java -cp maryclient.jar -Dserver.host=localhost -Dserver.port=59125
 	 * -Dvoice=kevin16 marytts.client.BatchSynth target/dir path/to/texts.txt The text file must contain a target audio file name
 	 * and the corresponding text in each line.
+	 * <p>
+	 * With <code>-Dthreads=N</code> (N &gt; 1), up to N requests are kept in flight at the same time, so that the server is
+	 * saturated; the default is 1, i.e. one request after the other. Unless <code>http.maxConnections</code> is given, it is
+	 * raised to N, so that the JDK keeps a keep-alive connection for each concurrent request. At the end, the throughput and the
+	 * distribution of request latencies are reported.
 	 * 
 	 * @param args
 	 *            first argument, the output directory; the rest, file names containing text files. Each text file contains, in
@@ -58,7 +70,17 @@ public class BatchSynth {
 	 */
 	public static void main(String[] args) throws Exception {
 		File globalOutputDir = new File(args[0]);
+		int numThreads = Integer.getInteger("threads", 1);
+		// The JDK reads this when the first connection is returned to its keep-alive cache, so it must be set before any request:
+		if (numThreads > 5 && System.getProperty("http.maxConnections") == null) {
+			System.setProperty("http.maxConnections", String.valueOf(numThreads));
+		}
 		MaryHttpClient mary = new MaryHttpClient();
+		if (numThreads > 1) {
+			mary.setMaxConcurrentRequests(numThreads);
+		}
+		LatencyStatistics latencies = new LatencyStatistics();
+		AtomicInteger numErrors = new AtomicInteger();
 		String voice = System.getProperty("voice", "us1");
 		boolean haveBasename = "true".equals(System.getProperty("lines-contain-basename", "true")); // default: true, for backward
 																									// compatibility
@@ -71,6 +93,8 @@ public class BatchSynth {
 		for (int i = 1; i < args.length; i++) {
 			long genreStartTime = System.currentTimeMillis();
 			int genreCounter = 0;
+			// The requests sent but not yet waited for; each holds its audio until it is removed from here.
+			Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
 			File texts = new File(args[i]);
 			String genre = texts.getName().substring(0, texts.getName().lastIndexOf('.'));
 			File outputDir = new File(globalOutputDir.getPath() + "/" + genre);
@@ -98,14 +122,30 @@ public class BatchSynth {
 
 				// remove all backslashes
 				sentence = sentence.replaceAll("\\\\", "");
-				FileOutputStream audio = new FileOutputStream(outputDir + "/" + basename + extension);
-				mary.process(sentence, inputFormat, outputFormat, locale, "WAVE", voice, audio);
-				audio.close();
-				long endTime = System.currentTimeMillis();
-				System.out.println(basename + " synthesized in " + ((float) (endTime - startTime) / 1000.) + " s");
+				File outputFile = new File(outputDir, basename + extension);
+				if (numThreads > 1) {
+					pending.add(mary.processAsync(sentence, inputFormat, outputFormat, locale, "WAVE", voice,
+							new FileWritingListener(outputFile, basename, latencies, numErrors)));
+					// Keep enough requests queued to saturate the server, but no more, so that memory use stays bounded:
+					while (pending.size() > 2 * numThreads || !pending.isEmpty() && pending.peek().isDone()) {
+						await(pending.poll());
+					}
+				} else {
+					FileOutputStream audio = new FileOutputStream(outputFile);
+					mary.process(sentence, inputFormat, outputFormat, locale, "WAVE", voice, audio);
+					audio.close();
+					long endTime = System.currentTimeMillis();
+					latencies.add(endTime - startTime);
+					System.out.println(basename + " synthesized in " + ((float) (endTime - startTime) / 1000.) + " s");
+				}
 				globalCounter++;
 				genreCounter++;
 			}
+			textReader.close();
+			// wait for the requests of this genre to finish
+			while (!pending.isEmpty()) {
+				await(pending.poll());
+			}
 			long genreEndTime = System.currentTimeMillis();
 			System.out.println("Genre '" + genre + "' (" + genreCounter + " sentences) synthesized in "
 					+ ((float) (genreEndTime - genreStartTime) / 1000.) + " s");
@@ -113,7 +153,56 @@ public class BatchSynth {
 		long globalEndTime = System.currentTimeMillis();
 		System.out.println("Total: " + globalCounter + " sentences synthesized in "
 				+ ((float) (globalEndTime - globalStartTime) / 1000.) + " s");
+		float seconds = (float) (globalEndTime - globalStartTime) / 1000.f;
+		System.out.println("Throughput: " + (seconds > 0 ? globalCounter / seconds : 0) + " sentences/s with " + numThreads
+				+ " concurrent request(s), " + numErrors.get() + " error(s)");
+		System.out.println("Latency (ms): " + latencies);
+		mary.shutdown();
+	}
+
+	/**
+	 * Wait for an asynchronous request to finish; its result has already been written, or its failure reported, by its listener.
+	 */
+	private static void await(Future<?> request) throws InterruptedException {
+		try {
+			request.get();
+		} catch (ExecutionException e) {
+			// already reported by the listener
+		}
+	}
+
+	/**
+	 * Writes the result of an asynchronous request to a file and records its latency.
+	 */
+	private static class FileWritingListener implements MaryHttpClient.RequestListener {
+		private File outputFile;
+		private String basename;
+		private LatencyStatistics latencies;
+		private AtomicInteger numErrors;
+
+		FileWritingListener(File outputFile, String basename, LatencyStatistics latencies, AtomicInteger numErrors) {
+			this.outputFile = outputFile;
+			this.basename = basename;
+			this.latencies = latencies;
+			this.numErrors = numErrors;
+		}
 
+		public void requestCompleted(byte[] result, long processingMillis) {
+			latencies.add(processingMillis);
+			try {
+				FileOutputStream audio = new FileOutputStream(outputFile);
+				audio.write(result);
+				audio.close();
+				System.out.println(basename + " synthesized in " + ((float) processingMillis / 1000.) + " s");
+			} catch (IOException e) {
+				requestFailed(e);
+			}
+		}
+
+		public void requestFailed(Exception e) {
+			numErrors.incrementAndGet();
+			System.err.println(basename + " failed: " + e.getMessage());
+		}
 	}
 
 }
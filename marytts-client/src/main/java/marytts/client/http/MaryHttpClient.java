@@ -21,10 +21,10 @@ package marytts.client.http;
 
 // General Java Classes
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
@@ -36,6 +36,14 @@ import java.util.StringTokenizer;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
@@ -51,6 +59,19 @@ import marytts.util.string.StringUtils;
 
 /**
  * An HTTP client implementing the MARY protocol. It can be used as a command line client or from within java code.
+ * <p>
+ * Connections to the server are kept alive and reused between requests, as long as the server permits it. Besides the blocking
+ * <code>process()</code> methods, requests can be sent asynchronously with
+ * {@link #processAsync(String, String, String, String, String, String, String, String, String, RequestListener)}; at most
+ * {@link #getMaxConcurrentRequests()} asynchronous requests are in flight at any time, further ones are queued in the client.
+ * <p>
+ * The following system properties are used:
+ * <ul>
+ * <li><code>mary.client.concurrency</code> - the maximum number of concurrent asynchronous requests (default: 4);</li>
+ * <li><code>http.maxConnections</code> - read by the JDK, not by this class: the number of idle keep-alive connections kept per
+ * server (default: 5). Applications sending more concurrent requests should set it to at least that number before their first
+ * request, so that these requests do not have to open new connections.</li>
+ * </ul>
  * 
  * @author Marc Schr&ouml;der, oytun.turk
  * @see MaryGUIClient A GUI interface to this client
@@ -59,6 +80,9 @@ import marytts.util.string.StringUtils;
 
 public class MaryHttpClient extends MaryClient {
 
+	private int maxConcurrentRequests = Integer.getInteger("mary.client.concurrency", 4);
+	private ThreadPoolExecutor asyncExecutor;
+
 	/**
 	 * The simplest way to create a mary client. It will connect to the MARY server running at DFKI. Only use this for testing
 	 * purposes!
@@ -296,12 +320,19 @@ public class MaryHttpClient extends MaryClient {
 		if (http.getResponseCode() != HttpURLConnection.HTTP_OK) {
 			String errorData = "";
 			try {
-				errorData = FileUtils.getStreamAsString(http.getErrorStream(), "UTF-8");
+				InputStream errorStream = http.getErrorStream();
+				errorData = FileUtils.getStreamAsString(errorStream, "UTF-8");
+				errorStream.close();
 			} catch (Exception e) {
 			}
 			throw new IOException(http.getResponseCode() + ":" + http.getResponseMessage() + "\n" + errorData);
 		}
-		return FileUtils.getStreamAsString(http.getInputStream(), "UTF-8");
+		InputStream in = http.getInputStream();
+		try {
+			return FileUtils.getStreamAsString(in, "UTF-8");
+		} finally {
+			in.close(); // returns the connection to the keep-alive cache
+		}
 		/*
 		 * The following is example code if we were to use HttpClient: HttpClient httpclient = new DefaultHttpClient();
 		 * 
@@ -377,11 +408,11 @@ public class MaryHttpClient extends MaryClient {
 		conn.setAllowUserInteraction(false); // no user interact [like pop up]
 		conn.setDoOutput(true); // want to send
 		conn.setRequestProperty("Content-type", "application/x-www-form-urlencoded");
+		byte[] body = params.toString().getBytes("UTF-8");
+		conn.setFixedLengthStreamingMode(body.length);
 		OutputStream ost = conn.getOutputStream();
-		PrintWriter pw = new PrintWriter(ost);
-		pw.print(params.toString()); // here we "send" our body!
-		pw.flush();
-		pw.close();
+		ost.write(body); // here we "send" our body!
+		ost.close();
 
 		// and InputStream from here will be body
 		try {
@@ -389,7 +420,10 @@ public class MaryHttpClient extends MaryClient {
 		} catch (IOException e) {
 			String error;
 			try {
-				error = FileUtils.getStreamAsString(conn.getErrorStream(), "UTF-8");
+				// reading the error body completely allows the connection to be reused
+				InputStream errorStream = conn.getErrorStream();
+				error = FileUtils.getStreamAsString(errorStream, "UTF-8");
+				errorStream.close();
 			} catch (IOException errE) {
 				// ok cannot get error message, just re-throw original e
 				throw new IOException("No detailed error message available", e);
@@ -529,13 +563,17 @@ public class MaryHttpClient extends MaryClient {
 		{
 			OutputStream os = (OutputStream) output;
 			InputStream bis = new BufferedInputStream(fromServerStream);
-			byte[] bbuf = new byte[1024];
-			int nr;
-			while ((nr = bis.read(bbuf, 0, bbuf.length)) != -1) {
-				// System.err.println("Read " + nr + " bytes from server.");
-				os.write(bbuf, 0, nr);
+			try {
+				byte[] bbuf = new byte[8192];
+				int nr;
+				while ((nr = bis.read(bbuf, 0, bbuf.length)) != -1) {
+					// System.err.println("Read " + nr + " bytes from server.");
+					os.write(bbuf, 0, nr);
+				}
+				os.flush();
+			} finally {
+				bis.close(); // returns the connection to the keep-alive cache
 			}
-			os.flush();
 
 			if (timeout > 0)
 				timer.cancel();
@@ -560,4 +598,144 @@ public class MaryHttpClient extends MaryClient {
 		}
 	}
 
+	// /////////////////////////////////////////////////////////////////////
+	// ////////////////////// Asynchronous requests ////////////////////////
+	// /////////////////////////////////////////////////////////////////////
+
+	/**
+	 * The maximum number of asynchronous requests sent to the server concurrently.
+	 */
+	public synchronized int getMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+
+	/**
+	 * Set the maximum number of asynchronous requests sent to the server concurrently. Requests already submitted are not
+	 * affected.
+	 * 
+	 * @param maxConcurrentRequests
+	 *            a positive number
+	 */
+	public synchronized void setMaxConcurrentRequests(int maxConcurrentRequests) {
+		if (maxConcurrentRequests <= 0) {
+			throw new IllegalArgumentException("Number of concurrent requests must be positive, but is " + maxConcurrentRequests);
+		}
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		if (asyncExecutor != null) {
+			if (maxConcurrentRequests > asyncExecutor.getMaximumPoolSize()) {
+				asyncExecutor.setMaximumPoolSize(maxConcurrentRequests);
+				asyncExecutor.setCorePoolSize(maxConcurrentRequests);
+			} else {
+				asyncExecutor.setCorePoolSize(maxConcurrentRequests);
+				asyncExecutor.setMaximumPoolSize(maxConcurrentRequests);
+			}
+		}
+	}
+
+	private synchronized ExecutorService getAsyncExecutor() {
+		if (asyncExecutor == null) {
+			final AtomicInteger threadCount = new AtomicInteger();
+			asyncExecutor = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests, 30, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "MaryHttpClient-" + threadCount.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			asyncExecutor.allowCoreThreadTimeOut(true);
+		}
+		return asyncExecutor;
+	}
+
+	/**
+	 * Send a request to the server without waiting for the result. The result is delivered to the listener, if any, and through
+	 * the returned future.
+	 * 
+	 * @param input
+	 *            a textual representation of the input data
+	 * @param inputType
+	 *            the name of the input data type, e.g. TEXT or RAWMARYXML.
+	 * @param outputType
+	 *            the name of the output data type, e.g. AUDIO or ACOUSTPARAMS.
+	 * @param locale
+	 *            the locale of the input data
+	 * @param audioType
+	 *            the name of the audio format, e.g. "WAVE" or "MP3", or null for non-audio output.
+	 * @param defaultVoiceName
+	 *            the name of the voice to use, e.g. de7 or us1.
+	 * @param defaultStyle
+	 *            the style, or null
+	 * @param defaultEffects
+	 *            the audio effects, or null
+	 * @param outputTypeParams
+	 *            any additional parameters, or null
+	 * @param listener
+	 *            notified when the request has been processed, or null
+	 * @return a future holding the complete response data
+	 */
+	public Future<byte[]> processAsync(final String input, final String inputType, final String outputType,
+			final String locale, final String audioType, final String defaultVoiceName, final String defaultStyle,
+			final String defaultEffects, final String outputTypeParams, final RequestListener listener) {
+		return getAsyncExecutor().submit(new Callable<byte[]>() {
+			public byte[] call() throws Exception {
+				long startTime = System.currentTimeMillis();
+				try {
+					ByteArrayOutputStream result = new ByteArrayOutputStream();
+					process(input, inputType, outputType, locale, audioType, defaultVoiceName, defaultStyle, defaultEffects,
+							outputTypeParams, result);
+					byte[] data = result.toByteArray();
+					if (listener != null) {
+						listener.requestCompleted(data, System.currentTimeMillis() - startTime);
+					}
+					return data;
+				} catch (Exception e) {
+					if (listener != null) {
+						listener.requestFailed(e);
+					}
+					throw e;
+				}
+			}
+		});
+	}
+
+	public Future<byte[]> processAsync(String input, String inputType, String outputType, String locale, String audioType,
+			String defaultVoiceName, RequestListener listener) {
+		return processAsync(input, inputType, outputType, locale, audioType, defaultVoiceName, "", null, null, listener);
+	}
+
+	/**
+	 * Stop the threads used for asynchronous requests, after all submitted requests have been processed.
+	 */
+	public synchronized void shutdown() {
+		if (asyncExecutor != null) {
+			asyncExecutor.shutdown();
+			asyncExecutor = null;
+		}
+	}
+
+	/**
+	 * A means of letting calling code know that an asynchronous request has been processed.
+	 */
+	public static interface RequestListener {
+		/**
+		 * Notify the listener that a request has been processed successfully.
+		 * 
+		 * @param result
+		 *            the complete response data
+		 * @param processingMillis
+		 *            the time from sending the request to receiving the last byte of the response, in milliseconds; time spent
+		 *            waiting for a free connection slot in the client is not included.
+		 */
+		public void requestCompleted(byte[] result, long processingMillis);
+
+		/**
+		 * Inform the listener that a request has failed.
+		 * 
+		 * @param e
+		 *            the exception thrown
+		 */
+		public void requestFailed(Exception e);
+	}
+
 }
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.client.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import marytts.util.http.Address;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the asynchronous API of {@link MaryHttpClient} against a minimal fake server, which echoes the input text of
+ * <code>/process</code> requests.
+ */
+public class MaryHttpClientTest {
+	private HttpServer server;
+	private final AtomicInteger concurrent = new AtomicInteger();
+	private final AtomicInteger maxConcurrent = new AtomicInteger();
+	private final Set<InetSocketAddress> clientConnections = Collections.synchronizedSet(new HashSet<InetSocketAddress>());
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				String path = exchange.getRequestURI().getPath();
+				byte[] response;
+				int status = 200;
+				if (path.equals("/version")) {
+					response = "Mary TTS server 5.2".getBytes("UTF-8");
+				} else if (path.equals("/process")) {
+					clientConnections.add(exchange.getRemoteAddress());
+					int now = concurrent.incrementAndGet();
+					synchronized (maxConcurrent) {
+						if (now > maxConcurrent.get())
+							maxConcurrent.set(now);
+					}
+					String text = inputText(exchange.getRequestBody());
+					try {
+						Thread.sleep(20);
+					} catch (InterruptedException e) {
+					}
+					concurrent.decrementAndGet();
+					if (text.equals("fail")) {
+						status = 500;
+					}
+					response = text.getBytes("UTF-8");
+				} else {
+					response = new byte[0];
+				}
+				exchange.sendResponseHeaders(status, response.length > 0 ? response.length : -1);
+				OutputStream out = exchange.getResponseBody();
+				out.write(response);
+				out.close();
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private static String inputText(InputStream body) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		int n;
+		while ((n = body.read(buf)) != -1)
+			baos.write(buf, 0, n);
+		for (String param : new String(baos.toByteArray(), "UTF-8").split("&")) {
+			if (param.startsWith("INPUT_TEXT=")) {
+				return URLDecoder.decode(param.substring("INPUT_TEXT=".length()), "UTF-8");
+			}
+		}
+		return "";
+	}
+
+	private MaryHttpClient newClient() throws IOException {
+		return new MaryHttpClient(new Address("localhost", server.getAddress().getPort()), false, true);
+	}
+
+	@Test
+	public void asyncRequestsRespectConcurrencyAndReuseConnections() throws Exception {
+		MaryHttpClient client = newClient();
+		client.setMaxConcurrentRequests(3);
+		final CountDownLatch done = new CountDownLatch(30);
+		List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+		for (int i = 0; i < 30; i++) {
+			futures.add(client.processAsync("text " + i, "TEXT", "TOKENS", "en_US", null, null,
+					new MaryHttpClient.RequestListener() {
+						public void requestCompleted(byte[] result, long processingMillis) {
+							done.countDown();
+						}
+
+						public void requestFailed(Exception e) {
+						}
+					}));
+		}
+		for (int i = 0; i < 30; i++) {
+			assertArrayEquals(("text " + i).getBytes("UTF-8"), futures.get(i).get(10, TimeUnit.SECONDS));
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertTrue("max concurrent requests: " + maxConcurrent.get(), maxConcurrent.get() <= 3);
+		assertTrue("connections used: " + clientConnections.size(), clientConnections.size() <= 3);
+		client.shutdown();
+	}
+
+	@Test
+	public void asyncFailureIsReported() throws Exception {
+		MaryHttpClient client = newClient();
+		final AtomicInteger failures = new AtomicInteger();
+		Future<byte[]> f = client.processAsync("fail", "TEXT", "TOKENS", "en_US", null, null,
+				new MaryHttpClient.RequestListener() {
+					public void requestCompleted(byte[] result, long processingMillis) {
+					}
+
+					public void requestFailed(Exception e) {
+						failures.incrementAndGet();
+					}
+				});
+		try {
+			f.get(10, TimeUnit.SECONDS);
+			fail("expected an exception");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		assertEquals(1, failures.get());
+		client.shutdown();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectNonPositiveConcurrency() throws Exception {
+		newClient().setMaxConcurrentRequests(0);
+	}
+}
@@ -24,27 +24,53 @@ import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * An implementation of a finite state transducer. This class does nothing but load and represent the FST. It is used by other
  * classes doing something reasonable with it.
+ * <p>
+ * The arcs are kept in their packed file representation, either in a heap array or, if the FST was loaded with
+ * {@link #map(String)}, in a read-only memory mapping of the file, so that all processes using the same file share one copy in
+ * the operating system's page cache. The label strings are decoded once into a single character pool, and states with many
+ * outgoing arcs get an index from the first input character to the arcs that can match it.
  * 
  * @author Andreas Eisele
  */
 public class FST {
+	/**
+	 * States with at least this many outgoing arcs are indexed by the first character of the arc input.
+	 */
+	private static final int MIN_INDEXED_ARCS = 8;
+
 	// The following variables are package-readable, so that they can be
 	// directly accessed by all classes in this package.
-	int[] targets;
-	short[] labels;
-	boolean[] isLast;
+	/**
+	 * The arcs, each packed as target arc (bits 0-19), label id (bits 20-30) and last-arc-of-state flag (bit 31).
+	 */
+	IntBuffer arcs;
+	/**
+	 * The characters of all label strings. Label string 2*id is the first string of label id, 2*id+1 the second one; label
+	 * string i occupies labelChars[labelStart[i]] to labelChars[labelStart[i]+labelLength[i]-1].
+	 */
+	char[] labelChars;
+	int[] labelStart;
+	int[] labelLength;
 
-	short[] offsets;
-	byte[] bytes;
-	int[] mapping;
-	ArrayList strings = new ArrayList();
+	private BitSet indexedStates;
+	private Map<Integer, ArcIndex> analysisIndex;
+	private Map<Integer, ArcIndex> generationIndex;
 
 	public FST(String fileName) throws IOException {
 		FileInputStream fis = new FileInputStream(fileName);
@@ -133,6 +159,59 @@ public class FST {
 		loadHeaderless(inStream, encoding, false);
 	}
 
+	private FST() {
+	}
+
+	/**
+	 * Map the fst from the given file into memory instead of copying its arcs to the heap. Assumes header. The mapping is
+	 * read-only and stays valid after this method returns.
+	 * 
+	 * @param fileName
+	 *            the name of the file from which to load the FST.
+	 * @return the memory-mapped FST
+	 * @throws IOException
+	 *             if the FST cannot be loaded from the given file.
+	 */
+	public static FST map(String fileName) throws IOException {
+		ByteBuffer buffer;
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			file.close();
+		}
+		int fileSize = buffer.capacity();
+		int encLen = buffer.getInt();
+		byte[] encBytes = new byte[encLen];
+		buffer.get(encBytes);
+		String encoding = new String(encBytes, "UTF-8");
+		if (!Charset.isSupported(encoding))
+			throw new IOException("Encoding of FST file not correctly specified. Maybe file in old format.");
+		int overallBits = buffer.getInt();
+		int arcOffBits = buffer.getInt();
+		if (overallBits != 32 || arcOffBits != 20) {
+			throw new IOException("Cannot handle non-standard bit allocation for label and arc id's.");
+		}
+		int nArcs = buffer.getInt();
+		FST fst = new FST();
+		ByteBuffer arcBytes = buffer.slice();
+		arcBytes.limit(4 * nArcs);
+		fst.arcs = arcBytes.asIntBuffer();
+		buffer.position(buffer.position() + 4 * nArcs);
+
+		int nPairs = buffer.getInt();
+		short[] offsets = new short[2 * nPairs];
+		buffer.asShortBuffer().get(offsets);
+		buffer.position(buffer.position() + 4 * nPairs);
+		int nBytes = fileSize - 20 - encLen - 4 * (nPairs + nArcs);
+		byte[] bytes = new byte[nBytes];
+		buffer.get(bytes);
+		fst.createLabels(offsets, bytes, encoding);
+		fst.createIndex();
+		return fst;
+	}
+
 	private void load(InputStream inStream) throws IOException, UnsupportedEncodingException {
 		int i;
 		DataInputStream in = new DataInputStream(new BufferedInputStream(inStream));
@@ -159,34 +238,25 @@ public class FST {
 		}
 
 		int nArcs = in.readInt();
-		// arcs = new int[nArcs];
-
-		targets = new int[nArcs];
-		labels = new short[nArcs];
-		isLast = new boolean[nArcs];
-
+		int[] arcArray = new int[nArcs];
 		for (i = 0; i < nArcs; i++) {
-			int thisArc = in.readInt();
-
-			targets[i] = thisArc & 1048575;
-			labels[i] = (short) ((thisArc >> 20) & 2047);
-			isLast[i] = ((byte) (thisArc >> 31)) != 0;
-
+			arcArray[i] = in.readInt();
 		}
+		arcs = IntBuffer.wrap(arcArray);
 
 		int nPairs = in.readInt();
-		offsets = new short[2 * nPairs];
+		short[] offsets = new short[2 * nPairs];
 		for (i = 0; i < 2 * nPairs; i++)
 			offsets[i] = in.readShort();
 		// int nBytes = fileSize - 8 - 4 * (nPairs + nArcs);
 		int nBytes = fileSize - 20 - encLen - 4 * (nPairs + nArcs);
-		mapping = new int[nBytes];
-		bytes = new byte[nBytes];
+		byte[] bytes = new byte[nBytes];
 		in.readFully(bytes);
 		assert in.available() == 0 : "Partial file read... not good";
 
 		in.close();
-		createMapping(mapping, bytes, encoding);
+		createLabels(offsets, bytes, encoding);
+		createIndex();
 	}
 
 	private void loadHeaderless(InputStream inStream, String encoding, boolean verbose) throws IOException,
@@ -196,57 +266,203 @@ public class FST {
 		// int fileSize= (int) f.length();
 		int fileSize = in.available(); // TODO: how robust is this??
 		int nArcs = in.readInt();
-		// arcs = new int[nArcs];
-
-		targets = new int[nArcs];
-		labels = new short[nArcs];
-		isLast = new boolean[nArcs];
-
+		int[] arcArray = new int[nArcs];
 		for (i = 0; i < nArcs; i++) {
-			int thisArc = in.readInt();
-
-			targets[i] = thisArc & 1048575;
-			labels[i] = (short) ((thisArc >> 20) & 2047);
-			isLast[i] = ((byte) (thisArc >> 31)) != 0;
-
+			arcArray[i] = in.readInt();
 		}
+		arcs = IntBuffer.wrap(arcArray);
 
 		int nPairs = in.readInt();
-		offsets = new short[2 * nPairs];
+		short[] offsets = new short[2 * nPairs];
 		for (i = 0; i < 2 * nPairs; i++)
 			offsets[i] = in.readShort();
 		int nBytes = fileSize - 8 - 4 * (nPairs + nArcs);
-		mapping = new int[nBytes];
-		bytes = new byte[nBytes];
+		byte[] bytes = new byte[nBytes];
 		in.readFully(bytes);
 		if (verbose) {
 			System.err.println("FST (" + fileSize + " Bytes, " + nArcs + " Arcs, " + nPairs + " Labels)" + " loaded");
 		}
 		in.close();
-		createMapping(mapping, bytes, encoding);
+		createLabels(offsets, bytes, encoding);
+		createIndex();
 	}
 
-	private void createMapping(int[] mapping, byte[] bytes, String encoding) throws UnsupportedEncodingException {
-		mapping[0] = 0;
+	/**
+	 * Decode the zero-terminated label strings and copy them into the label character pool.
+	 */
+	private void createLabels(short[] offsets, byte[] bytes, String encoding) throws UnsupportedEncodingException {
+		// map the byte offset at which each string starts to the decoded string
+		String[] strings = new String[bytes.length];
 		int last0 = -1;
-		String s;
-		int len;
 		for (int i = 0; i < bytes.length; i++) {
 			if (bytes[i] == 0) {
-				len = i - last0 - 1;
+				int len = i - last0 - 1;
+				String str;
 				if (len == 0)
-					strings.add("");
-				else {
-					String str;
-					if (encoding != null)
-						str = new String(bytes, last0 + 1, len, encoding);
-					else
-						str = new String(bytes, last0 + 1, len);
-					strings.add(str);
-				}
-				mapping[last0 + 1] = strings.size() - 1;
+					str = "";
+				else if (encoding != null)
+					str = new String(bytes, last0 + 1, len, encoding);
+				else
+					str = new String(bytes, last0 + 1, len);
+				strings[last0 + 1] = str;
 				last0 = i;
 			}
 		}
+		StringBuilder pool = new StringBuilder();
+		labelStart = new int[offsets.length];
+		labelLength = new int[offsets.length];
+		for (int i = 0; i < offsets.length; i++) {
+			String str = strings[offsets[i] & 0xFFFF];
+			labelStart[i] = pool.length();
+			labelLength[i] = str.length();
+			pool.append(str);
+		}
+		labelChars = new char[pool.length()];
+		pool.getChars(0, labelChars.length, labelChars, 0);
+	}
+
+	/**
+	 * Build the first-character arc index for all states with at least {@link #MIN_INDEXED_ARCS} outgoing arcs.
+	 */
+	private void createIndex() {
+		int nArcs = arcs.limit();
+		indexedStates = new BitSet(nArcs);
+		analysisIndex = new HashMap<Integer, ArcIndex>();
+		generationIndex = new HashMap<Integer, ArcIndex>();
+		int state = 0;
+		for (int arc = 0; arc < nArcs; arc++) {
+			if (isLast(arc)) {
+				if (arc + 1 - state >= MIN_INDEXED_ARCS) {
+					indexedStates.set(state);
+					analysisIndex.put(state, new ArcIndex(this, state, arc + 1, 0));
+					generationIndex.put(state, new ArcIndex(this, state, arc + 1, 1));
+				}
+				state = arc + 1;
+			}
+		}
+	}
+
+	/**
+	 * The arc that the given arc leads to, i.e. the first outgoing arc of the target state.
+	 */
+	int getTarget(int arc) {
+		return arcs.get(arc) & 1048575;
+	}
+
+	/**
+	 * The label id of the given arc; label id 0 marks a final state.
+	 */
+	int getLabel(int arc) {
+		return (arcs.get(arc) >> 20) & 2047;
+	}
+
+	/**
+	 * Whether the given arc is the last outgoing arc of its state.
+	 */
+	boolean isLast(int arc) {
+		return arcs.get(arc) < 0;
+	}
+
+	/**
+	 * Whether label string i occurs in word at the given offset.
+	 */
+	boolean labelMatches(int i, String word, int offset) {
+		int len = labelLength[i];
+		if (offset + len > word.length())
+			return false;
+		for (int k = 0, c = labelStart[i]; k < len; k++, c++) {
+			if (labelChars[c] != word.charAt(offset + k))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The first-character index of the state starting at the given arc, or null if that state is not indexed.
+	 * 
+	 * @param state
+	 *            the first outgoing arc of the state
+	 * @param generate
+	 *            whether the index is needed for the second (generating) rather than the first label string.
+	 */
+	ArcIndex getArcIndex(int state, boolean generate) {
+		if (!indexedStates.get(state))
+			return null;
+		return generate ? generationIndex.get(state) : analysisIndex.get(state);
+	}
+
+	/**
+	 * Groups the outgoing arcs of one state by the first character of their input label string. Each group also contains the
+	 * arcs with an empty input, and all groups keep the original arc order, so that lookups using the index produce their
+	 * results in the same order as a linear scan.
+	 */
+	static final class ArcIndex {
+		private final char[] keys;
+		private final int[] starts;
+		private final int[] arcList;
+
+		ArcIndex(FST fst, int firstArc, int endArc, int side) {
+			List<Integer> empty = new ArrayList<Integer>();
+			char[] first = new char[endArc - firstArc];
+			boolean[] hasFirst = new boolean[endArc - firstArc];
+			StringBuilder chars = new StringBuilder();
+			for (int arc = firstArc; arc < endArc; arc++) {
+				int label = fst.getLabel(arc);
+				int i = 2 * label + side;
+				if (label == 0 || fst.labelLength[i] == 0) {
+					empty.add(arc);
+				} else {
+					first[arc - firstArc] = fst.labelChars[fst.labelStart[i]];
+					hasFirst[arc - firstArc] = true;
+					if (chars.indexOf(String.valueOf(first[arc - firstArc])) == -1)
+						chars.append(first[arc - firstArc]);
+				}
+			}
+			keys = chars.toString().toCharArray();
+			Arrays.sort(keys);
+			starts = new int[keys.length + 2];
+			List<Integer> list = new ArrayList<Integer>();
+			for (int k = 0; k < keys.length; k++) {
+				starts[k] = list.size();
+				for (int arc = firstArc; arc < endArc; arc++) {
+					if (!hasFirst[arc - firstArc] || first[arc - firstArc] == keys[k])
+						list.add(arc);
+				}
+			}
+			starts[keys.length] = list.size();
+			list.addAll(empty);
+			starts[keys.length + 1] = list.size();
+			arcList = new int[list.size()];
+			for (int i = 0; i < arcList.length; i++) {
+				arcList[i] = list.get(i);
+			}
+		}
+
+		/**
+		 * The group of arcs that can match an input continuing with the given character.
+		 */
+		int group(char c) {
+			int k = Arrays.binarySearch(keys, c);
+			return k >= 0 ? k : keys.length;
+		}
+
+		/**
+		 * The group of arcs with an empty input, which are the only ones that can match at the end of the input.
+		 */
+		int emptyGroup() {
+			return keys.length;
+		}
+
+		int start(int group) {
+			return starts[group];
+		}
+
+		int end(int group) {
+			return starts[group + 1];
+		}
+
+		int arc(int i) {
+			return arcList[i];
+		}
 	}
 }
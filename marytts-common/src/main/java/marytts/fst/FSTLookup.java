@@ -20,6 +20,7 @@
 package marytts.fst;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -38,7 +39,7 @@ import java.util.Map;
 public class FSTLookup {
 	// ///////////////////// Static FST repository ////////////////////
 	/**
-	 * Map "filename encoding" or "filename" to FST.
+	 * Map "filename encoding", "identifier" or canonical file name to FST.
 	 */
 	private static Map<String, FST> knownFSTs = new HashMap<String, FST>();
 
@@ -48,7 +49,8 @@ public class FSTLookup {
 
 	/**
 	 * Initialise the finite state transducer lookup. This constructor will assume that the file contains a header indicating the
-	 * proper encoding.
+	 * proper encoding. The file is memory-mapped rather than copied to the heap, and all lookups on the same file share one
+	 * mapping.
 	 * 
 	 * @param fileName
 	 *            the name of the file from which to load the FST.
@@ -56,11 +58,13 @@ public class FSTLookup {
 	 *             if the FST cannot be loaded from the given file.
 	 */
 	public FSTLookup(String fileName) throws IOException {
-		InputStream inStream = new FileInputStream(fileName);
-		try {
-			init(inStream, fileName);
-		} finally {
-			inStream.close();
+		String key = new File(fileName).getCanonicalPath();
+		synchronized (knownFSTs) {
+			fst = knownFSTs.get(key);
+			if (fst == null) {
+				fst = FST.map(fileName);
+				knownFSTs.put(key, fst);
+			}
 		}
 	}
 
@@ -80,12 +84,13 @@ public class FSTLookup {
 	}
 
 	private void init(InputStream inStream, String identifier) throws IOException {
-		fst = knownFSTs.get(identifier);
-		if (fst == null) {
-			fst = new FST(inStream);
-			knownFSTs.put(identifier, fst);
+		synchronized (knownFSTs) {
+			fst = knownFSTs.get(identifier);
+			if (fst == null) {
+				fst = new FST(inStream);
+				knownFSTs.put(identifier, fst);
+			}
 		}
-
 	}
 
 	/**
@@ -129,10 +134,12 @@ public class FSTLookup {
 
 	private void init(InputStream inStream, String identifier, String encoding) throws IOException, UnsupportedEncodingException {
 		String key = identifier + " " + encoding;
-		fst = knownFSTs.get(key);
-		if (fst == null) {
-			fst = new FST(inStream, encoding);
-			knownFSTs.put(key, fst);
+		synchronized (knownFSTs) {
+			fst = knownFSTs.get(key);
+			if (fst == null) {
+				fst = new FST(inStream, encoding);
+				knownFSTs.put(key, fst);
+			}
 		}
 	}
 
@@ -168,33 +175,73 @@ public class FSTLookup {
 		return resultArray;
 	}
 
-	private void lookup(String word, int offset1, int arc, boolean generate, StringBuilder buffer2, List<String> results) {
-		do {
-			int label = fst.labels[arc];
-			int offset2 = buffer2.length();
-			if (label == 0) {
-				if (offset1 == word.length()) {
-					results.add(buffer2.toString());
-				}
-			} else {
-				String s1;
-				if (generate)
-					s1 = (String) fst.strings.get(fst.mapping[fst.offsets[2 * label + 1]]);
-				else
-					s1 = (String) fst.strings.get(fst.mapping[fst.offsets[2 * label]]);
-				if (word.startsWith(s1, offset1)) {
-					String s2;
-					if (generate)
-						s2 = (String) fst.strings.get(fst.mapping[fst.offsets[2 * label]]);
-					else
-						s2 = (String) fst.strings.get(fst.mapping[fst.offsets[2 * label + 1]]);
-					buffer2.append(s2);
-					lookup(word, offset1 + s1.length(), fst.targets[arc], generate, buffer2, results);
-					if (offset2 < buffer2.length())
-						buffer2.delete(offset2, buffer2.length());
-				}
+	/**
+	 * Look up a list of words in the FST, in normal mode. This method is thread-safe.
+	 * 
+	 * @param words
+	 *            the words to look up.
+	 * @return an array with one entry per word, each containing all expansions of that word as {@link #lookup(String)} would
+	 *         return them.
+	 */
+	public String[][] lookup(List<String> words) {
+		return lookup(words, false);
+	}
+
+	/**
+	 * Look up a list of words in the FST, sharing the lookup buffers between the words. This method is thread-safe.
+	 * 
+	 * @param words
+	 *            the words to look up.
+	 * @param generate
+	 *            whether the FST is to run in inverse direction, i.e. generating the original form from the expanded form.
+	 * @return an array with one entry per word, each containing all expansions of that word as {@link #lookup(String, boolean)}
+	 *         would return them.
+	 */
+	public String[][] lookup(List<String> words, boolean generate) {
+		String[][] resultArrays = new String[words.size()][];
+		StringBuilder buffer2 = new StringBuilder();
+		List<String> results = new ArrayList<String>();
+		int i = 0;
+		for (String word : words) {
+			lookup(word, 0, 0, generate, buffer2, results);
+			resultArrays[i++] = results.toArray(new String[results.size()]);
+			results.clear();
+			buffer2.setLength(0);
+		}
+		return resultArrays;
+	}
+
+	private void lookup(String word, int offset1, int state, boolean generate, StringBuilder buffer2, List<String> results) {
+		FST.ArcIndex index = fst.getArcIndex(state, generate);
+		if (index == null) {
+			int arc = state;
+			do {
+				lookupArc(word, offset1, arc, generate, buffer2, results);
+			} while (!fst.isLast(arc++));
+		} else {
+			int group = offset1 < word.length() ? index.group(word.charAt(offset1)) : index.emptyGroup();
+			for (int i = index.start(group), end = index.end(group); i < end; i++) {
+				lookupArc(word, offset1, index.arc(i), generate, buffer2, results);
+			}
+		}
+	}
+
+	private void lookupArc(String word, int offset1, int arc, boolean generate, StringBuilder buffer2, List<String> results) {
+		int label = fst.getLabel(arc);
+		if (label == 0) {
+			if (offset1 == word.length()) {
+				results.add(buffer2.toString());
 			}
-		} while (!fst.isLast[arc++]);
+			return;
+		}
+		int s1 = generate ? 2 * label + 1 : 2 * label;
+		if (fst.labelMatches(s1, word, offset1)) {
+			int s2 = generate ? 2 * label : 2 * label + 1;
+			int offset2 = buffer2.length();
+			buffer2.append(fst.labelChars, fst.labelStart[s2], fst.labelLength[s2]);
+			lookup(word, offset1 + fst.labelLength[s1], fst.getTarget(arc), generate, buffer2, results);
+			buffer2.setLength(offset2);
+		}
 	}
 
 	/**
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Collects latency measurements, e.g. of server requests, and reports their distribution. Measurements can be added from several
+ * threads concurrently. Percentiles are computed with the nearest-rank method.
+ */
+public class LatencyStatistics {
+	private long[] values = new long[256];
+	private int count = 0;
+	private long sum = 0;
+
+	/**
+	 * Add one measurement.
+	 * 
+	 * @param value
+	 *            the measured latency, in any unit (typically milliseconds)
+	 */
+	public synchronized void add(long value) {
+		if (count == values.length) {
+			values = Arrays.copyOf(values, 2 * values.length);
+		}
+		values[count++] = value;
+		sum += value;
+	}
+
+	public synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the arithmetic mean of all measurements, or 0 if there are none.
+	 */
+	public synchronized double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * Get the value below which the given percentage of measurements fall.
+	 * 
+	 * @param percent
+	 *            a number between 0 and 100, e.g. 99 for the 99th percentile
+	 * @return the smallest measurement such that at least <code>percent</code> per cent of all measurements are less than or
+	 *         equal to it, or 0 if there are no measurements.
+	 */
+	public synchronized long getPercentile(double percent) {
+		if (percent < 0 || percent > 100) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 100, but is " + percent);
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(values, count);
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(percent / 100 * count);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	public long getMax() {
+		return getPercentile(100);
+	}
+
+	/**
+	 * A one-line summary of the distribution, e.g. <code>n=100 mean=12.3 p50=11 p95=20 p99=31 max=40</code>.
+	 */
+	@Override
+	public synchronized String toString() {
+		return String.format(Locale.US, "n=%d mean=%.1f p50=%d p95=%d p99=%d max=%d", count, getMean(), getPercentile(50),
+				getPercentile(95), getPercentile(99), getMax());
+	}
+}
@@ -657,6 +657,8 @@ public class DomUtils {
 			buf.append(text.getData().trim());
 			buf.append(" ");
 		}
+		// A live iterator is notified of every later node removal in the document, so release it right away:
+		it.detach();
 		return buf.toString();
 	}
 
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.fst;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FSTLookupTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private byte[] fstBytes;
+	private List<String> words;
+
+	@Before
+	public void buildFST() throws Exception {
+		TransducerTrie trie = new TransducerTrie();
+		// one word for each of a to l, so that the start state gets a first-character index
+		for (char c = 'a'; c <= 'l'; c++) {
+			String word = c + "ot";
+			trie.add(charPairs(word, word.toUpperCase()));
+		}
+		trie.add(new StringPair[] { new StringPair("ph", "f"), new StringPair("o", "o"), new StringPair("ne", "n") });
+		// an input without output and an output without input
+		trie.add(new StringPair[] { new StringPair("k", "k"), new StringPair("n", ""), new StringPair("ee", "i:") });
+		trie.add(new StringPair[] { new StringPair("x", "E"), new StringPair("", "k"), new StringPair("", "s") });
+		// an ambiguous word
+		trie.add(new StringPair[] { new StringPair("l", "l"), new StringPair("ea", "E"), new StringPair("d", "d") });
+		trie.add(new StringPair[] { new StringPair("l", "l"), new StringPair("ea", "i:"), new StringPair("d", "d") });
+		trie.computeMinimization();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		trie.writeFST(out, "UTF-8");
+		out.close();
+		fstBytes = bytes.toByteArray();
+
+		words = new ArrayList<String>(Arrays.asList("aot", "lot", "phone", "knee", "x", "lead", "", "a", "ao", "aotx", "lea",
+				"phon", "xx", "Lot", "ne"));
+	}
+
+	private StringPair[] charPairs(String in, String out) {
+		StringPair[] pairs = new StringPair[in.length()];
+		for (int i = 0; i < pairs.length; i++) {
+			pairs[i] = new StringPair(in.substring(i, i + 1), out.substring(i, i + 1));
+		}
+		return pairs;
+	}
+
+	private FSTLookup loadFromStream(String identifier) throws Exception {
+		return new FSTLookup(new ByteArrayInputStream(fstBytes), identifier);
+	}
+
+	private FSTLookup loadMapped() throws Exception {
+		File file = folder.newFile("test.fst");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(fstBytes);
+		out.close();
+		return new FSTLookup(file.getPath());
+	}
+
+	@Test
+	public void lookup() throws Exception {
+		FSTLookup lookup = loadFromStream("FSTLookupTest.lookup");
+		assertArrayEquals(new String[] { "AOT" }, lookup.lookup("aot"));
+		assertArrayEquals(new String[] { "fon" }, lookup.lookup("phone"));
+		assertArrayEquals(new String[] { "ki:" }, lookup.lookup("knee"));
+		assertArrayEquals(new String[] { "Eks" }, lookup.lookup("x"));
+		assertEquals(new HashSet<String>(Arrays.asList("lEd", "li:d")), new HashSet<String>(Arrays.asList(lookup.lookup("lead"))));
+		assertEquals(0, lookup.lookup("ao").length);
+		assertEquals(0, lookup.lookup("aotx").length);
+		assertEquals(0, lookup.lookup("Lot").length);
+		assertEquals(0, lookup.lookup("").length);
+	}
+
+	@Test
+	public void generate() throws Exception {
+		FSTLookup lookup = loadFromStream("FSTLookupTest.generate");
+		assertArrayEquals(new String[] { "bot" }, lookup.lookup("BOT", true));
+		assertArrayEquals(new String[] { "phone" }, lookup.lookup("fon", true));
+		assertArrayEquals(new String[] { "x" }, lookup.lookup("Eks", true));
+		assertArrayEquals(new String[] { "lead" }, lookup.lookup("li:d", true));
+		assertEquals(0, lookup.lookup("bot", true).length);
+	}
+
+	@Test
+	public void mappedEqualsStream() throws Exception {
+		FSTLookup fromStream = loadFromStream("FSTLookupTest.mappedEqualsStream");
+		FSTLookup mapped = loadMapped();
+		for (String word : words) {
+			assertArrayEquals(word, fromStream.lookup(word), mapped.lookup(word));
+			assertArrayEquals(word, fromStream.lookup(word.toUpperCase(), true), mapped.lookup(word.toUpperCase(), true));
+		}
+	}
+
+	@Test
+	public void bulkLookup() throws Exception {
+		FSTLookup lookup = loadMapped();
+		String[][] results = lookup.lookup(words);
+		assertEquals(words.size(), results.length);
+		for (int i = 0; i < words.size(); i++) {
+			assertArrayEquals(words.get(i), lookup.lookup(words.get(i)), results[i]);
+		}
+	}
+}
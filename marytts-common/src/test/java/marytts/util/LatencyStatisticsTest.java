@@ -0,0 +1,64 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyStatisticsTest {
+
+	@Test
+	public void emptyStatistics() {
+		LatencyStatistics stats = new LatencyStatistics();
+		assertEquals(0, stats.getCount());
+		assertEquals(0, stats.getPercentile(99));
+		assertEquals(0, stats.getMean(), 0);
+	}
+
+	@Test
+	public void nearestRankPercentiles() {
+		LatencyStatistics stats = new LatencyStatistics();
+		// add 1..1000 in scrambled order
+		for (int i = 0; i < 1000; i++) {
+			stats.add((i * 337) % 1000 + 1);
+		}
+		assertEquals(1000, stats.getCount());
+		assertEquals(500, stats.getPercentile(50));
+		assertEquals(950, stats.getPercentile(95));
+		assertEquals(990, stats.getPercentile(99));
+		assertEquals(1000, stats.getMax());
+		assertEquals(1, stats.getPercentile(0));
+		assertEquals(500.5, stats.getMean(), 1e-9);
+	}
+
+	@Test
+	public void summary() {
+		LatencyStatistics stats = new LatencyStatistics();
+		stats.add(10);
+		stats.add(20);
+		assertEquals("n=2 mean=15.0 p50=10 p95=20 p99=20 max=20", stats.toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectInvalidPercentile() {
+		new LatencyStatistics().getPercentile(101);
+	}
+}
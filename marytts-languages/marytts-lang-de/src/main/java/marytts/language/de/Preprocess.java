@@ -21,7 +21,6 @@
 package marytts.language.de;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 
@@ -96,11 +95,19 @@ public class Preprocess extends InternalModule {
 				// ignore token
 				continue;
 			}
-			Iterator<ExpansionPattern> it = ExpansionPattern.allPatterns().iterator();
+			List<ExpansionPattern> patterns = ExpansionPattern.allPatterns();
+			// Only try the patterns that can consider t a candidate; the others would leave it unchanged anyway.
+			// (CompositeEP may strip hyphens from t in place, which cannot make t a candidate for more patterns.)
+			int candidates = ExpansionPattern.candidatePatterns(MaryDomUtils.tokenText(t));
 			boolean fullyExpanded = false;
-			while (!fullyExpanded && it.hasNext()) {
-				ExpansionPattern ep = (ExpansionPattern) it.next();
-				logger.debug("Now applying ep " + ep + " to token " + MaryDomUtils.getPlainTextBelow(t));
+			for (int i = 0; !fullyExpanded && i < patterns.size(); i++) {
+				if ((candidates & (1 << i)) == 0) {
+					continue;
+				}
+				ExpansionPattern ep = patterns.get(i);
+				if (logger.isDebugEnabled()) {
+					logger.debug("Now applying ep " + ep + " to token " + MaryDomUtils.getPlainTextBelow(t));
+				}
 				List<Element> expanded = new ArrayList<Element>();
 				fullyExpanded = ep.process(t, expanded);
 				// Element replacements may have been caused by ep.process());
@@ -116,13 +123,16 @@ public class Preprocess extends InternalModule {
 					Element lastToken = getLastToken(expanded);
 					assert lastToken != null;
 					tw.setCurrentNode(lastToken);
-					logger.debug("set treewalker position:" + MaryDomUtils.getPlainTextBelow((Element) tw.getCurrentNode()));
+					if (logger.isDebugEnabled()) {
+						logger.debug("set treewalker position:" + MaryDomUtils.getPlainTextBelow((Element) tw.getCurrentNode()));
+					}
 				} else { // not fully expanded
 					if (!expanded.isEmpty()) { // partial expansion
 						logger.debug("non-final expansion");
 						// need to set t
 						t = getFirstToken(expanded);
 						assert t != null;
+						candidates = ExpansionPattern.candidatePatterns(MaryDomUtils.tokenText(t));
 						// set tw as if fully expanded, just in case no further expansions occur
 						// Element lastToken = getLastToken(expanded);
 						// assert lastToken != null;
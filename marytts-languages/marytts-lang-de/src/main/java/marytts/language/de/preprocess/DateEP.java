@@ -123,11 +123,20 @@ public class DateEP extends ExpansionPattern {
 	protected final Pattern reDay = Pattern.compile("(" + sDay + ")" + "?:" + sDot);
 
 	private final Pattern reMatchingChars = Pattern.compile(sMatchingChars);
+	private final Pattern reInitialChars = Pattern.compile("[0-9]");
 
 	public Pattern reMatchingChars() {
 		return reMatchingChars;
 	}
 
+	protected boolean candidateByMatchingChars() {
+		return true;
+	}
+
+	protected Pattern reInitialChars() {
+		return reInitialChars;
+	}
+
 	/**
 	 * Every subclass has its own logger. The important point is that if several threads are accessing the variable at the same
 	 * time, the logger needs to be thread-safe or it will produce rubbish.
@@ -64,6 +64,27 @@ public abstract class ExpansionPattern {
 	private static List<ExpansionPattern> expansionPatterns;
 	private static Map<String, ExpansionPattern> patternTable;
 
+	/**
+	 * Characters below this value are looked up in charCandidates and initialCandidates; any other character is assumed to be
+	 * acceptable to all patterns.
+	 */
+	private static final int CHAR_TABLE_SIZE = 0x3000;
+	/**
+	 * For each character below CHAR_TABLE_SIZE, the bit mask of patterns (by their index in expansionPatterns) whose
+	 * reMatchingChars() matches that character, restricted to the patterns in charClassPatterns.
+	 */
+	private static int[] charCandidates;
+	/**
+	 * For each character below CHAR_TABLE_SIZE, the bit mask of patterns which can match a token starting with that character
+	 * (see {@link #reInitialChars()}).
+	 */
+	private static int[] initialCandidates;
+	/**
+	 * Bit mask of the patterns for which isCandidate() is decided by a single character class (see
+	 * {@link #candidateByMatchingChars()}).
+	 */
+	private static int charClassPatterns;
+
 	/**
 	 * Initialise the various patterns. Notice that the order in which they are added to List expansionPatterns is most important:
 	 * If several patterns potentially would match a given input, the one first found in the list will be applied. Therefore,
@@ -126,6 +147,36 @@ public abstract class ExpansionPattern {
 		expansionPatterns.add(specialChar);
 		for (it = specialChar.knownTypes().iterator(); it.hasNext();)
 			patternTable.put(it.next(), specialChar);
+		createCandidateTable();
+	}
+
+	/**
+	 * Fill charCandidates and initialCandidates by testing every pattern's reMatchingChars() and reInitialChars() against every
+	 * character in the table once, so that candidatePatterns() can determine the candidate patterns for a token in a single pass
+	 * over its characters.
+	 */
+	private static void createCandidateTable() {
+		assert expansionPatterns.size() <= Integer.SIZE;
+		charClassPatterns = 0;
+		charCandidates = new int[CHAR_TABLE_SIZE];
+		initialCandidates = new int[CHAR_TABLE_SIZE];
+		for (int i = 0; i < expansionPatterns.size(); i++) {
+			ExpansionPattern ep = expansionPatterns.get(i);
+			int bit = 1 << i;
+			Matcher initial = ep.reInitialChars() != null ? ep.reInitialChars().matcher("") : null;
+			Matcher matching = null;
+			if (ep.candidateByMatchingChars()) {
+				charClassPatterns |= bit;
+				matching = ep.reMatchingChars().matcher("");
+			}
+			for (int c = 0; c < CHAR_TABLE_SIZE; c++) {
+				String ch = String.valueOf((char) c);
+				if (initial == null || initial.reset(ch).matches())
+					initialCandidates[c] |= bit;
+				if (matching != null && matching.reset(ch).find())
+					charCandidates[c] |= bit;
+			}
+		}
 	}
 
 	public static List<ExpansionPattern> allPatterns() {
@@ -136,6 +187,30 @@ public abstract class ExpansionPattern {
 		return (ExpansionPattern) patternTable.get(typeString);
 	}
 
+	/**
+	 * Determine in one pass over the characters of a token which of the patterns in {@link #allPatterns()} could possibly match
+	 * starting at that token.
+	 * 
+	 * @param tokenText
+	 *            the text of the token, as returned by MaryDomUtils.tokenText()
+	 * @return a bit mask in which bit <code>i</code> is set unless the i-th pattern in allPatterns() is known not to consider the
+	 *         token a candidate, i.e. is known to leave it unchanged.
+	 */
+	public static int candidatePatterns(String tokenText) {
+		if (tokenText.length() == 0) {
+			// a match would start with the text of the following tokens, so only the character classes apply
+			return ~charClassPatterns;
+		}
+		char first = tokenText.charAt(0);
+		int initial = first < CHAR_TABLE_SIZE ? initialCandidates[first] : ~0;
+		int found = 0;
+		for (int i = 0, len = tokenText.length(); i < len && found != charClassPatterns; i++) {
+			char c = tokenText.charAt(i);
+			found |= c < CHAR_TABLE_SIZE ? charCandidates[c] : charClassPatterns;
+		}
+		return (~charClassPatterns | found) & initial;
+	}
+
 	/**
 	 * A regular expression matching the characters at which a token should be split into parts before any preprocessing patterns
 	 * are applied.
@@ -158,6 +233,8 @@ public abstract class ExpansionPattern {
 
 	private static Logger logger = MaryUtils.getLogger("ExpansionPattern");
 
+	private static final Pattern rePron = Pattern.compile("\\[(.*)\\]"); // pronunciation in square brackets
+
 	public ExpansionPattern() {
 	}
 
@@ -176,6 +253,23 @@ public abstract class ExpansionPattern {
 		return true;
 	}
 
+	/**
+	 * Whether {@link #isCandidate(Element)} is decided by {@link #reMatchingChars()} alone, and reMatchingChars() is a single
+	 * character class, so that a token is a candidate if and only if one of its characters matches it. Subclasses overriding
+	 * this to return true must not override isCandidate() or process().
+	 */
+	protected boolean candidateByMatchingChars() {
+		return false;
+	}
+
+	/**
+	 * Returns the regular expression object matching any of the chars with which a string matched by <code>match(s, 0)</code>
+	 * can begin, or null if this is not restricted. Subclasses overriding this to return non-null must not override process().
+	 */
+	protected Pattern reInitialChars() {
+		return null;
+	}
+
 	/**
 	 * Returns the types known by this ExpansionPattern. These are possible values of the <code>type</code> attribute to the
 	 * <code>say-as</code> element, as defined in MaryXML.dtd. Each subclass needs to override this to return something
@@ -362,7 +456,6 @@ public abstract class ExpansionPattern {
 			// unusable input
 			return null; // failure
 		}
-		Pattern rePron = Pattern.compile("\\[(.*)\\]"); // pronunciation in square brackets
 		StringTokenizer st = new StringTokenizer(newText);
 		ArrayList<Element> newTokens = new ArrayList<Element>();
 		while (st.hasMoreTokens()) {
@@ -171,6 +171,10 @@ public class SpecialCharEP extends ExpansionPattern {
 		return reMatchingChars;
 	}
 
+	protected boolean candidateByMatchingChars() {
+		return true;
+	}
+
 	private final Pattern reSplitAtChars = Pattern.compile(sSplitAtChars);
 
 	/**
@@ -58,11 +58,20 @@ public class TelephoneEP extends ExpansionPattern {
 	// Now the actual match patterns:
 	protected final Pattern reTelephone = Pattern.compile(sTelephone);
 	private final Pattern reMatchingChars = Pattern.compile(sMatchingChars);
+	private final Pattern reInitialChars = Pattern.compile("[0+]");
 
 	public Pattern reMatchingChars() {
 		return reMatchingChars;
 	}
 
+	protected boolean candidateByMatchingChars() {
+		return true;
+	}
+
+	protected Pattern reInitialChars() {
+		return reInitialChars;
+	}
+
 	/**
 	 * Every subclass has its own logger. The important point is that if several threads are accessing the variable at the same
 	 * telephone, the logger needs to be thread-safe or it will produce rubbish.
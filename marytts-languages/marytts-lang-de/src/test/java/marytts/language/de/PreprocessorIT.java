@@ -71,4 +71,9 @@ public class PreprocessorIT extends MaryModuleTestCase {
 		processAndCompare("unicode1", Locale.GERMAN);
 	}
 
+	@Test
+	public void testNews1() throws Exception {
+		processAndCompare("news1", Locale.GERMAN);
+	}
+
 }
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.language.de.preprocess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import marytts.datatypes.MaryData;
+import marytts.datatypes.MaryDataType;
+import marytts.datatypes.MaryXML;
+import marytts.util.dom.DomUtils;
+import marytts.util.dom.MaryDomUtils;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+public class ExpansionPatternTest {
+
+	private Document loadTokens(String basename) throws Exception {
+		MaryData d = new MaryData(MaryDataType.TOKENS, Locale.GERMAN);
+		d.readFrom(getClass().getResourceAsStream("/marytts/language/de/" + basename + ".tokenised"), null);
+		return d.getDocument();
+	}
+
+	private boolean isCandidate(ExpansionPattern ep, String tokenText) {
+		return (ExpansionPattern.candidatePatterns(tokenText) & (1 << ExpansionPattern.allPatterns().indexOf(ep))) != 0;
+	}
+
+	@Test
+	public void skippedPatternsLeaveTokensUnchanged() throws Exception {
+		Document doc = loadTokens("news1");
+		List<ExpansionPattern> patterns = ExpansionPattern.allPatterns();
+		int numTokens = doc.getElementsByTagName(MaryXML.TOKEN).getLength();
+		int numSkipped = 0;
+		for (int k = 0; k < numTokens; k++) {
+			Element t = (Element) doc.getElementsByTagName(MaryXML.TOKEN).item(k);
+			int candidates = ExpansionPattern.candidatePatterns(MaryDomUtils.tokenText(t));
+			for (int i = 0; i < patterns.size(); i++) {
+				if ((candidates & (1 << i)) != 0) {
+					continue;
+				}
+				numSkipped++;
+				Document copy = (Document) doc.cloneNode(true);
+				NodeList copyTokens = copy.getElementsByTagName(MaryXML.TOKEN);
+				List<Element> expanded = new ArrayList<Element>();
+				assertFalse(patterns.get(i).process((Element) copyTokens.item(k), expanded));
+				assertTrue(expanded.isEmpty());
+				DomUtils.compareNodes(doc, copy, true);
+			}
+		}
+		assertTrue(numSkipped > numTokens);
+	}
+
+	@Test
+	public void characterClasses() {
+		assertFalse(isCandidate(ExpansionPattern.date, "Bundesregierung"));
+		assertTrue(isCandidate(ExpansionPattern.date, "12.03.2014"));
+		// contains only date characters, but automatic date matches start with a digit:
+		assertFalse(isCandidate(ExpansionPattern.date, "März"));
+		assertFalse(isCandidate(ExpansionPattern.time, "Haushalt"));
+		assertTrue(isCandidate(ExpansionPattern.time, "10:30"));
+		assertFalse(isCandidate(ExpansionPattern.telephone, "123"));
+		assertTrue(isCandidate(ExpansionPattern.telephone, "+49"));
+		assertFalse(isCandidate(ExpansionPattern.specialChar, "Euro"));
+		assertTrue(isCandidate(ExpansionPattern.specialChar, "E-Mail"));
+		assertFalse(isCandidate(ExpansionPattern.specialChar, ""));
+	}
+
+	@Test
+	public void otherPatternsAreAlwaysTried() {
+		for (ExpansionPattern ep : ExpansionPattern.allPatterns()) {
+			if (!ep.candidateByMatchingChars() && ep.reInitialChars() == null) {
+				assertTrue(isCandidate(ep, "Haushalt"));
+				assertTrue(isCandidate(ep, ""));
+			}
+		}
+		// characters outside the table restrict nothing:
+		assertEquals(~0, ExpansionPattern.candidatePatterns("\u4e2d"));
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.language.en;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import marytts.datatypes.MaryDataType;
+import marytts.modules.JPhonemiser;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JPhonemiserCacheTest {
+	private static final String USERDICT_PROPERTY = "test.JPhonemiserCacheTest.userdict";
+
+	@Rule
+	public TemporaryFolder testFolder = new TemporaryFolder();
+
+	@Test
+	public void repeatedLookupReturnsSameTranscription() throws Exception {
+		JPhonemiser phonemiser = new JPhonemiser("en_US.");
+		StringBuilder firstMethod = new StringBuilder();
+		String first = phonemiser.phonemise("tomato", null, firstMethod);
+		StringBuilder secondMethod = new StringBuilder();
+		String second = phonemiser.phonemise("tomato", null, secondMethod);
+		assertNotNull(first);
+		assertEquals(first, second);
+		assertEquals(firstMethod.toString(), secondMethod.toString());
+		assertEquals(1, phonemiser.getCacheMisses());
+		assertEquals(1, phonemiser.getCacheHits());
+	}
+
+	@Test
+	public void noTranscriptionFromOtherLexicon() throws Exception {
+		// The en_GB lexicon in this tree equals the en_US one, so give the British phonemiser a user dictionary of its own:
+		File userdict = testFolder.newFile("userdict-en_GB.txt");
+		Writer out = new OutputStreamWriter(new FileOutputStream(userdict), "UTF-8");
+		out.write("tomato | t @ - ' m A - t @U\n");
+		out.close();
+		System.setProperty(USERDICT_PROPERTY, userdict.getPath());
+		JPhonemiser gb;
+		try {
+			gb = new JPhonemiser("JPhonemiser", MaryDataType.PARTSOFSPEECH, MaryDataType.PHONEMES, "en_GB.allophoneset",
+					USERDICT_PROPERTY, "en_GB.lexicon", "en_GB.lettertosound");
+		} finally {
+			System.clearProperty(USERDICT_PROPERTY);
+		}
+		JPhonemiser us = new JPhonemiser("en_US.");
+		assertEquals("t @ - ' m EI - t @U", us.phonemise("tomato", null, new StringBuilder()));
+		StringBuilder gbMethod = new StringBuilder();
+		assertEquals("t @ - ' m A - t @U", gb.phonemise("tomato", null, gbMethod));
+		assertEquals("userdict", gbMethod.toString());
+		assertEquals(0, gb.getCacheHits());
+		// each phonemiser keeps answering from its own entry:
+		assertEquals("t @ - ' m EI - t @U", us.phonemise("tomato", null, new StringBuilder()));
+		assertEquals("t @ - ' m A - t @U", gb.phonemise("tomato", null, new StringBuilder()));
+		assertEquals(1, us.getCacheHits());
+		assertEquals(1, gb.getCacheHits());
+	}
+}
@@ -46,6 +46,9 @@ import marytts.unitselection.select.Target;
  */
 public class CART extends DirectedGraph {
 
+	// flat form of the tree for fast interpretation, or null if the tree has not been compiled
+	private volatile CompiledCART compiled;
+
 	/**
 	 * Build a new empty cart
 	 * 
@@ -114,6 +117,10 @@ public class CART extends DirectedGraph {
 	 * @return the Node
 	 */
 	public Node interpretToNode(FeatureVector featureVector, int minNumberOfData) {
+		CompiledCART c = compiled;
+		if (c != null) {
+			return c.interpretToNode(featureVector, minNumberOfData);
+		}
 		Node currentNode = rootNode;
 		Node prevNode = null;
 
@@ -138,6 +145,51 @@ public class CART extends DirectedGraph {
 
 	}
 
+	/**
+	 * Walk down the tree according to the features in fv, and return the data in the leaf node found there.
+	 * 
+	 * @param fv
+	 *            a feature vector which must be consistent with the tree's feature definition.
+	 * @return the data in the leaf node, or null if the walk ended at an empty daughter.
+	 */
+	@Override
+	public Object interpret(FeatureVector fv) {
+		CompiledCART c = compiled;
+		if (c == null) {
+			return super.interpret(fv);
+		}
+		LeafNode leaf = c.interpretToLeaf(fv);
+		return leaf == null ? null : leaf.getAllData();
+	}
+
+	/**
+	 * Compile this tree into a flat array form which is used by {@link #interpretToNode(FeatureVector, int)} and
+	 * {@link #interpret(FeatureVector)} from now on. The compiled form is a snapshot: this method must be called again after the
+	 * tree has been modified below the root node. Setting a new root node discards the compiled form.
+	 * 
+	 * @return true if the tree could be compiled, false if it is empty or contains nodes which cannot be compiled.
+	 */
+	public boolean compile() {
+		compiled = CompiledCART.compile(rootNode);
+		return compiled != null;
+	}
+
+	/**
+	 * The compiled form of this tree.
+	 * 
+	 * @return the compiled form, or null if the tree has not been compiled.
+	 * @see #compile()
+	 */
+	public CompiledCART getCompiled() {
+		return compiled;
+	}
+
+	@Override
+	public void setRootNode(Node rNode) {
+		compiled = null;
+		super.setRootNode(rNode);
+	}
+
 	/**
 	 * Passes the given item through this CART and returns the interpretation.
 	 * 
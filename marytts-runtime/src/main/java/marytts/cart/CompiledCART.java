@@ -0,0 +1,234 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.cart;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import marytts.features.FeatureVector;
+
+/**
+ * A flat, array-based form of a CART, for fast evaluation. The nodes of the tree are numbered in depth-first order; for each node,
+ * its type, feature index, criterion value and the indices of its daughters are held in parallel arrays, so that walking down the
+ * tree touches a few contiguous primitive arrays rather than a chain of node objects with virtual calls. The original node objects
+ * are kept only to be returned as the result of the walk.
+ * <p>
+ * A compiled CART is a snapshot of the tree at the time of compilation; if the tree is modified afterwards, it must be compiled
+ * again (see {@link CART#compile()}). The walk is identical to the one in {@link CART#interpretToNode(FeatureVector, int)} and
+ * {@link DirectedGraph#interpret(FeatureVector)}, including the exceptions thrown for out-of-range feature values.
+ * 
+ */
+public class CompiledCART {
+	private static final byte LEAF = 0;
+	private static final byte BINARY_BYTE = 1;
+	private static final byte BINARY_SHORT = 2;
+	private static final byte BINARY_FLOAT = 3;
+	private static final byte BINARY_PSEUDO_FLOAT = 4; // a float comparison on a byte feature
+	private static final byte BYTE = 5;
+	private static final byte SHORT = 6;
+
+	private final byte[] nodeType;
+	private final int[] featureIndex;
+	// byte or short criterion values as they are, float values as their int bits
+	private final int[] value;
+	// the daughters of node i are children[childStart[i]] to children[childStart[i+1]-1]; -1 stands for a null daughter
+	private final int[] childStart;
+	private final int[] children;
+	private final int[] numData;
+	private final Node[] nodes;
+
+	private CompiledCART(byte[] nodeType, int[] featureIndex, int[] value, int[] childStart, int[] children, int[] numData,
+			Node[] nodes) {
+		this.nodeType = nodeType;
+		this.featureIndex = featureIndex;
+		this.value = value;
+		this.childStart = childStart;
+		this.children = children;
+		this.numData = numData;
+		this.nodes = nodes;
+	}
+
+	/**
+	 * Compile the tree below the given root node.
+	 * 
+	 * @param rootNode
+	 *            the root node of a tree consisting of decision nodes and leaf nodes
+	 * @return the compiled tree, or null if rootNode is null or the tree contains nodes that cannot be compiled, such as
+	 *         directed graph nodes.
+	 */
+	public static CompiledCART compile(Node rootNode) {
+		if (rootNode == null) {
+			return null;
+		}
+		// Number the nodes in depth-first order:
+		List<Node> nodeList = new ArrayList<Node>();
+		List<Node> stack = new ArrayList<Node>();
+		stack.add(rootNode);
+		int numChildren = 0;
+		while (!stack.isEmpty()) {
+			Node n = stack.remove(stack.size() - 1);
+			nodeList.add(n);
+			if (n instanceof DecisionNode) {
+				DecisionNode dn = (DecisionNode) n;
+				numChildren += dn.daughters.length;
+				for (int i = dn.daughters.length - 1; i >= 0; i--) {
+					if (dn.daughters[i] != null) {
+						stack.add(dn.daughters[i]);
+					}
+				}
+			} else if (!(n instanceof LeafNode)) {
+				return null;
+			}
+		}
+		int numNodes = nodeList.size();
+		Node[] nodes = nodeList.toArray(new Node[numNodes]);
+		IdentityHashMap<Node, Integer> indices = new IdentityHashMap<Node, Integer>(numNodes);
+		for (int i = 0; i < numNodes; i++) {
+			if (indices.put(nodes[i], i) != null) {
+				return null; // not a tree: a node is shared between mothers
+			}
+		}
+
+		byte[] nodeType = new byte[numNodes];
+		int[] featureIndex = new int[numNodes];
+		int[] value = new int[numNodes];
+		int[] childStart = new int[numNodes + 1];
+		int[] children = new int[numChildren];
+		int[] numData = new int[numNodes];
+		int c = 0;
+		for (int i = 0; i < numNodes; i++) {
+			Node n = nodes[i];
+			numData[i] = n.getNumberOfData();
+			childStart[i] = c;
+			if (n instanceof LeafNode) {
+				nodeType[i] = LEAF;
+				continue;
+			}
+			DecisionNode dn = (DecisionNode) n;
+			featureIndex[i] = dn.featureIndex;
+			if (dn instanceof DecisionNode.BinaryByteDecisionNode) {
+				nodeType[i] = BINARY_BYTE;
+				value[i] = ((DecisionNode.BinaryByteDecisionNode) dn).getCriterionValueAsByte();
+			} else if (dn instanceof DecisionNode.BinaryShortDecisionNode) {
+				nodeType[i] = BINARY_SHORT;
+				value[i] = ((DecisionNode.BinaryShortDecisionNode) dn).getCriterionValueAsShort();
+			} else if (dn instanceof DecisionNode.BinaryFloatDecisionNode) {
+				DecisionNode.BinaryFloatDecisionNode fdn = (DecisionNode.BinaryFloatDecisionNode) dn;
+				nodeType[i] = fdn.isByteFeature() ? BINARY_PSEUDO_FLOAT : BINARY_FLOAT;
+				value[i] = Float.floatToIntBits(fdn.getCriterionValueAsFloat());
+			} else if (dn instanceof DecisionNode.ByteDecisionNode) {
+				nodeType[i] = BYTE;
+			} else if (dn instanceof DecisionNode.ShortDecisionNode) {
+				nodeType[i] = SHORT;
+			} else {
+				return null; // unknown decision node type
+			}
+			for (Node d : dn.daughters) {
+				children[c++] = d == null ? -1 : indices.get(d);
+			}
+		}
+		childStart[numNodes] = c;
+		return new CompiledCART(nodeType, featureIndex, value, childStart, children, numData, nodes);
+	}
+
+	/**
+	 * The number of nodes in the compiled tree.
+	 * 
+	 * @return the number of nodes
+	 */
+	public int getNumberOfNodes() {
+		return nodes.length;
+	}
+
+	/**
+	 * Walk down the tree according to the given feature vector, with the same semantics as
+	 * {@link CART#interpretToNode(FeatureVector, int)}.
+	 * 
+	 * @param featureVector
+	 *            the feature vector
+	 * @param minNumberOfData
+	 *            the minimum number of data requested. If this is 0, walk down the tree until the leaf level.
+	 * @return the node where the walk stopped.
+	 */
+	public Node interpretToNode(FeatureVector featureVector, int minNumberOfData) {
+		int current = 0;
+		int previous = -1;
+		while (current >= 0 && numData[current] > minNumberOfData && nodeType[current] != LEAF) {
+			previous = current;
+			current = getNextNode(current, featureVector);
+		}
+		// Now usually we will have gone down one level too far
+		if (current < 0 || numData[current] < minNumberOfData && previous >= 0) {
+			current = previous;
+		}
+		return current < 0 ? null : nodes[current];
+	}
+
+	/**
+	 * Walk down the tree to a leaf according to the given feature vector, with the same semantics as
+	 * {@link DirectedGraph#interpret(FeatureVector)}.
+	 * 
+	 * @param featureVector
+	 *            the feature vector
+	 * @return the leaf reached, or null if the walk ended at an empty daughter of a decision node.
+	 */
+	public LeafNode interpretToLeaf(FeatureVector featureVector) {
+		int current = 0;
+		while (nodeType[current] != LEAF) {
+			current = getNextNode(current, featureVector);
+			if (current < 0) {
+				return null;
+			}
+		}
+		return (LeafNode) nodes[current];
+	}
+
+	private int getNextNode(int node, FeatureVector featureVector) {
+		int first = childStart[node];
+		switch (nodeType[node]) {
+		case BINARY_BYTE:
+			return featureVector.getByteFeature(featureIndex[node]) == value[node] ? children[first] : children[first + 1];
+		case BINARY_SHORT:
+			return featureVector.getShortFeature(featureIndex[node]) == value[node] ? children[first] : children[first + 1];
+		case BINARY_FLOAT:
+			return featureVector.getContinuousFeature(featureIndex[node]) < Float.intBitsToFloat(value[node]) ? children[first]
+					: children[first + 1];
+		case BINARY_PSEUDO_FLOAT:
+			return featureVector.getByteFeature(featureIndex[node]) < Float.intBitsToFloat(value[node]) ? children[first]
+					: children[first + 1];
+		case BYTE:
+			return getDaughter(node, featureVector.getByteFeature(featureIndex[node]));
+		case SHORT:
+			return getDaughter(node, featureVector.getShortFeature(featureIndex[node]));
+		default:
+			throw new IllegalStateException("Not a decision node: " + node);
+		}
+	}
+
+	private int getDaughter(int node, int daughterIndex) {
+		// same failure as indexing the daughters array of the original node
+		if (daughterIndex < 0 || childStart[node] + daughterIndex >= childStart[node + 1]) {
+			throw new ArrayIndexOutOfBoundsException(daughterIndex);
+		}
+		return children[childStart[node] + daughterIndex];
+	}
+
+}
@@ -545,6 +545,15 @@ public abstract class DecisionNode extends Node {
 			return String.valueOf(value);
 		}
 
+		/**
+		 * Whether the feature tested by this node is a byte feature whose value is compared as a float.
+		 * 
+		 * @return true for a pseudo-float comparison of a byte feature, false for a continuous feature
+		 */
+		public boolean isByteFeature() {
+			return isByteFeature;
+		}
+
 		/**
 		 * Select a daughter node according to the value in the given target
 		 * 
@@ -159,6 +159,7 @@ public class HTSCARTReader {
 				// will return the correct figure.
 				if (treeSet[state - 2].getRootNode() instanceof DecisionNode)
 					((DecisionNode) treeSet[state - 2].getRootNode()).countData();
+				treeSet[state - 2].compile();
 
 				logger.debug("load: CART[" + (state - 2) + "], total number of nodes in this CART: "
 						+ treeSet[state - 2].getNumNodes());
@@ -228,7 +228,9 @@ public class MaryCARTReader {
 		}
 
 		// set the rootNode as the rootNode of cart
-		return new CART(rootNode, featureDefinition, props);
+		CART cart = new CART(rootNode, featureDefinition, props);
+		cart.compile();
+		return cart;
 	}
 
 	/**
@@ -397,6 +399,8 @@ public class MaryCARTReader {
 		}
 
 		// set the rootNode as the rootNode of cart
-		return new CART(rootNode, featureDefinition, props);
+		CART cart = new CART(rootNode, featureDefinition, props);
+		cart.compile();
+		return cart;
 	}
 }
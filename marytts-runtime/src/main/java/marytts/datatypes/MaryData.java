@@ -44,6 +44,7 @@ import marytts.modules.synthesis.Voice;
 import marytts.server.MaryProperties;
 import marytts.util.MaryUtils;
 import marytts.util.data.audio.AppendableSequenceAudioInputStream;
+import marytts.util.data.audio.MaryAudioUtils;
 import marytts.util.data.audio.SequenceAudioInputStream;
 import marytts.util.dom.DomUtils;
 import marytts.util.dom.MaryNormalisedWriter;
@@ -249,7 +250,11 @@ public class MaryData {
 			writeTo(new OutputStreamWriter(os, "UTF-8"));
 		} else { // audio
 			logger.debug("Writing audio output, frame length " + audio.getFrameLength());
-			AudioSystem.write(audio, audioFileFormat.getType(), os);
+			AudioInputStream toWrite = audio;
+			if (MaryAudioUtils.requiresKnownLength(audioFileFormat.getType())) {
+				toWrite = MaryAudioUtils.withKnownLength(audio);
+			}
+			AudioSystem.write(toWrite, audioFileFormat.getType(), os);
 			os.flush();
 			os.close();
 		}
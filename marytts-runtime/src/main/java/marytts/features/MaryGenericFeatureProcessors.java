@@ -94,6 +94,11 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				return index.getSegment(i - 1);
+			}
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return null;
@@ -115,6 +120,11 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				return index.getSegment(i - 2);
+			}
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return null;
@@ -137,6 +147,11 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				return index.getSegment(i + 1);
+			}
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return null;
@@ -158,6 +173,11 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				return index.getSegment(i + 2);
+			}
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return null;
@@ -178,6 +198,12 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int t = index.tokenOf(i);
+				return t < 0 ? null : index.firstPhone(index.tokenFirstSegment(t), index.tokenEndSegment(t));
+			}
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return null;
@@ -200,6 +226,12 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int t = index.tokenOf(i);
+				return t < 0 ? null : index.lastPhone(index.tokenFirstSegment(t), index.tokenEndSegment(t));
+			}
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return null;
@@ -222,6 +254,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int t = index.tokenOf(i);
+				if (t < 0 || index.tokenEndSyllable(t) <= index.tokenFirstSyllable(t))
+					return null;
+				return index.getSyllable(index.tokenFirstSyllable(t));
+			}
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return null;
@@ -244,6 +284,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int t = index.tokenOf(i);
+				if (t < 0 || index.tokenEndSyllable(t) <= index.tokenFirstSyllable(t))
+					return null;
+				return index.getSyllable(index.tokenEndSyllable(t) - 1);
+			}
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return null;
@@ -290,6 +338,11 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				return index.getSyllable(index.syllablesBefore(i) - 1);
+			}
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element syllable = (Element) segment.getParentNode();
@@ -324,6 +377,11 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				return index.getSyllable(index.syllablesBefore(i) - 2);
+			}
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element syllable = (Element) segment.getParentNode();
@@ -359,6 +417,11 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				return index.getSyllable(index.firstSyllableAfter(i));
+			}
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element syllable = (Element) segment.getParentNode();
@@ -393,6 +456,11 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				return index.getSyllable(index.firstSyllableAfter(i) + 1);
+			}
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element syllable = (Element) segment.getParentNode();
@@ -443,6 +511,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0 || index.phraseEndSyllable(p) <= index.phraseFirstSyllable(p))
+					return null;
+				return index.getSyllable(index.phraseEndSyllable(p) - 1);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return null;
@@ -461,6 +537,13 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				if (index.isPhone(i) && index.tokenOf(i) < 0)
+					return null;
+				return index.getToken(index.nextWord(index.firstTokenAfter(i)));
+			}
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
@@ -497,6 +580,13 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				if (index.isPhone(i) && index.tokenOf(i) < 0)
+					return null;
+				return index.getToken(index.prevWord(index.tokensBefore(i) - 1));
+			}
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
@@ -533,6 +623,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				if (index.isPhone(i) && index.tokenOf(i) < 0)
+					return null;
+				int w = index.nextWord(index.firstTokenAfter(i));
+				return w < 0 ? null : index.firstPhone(index.tokenFirstSegment(w), index.tokenEndSegment(w));
+			}
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
@@ -576,6 +674,10 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				return index.getToken(index.prevWord(index.getNumTokens() - 1));
+			}
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return null;
@@ -612,6 +714,31 @@ public class MaryGenericFeatureProcessors {
 	private static final String[] ZERO_TO_NINETEEN = new String[] { "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11",
 			"12", "13", "14", "15", "16", "17", "18", "19" };
 
+	/**
+	 * Find the first boundary or word (i.e., token with a "ph" attribute) following the given token in the sentence.
+	 * 
+	 * @param sentence
+	 *            the sentence containing the word
+	 * @param word
+	 *            a token element
+	 * @return the next boundary or word, or null if there is none.
+	 */
+	private static Element getNextWordOrBoundary(Element sentence, Element word) {
+		UtteranceIndex index = UtteranceIndex.forToken(word);
+		if (index != null) {
+			return index.nextWordOrBoundary(index.tokenIndex(word));
+		}
+		TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN, MaryXML.BOUNDARY);
+		tw.setCurrentNode(word);
+		// The next word is the next token with a "ph" attribute:
+		Element e;
+		while ((e = (Element) tw.nextNode()) != null) {
+			if (e.getTagName().equals(MaryXML.BOUNDARY) || e.getTagName().equals(MaryXML.TOKEN) && e.hasAttribute("ph"))
+				break;
+		}
+		return e;
+	}
+
 	/**
 	 * Indicate whether a unit is an edge unit, which is never the case for a target.
 	 */
@@ -862,6 +989,10 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return (byte) 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				return (byte) Math.min(index.getNumPhrases(), RAIL_LIMIT);
+			}
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return (byte) 0;
@@ -898,6 +1029,10 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return (byte) 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				return (byte) Math.min(index.getNumWords(), RAIL_LIMIT);
+			}
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return (byte) 0;
@@ -935,6 +1070,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return (byte) 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return (byte) 0;
+				return (byte) Math.min(index.phraseEndSyllable(p) - index.phraseFirstSyllable(p), RAIL_LIMIT);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return (byte) 0;
@@ -975,6 +1118,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return (byte) 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return (byte) 0;
+				return (byte) Math.min(index.phraseEndToken(p) - index.phraseFirstToken(p), RAIL_LIMIT);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return (byte) 0;
@@ -1011,6 +1162,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return (byte) 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int t = index.tokenOf(i);
+				if (t < 0)
+					return (byte) 0;
+				return (byte) Math.min(index.tokenEndSyllable(t) - index.tokenFirstSyllable(t), RAIL_LIMIT);
+			}
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return (byte) 0;
@@ -1046,6 +1205,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return (byte) 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int t = index.tokenOf(i);
+				if (t < 0)
+					return (byte) 0;
+				return (byte) Math.min(index.countPhones(index.tokenFirstSegment(t), index.tokenEndSegment(t)), RAIL_LIMIT);
+			}
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return (byte) 0;
@@ -1087,6 +1254,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return (byte) 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int s = index.syllableOf(i);
+				if (s < 0)
+					return (byte) 0;
+				return (byte) Math.min(index.countPhones(index.syllableFirstSegment(s), index.syllableEndSegment(s)), RAIL_LIMIT);
+			}
 			if (!segment.getTagName().equals(MaryXML.PHONE))
 				return 0;
 			Element syllable = (Element) segment.getParentNode();
@@ -1209,6 +1384,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return (byte) 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int t = index.tokenOf(i);
+				if (t < 0)
+					return (byte) 0;
+				return (byte) Math.min(index.countPhones(index.tokenFirstSegment(t), i), RAIL_LIMIT);
+			}
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return (byte) 0;
@@ -1249,6 +1432,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return (byte) 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int t = index.tokenOf(i);
+				if (t < 0)
+					return (byte) 0;
+				return (byte) Math.min(index.countPhones(i + 1, index.tokenEndSegment(t)), RAIL_LIMIT);
+			}
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return (byte) 0;
@@ -1383,14 +1574,7 @@ public class MaryGenericFeatureProcessors {
 			Element sentence = (Element) MaryDomUtils.getAncestor(word, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN, MaryXML.BOUNDARY);
-			tw.setCurrentNode(word);
-			// The next word is the next token with a "ph" attribute:
-			Element e;
-			while ((e = (Element) tw.nextNode()) != null) {
-				if (e.getTagName().equals(MaryXML.BOUNDARY) || e.getTagName().equals(MaryXML.TOKEN) && e.hasAttribute("ph"))
-					break;
-			}
+			Element e = getNextWordOrBoundary(sentence, word);
 			if (e == null) {
 				// we are the last token in the sentence, but there is no boundary...
 				// OK, let's say it is sentence-final anyway:
@@ -1525,22 +1709,22 @@ public class MaryGenericFeatureProcessors {
 			if (word == null)
 				return 0;
 			// is there another segment following in the token?
-			TreeWalker tww = MaryDomUtils.createTreeWalker(word, MaryXML.PHONE);
-			tww.setCurrentNode(segment);
-			if (tww.nextNode() != null)
-				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				if (index.countPhones(i + 1, index.tokenEndSegment(index.tokenOf(i))) > 0)
+					return 0;
+			} else {
+				TreeWalker tww = MaryDomUtils.createTreeWalker(word, MaryXML.PHONE);
+				tww.setCurrentNode(segment);
+				if (tww.nextNode() != null)
+					return 0;
+			}
 			// else, it is at least word-final.
 			Element sentence = (Element) MaryDomUtils.getAncestor(word, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN, MaryXML.BOUNDARY);
-			tw.setCurrentNode(word);
-			// The next word is the next token with a "ph" attribute:
-			Element e;
-			while ((e = (Element) tw.nextNode()) != null) {
-				if (e.getTagName().equals(MaryXML.BOUNDARY) || e.getTagName().equals(MaryXML.TOKEN) && e.hasAttribute("ph"))
-					break;
-			}
+			Element e = getNextWordOrBoundary(sentence, word);
 			if (e == null) {
 				// we are the last token in the sentence, but there is no boundary...
 				// OK, let's say it is sentence-final anyway:
@@ -1642,9 +1826,15 @@ public class MaryGenericFeatureProcessors {
 			Element sentence = (Element) MaryDomUtils.getAncestor(syllable, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.SYLLABLE, MaryXML.BOUNDARY);
-			tw.setCurrentNode(syllable);
-			Element e = (Element) tw.nextNode();
+			Element e;
+			UtteranceIndex index = UtteranceIndex.forSyllable(syllable);
+			if (index != null) {
+				e = index.nextSyllableOrBoundary(index.syllableIndex(syllable));
+			} else {
+				TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.SYLLABLE, MaryXML.BOUNDARY);
+				tw.setCurrentNode(syllable);
+				e = (Element) tw.nextNode();
+			}
 			if (e == null)
 				return 0;
 			if (e.getTagName().equals(MaryXML.SYLLABLE))
@@ -1674,6 +1864,17 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return 0;
+				int s = index.nextWithAccentAttribute(index.firstSyllableAfter(i));
+				if (s >= index.phraseEndSyllable(p))
+					return 0;
+				return values.get(index.getSyllable(s).getAttribute("accent"));
+			}
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element syllable = (Element) segment.getParentNode();
@@ -1714,6 +1915,17 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return 0;
+				int syl = index.prevWithAccentAttribute(index.syllablesBefore(i) - 1);
+				if (syl < index.phraseFirstSyllable(p))
+					return 0;
+				return values.get(index.getSyllable(syl).getAttribute("accent"));
+			}
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element syllable = (Element) segment.getParentNode();
@@ -1801,6 +2013,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return 0;
+				return (byte) Math.min(index.syllablesBefore(i) - index.phraseFirstSyllable(p), RAIL_LIMIT);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
@@ -1844,6 +2064,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return 0;
+				return (byte) Math.min(index.phraseEndSyllable(p) - index.firstSyllableAfter(i), RAIL_LIMIT);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
@@ -1882,6 +2110,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return 0;
+				return (byte) Math.min(index.countStressed(index.phraseFirstSyllable(p), index.syllablesBefore(i)), RAIL_LIMIT);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
@@ -1927,6 +2163,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return 0;
+				return (byte) Math.min(index.countStressed(index.firstSyllableAfter(i), index.phraseEndSyllable(p)), RAIL_LIMIT);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
@@ -1967,6 +2211,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return 0;
+				return (byte) Math.min(index.countAccented(index.phraseFirstSyllable(p), index.syllablesBefore(i)), RAIL_LIMIT);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
@@ -2012,6 +2264,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return 0;
+				return (byte) Math.min(index.countAccented(index.firstSyllableAfter(i), index.phraseEndSyllable(p)), RAIL_LIMIT);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
@@ -2052,6 +2312,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return 0;
+				return (byte) Math.min(index.countWords(index.phraseFirstToken(p), index.tokensBefore(i)), RAIL_LIMIT);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
@@ -2097,6 +2365,14 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return 0;
+				return (byte) Math.min(index.countWords(index.firstTokenAfter(i), index.phraseEndToken(p)), RAIL_LIMIT);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
@@ -2137,6 +2413,11 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				return (byte) Math.min(index.countWords(0, index.tokensBefore(i)), RAIL_LIMIT);
+			}
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
@@ -2182,6 +2463,11 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				return (byte) Math.min(index.countWords(index.firstTokenAfter(i), index.getNumTokens()), RAIL_LIMIT);
+			}
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
@@ -2222,6 +2508,11 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				return (byte) Math.min(index.phrasesBefore(i), RAIL_LIMIT);
+			}
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
@@ -2265,6 +2556,11 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				return (byte) Math.min(index.getNumPhrases() - index.firstPhraseAfter(i), RAIL_LIMIT);
+			}
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
@@ -2303,6 +2599,17 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return 0;
+				int current = index.syllablesBefore(i);
+				int first = index.phraseFirstSyllable(p);
+				int accented = index.prevAccented(current - 1);
+				return (byte) Math.min(current - Math.max(accented, first), RAIL_LIMIT);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
@@ -2349,6 +2656,17 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return 0;
+				int next = index.firstSyllableAfter(i);
+				int end = index.phraseEndSyllable(p);
+				int accented = index.nextAccented(next);
+				return (byte) Math.min(accented < end ? accented - next + 1 : end - next, RAIL_LIMIT);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
@@ -2390,6 +2708,17 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return 0;
+				int current = index.syllablesBefore(i);
+				int first = index.phraseFirstSyllable(p);
+				int stressed = index.prevStressed(current - 1);
+				return (byte) Math.min(current - Math.max(stressed, first), RAIL_LIMIT);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
@@ -2436,6 +2765,17 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forSegment(segment);
+			if (index != null) {
+				int i = index.segmentIndex(segment);
+				int p = index.phraseOf(i);
+				if (p < 0)
+					return 0;
+				int next = index.firstSyllableAfter(i);
+				int end = index.phraseEndSyllable(p);
+				int stressed = index.nextStressed(next);
+				return (byte) Math.min(stressed < end ? stressed - next + 1 : end - next, RAIL_LIMIT);
+			}
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return 0;
@@ -2489,9 +2829,15 @@ public class MaryGenericFeatureProcessors {
 			Element sentence = (Element) MaryDomUtils.getAncestor(word, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN, MaryXML.BOUNDARY);
-			tw.setCurrentNode(word);
-			Element next = (Element) tw.nextNode();
+			Element next;
+			UtteranceIndex index = UtteranceIndex.forToken(word);
+			if (index != null) {
+				next = index.nextTokenOrBoundary(index.tokenIndex(word));
+			} else {
+				TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN, MaryXML.BOUNDARY);
+				tw.setCurrentNode(word);
+				next = (Element) tw.nextNode();
+			}
 			if (next == null || !next.getTagName().equals(MaryXML.TOKEN) || next.hasAttribute("ph"))
 				return 0;
 			String text = MaryDomUtils.tokenText(next);
@@ -2518,6 +2864,18 @@ public class MaryGenericFeatureProcessors {
 			Element sentence = (Element) MaryDomUtils.getAncestor(word, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forToken(word);
+			if (index != null) {
+				for (int t = index.tokenIndex(word) + 1, n = index.getNumTokens(); t < n; t++) {
+					if (index.isWord(t))
+						continue;
+					String text = MaryDomUtils.tokenText(index.getToken(t));
+					if (values.contains(text)) {
+						return values.get(text);
+					}
+				}
+				return values.get("0");
+			}
 			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
 			tw.setCurrentNode(word);
 			Element e;
@@ -2550,6 +2908,18 @@ public class MaryGenericFeatureProcessors {
 			Element sentence = (Element) MaryDomUtils.getAncestor(word, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forToken(word);
+			if (index != null) {
+				for (int t = index.tokenIndex(word) - 1; t >= 0; t--) {
+					if (index.isWord(t))
+						continue;
+					String text = MaryDomUtils.tokenText(index.getToken(t));
+					if (values.contains(text)) {
+						return values.get(text);
+					}
+				}
+				return values.get("0");
+			}
 			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
 			tw.setCurrentNode(word);
 			Element e;
@@ -2586,6 +2956,16 @@ public class MaryGenericFeatureProcessors {
 			Element sentence = (Element) MaryDomUtils.getAncestor(word, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forToken(word);
+			if (index != null) {
+				int count = 0;
+				for (int t = index.tokenIndex(word) + 1, n = index.getNumTokens(); t < n && count < RAIL_LIMIT; t++) {
+					count++;
+					if (!index.isWord(t) && values.contains(MaryDomUtils.tokenText(index.getToken(t))))
+						break;
+				}
+				return (byte) count;
+			}
 			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
 			tw.setCurrentNode(word);
 			Element e;
@@ -2624,6 +3004,16 @@ public class MaryGenericFeatureProcessors {
 			Element sentence = (Element) MaryDomUtils.getAncestor(word, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
+			UtteranceIndex index = UtteranceIndex.forToken(word);
+			if (index != null) {
+				int count = 0;
+				for (int t = index.tokenIndex(word) - 1; t >= 0 && count < RAIL_LIMIT; t--) {
+					count++;
+					if (!index.isWord(t) && values.contains(MaryDomUtils.tokenText(index.getToken(t))))
+						break;
+				}
+				return (byte) count;
+			}
 			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
 			tw.setCurrentNode(word);
 			Element e;
@@ -2696,21 +3086,34 @@ public class MaryGenericFeatureProcessors {
 			Element sentence = (Element) MaryDomUtils.getAncestor(syllable, MaryXML.SENTENCE);
 			if (sentence == null)
 				return 0;
-			TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.SYLLABLE, MaryXML.BOUNDARY);
-			tw.setCurrentNode(syllable);
-			Element e = (Element) tw.nextNode();
-			if (e != null) {
-				if (e.getTagName().equals(MaryXML.BOUNDARY)) {
+			UtteranceIndex index = UtteranceIndex.forSyllable(syllable);
+			if (index != null) {
+				int s = index.syllableIndex(syllable);
+				Element e = index.nextSyllableOrBoundary(s);
+				if (e != null && e.getTagName().equals(MaryXML.BOUNDARY)) {
 					phraseFinal = true;
 					endtone = e.getAttribute("tone");
 				}
-				if (accented) { // look forward for any accent
-					while (e != null) {
-						if (e.getTagName().equals(MaryXML.SYLLABLE) && e.hasAttribute("accent")) {
-							nuclear = false;
-							break;
+				if (accented && index.nextWithAccentAttribute(s + 1) < index.getNumSyllables()) {
+					nuclear = false;
+				}
+			} else {
+				TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.SYLLABLE, MaryXML.BOUNDARY);
+				tw.setCurrentNode(syllable);
+				Element e = (Element) tw.nextNode();
+				if (e != null) {
+					if (e.getTagName().equals(MaryXML.BOUNDARY)) {
+						phraseFinal = true;
+						endtone = e.getAttribute("tone");
+					}
+					if (accented) { // look forward for any accent
+						while (e != null) {
+							if (e.getTagName().equals(MaryXML.SYLLABLE) && e.hasAttribute("accent")) {
+								nuclear = false;
+								break;
+							}
+							e = (Element) tw.nextNode();
 						}
-						e = (Element) tw.nextNode();
 					}
 				}
 			}
@@ -146,6 +146,67 @@ public class TargetFeatureComputer {
 		return new FeatureVector(byteFeatures, shortFeatures, floatFeatures, 0);
 	}
 
+	/**
+	 * Compute the feature vectors for a whole list of targets, e.g. an utterance. The result is the same as calling
+	 * {@link #computeFeatureVector(Target)} for each target, but the values are computed feature by feature rather than target by
+	 * target, so that each feature processor runs over all targets in one go while the structure it looks at (e.g., the
+	 * {@link UtteranceIndex} of the sentence) is still in the cache, and all feature arrays are allocated up front.
+	 * 
+	 * @param targets
+	 *            the targets for which to compute features
+	 * @return an array of feature vectors, in the same order as the targets.
+	 */
+	public FeatureVector[] computeFeatureVectors(List<? extends Target> targets) {
+		int n = targets.size();
+		Target[] t = targets.toArray(new Target[n]);
+		byte[][] byteFeatures = new byte[n][byteValuedDiscreteFeatureProcessors.length];
+		short[][] shortFeatures = new short[n][shortValuedDiscreteFeatureProcessors.length];
+		float[][] floatFeatures = new float[n][continuousFeatureProcessors.length];
+		for (int i = 0; i < byteValuedDiscreteFeatureProcessors.length; i++) {
+			ByteValuedFeatureProcessor fp = byteValuedDiscreteFeatureProcessors[i];
+			for (int j = 0; j < n; j++) {
+				byteFeatures[j][i] = fp.process(t[j]);
+			}
+		}
+		for (int i = 0; i < shortValuedDiscreteFeatureProcessors.length; i++) {
+			ShortValuedFeatureProcessor fp = shortValuedDiscreteFeatureProcessors[i];
+			for (int j = 0; j < n; j++) {
+				shortFeatures[j][i] = fp.process(t[j]);
+			}
+		}
+		for (int i = 0; i < continuousFeatureProcessors.length; i++) {
+			ContinuousFeatureProcessor fp = continuousFeatureProcessors[i];
+			for (int j = 0; j < n; j++) {
+				floatFeatures[j][i] = fp.process(t[j]);
+			}
+		}
+		FeatureVector[] vectors = new FeatureVector[n];
+		for (int j = 0; j < n; j++) {
+			vectors[j] = new FeatureVector(byteFeatures[j], shortFeatures[j], floatFeatures[j], 0);
+		}
+		return vectors;
+	}
+
+	/**
+	 * Compute the feature vectors for all targets in the list which do not have one yet, using
+	 * {@link #computeFeatureVectors(List)}, and store them in the targets.
+	 * 
+	 * @param targets
+	 *            the targets for which to compute features
+	 */
+	public void setMissingFeatureVectors(List<? extends Target> targets) {
+		List<Target> missing = new ArrayList<Target>(targets.size());
+		for (Target target : targets) {
+			if (!target.hasFeatureVector()) {
+				missing.add(target);
+			}
+		}
+		FeatureVector[] vectors = computeFeatureVectors(missing);
+		for (int j = 0; j < vectors.length; j++) {
+			missing.get(j).setFeatureVector(vectors[j]);
+		}
+	}
+
 	/**
 	 * For the given feature vector, convert each encoded value into its string representation.
 	 * 
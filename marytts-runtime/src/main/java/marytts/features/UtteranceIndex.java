@@ -0,0 +1,893 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.features;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import marytts.datatypes.MaryXML;
+import marytts.util.dom.MaryDomUtils;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+import org.w3c.dom.events.MutationEvent;
+
+/**
+ * A flat, precomputed view of the structure of one MaryXML sentence, used by the feature processors in
+ * {@link MaryGenericFeatureProcessors} instead of walking the DOM with a fresh TreeWalker for every target and feature.
+ * <p>
+ * The segments (phones and boundaries), syllables, tokens, phrases and boundaries of the sentence are stored in document order,
+ * together with the index of each segment's enclosing syllable, token and phrase, the ranges each container covers, and prefix
+ * counts over the attributes the counters look at ("ph" on tokens, "stress" and "accent" on syllables). Counting and navigation
+ * then become array lookups.
+ * <p>
+ * An index is built on first use for a sentence and cached as user data on the sentence element. It is dropped again as soon as
+ * a node is inserted into or removed from the sentence, or one of the cached attributes changes, so that callers never see a
+ * stale view. Documents which do not support DOM mutation events are not indexed; the feature processors then fall back to the
+ * DOM. When feature computation on a document is done, {@link #release(Document)} drops all of its indexes and removes the
+ * listeners again, so that later changes to the document no longer pay for them.
+ * <p>
+ * Sentences whose structure deviates from what the feature processors expect (phones outside of a syllable, boundaries inside of
+ * a syllable or token) are not indexed either, so that the indexed values are always identical to the DOM-based ones.
+ */
+public class UtteranceIndex {
+	private static final String USER_DATA_KEY = UtteranceIndex.class.getName();
+
+	/** Key of the set of sentences with listeners, kept as user data on the owner document. */
+	private static final String SENTENCES_KEY = USER_DATA_KEY + ".sentences";
+
+	private static final String[] MUTATION_EVENTS = new String[] { "DOMNodeInserted", "DOMNodeRemoved", "DOMAttrModified" };
+
+	private static final String[] CACHED_ATTRIBUTES = new String[] { "ph", "stress", "accent" };
+
+	private static volatile boolean enabled = true;
+
+	/**
+	 * Drops the cached index of a sentence whenever its structure or one of the cached attributes changes.
+	 */
+	private static final EventListener invalidator = new EventListener() {
+		public void handleEvent(Event evt) {
+			if (evt instanceof MutationEvent && "DOMAttrModified".equals(evt.getType())) {
+				String attrName = ((MutationEvent) evt).getAttrName();
+				boolean cached = false;
+				for (String a : CACHED_ATTRIBUTES) {
+					if (a.equals(attrName)) {
+						cached = true;
+						break;
+					}
+				}
+				if (!cached) {
+					return;
+				}
+			}
+			((Node) evt.getCurrentTarget()).setUserData(USER_DATA_KEY, null, null);
+		}
+	};
+
+	/**
+	 * Enable or disable the use of utterance indexes; when disabled, {@link #get(Element)} always returns null and the feature
+	 * processors walk the DOM. Intended for comparing both code paths.
+	 */
+	static void setEnabled(boolean value) {
+		enabled = value;
+	}
+
+	static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Get the index of the sentence containing the given element, building it if necessary.
+	 * 
+	 * @param element
+	 *            a phone, boundary, syllable or token element
+	 * @return the index of the enclosing sentence, or null if the element is not inside a sentence, is not one of the indexed
+	 *         elements, or the sentence cannot be indexed.
+	 */
+	public static UtteranceIndex get(Element element) {
+		if (!enabled || element == null) {
+			return null;
+		}
+		Element sentence = (Element) MaryDomUtils.getAncestor(element, MaryXML.SENTENCE);
+		if (sentence == null) {
+			return null;
+		}
+		Object cached = sentence.getUserData(USER_DATA_KEY);
+		UtteranceIndex index;
+		if (cached instanceof UtteranceIndex) {
+			index = (UtteranceIndex) cached;
+		} else if (cached != null) { // sentence known not to be indexable
+			return null;
+		} else {
+			if (!supportsMutationEvents(sentence)) {
+				return null;
+			}
+			index = build(sentence);
+			if (listenedSentences(sentence.getOwnerDocument(), true).add(sentence)) {
+				EventTarget target = (EventTarget) sentence;
+				for (String type : MUTATION_EVENTS) {
+					target.addEventListener(type, invalidator, false);
+				}
+			}
+			sentence.setUserData(USER_DATA_KEY, index != null ? index : Boolean.FALSE, null);
+			if (index == null) {
+				return null;
+			}
+		}
+		if (!index.positions.containsKey(element)) {
+			return null;
+		}
+		return index;
+	}
+
+	/**
+	 * Drop the indexes of all sentences in the given document and remove the listeners that keep them up to date. Call this when
+	 * feature computation on the document is finished; indexes are built anew if features are requested again later.
+	 * 
+	 * @param doc
+	 *            a document, or null
+	 */
+	public static void release(Document doc) {
+		Set<Element> sentences = listenedSentences(doc, false);
+		if (sentences == null) {
+			return;
+		}
+		for (Element sentence : sentences) {
+			EventTarget target = (EventTarget) sentence;
+			for (String type : MUTATION_EVENTS) {
+				target.removeEventListener(type, invalidator, false);
+			}
+			sentence.setUserData(USER_DATA_KEY, null, null);
+		}
+		doc.setUserData(SENTENCES_KEY, null, null);
+	}
+
+	/**
+	 * Whether the given sentence currently has the listeners that keep its index up to date. Intended for testing.
+	 */
+	static boolean isListening(Element sentence) {
+		Set<Element> sentences = listenedSentences(sentence.getOwnerDocument(), false);
+		return sentences != null && sentences.contains(sentence);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Set<Element> listenedSentences(Document doc, boolean create) {
+		if (doc == null) {
+			return null;
+		}
+		Set<Element> sentences = (Set<Element>) doc.getUserData(SENTENCES_KEY);
+		if (sentences == null && create) {
+			sentences = Collections.newSetFromMap(new IdentityHashMap<Element, Boolean>());
+			doc.setUserData(SENTENCES_KEY, sentences, null);
+		}
+		return sentences;
+	}
+
+	/**
+	 * Get the index of the sentence containing the given segment.
+	 * 
+	 * @param segment
+	 *            a phone or boundary element
+	 * @return the index, or null if the element is not an indexed phone or boundary.
+	 */
+	public static UtteranceIndex forSegment(Element segment) {
+		UtteranceIndex index = get(segment);
+		return index != null && index.segmentIndex(segment) >= 0 ? index : null;
+	}
+
+	/**
+	 * Get the index of the sentence containing the given syllable.
+	 * 
+	 * @return the index, or null if the element is not an indexed syllable.
+	 */
+	public static UtteranceIndex forSyllable(Element syllable) {
+		UtteranceIndex index = get(syllable);
+		return index != null && index.syllableIndex(syllable) >= 0 ? index : null;
+	}
+
+	/**
+	 * Get the index of the sentence containing the given token.
+	 * 
+	 * @return the index, or null if the element is not an indexed token.
+	 */
+	public static UtteranceIndex forToken(Element token) {
+		UtteranceIndex index = get(token);
+		return index != null && index.tokenIndex(token) >= 0 ? index : null;
+	}
+
+	private static boolean supportsMutationEvents(Element sentence) {
+		Document doc = sentence.getOwnerDocument();
+		return sentence instanceof EventTarget && doc != null
+				&& doc.getImplementation().hasFeature("MutationEvents", "2.0");
+	}
+
+	/**
+	 * Build the index of the given sentence, without caching it.
+	 * 
+	 * @param sentence
+	 *            a sentence element
+	 * @return the index, or null if the sentence structure is not supported.
+	 */
+	public static UtteranceIndex build(Element sentence) {
+		Builder builder = new Builder();
+		if (!builder.visit(sentence, -1, -1, -1)) {
+			return null;
+		}
+		return new UtteranceIndex(sentence, builder);
+	}
+
+	private final Element sentence;
+	private final Map<Element, Integer> positions;
+
+	// segments (phones and boundaries)
+	private final Element[] segments;
+	private final boolean[] segmentIsPhone;
+	private final int[] segmentSyllable;
+	private final int[] segmentToken;
+	private final int[] segmentPhrase;
+	private final int[] segmentSyllablesBefore;
+	private final int[] segmentTokensBefore;
+	private final int[] segmentPhrasesBefore;
+	private final int[] phonesBefore; // prefix count over segments, length numSegments + 1
+
+	// syllables
+	private final Element[] syllables;
+	private final int[] syllableFirstSegment;
+	private final int[] syllableEndSegment;
+	private final int[] syllableBoundariesBefore;
+	private final int[] stressedBefore; // prefix count, length numSyllables + 1
+	private final int[] accentedBefore; // prefix count of non-empty "accent", length numSyllables + 1
+	private final int[] prevStressed;
+	private final int[] nextStressed;
+	private final int[] prevAccented;
+	private final int[] nextAccented;
+	private final int[] prevWithAccentAttribute;
+	private final int[] nextWithAccentAttribute;
+
+	// tokens
+	private final Element[] tokens;
+	private final boolean[] tokenIsWord;
+	private final int[] tokenFirstSegment;
+	private final int[] tokenEndSegment;
+	private final int[] tokenFirstSyllable;
+	private final int[] tokenEndSyllable;
+	private final int[] tokenBoundariesBefore;
+	private final int[] wordsBefore; // prefix count, length numTokens + 1
+	private final int[] prevWord;
+	private final int[] nextWord;
+
+	// phrases
+	private final Element[] phrases;
+	private final int[] phraseFirstSyllable;
+	private final int[] phraseEndSyllable;
+	private final int[] phraseFirstToken;
+	private final int[] phraseEndToken;
+
+	// pre-order positions, used to compare the document order of different kinds of elements
+	private final int[] syllablePosition;
+	private final int[] tokenPosition;
+
+	// boundaries
+	private final Element[] boundaries;
+	private final int[] boundaryPosition;
+
+	private UtteranceIndex(Element sentence, Builder b) {
+		this.sentence = sentence;
+		this.positions = b.positions;
+
+		int nSeg = b.segments.size();
+		segments = b.segments.toArray(new Element[nSeg]);
+		segmentIsPhone = new boolean[nSeg];
+		phonesBefore = new int[nSeg + 1];
+		for (int i = 0; i < nSeg; i++) {
+			segmentIsPhone[i] = segments[i].getTagName().equals(MaryXML.PHONE);
+			phonesBefore[i + 1] = phonesBefore[i] + (segmentIsPhone[i] ? 1 : 0);
+		}
+		segmentSyllable = b.segmentSyllable.toArray();
+		segmentToken = b.segmentToken.toArray();
+		segmentPhrase = b.segmentPhrase.toArray();
+		segmentSyllablesBefore = b.segmentSyllablesBefore.toArray();
+		segmentTokensBefore = b.segmentTokensBefore.toArray();
+		segmentPhrasesBefore = b.segmentPhrasesBefore.toArray();
+
+		int nSyl = b.syllables.size();
+		syllables = b.syllables.toArray(new Element[nSyl]);
+		syllableFirstSegment = b.syllableFirstSegment.toArray();
+		syllableEndSegment = b.syllableEndSegment.toArray();
+		syllableBoundariesBefore = b.syllableBoundariesBefore.toArray();
+		stressedBefore = new int[nSyl + 1];
+		accentedBefore = new int[nSyl + 1];
+		prevStressed = new int[nSyl];
+		prevAccented = new int[nSyl];
+		nextStressed = new int[nSyl];
+		nextAccented = new int[nSyl];
+		prevWithAccentAttribute = new int[nSyl];
+		nextWithAccentAttribute = new int[nSyl];
+		int lastStressed = -1;
+		int lastAccented = -1;
+		int lastAccentAttribute = -1;
+		for (int i = 0; i < nSyl; i++) {
+			boolean stressed = syllables[i].getAttribute("stress").equals("1");
+			boolean accented = !syllables[i].getAttribute("accent").equals("");
+			stressedBefore[i + 1] = stressedBefore[i] + (stressed ? 1 : 0);
+			accentedBefore[i + 1] = accentedBefore[i] + (accented ? 1 : 0);
+			if (stressed) {
+				lastStressed = i;
+			}
+			if (accented) {
+				lastAccented = i;
+			}
+			if (syllables[i].hasAttribute("accent")) {
+				lastAccentAttribute = i;
+			}
+			prevStressed[i] = lastStressed;
+			prevAccented[i] = lastAccented;
+			prevWithAccentAttribute[i] = lastAccentAttribute;
+		}
+		int followingStressed = nSyl;
+		int followingAccented = nSyl;
+		int followingAccentAttribute = nSyl;
+		for (int i = nSyl - 1; i >= 0; i--) {
+			if (syllables[i].getAttribute("stress").equals("1")) {
+				followingStressed = i;
+			}
+			if (!syllables[i].getAttribute("accent").equals("")) {
+				followingAccented = i;
+			}
+			if (syllables[i].hasAttribute("accent")) {
+				followingAccentAttribute = i;
+			}
+			nextStressed[i] = followingStressed;
+			nextAccented[i] = followingAccented;
+			nextWithAccentAttribute[i] = followingAccentAttribute;
+		}
+
+		int nTok = b.tokens.size();
+		tokens = b.tokens.toArray(new Element[nTok]);
+		tokenFirstSegment = b.tokenFirstSegment.toArray();
+		tokenEndSegment = b.tokenEndSegment.toArray();
+		tokenFirstSyllable = b.tokenFirstSyllable.toArray();
+		tokenEndSyllable = b.tokenEndSyllable.toArray();
+		tokenBoundariesBefore = b.tokenBoundariesBefore.toArray();
+		tokenIsWord = new boolean[nTok];
+		wordsBefore = new int[nTok + 1];
+		prevWord = new int[nTok];
+		nextWord = new int[nTok];
+		int lastWord = -1;
+		for (int i = 0; i < nTok; i++) {
+			tokenIsWord[i] = tokens[i].hasAttribute("ph");
+			wordsBefore[i + 1] = wordsBefore[i] + (tokenIsWord[i] ? 1 : 0);
+			if (tokenIsWord[i]) {
+				lastWord = i;
+			}
+			prevWord[i] = lastWord;
+		}
+		int followingWord = -1;
+		for (int i = nTok - 1; i >= 0; i--) {
+			if (tokenIsWord[i]) {
+				followingWord = i;
+			}
+			nextWord[i] = followingWord;
+		}
+
+		phrases = b.phrases.toArray(new Element[b.phrases.size()]);
+		phraseFirstSyllable = b.phraseFirstSyllable.toArray();
+		phraseEndSyllable = b.phraseEndSyllable.toArray();
+		phraseFirstToken = b.phraseFirstToken.toArray();
+		phraseEndToken = b.phraseEndToken.toArray();
+
+		syllablePosition = b.syllablePosition.toArray();
+		tokenPosition = b.tokenPosition.toArray();
+		boundaries = b.boundaries.toArray(new Element[b.boundaries.size()]);
+		boundaryPosition = b.boundaryPosition.toArray();
+	}
+
+	/**
+	 * The sentence element this index describes.
+	 */
+	public Element getSentence() {
+		return sentence;
+	}
+
+	private int indexOf(Element e, String tagName) {
+		if (e == null || !e.getTagName().equals(tagName)) {
+			return -1;
+		}
+		Integer i = positions.get(e);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * @return the position of the phone or boundary in document order, or -1 if it is not part of this index.
+	 */
+	public int segmentIndex(Element segment) {
+		int i = indexOf(segment, MaryXML.PHONE);
+		return i >= 0 ? i : indexOf(segment, MaryXML.BOUNDARY);
+	}
+
+	public int syllableIndex(Element syllable) {
+		return indexOf(syllable, MaryXML.SYLLABLE);
+	}
+
+	public int tokenIndex(Element token) {
+		return indexOf(token, MaryXML.TOKEN);
+	}
+
+	public int getNumSegments() {
+		return segments.length;
+	}
+
+	public int getNumSyllables() {
+		return syllables.length;
+	}
+
+	public int getNumTokens() {
+		return tokens.length;
+	}
+
+	public int getNumWords() {
+		return wordsBefore[tokens.length];
+	}
+
+	public int getNumPhrases() {
+		return phrases.length;
+	}
+
+	/**
+	 * @return the segment at position i, or null if i is out of range.
+	 */
+	public Element getSegment(int i) {
+		return i >= 0 && i < segments.length ? segments[i] : null;
+	}
+
+	public Element getSyllable(int i) {
+		return i >= 0 && i < syllables.length ? syllables[i] : null;
+	}
+
+	public Element getToken(int i) {
+		return i >= 0 && i < tokens.length ? tokens[i] : null;
+	}
+
+	public Element getPhrase(int i) {
+		return i >= 0 && i < phrases.length ? phrases[i] : null;
+	}
+
+	public boolean isPhone(int segment) {
+		return segmentIsPhone[segment];
+	}
+
+	/**
+	 * @return the index of the syllable containing the segment, or -1 if there is none.
+	 */
+	public int syllableOf(int segment) {
+		return segmentSyllable[segment];
+	}
+
+	/**
+	 * @return the index of the token containing the segment, or -1 if there is none.
+	 */
+	public int tokenOf(int segment) {
+		return segmentToken[segment];
+	}
+
+	/**
+	 * @return the index of the phrase containing the segment, or -1 if there is none.
+	 */
+	public int phraseOf(int segment) {
+		return segmentPhrase[segment];
+	}
+
+	/**
+	 * @return the number of syllables which precede the segment's syllable, or the segment itself if it is not in a syllable.
+	 */
+	public int syllablesBefore(int segment) {
+		int s = segmentSyllable[segment];
+		return s >= 0 ? s : segmentSyllablesBefore[segment];
+	}
+
+	/**
+	 * @return the index of the first syllable starting after the segment in document order (numSyllables if there is none).
+	 */
+	public int firstSyllableAfter(int segment) {
+		return segmentSyllablesBefore[segment];
+	}
+
+	/**
+	 * @return the number of tokens which precede the segment's token, or the segment itself if it is not in a token.
+	 */
+	public int tokensBefore(int segment) {
+		int t = segmentToken[segment];
+		return t >= 0 ? t : segmentTokensBefore[segment];
+	}
+
+	/**
+	 * @return the index of the first token starting after the segment in document order (numTokens if there is none).
+	 */
+	public int firstTokenAfter(int segment) {
+		return segmentTokensBefore[segment];
+	}
+
+	/**
+	 * @return the number of phrases which precede the segment's phrase, or the segment itself if it is not in a phrase.
+	 */
+	public int phrasesBefore(int segment) {
+		int p = segmentPhrase[segment];
+		return p >= 0 ? p : segmentPhrasesBefore[segment];
+	}
+
+	/**
+	 * @return the index of the first phrase starting after the segment in document order (numPhrases if there is none).
+	 */
+	public int firstPhraseAfter(int segment) {
+		return segmentPhrasesBefore[segment];
+	}
+
+	/**
+	 * @return the number of phones among the segments with index from (inclusive) to end (exclusive).
+	 */
+	public int countPhones(int from, int end) {
+		return end > from ? phonesBefore[end] - phonesBefore[from] : 0;
+	}
+
+	/**
+	 * @return the number of syllables with stress="1" among the syllables with index from (inclusive) to end (exclusive).
+	 */
+	public int countStressed(int from, int end) {
+		return end > from ? stressedBefore[end] - stressedBefore[from] : 0;
+	}
+
+	/**
+	 * @return the number of syllables with a non-empty accent among the syllables with index from (inclusive) to end (exclusive).
+	 */
+	public int countAccented(int from, int end) {
+		return end > from ? accentedBefore[end] - accentedBefore[from] : 0;
+	}
+
+	/**
+	 * @return the number of tokens with a "ph" attribute among the tokens with index from (inclusive) to end (exclusive).
+	 */
+	public int countWords(int from, int end) {
+		return end > from ? wordsBefore[end] - wordsBefore[from] : 0;
+	}
+
+	/**
+	 * @return the largest index &le; i of a syllable with stress="1", or -1.
+	 */
+	public int prevStressed(int i) {
+		return i >= 0 && i < syllables.length ? prevStressed[i] : -1;
+	}
+
+	/**
+	 * @return the smallest index &ge; i of a syllable with stress="1", or numSyllables.
+	 */
+	public int nextStressed(int i) {
+		return i >= 0 && i < syllables.length ? nextStressed[i] : syllables.length;
+	}
+
+	/**
+	 * @return the largest index &le; i of a syllable with a non-empty accent, or -1.
+	 */
+	public int prevAccented(int i) {
+		return i >= 0 && i < syllables.length ? prevAccented[i] : -1;
+	}
+
+	/**
+	 * @return the smallest index &ge; i of a syllable with a non-empty accent, or numSyllables.
+	 */
+	public int nextAccented(int i) {
+		return i >= 0 && i < syllables.length ? nextAccented[i] : syllables.length;
+	}
+
+	/**
+	 * @return the largest index &le; i of a syllable carrying an "accent" attribute (possibly empty), or -1.
+	 */
+	public int prevWithAccentAttribute(int i) {
+		return i >= 0 && i < syllables.length ? prevWithAccentAttribute[i] : -1;
+	}
+
+	/**
+	 * @return the smallest index &ge; i of a syllable carrying an "accent" attribute (possibly empty), or numSyllables.
+	 */
+	public int nextWithAccentAttribute(int i) {
+		return i >= 0 && i < syllables.length ? nextWithAccentAttribute[i] : syllables.length;
+	}
+
+	/**
+	 * @return the largest index &le; i of a token with a "ph" attribute, or -1.
+	 */
+	public int prevWord(int i) {
+		return i >= 0 && i < tokens.length ? prevWord[i] : -1;
+	}
+
+	/**
+	 * @return the smallest index &ge; i of a token with a "ph" attribute, or -1.
+	 */
+	public int nextWord(int i) {
+		return i >= 0 && i < tokens.length ? nextWord[i] : -1;
+	}
+
+	public boolean isWord(int token) {
+		return tokenIsWord[token];
+	}
+
+	/** First segment inside the syllable; the syllable's segments are [first, end). */
+	public int syllableFirstSegment(int syllable) {
+		return syllableFirstSegment[syllable];
+	}
+
+	public int syllableEndSegment(int syllable) {
+		return syllableEndSegment[syllable];
+	}
+
+	/** First segment inside the token; the token's segments are [first, end). */
+	public int tokenFirstSegment(int token) {
+		return tokenFirstSegment[token];
+	}
+
+	public int tokenEndSegment(int token) {
+		return tokenEndSegment[token];
+	}
+
+	/** First syllable inside the token; the token's syllables are [first, end). */
+	public int tokenFirstSyllable(int token) {
+		return tokenFirstSyllable[token];
+	}
+
+	public int tokenEndSyllable(int token) {
+		return tokenEndSyllable[token];
+	}
+
+	/** First syllable inside the phrase; the phrase's syllables are [first, end). */
+	public int phraseFirstSyllable(int phrase) {
+		return phraseFirstSyllable[phrase];
+	}
+
+	public int phraseEndSyllable(int phrase) {
+		return phraseEndSyllable[phrase];
+	}
+
+	/** First token inside the phrase; the phrase's tokens are [first, end). */
+	public int phraseFirstToken(int phrase) {
+		return phraseFirstToken[phrase];
+	}
+
+	public int phraseEndToken(int phrase) {
+		return phraseEndToken[phrase];
+	}
+
+	/**
+	 * The first phone in document order among the segments with index from (inclusive) to end (exclusive).
+	 */
+	public Element firstPhone(int from, int end) {
+		for (int i = from; i < end; i++) {
+			if (segmentIsPhone[i]) {
+				return segments[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The last phone in document order among the segments with index from (inclusive) to end (exclusive).
+	 */
+	public Element lastPhone(int from, int end) {
+		for (int i = end - 1; i >= from; i--) {
+			if (segmentIsPhone[i]) {
+				return segments[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The element following the given syllable in a walk over syllables and boundaries, i.e. either the next syllable or the next
+	 * boundary, whichever comes first.
+	 * 
+	 * @return the next syllable or boundary in the sentence, or null if there is none.
+	 */
+	public Element nextSyllableOrBoundary(int syllable) {
+		int b = syllableBoundariesBefore[syllable];
+		Element nextBoundary = b < boundaries.length ? boundaries[b] : null;
+		Element nextSyllable = getSyllable(syllable + 1);
+		return earlier(nextSyllable, nextBoundary, b);
+	}
+
+	/**
+	 * The element following the given token in a walk over tokens and boundaries, i.e. either the next token or the next boundary,
+	 * whichever comes first.
+	 * 
+	 * @return the next token or boundary in the sentence, or null if there is none.
+	 */
+	public Element nextTokenOrBoundary(int token) {
+		int b = tokenBoundariesBefore[token];
+		Element nextBoundary = b < boundaries.length ? boundaries[b] : null;
+		return earlier(getToken(token + 1), nextBoundary, b);
+	}
+
+	/**
+	 * The element following the given token in a walk over tokens and boundaries which skips tokens without a "ph" attribute, i.e.
+	 * either the next word or the next boundary, whichever comes first.
+	 * 
+	 * @return the next word or boundary in the sentence, or null if there is none.
+	 */
+	public Element nextWordOrBoundary(int token) {
+		int b = tokenBoundariesBefore[token];
+		Element nextBoundary = b < boundaries.length ? boundaries[b] : null;
+		return earlier(getToken(nextWord(token + 1)), nextBoundary, b);
+	}
+
+	private Element earlier(Element e, Element boundary, int boundaryIndex) {
+		if (e == null || boundary == null) {
+			return e != null ? e : boundary;
+		}
+		int position = e.getTagName().equals(MaryXML.SYLLABLE) ? syllablePosition[positions.get(e)]
+				: tokenPosition[positions.get(e)];
+		return position < boundaryPosition[boundaryIndex] ? e : boundary;
+	}
+
+	/**
+	 * Collects the sentence structure in a single pre-order walk. Positions count only the indexed elements, which is sufficient
+	 * to compare their document order.
+	 */
+	private static class Builder {
+		final Map<Element, Integer> positions = new IdentityHashMap<Element, Integer>();
+		int position = 0;
+
+		final List<Element> segments = new ArrayList<Element>();
+		final IntList segmentSyllable = new IntList();
+		final IntList segmentToken = new IntList();
+		final IntList segmentPhrase = new IntList();
+		final IntList segmentSyllablesBefore = new IntList();
+		final IntList segmentTokensBefore = new IntList();
+		final IntList segmentPhrasesBefore = new IntList();
+
+		final List<Element> syllables = new ArrayList<Element>();
+		final IntList syllablePosition = new IntList();
+		final IntList syllableFirstSegment = new IntList();
+		final IntList syllableEndSegment = new IntList();
+		final IntList syllableBoundariesBefore = new IntList();
+
+		final List<Element> tokens = new ArrayList<Element>();
+		final IntList tokenPosition = new IntList();
+		final IntList tokenFirstSegment = new IntList();
+		final IntList tokenEndSegment = new IntList();
+		final IntList tokenFirstSyllable = new IntList();
+		final IntList tokenEndSyllable = new IntList();
+		final IntList tokenBoundariesBefore = new IntList();
+
+		final List<Element> phrases = new ArrayList<Element>();
+		final IntList phraseFirstSyllable = new IntList();
+		final IntList phraseEndSyllable = new IntList();
+		final IntList phraseFirstToken = new IntList();
+		final IntList phraseEndToken = new IntList();
+
+		final List<Element> boundaries = new ArrayList<Element>();
+		final IntList boundaryPosition = new IntList();
+
+		/**
+		 * Visit the children of the given element.
+		 * 
+		 * @return false if the structure cannot be indexed.
+		 */
+		boolean visit(Element parent, int syllable, int token, int phrase) {
+			for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+				if (n.getNodeType() != Node.ELEMENT_NODE) {
+					continue;
+				}
+				Element e = (Element) n;
+				String tag = e.getTagName();
+				if (tag.equals(MaryXML.PHONE) || tag.equals(MaryXML.BOUNDARY)) {
+					if (tag.equals(MaryXML.PHONE) ? syllable < 0 || parent != syllables.get(syllable) : syllable >= 0
+							|| token >= 0) {
+						return false;
+					}
+					positions.put(e, segments.size());
+					segments.add(e);
+					if (tag.equals(MaryXML.BOUNDARY)) {
+						boundaries.add(e);
+						boundaryPosition.add(position);
+					}
+					position++;
+					segmentSyllable.add(syllable);
+					segmentToken.add(token);
+					segmentPhrase.add(phrase);
+					segmentSyllablesBefore.add(syllables.size());
+					segmentTokensBefore.add(tokens.size());
+					segmentPhrasesBefore.add(phrases.size());
+				} else if (tag.equals(MaryXML.SYLLABLE)) {
+					int s = syllables.size();
+					positions.put(e, s);
+					syllables.add(e);
+					syllablePosition.add(position++);
+					syllableFirstSegment.add(segments.size());
+					syllableBoundariesBefore.add(boundaries.size());
+					syllableEndSegment.add(-1);
+					if (!visit(e, s, token, phrase)) {
+						return false;
+					}
+					syllableEndSegment.set(s, segments.size());
+				} else if (tag.equals(MaryXML.TOKEN)) {
+					int t = tokens.size();
+					positions.put(e, t);
+					tokens.add(e);
+					tokenPosition.add(position++);
+					tokenFirstSegment.add(segments.size());
+					tokenFirstSyllable.add(syllables.size());
+					tokenBoundariesBefore.add(boundaries.size());
+					tokenEndSegment.add(-1);
+					tokenEndSyllable.add(-1);
+					if (!visit(e, syllable, t, phrase)) {
+						return false;
+					}
+					tokenEndSegment.set(t, segments.size());
+					tokenEndSyllable.set(t, syllables.size());
+				} else if (tag.equals(MaryXML.PHRASE)) {
+					int p = phrases.size();
+					phrases.add(e);
+					position++;
+					phraseFirstSyllable.add(syllables.size());
+					phraseFirstToken.add(tokens.size());
+					phraseEndSyllable.add(-1);
+					phraseEndToken.add(-1);
+					if (!visit(e, syllable, token, p)) {
+						return false;
+					}
+					phraseEndSyllable.set(p, syllables.size());
+					phraseEndToken.set(p, tokens.size());
+				} else if (!visit(e, syllable, token, phrase)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A minimal growable int array.
+	 */
+	private static class IntList {
+		private int[] data = new int[16];
+		private int size = 0;
+
+		void add(int value) {
+			if (size == data.length) {
+				data = Arrays.copyOf(data, 2 * size);
+			}
+			data[size++] = value;
+		}
+
+		void set(int i, int value) {
+			data[i] = value;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(data, size);
+		}
+	}
+}
@@ -159,6 +159,10 @@ public class HMMData {
 
 	private boolean useAcousticModels = false; /* true is using AcousticModeller, is true for MARY 4.1 voices */
 
+	/** Windowed parameter generation settings */
+	private int mlpgWindowSize = 0; /* number of frames generated at a time, 0 for the whole utterance at once */
+	private int mlpgLookAhead = 50; /* number of context frames used on either side of a window */
+
 	/**
 	 * variables for controlling generation of speech in the vocoder these variables have default values but can be fixed and read
 	 * from the audio effects component. [Default][min--max]
@@ -348,6 +352,14 @@ public class HMMData {
 		return maxMgcGvIter;
 	}
 
+	public int getMlpgWindowSize() {
+		return mlpgWindowSize;
+	}
+
+	public int getMlpgLookAhead() {
+		return mlpgLookAhead;
+	}
+
 	public int getMaxLf0GvIter() {
 		return maxLf0GvIter;
 	}
@@ -507,6 +519,14 @@ public class HMMData {
 		maxMgcGvIter = val;
 	}
 
+	public void setMlpgWindowSize(int val) {
+		mlpgWindowSize = val;
+	}
+
+	public void setMlpgLookAhead(int val) {
+		mlpgLookAhead = val;
+	}
+
 	public void setMaxLf0GvIter(int val) {
 		maxLf0GvIter = val;
 	}
@@ -572,6 +592,9 @@ public class HMMData {
 		useMixExc = p.getBoolean(prefix + ".useMixExc"); /* Use Mixed excitation */
 		useFourierMag = p.getBoolean(prefix + ".useFourierMag"); /* Use Fourier magnitudes for pulse generation */
 
+		mlpgWindowSize = p.getInteger(prefix + ".mlpgWindowSize", mlpgWindowSize); /* Frames per window, 0 for whole utterance */
+		mlpgLookAhead = p.getInteger(prefix + ".mlpgLookAhead", mlpgLookAhead); /* Context frames on either side of a window */
+
 		useGV = p.getBoolean(prefix + ".useGV"); /* Use Global Variance in parameter generation */
 		if (useGV) {
 			useContextDependentGV = p.getBoolean(prefix + ".useContextDependentGV"); /* Use context-dependent GV, (gv without sil) */
@@ -64,10 +64,12 @@
 package marytts.htsengine;
 
 import java.util.Locale;
+import java.util.concurrent.Callable;
 
 import javax.sound.sampled.AudioFormat;
 
 import marytts.config.MaryConfig;
+import marytts.modules.synthesis.LazyVoiceData;
 import marytts.modules.synthesis.Voice;
 import marytts.modules.synthesis.WaveformSynthesizer;
 import marytts.server.MaryProperties;
@@ -77,39 +79,64 @@ import org.apache.log4j.Logger;
 
 public class HMMVoice extends Voice {
 
-	private HMMData htsData = new HMMData();
+	private final LazyVoiceData<HMMData> htsData;
 	private Logger logger = MaryUtils.getLogger("HMMVoice");
 
 	/**
 	 * constructor
 	 */
-	public HMMVoice(String voiceName, WaveformSynthesizer synthesizer) throws Exception {
+	public HMMVoice(final String voiceName, WaveformSynthesizer synthesizer) throws Exception {
 		super(voiceName, synthesizer);
 
-		htsData.initHMMData(voiceName);
-
+		htsData = new LazyVoiceData<HMMData>(voiceName, new Callable<HMMData>() {
+			public HMMData call() throws Exception {
+				HMMData data = new HMMData();
+				data.initHMMData(voiceName);
+				return data;
+			}
+		});
+		htsData.init();
 	}
 
+	/**
+	 * Get the models of this voice, loading them if necessary. Do not keep the returned object beyond the current request, as
+	 * the models of a lazy voice may be released when the voice is idle.
+	 */
 	public HMMData getHMMData() {
-		return this.htsData;
+		return htsData.get();
+	}
+
+	/**
+	 * Get the models of this voice like {@link #getHMMData()}, and keep them from being released until {@link #releaseHMMData()}
+	 * is called.
+	 */
+	public HMMData acquireHMMData() {
+		return htsData.acquire();
+	}
+
+	/**
+	 * Allow the models returned by {@link #acquireHMMData()} to be released again.
+	 */
+	public void releaseHMMData() {
+		htsData.releaseUse();
 	}
 
 	/* set parameters for generation: f0Std, f0Mean and length, default values 1.0, 0.0 and 0.0 */
 	/* take the values from audio effects component through a MaryData object */
 	public void setF0Std(double dval) {
-		htsData.setF0Std(dval);
+		getHMMData().setF0Std(dval);
 	}
 
 	public void setF0Mean(double dval) {
-		htsData.setF0Mean(dval);
+		getHMMData().setF0Mean(dval);
 	}
 
 	public void setLength(double dval) {
-		htsData.setLength(dval);
+		getHMMData().setLength(dval);
 	}
 
 	public void setDurationScale(double dval) {
-		htsData.setDurationScale(dval);
+		getHMMData().setDurationScale(dval);
 	}
 
 } /* class HMMVoice */
@@ -159,6 +159,13 @@ public class HTSPStream {
 
 	private Logger logger = MaryUtils.getLogger("PStream");
 
+	/* ____________________ Deferred windowed generation ____________________ */
+	/** number of frames generated so far, if generation is deferred */
+	private int generatedFrames;
+	private boolean generationDeferred = false;
+	private HMMData deferredHtsData;
+	private boolean deferredUseGV;
+
 	/* Constructor */
 	public HTSPStream(int vector_size, int utt_length, HMMData.FeatureType fea_type, int maxIterationsGV) throws Exception {
 		/* In the c code for each PStream there is an InitDwin() and an InitPStream() */
@@ -188,6 +195,32 @@ public class HTSPStream {
 
 	}
 
+	/**
+	 * Create a stream for the frames from (inclusive) to to (exclusive) of the given stream, for windowed parameter generation.
+	 * The means, inverse variances and GV settings are shared with the whole stream, not copied.
+	 */
+	private HTSPStream(HTSPStream whole, int from, int to) {
+		feaType = whole.feaType;
+		vSize = whole.vSize;
+		order = whole.order;
+		nT = to - from;
+		maxGVIter = whole.maxGVIter;
+		par = new double[nT][order];
+		mseq = Arrays.copyOfRange(whole.mseq, from, to);
+		ivseq = Arrays.copyOfRange(whole.ivseq, from, to);
+		g = new double[nT];
+		wuw = new double[nT][WIDTH];
+		wum = new double[nT];
+		gvSwitch = Arrays.copyOfRange(whole.gvSwitch, from, to);
+		gvLength = 0;
+		for (int i = 0; i < nT; i++) {
+			if (gvSwitch[i])
+				gvLength++;
+		}
+		gvmean = whole.gvmean;
+		gvcovInv = whole.gvcovInv;
+	}
+
 	public int getVsize() {
 		return vSize;
 	}
@@ -272,6 +305,91 @@ public class HTSPStream {
 		else
 			logger.info("Global variance optimization");
 
+		int windowSize = htsData.getMlpgWindowSize();
+		if (windowSize > 0 && windowSize < nT) {
+			for (int start = 0; start < nT; start += windowSize) {
+				mlpgWindow(htsData, useGV, start, Math.min(nT, start + windowSize), htsData.getMlpgLookAhead());
+			}
+		} else {
+			solve(htsData, useGV);
+		}
+	} /* method mlpg */
+
+	/**
+	 * Generate the parameters of the frames from start (inclusive) to end (exclusive) only. The band system is solved over
+	 * lookAhead additional frames on either side of the window, which are then discarded. Since the influence of distant frames
+	 * on the solution decays quickly, a look-ahead of a few dozen frames gives nearly the same parameters as generating the whole
+	 * utterance at once; GV optimisation, however, then uses the variance of the extended window rather than that of the
+	 * utterance.
+	 * 
+	 * @param htsData
+	 *            the voice's HMM data
+	 * @param useGV
+	 *            whether to apply global variance optimisation
+	 * @param start
+	 *            the first frame to generate
+	 * @param end
+	 *            the frame after the last frame to generate
+	 * @param lookAhead
+	 *            the number of context frames to take into account on either side of the window
+	 */
+	public void mlpgWindow(HMMData htsData, boolean useGV, int start, int end, int lookAhead) {
+		int from = Math.max(0, start - lookAhead);
+		int to = Math.min(nT, end + lookAhead);
+		HTSPStream window = new HTSPStream(this, from, to);
+		window.solve(htsData, useGV);
+		for (int t = start; t < end; t++) {
+			System.arraycopy(window.par[t - from], 0, par[t], 0, order);
+		}
+	}
+
+	/**
+	 * Do not generate the parameters now, but window by window as they are requested through {@link #generateUpTo(int)}. This
+	 * allows the vocoder to start on the first frames before the parameters of the last frames have been generated. Uses the
+	 * window size and look-ahead of the given HMM data; if the window size is 0, all parameters are generated on the first
+	 * request.
+	 * 
+	 * @param htsData
+	 *            the voice's HMM data
+	 * @param useGV
+	 *            whether to apply global variance optimisation
+	 */
+	public void deferMlpg(HMMData htsData, boolean useGV) {
+		generationDeferred = true;
+		generatedFrames = 0;
+		deferredHtsData = htsData;
+		deferredUseGV = useGV;
+	}
+
+	/**
+	 * Make sure that the parameters up to and including the given frame have been generated, if generation was deferred with
+	 * {@link #deferMlpg(HMMData, boolean)}. Does nothing otherwise.
+	 * 
+	 * @param frame
+	 *            the last frame whose parameters are needed
+	 */
+	public void generateUpTo(int frame) {
+		if (!generationDeferred || frame < generatedFrames) {
+			return;
+		}
+		int windowSize = deferredHtsData.getMlpgWindowSize();
+		if (windowSize <= 0 || (generatedFrames == 0 && windowSize >= nT)) {
+			solve(deferredHtsData, deferredUseGV);
+			generatedFrames = nT;
+		}
+		while (generatedFrames <= frame && generatedFrames < nT) {
+			int end = Math.min(nT, generatedFrames + windowSize);
+			mlpgWindow(deferredHtsData, deferredUseGV, generatedFrames, end, deferredHtsData.getMlpgLookAhead());
+			generatedFrames = end;
+		}
+		if (generatedFrames >= nT) {
+			generationDeferred = false;
+			deferredHtsData = null;
+		}
+	}
+
+	/** Solve the parameter generation problem for all frames of this stream. */
+	private void solve(HMMData htsData, boolean useGV) {
 		for (int m = 0; m < order; m++) {
 			calcWUWandWUM(m);
 			double[][] mywuw = new double[nT][];
@@ -296,7 +414,7 @@ public class HTSPStream {
 
 			}
 		}
-	} /* method mlpg */
+	}
 
 	/*----------------- HTS parameter generation fuctions  -----------------------------*/
 
@@ -304,7 +304,10 @@ public class HTSParameterGeneration {
 			logger.info("Parameter generation for MGC: ");
 			if (htsData.getUseGV() && (htsData.getPdfMgcGVStream() != null))
 				mcepPst.setGvMeanVar(gvms.getGVmeanMgc(), gvms.getGVcovInvMgc());
-			mcepPst.mlpg(htsData, htsData.getUseGV());
+			if (htsData.getMlpgWindowSize() > 0)
+				mcepPst.deferMlpg(htsData, htsData.getUseGV()); // generated window by window, as the vocoder needs it
+			else
+				mcepPst.mlpg(htsData, htsData.getUseGV());
 		}
 
 		// parameter generation for lf0 */
@@ -346,6 +349,7 @@ public class HTSParameterGeneration {
 	/* Save generated parameters in a binary file */
 	public void saveParamMaryFormat(String fileName, HTSPStream par, HMMData.FeatureType type) {
 		int t, m, i;
+		par.generateUpTo(par.getT() - 1);
 		double ws = 0.025; /* window size in seconds */
 		double ss = 0.005; /* skip size in seconds */
 		int fs = 16000; /* sampling rate */
@@ -419,6 +423,7 @@ public class HTSParameterGeneration {
 	/* Save generated parameters in a binary file */
 	public void saveParam(String fileName, HTSPStream par, HMMData.FeatureType type) {
 		int t, m, i;
+		par.generateUpTo(par.getT() - 1);
 		try {
 
 			if (type == HMMData.FeatureType.LF0) {
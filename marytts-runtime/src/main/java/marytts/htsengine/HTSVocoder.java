@@ -315,6 +315,8 @@ public class HTSVocoder {
 		magSample = 1;
 		magPulseSize = 0;
 		for (mcepframe = 0, lf0frame = 0; mcepframe < mcepPst.getT(); mcepframe++) { /* for each mcep frame */
+			int frameStart = s_double;
+			mcepPst.generateUpTo(mcepframe); /* in case parameter generation is windowed */
 
 			/** feature vector for a particular frame */
 			double mc[] = new double[m]; /* feature vector for a particular frame */
@@ -491,9 +493,6 @@ public class HTSVocoder {
 
 				// System.out.format("%f ", x);
 				audio_double[s_double] = x;
-				if (audioProducer != null) {
-					audioProducer.putOneDataPoint(x);
-				}
 
 				s_double++;
 
@@ -517,6 +516,10 @@ public class HTSVocoder {
 			/* move elements in c */
 			System.arraycopy(CC, 0, C, 0, m);
 
+			if (audioProducer != null) {
+				audioProducer.putData(audio_double, frameStart, s_double - frameStart);
+			}
+
 		} /* for each mcep frame */
 
 		logger.debug("Finish processing " + mcepframe + " mcep frames.");
@@ -1650,8 +1653,11 @@ public class HTSVocoder {
 			try {
 				htsMLSAVocoder(lf0Pst, mcepPst, strPst, magPst, voiced, htsData, this);
 				putEndOfStream();
+			} catch (RuntimeException e) {
+				// let the reader see the failure instead of a premature end of the audio:
+				throw e;
 			} catch (Exception e) {
-				logger.error("Cannot vocode", e);
+				throw new RuntimeException("Cannot vocode", e);
 			}
 		}
 
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import marytts.modules.HTSEngine;
+
+/**
+ * Compare windowed maximum-likelihood parameter generation with generation over the whole utterance, to choose a window size
+ * and look-ahead for a voice. For each setting, the tool reports how long it takes until the first window of MGC parameters is
+ * available (which is when the vocoder can start), the total generation time, and the difference from the parameters generated
+ * over the whole utterance.
+ * <p>
+ * Usage:
+ * 
+ * <pre>
+ * java marytts.htsengine.MLPGWindowComparison voiceName voiceDir voiceConfig featureFile [windowSize:lookAhead ...]
+ * </pre>
+ * 
+ * where featureFile is a TARGETFEATURES file, as for {@link HTSEngine#main(String[])}.
+ */
+public class MLPGWindowComparison {
+
+	/**
+	 * The root mean square difference between the parameters of two streams of the same size.
+	 */
+	public static double rmsDifference(HTSPStream a, HTSPStream b) {
+		checkSameSize(a, b);
+		double sum = 0;
+		for (int t = 0; t < a.getT(); t++) {
+			for (int m = 0; m < a.getOrder(); m++) {
+				double d = a.getPar(t, m) - b.getPar(t, m);
+				sum += d * d;
+			}
+		}
+		return a.getT() == 0 ? 0 : Math.sqrt(sum / (a.getT() * a.getOrder()));
+	}
+
+	/**
+	 * The largest absolute difference between the parameters of two streams of the same size.
+	 */
+	public static double maxDifference(HTSPStream a, HTSPStream b) {
+		checkSameSize(a, b);
+		double max = 0;
+		for (int t = 0; t < a.getT(); t++) {
+			for (int m = 0; m < a.getOrder(); m++) {
+				max = Math.max(max, Math.abs(a.getPar(t, m) - b.getPar(t, m)));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * The mel-cepstral distortion between two streams of mel-cepstra, in dB, averaged over frames. The energy coefficient c0 is
+	 * not taken into account.
+	 */
+	public static double melCepstralDistortion(HTSPStream a, HTSPStream b) {
+		checkSameSize(a, b);
+		double sum = 0;
+		for (int t = 0; t < a.getT(); t++) {
+			double frameSum = 0;
+			for (int m = 1; m < a.getOrder(); m++) {
+				double d = a.getPar(t, m) - b.getPar(t, m);
+				frameSum += d * d;
+			}
+			sum += Math.sqrt(2 * frameSum);
+		}
+		return a.getT() == 0 ? 0 : 10 / Math.log(10) * sum / a.getT();
+	}
+
+	private static void checkSameSize(HTSPStream a, HTSPStream b) {
+		if (a.getT() != b.getT() || a.getOrder() != b.getOrder()) {
+			throw new IllegalArgumentException("Streams differ in size: " + a.getT() + "x" + a.getOrder() + " vs. " + b.getT()
+					+ "x" + b.getOrder());
+		}
+	}
+
+	private static void printComparison(String name, HTSPStream full, HTSPStream windowed) {
+		if (full != null && windowed != null) {
+			System.out.printf("  %s: rms diff %.5f, max diff %.5f%n", name, rmsDifference(full, windowed),
+					maxDifference(full, windowed));
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 4) {
+			System.err.println("Usage: java " + MLPGWindowComparison.class.getName()
+					+ " voiceName voiceDir voiceConfig featureFile [windowSize:lookAhead ...]");
+			System.exit(1);
+		}
+		String[] settings = args.length > 4 ? new String[args.length - 4] : new String[] { "50:10", "50:25", "100:50",
+				"200:50" };
+		if (args.length > 4) {
+			System.arraycopy(args, 4, settings, 0, settings.length);
+		}
+		HMMData htsData = new HMMData();
+		htsData.initHMMData(args[0], args[1], args[2]);
+		// the stand-alone engine works without the acoustic modeller
+		htsData.setUseAcousticModels(false);
+		HTSUttModel um = new HTSEngine().processUttFromFile(args[3], htsData);
+
+		htsData.setMlpgWindowSize(0);
+		HTSParameterGeneration full = new HTSParameterGeneration();
+		long start = System.nanoTime();
+		full.htsMaximumLikelihoodParameterGeneration(um, htsData);
+		long fullTime = System.nanoTime() - start;
+		System.out.printf("Whole utterance (%d frames): %.1f ms%n", full.getMcepPst().getT(), fullTime / 1.e6);
+
+		for (String setting : settings) {
+			String[] parts = setting.split(":");
+			int windowSize = Integer.parseInt(parts[0]);
+			htsData.setMlpgWindowSize(windowSize);
+			htsData.setMlpgLookAhead(Integer.parseInt(parts[1]));
+			HTSParameterGeneration windowed = new HTSParameterGeneration();
+			start = System.nanoTime();
+			windowed.htsMaximumLikelihoodParameterGeneration(um, htsData);
+			HTSPStream mcepPst = windowed.getMcepPst();
+			mcepPst.generateUpTo(Math.min(windowSize, mcepPst.getT()) - 1);
+			long firstWindowTime = System.nanoTime() - start;
+			mcepPst.generateUpTo(mcepPst.getT() - 1);
+			long totalTime = System.nanoTime() - start;
+			System.out.printf("Window %d, look-ahead %d: first window after %.1f ms, total %.1f ms%n", windowSize,
+					htsData.getMlpgLookAhead(), firstWindowTime / 1.e6, totalTime / 1.e6);
+			System.out.printf("  MGC: rms diff %.5f, max diff %.5f, mel-cepstral distortion %.4f dB%n",
+					rmsDifference(full.getMcepPst(), mcepPst), maxDifference(full.getMcepPst(), mcepPst),
+					melCepstralDistortion(full.getMcepPst(), mcepPst));
+			printComparison("LF0", full.getlf0Pst(), windowed.getlf0Pst());
+			printComparison("STR", full.getStrPst(), windowed.getStrPst());
+			printComparison("MAG", full.getMagPst(), windowed.getMagPst());
+		}
+	}
+}
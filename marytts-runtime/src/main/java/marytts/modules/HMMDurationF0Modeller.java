@@ -146,19 +146,21 @@ public class HMMDurationF0Modeller extends InternalModule {
 			Scanner s = null;
 			String realisedDurations;
 			String realisedDurF0s;
+			HMMData hmmData = hmmVoice.acquireHMMData();
 			try {
 				s = new Scanner(context);
 				// Create the Uttmodel list and get durations
-				realisedDurations = processUtt(s, um, hmmVoice.getHMMData(), hmmVoice.getHMMData().getCartTreeSet());
+				realisedDurations = processUtt(s, um, hmmData, hmmData.getCartTreeSet());
 				// setActualDurations(tw, realisedDurations);
 
 				// Given the UttModel list generate the F0 parameters
-				realisedDurF0s = HmmF0Generation(um, hmmVoice.getHMMData());
+				realisedDurF0s = HmmF0Generation(um, hmmData);
 				setActualDurationsAndF0s(tw, realisedDurF0s);
 
 			} finally {
 				if (s != null)
 					s.close();
+				hmmVoice.releaseHMMData();
 			}
 		} else {
 			logger.debug("No HMM voice called " + hmmVoiceName);
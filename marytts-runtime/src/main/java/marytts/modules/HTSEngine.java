@@ -198,18 +198,28 @@ public class HTSEngine extends InternalModule {
 		Voice v = d.getDefaultVoice(); /* This is the way of getting a Voice through a MaryData type */
 		assert v instanceof HMMVoice;
 		HMMVoice hmmv = (HMMVoice) v;
+		// the same models for the whole utterance, kept from being released until we are done:
+		HMMData hmmData = hmmv.acquireHMMData();
+		try {
+			return process(d, targetFeaturesList, segmentsAndBoundaries, tokensAndBoundaries, hmmData);
+		} finally {
+			hmmv.releaseHMMData();
+		}
+	}
 
+	private MaryData process(MaryData d, List<Target> targetFeaturesList, List<Element> segmentsAndBoundaries,
+			List<Element> tokensAndBoundaries, HMMData hmmData) throws Exception {
 		/**
 		 * The utterance model, um, is a Vector (or linked list) of Model objects. It will contain the list of models for current
 		 * label file.
 		 */
 		/* Process label file of Mary context features and creates UttModel um */
-		HTSUttModel um = processTargetList(targetFeaturesList, segmentsAndBoundaries, hmmv.getHMMData());
+		HTSUttModel um = processTargetList(targetFeaturesList, segmentsAndBoundaries, hmmData);
 
 		/* Process UttModel */
 		HTSParameterGeneration pdf2par = new HTSParameterGeneration();
 		/* Generate sequence of speech parameter vectors, generate parameters out of sequence of pdf's */
-		pdf2par.htsMaximumLikelihoodParameterGeneration(um, hmmv.getHMMData());
+		pdf2par.htsMaximumLikelihoodParameterGeneration(um, hmmData);
 
 		/* set parameters for generation: f0Std, f0Mean and length, default values 1.0, 0.0 and 0.0 */
 		/* These values are fixed in HMMVoice */
@@ -217,7 +227,7 @@ public class HTSEngine extends InternalModule {
 		/* Process generated parameters */
 		HTSVocoder par2speech = new HTSVocoder();
 		/* Synthesize speech waveform, generate speech out of sequence of parameters */
-		AudioInputStream ais = par2speech.htsMLSAVocoder(pdf2par, hmmv.getHMMData());
+		AudioInputStream ais = par2speech.htsMLSAVocoder(pdf2par, hmmData);
 
 		MaryData output = new MaryData(outputType(), d.getLocale());
 		if (d.getAudioFileFormat() != null) {
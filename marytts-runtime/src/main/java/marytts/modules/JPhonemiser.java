@@ -30,6 +30,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
 
 import marytts.datatypes.MaryData;
 import marytts.datatypes.MaryDataType;
@@ -41,6 +42,7 @@ import marytts.modules.phonemiser.TrainedLTS;
 import marytts.server.MaryProperties;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
+import marytts.util.cache.StripedLruCache;
 import marytts.util.dom.MaryDomUtils;
 
 import org.w3c.dom.DOMException;
@@ -63,6 +65,11 @@ public class JPhonemiser extends InternalModule {
 
 	protected AllophoneSet allophoneSet;
 
+	// word (and part-of-speech) -> { phonemisation, g2p method }, or null if caching is disabled
+	private StripedLruCache<String, String[]> phonemiseCache;
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong cacheMisses = new AtomicLong();
+
 	public JPhonemiser(String propertyPrefix) throws IOException, MaryConfigurationException {
 		this("JPhonemiser", MaryDataType.PARTSOFSPEECH, MaryDataType.PHONEMES, propertyPrefix + "allophoneset", propertyPrefix
 				+ "userdict", propertyPrefix + "lexicon", propertyPrefix + "lettertosound", propertyPrefix
@@ -108,13 +115,22 @@ public class JPhonemiser extends InternalModule {
 						+ "' does not exist. Ignoring.");
 			}
 		}
-		InputStream lexiconStream = MaryProperties.needStream(lexiconProperty);
-		lexicon = new FSTLookup(lexiconStream, lexiconProperty);
+		if (MaryProperties.needProperty(lexiconProperty).startsWith("jar:")) {
+			InputStream lexiconStream = MaryProperties.needStream(lexiconProperty);
+			lexicon = new FSTLookup(lexiconStream, lexiconProperty);
+		} else {
+			// a lexicon file on disk is memory-mapped, so that all processes using it share one copy
+			lexicon = new FSTLookup(MaryProperties.needFilename(lexiconProperty));
+		}
 		InputStream ltsStream = MaryProperties.needStream(ltsProperty);
 		if (removetrailingonefromphonesProperty != null) {
 			this.removeTrailingOneFromPhones = MaryProperties.getBoolean(removetrailingonefromphonesProperty, true);
 		}
 		lts = new TrainedLTS(allophoneSet, ltsStream, this.removeTrailingOneFromPhones);
+		int cacheSize = MaryProperties.getInteger("phonemiser.cache.size", 20000);
+		if (cacheSize > 0) {
+			phonemiseCache = new StripedLruCache<String, String[]>(16, cacheSize);
+		}
 	}
 
 	public MaryData process(MaryData d) throws Exception {
@@ -188,6 +204,36 @@ public class JPhonemiser extends InternalModule {
 	 * @return a phonemisation of the text if one can be generated, or null if no phonemisation method was successful.
 	 */
 	public String phonemise(String text, String pos, StringBuilder g2pMethod) {
+		if (phonemiseCache == null) {
+			return phonemiseUncached(text, pos, g2pMethod);
+		}
+		String key = pos == null ? text : text + '|' + pos;
+		String[] cached = phonemiseCache.get(key);
+		if (cached != null) {
+			cacheHits.incrementAndGet();
+			g2pMethod.append(cached[1]);
+			return cached[0];
+		}
+		cacheMisses.incrementAndGet();
+		StringBuilder method = new StringBuilder();
+		String result = phonemiseUncached(text, pos, method);
+		phonemiseCache.put(key, new String[] { result, method.toString() });
+		g2pMethod.append(method);
+		return result;
+	}
+
+	/**
+	 * Phonemise the word text without consulting the phonemisation cache; see {@link #phonemise(String, String, StringBuilder)}.
+	 * 
+	 * @param text
+	 *            the textual (graphemic) form of a word.
+	 * @param pos
+	 *            the part-of-speech of the word
+	 * @param g2pMethod
+	 *            filled with the method of phonemisation
+	 * @return a phonemisation of the text if one can be generated, or null if no phonemisation method was successful.
+	 */
+	protected String phonemiseUncached(String text, String pos, StringBuilder g2pMethod) {
 		// First, try a simple userdict and lexicon lookup:
 
 		String result = userdictLookup(text, pos);
@@ -316,6 +362,45 @@ public class JPhonemiser extends InternalModule {
 		return transcr;
 	}
 
+	/**
+	 * The number of phonemise() calls answered from the cache.
+	 * 
+	 * @return the number of cache hits
+	 */
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	/**
+	 * The number of phonemise() calls which had to be computed.
+	 * 
+	 * @return the number of cache misses
+	 */
+	public long getCacheMisses() {
+		return cacheMisses.get();
+	}
+
+	/**
+	 * A one-line summary of the phonemisation cache use.
+	 * 
+	 * @return cache statistics
+	 */
+	public String getCacheStatistics() {
+		if (phonemiseCache == null) {
+			return name() + " cache disabled";
+		}
+		long hits = cacheHits.get();
+		long total = hits + cacheMisses.get();
+		return String.format("%s cache: %d entries, %d lookups, hit rate %.1f%%, %d evictions", name(), phonemiseCache.size(),
+				total, total > 0 ? 100. * hits / total : 0., phonemiseCache.getEvictionCount());
+	}
+
+	@Override
+	public void shutdown() {
+		super.shutdown();
+		logger.info(getCacheStatistics());
+	}
+
 	/**
 	 * Access the allophone set underlying this phonemiser.
 	 * 
@@ -20,6 +20,8 @@
 package marytts.modules;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import marytts.datatypes.MaryData;
 import marytts.datatypes.MaryDataType;
@@ -77,18 +79,23 @@ public class MinimalisticPosTagger extends InternalModule {
 		Element sentence;
 		while ((sentence = (Element) sentenceIt.nextNode()) != null) {
 			TreeWalker tokenIt = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
+			List<Element> tokens = new ArrayList<Element>();
+			List<String> tokenTexts = new ArrayList<String>();
 			Element t;
 			while ((t = (Element) tokenIt.nextNode()) != null) {
+				tokens.add(t);
+				tokenTexts.add(MaryDomUtils.tokenText(t));
+			}
+			// look up the whole sentence at once
+			String[][] results = posFST != null ? posFST.lookup(tokenTexts) : null;
+			for (int i = 0; i < tokens.size(); i++) {
 				String pos = "content";
-				String tokenText = MaryDomUtils.tokenText(t);
-				if (punctuationList.contains(tokenText)) {
+				if (punctuationList.contains(tokenTexts.get(i))) {
 					pos = "$PUNCT";
-				} else if (posFST != null) {
-					String[] result = posFST.lookup(tokenText);
-					if (result.length != 0)
-						pos = "function";
+				} else if (results != null && results[i].length != 0) {
+					pos = "function";
 				}
-				t.setAttribute("pos", pos);
+				tokens.get(i).setAttribute("pos", pos);
 			}
 		}
 		MaryData output = new MaryData(outputType(), d.getLocale());
@@ -96,8 +96,7 @@ public class TargetFeatureLister extends InternalModule {
 		String header = featureComputer.getAllFeatureProcessorNamesAndValues();
 		StringBuilder text = new StringBuilder();
 		StringBuilder bin = new StringBuilder();
-		for (Target target : targets) {
-			FeatureVector features = featureComputer.computeFeatureVector(target);
+		for (FeatureVector features : featureComputer.computeFeatureVectors(targets)) {
 			text.append(featureComputer.toStringValues(features)).append("\n");
 			bin.append(features.toString()).append("\n");
 		}
@@ -117,12 +116,7 @@ public class TargetFeatureLister extends InternalModule {
 	public List<Target> getListTargetFeatures(TargetFeatureComputer featureComputer, List<Element> segmentsAndBoundaries) {
 		String pauseSymbol = featureComputer.getPauseSymbol();
 		List<Target> targets = overridableCreateTargetsWithPauses(segmentsAndBoundaries, pauseSymbol);
-		for (Target target : targets) {
-			if (!target.hasFeatureVector()) {
-				FeatureVector features = featureComputer.computeFeatureVector(target);
-				target.setFeatureVector(features);
-			}
-		}
+		featureComputer.setMissingFeatureVectors(targets);
 		return targets;
 	}
 
@@ -253,11 +253,13 @@ public abstract class Model {
 			String phone = UnitSelector.getPhoneSymbol(element);
 			Target target = new Target(phone, element);
 			targets.add(target);
-			// compute FeatureVectors for Targets:
-			FeatureVector targetFeatureVector = featureComputer.computeFeatureVector(target);
-			target.setFeatureVector(targetFeatureVector); // this is critical!
 			element.setUserData("target", target, Target.targetFeatureCloner);
 		}
+		// compute FeatureVectors for Targets:
+		FeatureVector[] targetFeatureVectors = featureComputer.computeFeatureVectors(targets);
+		for (int i = 0; i < targets.size(); i++) {
+			targets.get(i).setFeatureVector(targetFeatureVectors[i]); // this is critical!
+		}
 		return targets;
 	}
 
@@ -24,6 +24,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.Properties;
 
 import marytts.cart.CART;
@@ -51,6 +52,13 @@ public class TrainedLTS {
 	private boolean convertToLowercase;
 	protected boolean removeTrailingOneFromPhones = true;
 
+	// for each context position, the byte value of each single-character grapheme, indexed by the character; -1 if unknown
+	private int[][] graphemeValues;
+	// for each context position, the byte value of "null", or -1 if there is none
+	private int[] nullValues;
+	// one feature vector per thread, overwritten for every grapheme
+	private ThreadLocal<FeatureVector> scratchVector;
+
 	/**
 	 * 
 	 * Initializes letter to sound system with a phoneSet, and load the decision tree from the given file.
@@ -93,6 +101,7 @@ public class TrainedLTS {
 			throw new IllegalArgumentException("Prediction tree does not contain properties");
 		convertToLowercase = Boolean.parseBoolean(props.getProperty("lowercase"));
 		context = Integer.parseInt(props.getProperty("context"));
+		initGraphemeValues();
 	}
 
 	/**
@@ -113,41 +122,79 @@ public class TrainedLTS {
 			throw new IllegalArgumentException("Prediction tree does not contain properties");
 		convertToLowercase = Boolean.parseBoolean(props.getProperty("lowercase"));
 		context = Integer.parseInt(props.getProperty("context"));
+		initGraphemeValues();
+	}
+
+	/**
+	 * Look up the byte values of all single-character graphemes once, so that predictPronunciation() does not need to create
+	 * substrings or look up strings in the feature definition.
+	 */
+	private void initGraphemeValues() {
+		final int numFeatures = 2 * context + 1;
+		graphemeValues = new int[numFeatures][];
+		nullValues = new int[numFeatures];
+		for (int fnr = 0; fnr < numFeatures; fnr++) {
+			String[] values = featureDefinition.getPossibleValues(fnr);
+			int maxChar = -1;
+			for (String value : values) {
+				if (value.length() == 1) {
+					maxChar = Math.max(maxChar, value.charAt(0));
+				}
+			}
+			int[] table = new int[maxChar + 1];
+			Arrays.fill(table, -1);
+			for (String value : values) {
+				if (value.length() == 1) {
+					table[value.charAt(0)] = featureDefinition.getFeatureValueAsByte(fnr, value) & 0xFF;
+				}
+			}
+			graphemeValues[fnr] = table;
+			nullValues[fnr] = featureDefinition.hasFeatureValue(fnr, "null") ? featureDefinition.getFeatureValueAsByte(fnr,
+					"null") & 0xFF : -1;
+		}
+		scratchVector = new ThreadLocal<FeatureVector>() {
+			@Override
+			protected FeatureVector initialValue() {
+				return new FeatureVector(new byte[numFeatures], new short[0], new float[0], 0);
+			}
+		};
 	}
 
 	public String predictPronunciation(String graphemes) {
 		if (convertToLowercase)
 			graphemes = graphemes.toLowerCase(allophoneSet.getLocale());
 
-		String returnStr = "";
+		StringBuilder returnStr = new StringBuilder();
+		FeatureVector fv = scratchVector.get();
+		byte[] byteFeatures = fv.byteValuedDiscreteFeatures;
 
 		for (int i = 0; i < graphemes.length(); i++) {
-
-			byte[] byteFeatures = new byte[2 * this.context + 1];
-
 			for (int fnr = 0; fnr < 2 * this.context + 1; fnr++) {
 				int pos = i - context + fnr;
-
-				String grAtPos = (pos < 0 || pos >= graphemes.length()) ? "null" : graphemes.substring(pos, pos + 1);
-
-				try {
-					byteFeatures[fnr] = this.tree.getFeatureDefinition().getFeatureValueAsByte(fnr, grAtPos);
-					// ... can also try to call explicit:
-					// features[fnr] = this.fd.getFeatureValueAsByte("att"+fnr, cg.substr(pos)
-				} catch (IllegalArgumentException iae) {
+				int value = -1;
+				if (pos >= 0 && pos < graphemes.length()) {
+					char grAtPos = graphemes.charAt(pos);
+					int[] table = graphemeValues[fnr];
+					if (grAtPos < table.length) {
+						value = table[grAtPos];
+					}
+				}
+				if (value < 0) {
 					// Silently ignore unknown characters
-					byteFeatures[fnr] = this.tree.getFeatureDefinition().getFeatureValueAsByte(fnr, "null");
+					value = nullValues[fnr];
+					if (value < 0) { // no "null" value -- let the feature definition complain
+						value = featureDefinition.getFeatureValueAsByte(fnr, "null");
+					}
 				}
+				byteFeatures[fnr] = (byte) value;
 			}
 
-			FeatureVector fv = new FeatureVector(byteFeatures, new short[] {}, new float[] {}, 0);
-
 			StringAndFloatLeafNode leaf = (StringAndFloatLeafNode) tree.interpretToNode(fv, 0);
 			String prediction = leaf.mostProbableString(featureDefinition, indexPredictedFeature);
-			returnStr += prediction.substring(1, prediction.length() - 1);
+			returnStr.append(prediction, 1, prediction.length() - 1);
 		}
 
-		return returnStr;
+		return returnStr.toString();
 
 	}
 
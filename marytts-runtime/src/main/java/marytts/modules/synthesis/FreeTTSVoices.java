@@ -39,7 +39,8 @@ import com.sun.speech.freetts.lexicon.Lexicon;
 import de.dfki.lt.freetts.de.GermanLexicon;
 
 /**
- * Instantiate and manage FreeTTS voices.
+ * Instantiate and manage FreeTTS voices. Voices may be started in parallel and requests processed concurrently, so all access
+ * to the voice maps is synchronized on this class.
  *
  * @author Marc Schr&ouml;der
  */
@@ -68,7 +69,7 @@ public class FreeTTSVoices {
 	 * missing, a NoSuchPropertyException will be thrown. This method can safely be called more than once; any subsequent calls
 	 * will have no effect.
 	 */
-	public static void load() throws NoSuchPropertyException {
+	public static synchronized void load() throws NoSuchPropertyException {
 		if (mary2freettsVoices == null) {
 			logger.info("Loading US English FreeTTS voices...");
 			// create all voices at startup time
@@ -91,7 +92,7 @@ public class FreeTTSVoices {
 	 * @param maryVoice
 	 *            the maryVoice object to register a freetts voice for.
 	 */
-	public static void load(marytts.modules.synthesis.Voice maryVoice) throws NoSuchPropertyException {
+	public static synchronized void load(marytts.modules.synthesis.Voice maryVoice) throws NoSuchPropertyException {
 		if (mary2freettsVoices == null)
 			mary2freettsVoices = new HashMap<marytts.modules.synthesis.Voice, com.sun.speech.freetts.Voice>();
 		if (freetts2maryVoices == null)
@@ -133,7 +134,7 @@ public class FreeTTSVoices {
 	 * @return a Lexicon; if it was freshly created, it is not yet loaded.
 	 */
 	@Deprecated
-	private static Lexicon getLexicon(Voice maryVoice) {
+	private static synchronized Lexicon getLexicon(Voice maryVoice) {
 		if (maryVoice instanceof UnitSelectionVoice) {
 			return ((UnitSelectionVoice) maryVoice).getLexicon();
 		}
@@ -162,7 +163,7 @@ public class FreeTTSVoices {
 	 * @param freeTTSVoice
 	 *            the freettsVoice object to register.
 	 */
-	public static void load(marytts.modules.synthesis.Voice maryVoice, com.sun.speech.freetts.Voice freeTTSVoice)
+	public static synchronized void load(marytts.modules.synthesis.Voice maryVoice, com.sun.speech.freetts.Voice freeTTSVoice)
 			throws NoSuchPropertyException {
 		if (mary2freettsVoices == null)
 			mary2freettsVoices = new HashMap<marytts.modules.synthesis.Voice, com.sun.speech.freetts.Voice>();
@@ -192,7 +193,7 @@ public class FreeTTSVoices {
 	 * @throws NoSuchPropertyException
 	 *             if the property <code>freetts.lexicon.preload</code> is not defined in the MARY properties file.
 	 */
-	public static com.sun.speech.freetts.Voice getFreeTTSVoice(marytts.modules.synthesis.Voice maryVoice)
+	public static synchronized com.sun.speech.freetts.Voice getFreeTTSVoice(marytts.modules.synthesis.Voice maryVoice)
 			throws NoSuchPropertyException {
 		if (maryVoice == null) {
 			maryVoice = marytts.modules.synthesis.Voice.getDefaultVoice(Locale.US);
@@ -220,7 +221,7 @@ public class FreeTTSVoices {
 	 * @throws NoSuchPropertyException
 	 *             if the property <code>freetts.lexicon.preload</code> is not defined in the MARY properties file.
 	 */
-	public static marytts.modules.synthesis.Voice getMaryVoice(com.sun.speech.freetts.Voice freeTTSVoice)
+	public static synchronized marytts.modules.synthesis.Voice getMaryVoice(com.sun.speech.freetts.Voice freeTTSVoice)
 			throws NoSuchPropertyException {
 		if (freeTTSVoice == null) {
 			throw new NullPointerException("Received null voice");
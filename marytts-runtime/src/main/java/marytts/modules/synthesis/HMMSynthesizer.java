@@ -69,6 +69,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -86,6 +87,7 @@ import marytts.modules.ModuleRegistry;
 import marytts.modules.TargetFeatureLister;
 import marytts.modules.synthesis.Voice.Gender;
 import marytts.server.MaryProperties;
+import marytts.server.ModuleStartup;
 import marytts.unitselection.select.Target;
 import marytts.util.MaryUtils;
 import marytts.util.dom.MaryDomUtils;
@@ -145,16 +147,22 @@ public class HMMSynthesizer implements WaveformSynthesizer {
 		}
 
 		// Register HMM voices:
-		List<String> voiceNames = MaryProperties.getList("hmm.voices.list");
-		for (String voiceName : voiceNames) {
-			logger.debug("Voice '" + voiceName + "'");
-
-			/**
-			 * When creating a HMMVoice object it should create and initialise a TreeSet ts, a ModelSet ms and load the context
-			 * feature list used in this voice.
-			 */
-
-			HMMVoice v = new HMMVoice(voiceName, this);
+		// The voices are loaded concurrently, but registered in the configured order:
+		List<Callable<Voice>> voiceLoaders = new ArrayList<Callable<Voice>>();
+		for (final String voiceName : MaryProperties.getList("hmm.voices.list")) {
+			voiceLoaders.add(new Callable<Voice>() {
+				public Voice call() throws Exception {
+					logger.debug("Voice '" + voiceName + "'");
+
+					/**
+					 * When creating a HMMVoice object it should create and initialise a TreeSet ts, a ModelSet ms and load the
+					 * context feature list used in this voice.
+					 */
+					return new HMMVoice(voiceName, HMMSynthesizer.this);
+				}
+			});
+		}
+		for (Voice v : ModuleStartup.runAll(voiceLoaders, "HMMVoiceLoader")) {
 			Voice.registerVoice(v);
 		}
 		logger.info("started.");
@@ -0,0 +1,250 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.modules.synthesis;
+
+import java.util.concurrent.Callable;
+
+import marytts.exceptions.MaryConfigurationException;
+import marytts.server.MaryProperties;
+
+/**
+ * The memory-intensive data of a voice, such as its unit database or its HMM models. For a lazy voice, the data are loaded when
+ * they are first needed, and may be released again by the {@link VoiceDataManager} when the voice has been idle for a while or
+ * when memory runs short; they are then loaded again on the next request. Voices are lazy if so configured in
+ * <code>voice.(name).lazy</code>, or else in <code>voice.lazy</code> (default: false).
+ * <p>
+ * Callers must fetch the data with {@link #get()} every time they need them, and not keep references beyond the processing of
+ * one request. Callers which use the data for a whole request should {@link #acquire()} them instead and {@link #releaseUse()}
+ * them when done; data which are in use are never released, since that would not free any memory while the request still holds
+ * them, and the next request would load a second copy.
+ * 
+ * @param <T>
+ *            the type of the data
+ */
+public class LazyVoiceData<T> {
+	private final String voiceName;
+	private final boolean lazy;
+	private final Callable<T> loader;
+	private final Object lock = new Object();
+	private volatile T data;
+	private volatile long lastUsed;
+	private int inUse;
+	private int numLoads;
+	private int numReleases;
+	private long lastLoadMillis = -1;
+	private long totalLoadMillis;
+
+	/**
+	 * Create the data for the given voice, lazy or not as configured.
+	 * 
+	 * @param voiceName
+	 *            the name of the voice
+	 * @param loader
+	 *            loads the data; may be called repeatedly for a lazy voice.
+	 */
+	public LazyVoiceData(String voiceName, Callable<T> loader) {
+		this(voiceName, MaryProperties.getBoolean("voice." + voiceName + ".lazy", MaryProperties.getBoolean("voice.lazy", false)),
+				loader);
+	}
+
+	public LazyVoiceData(String voiceName, boolean lazy, Callable<T> loader) {
+		this.voiceName = voiceName;
+		this.lazy = lazy;
+		this.loader = loader;
+	}
+
+	/**
+	 * To be called once the voice is otherwise complete: registers the data with the {@link VoiceDataManager}, and loads them
+	 * right away unless the voice is lazy.
+	 * 
+	 * @throws MaryConfigurationException
+	 *             if the data cannot be loaded.
+	 */
+	public void init() throws MaryConfigurationException {
+		if (!lazy) {
+			load();
+		}
+		VoiceDataManager.register(this);
+	}
+
+	/**
+	 * Get the data, loading them if necessary.
+	 * 
+	 * @return the data, never null.
+	 * @throws IllegalStateException
+	 *             if the data need to be loaded but cannot be.
+	 */
+	public T get() {
+		T d = data;
+		while (d == null) {
+			try {
+				load();
+			} catch (MaryConfigurationException e) {
+				throw new IllegalStateException("Cannot load data of voice '" + voiceName + "'", e);
+			}
+			d = data;
+		}
+		lastUsed = System.currentTimeMillis();
+		return d;
+	}
+
+	/**
+	 * Get the data, loading them if necessary, and mark them as in use until {@link #releaseUse()} is called; meanwhile, they will
+	 * not be released. Every call must be matched by one call to {@link #releaseUse()}, usually in a finally block.
+	 * 
+	 * @return the data, never null.
+	 * @throws IllegalStateException
+	 *             if the data need to be loaded but cannot be.
+	 */
+	public T acquire() {
+		while (true) {
+			T d = get();
+			synchronized (lock) {
+				// the data may have been released between get() and here:
+				if (data == d) {
+					inUse++;
+					return d;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Mark the data as no longer used by one caller of {@link #acquire()}.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the data are not in use.
+	 */
+	public void releaseUse() {
+		synchronized (lock) {
+			if (inUse <= 0) {
+				throw new IllegalStateException("Data of voice '" + voiceName + "' are not in use");
+			}
+			inUse--;
+		}
+		lastUsed = System.currentTimeMillis();
+	}
+
+	private void load() throws MaryConfigurationException {
+		if (data != null) {
+			return;
+		}
+		// outside of our lock, since this may release the data of other voices:
+		VoiceDataManager.beforeLoad(this);
+		synchronized (lock) {
+			if (data != null) {
+				return;
+			}
+			long before = System.currentTimeMillis();
+			T d;
+			try {
+				d = loader.call();
+			} catch (MaryConfigurationException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new MaryConfigurationException("Cannot load data of voice '" + voiceName + "'", e);
+			}
+			if (d == null) {
+				throw new MaryConfigurationException("No data loaded for voice '" + voiceName + "'");
+			}
+			lastLoadMillis = System.currentTimeMillis() - before;
+			totalLoadMillis += lastLoadMillis;
+			numLoads++;
+			lastUsed = System.currentTimeMillis();
+			data = d;
+		}
+		VoiceDataManager.fireLoaded(this, lastLoadMillis);
+	}
+
+	/**
+	 * Release the data of a lazy voice, so that they can be garbage collected; they will be loaded again when next needed. Does
+	 * nothing if the voice is not lazy, its data are not loaded, or they are in use.
+	 * 
+	 * @param reason
+	 *            why the data are released, for logging and monitoring
+	 * @return true if the data were released.
+	 */
+	public boolean release(String reason) {
+		synchronized (lock) {
+			if (!lazy || data == null || inUse > 0) {
+				return false;
+			}
+			data = null;
+			numReleases++;
+		}
+		VoiceDataManager.fireReleased(this, reason);
+		return true;
+	}
+
+	public String getVoiceName() {
+		return voiceName;
+	}
+
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	public boolean isLoaded() {
+		return data != null;
+	}
+
+	/**
+	 * The number of callers currently using the data, see {@link #acquire()}.
+	 */
+	public int getInUse() {
+		synchronized (lock) {
+			return inUse;
+		}
+	}
+
+	/**
+	 * The time of the last call to {@link #get()} or {@link #releaseUse()}, in milliseconds since the epoch.
+	 */
+	public long getLastUsed() {
+		return lastUsed;
+	}
+
+	public int getNumLoads() {
+		synchronized (lock) {
+			return numLoads;
+		}
+	}
+
+	public int getNumReleases() {
+		synchronized (lock) {
+			return numReleases;
+		}
+	}
+
+	/**
+	 * How long the last loading of the data took, in milliseconds, or -1 if they have never been loaded.
+	 */
+	public long getLastLoadMillis() {
+		synchronized (lock) {
+			return lastLoadMillis;
+		}
+	}
+
+	public long getTotalLoadMillis() {
+		synchronized (lock) {
+			return totalLoadMillis;
+		}
+	}
+}
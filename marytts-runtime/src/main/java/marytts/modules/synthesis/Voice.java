@@ -619,7 +619,7 @@ public class Voice {
 	 * registered as the default voice for its locale. This value is set in the config file setting
 	 * <code>voice.(name).want.to.be.default.voice</code>.
 	 */
-	public static void registerVoice(Voice voice) {
+	public static synchronized void registerVoice(Voice voice) {
 		if (voice == null)
 			throw new NullPointerException("Cannot register null voice.");
 		if (!allVoices.contains(voice)) {
@@ -820,7 +820,7 @@ public class Voice {
 	 * @param lexiconName
 	 * @return the requested lexicon, or null.
 	 */
-	private static Lexicon getLexicon(String lexiconClass, String lexiconName) {
+	private static synchronized Lexicon getLexicon(String lexiconClass, String lexiconName) {
 		if (lexiconClass == null)
 			return null;
 		// build the lexicon if not already built
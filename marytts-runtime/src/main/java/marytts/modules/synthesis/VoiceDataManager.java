@@ -0,0 +1,262 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.modules.synthesis;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import marytts.server.MaryProperties;
+import marytts.util.MaryUtils;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps track of the {@link LazyVoiceData} of all voices, and releases the data of lazy voices
+ * <ul>
+ * <li>when they have not been used for <code>voice.lazy.idleminutes</code> (default: 30; 0 means never);</li>
+ * <li>before loading another voice would exceed <code>voice.lazy.maxloaded</code> loaded lazy voices (default: 0, no limit);</li>
+ * <li>when the heap usage after the last garbage collection exceeds <code>voice.lazy.memorythreshold</code> percent of the
+ * maximum heap size (default: 90; 0 means never).</li>
+ * </ul>
+ * In the last two cases, the least recently used voices are released first. Voices whose data are in use by a request (see
+ * {@link LazyVoiceData#acquire()}) are never released. The checks for idle voices and memory pressure run
+ * every <code>voice.lazy.checkseconds</code> (default: 60), and before a voice is loaded.
+ * <p>
+ * Loading and releasing of voice data is logged, and reported to any registered {@link Listener}s; {@link #getStatistics()}
+ * summarises the load times for monitoring.
+ */
+public class VoiceDataManager {
+	/**
+	 * Gets notified whenever voice data are loaded or released.
+	 */
+	public interface Listener {
+		public void dataLoaded(String voiceName, long millis);
+
+		public void dataReleased(String voiceName, String reason);
+	}
+
+	private static Logger logger = MaryUtils.getLogger("VoiceDataManager");
+	private static List<LazyVoiceData<?>> allData = new CopyOnWriteArrayList<LazyVoiceData<?>>();
+	private static List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+	private static Timer timer;
+
+	/**
+	 * No instances of this class.
+	 */
+	private VoiceDataManager() {
+	}
+
+	public static void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public static void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	static void register(LazyVoiceData<?> data) {
+		allData.add(data);
+		if (data.isLazy()) {
+			startTimer();
+		}
+	}
+
+	static void unregister(LazyVoiceData<?> data) {
+		allData.remove(data);
+	}
+
+	private static synchronized void startTimer() {
+		if (timer != null) {
+			return;
+		}
+		long period = 1000L * MaryProperties.getInteger("voice.lazy.checkseconds", 60);
+		timer = new Timer("VoiceDataManager", true);
+		timer.schedule(new TimerTask() {
+			public void run() {
+				try {
+					releaseIdle(System.currentTimeMillis(), getIdleMillis());
+					if (isMemoryShort()) {
+						releaseLeastRecentlyUsed(null, 1, "memory pressure");
+					}
+				} catch (Throwable t) {
+					logger.warn("Problem releasing voice data", t);
+				}
+			}
+		}, period, period);
+	}
+
+	private static long getIdleMillis() {
+		return 60000L * MaryProperties.getInteger("voice.lazy.idleminutes", 30);
+	}
+
+	/**
+	 * Whether the memory still used after the last garbage collection exceeds the threshold in any long-lived heap pool, such as
+	 * the tenured generation. The current usage would count garbage that the next collection frees, and so would release voices
+	 * for nothing. The young generation pools (which do not support usage thresholds) are ignored, since they are mostly empty or
+	 * full depending only on when the last collection ran.
+	 */
+	static boolean isMemoryShort() {
+		int threshold = MaryProperties.getInteger("voice.lazy.memorythreshold", 90);
+		if (threshold <= 0) {
+			return false;
+		}
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() != MemoryType.HEAP || !pool.isUsageThresholdSupported()
+					|| !pool.isCollectionUsageThresholdSupported()) {
+				continue;
+			}
+			MemoryUsage afterGC = pool.getCollectionUsage();
+			long max = pool.getUsage().getMax();
+			if (afterGC != null && max > 0 && afterGC.getUsed() > max / 100 * threshold) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Called before the given data are loaded, to make room for them if necessary.
+	 */
+	static void beforeLoad(LazyVoiceData<?> data) {
+		if (!data.isLazy()) {
+			return;
+		}
+		int maxLoaded = MaryProperties.getInteger("voice.lazy.maxloaded", 0);
+		if (maxLoaded > 0) {
+			int excess = countLoadedLazy() + 1 - maxLoaded;
+			if (excess > 0) {
+				releaseLeastRecentlyUsed(data, excess, "more than " + maxLoaded + " voices loaded");
+			}
+		}
+		if (isMemoryShort()) {
+			releaseLeastRecentlyUsed(data, 1, "memory pressure");
+		}
+	}
+
+	static void fireLoaded(LazyVoiceData<?> data, long millis) {
+		logger.info("Loaded data of voice " + data.getVoiceName() + " in " + millis + " ms");
+		for (Listener l : listeners) {
+			l.dataLoaded(data.getVoiceName(), millis);
+		}
+	}
+
+	static void fireReleased(LazyVoiceData<?> data, String reason) {
+		logger.info("Released data of voice " + data.getVoiceName() + " (" + reason + ")");
+		for (Listener l : listeners) {
+			l.dataReleased(data.getVoiceName(), reason);
+		}
+	}
+
+	/**
+	 * Release the data of all lazy voices which have not been used for the given time.
+	 * 
+	 * @param now
+	 *            the current time in milliseconds
+	 * @param idleMillis
+	 *            the idle time after which voice data are released; 0 means never.
+	 * @return the number of voices whose data were released.
+	 */
+	public static int releaseIdle(long now, long idleMillis) {
+		if (idleMillis <= 0) {
+			return 0;
+		}
+		int released = 0;
+		for (LazyVoiceData<?> data : allData) {
+			if (data.isLoaded() && now - data.getLastUsed() >= idleMillis && data.release("idle")) {
+				released++;
+			}
+		}
+		return released;
+	}
+
+	/**
+	 * Release the data of the given number of lazy voices, least recently used first.
+	 * 
+	 * @param exclude
+	 *            data not to release, or null
+	 * @param count
+	 *            the number of voices to release
+	 * @param reason
+	 *            the reason, for logging and monitoring
+	 * @return the number of voices whose data were released.
+	 */
+	public static int releaseLeastRecentlyUsed(LazyVoiceData<?> exclude, int count, String reason) {
+		List<LazyVoiceData<?>> candidates = new ArrayList<LazyVoiceData<?>>();
+		for (LazyVoiceData<?> data : allData) {
+			if (data != exclude && data.isLazy() && data.isLoaded() && data.getInUse() == 0) {
+				candidates.add(data);
+			}
+		}
+		int released = 0;
+		while (released < count && !candidates.isEmpty()) {
+			LazyVoiceData<?> oldest = candidates.get(0);
+			for (LazyVoiceData<?> data : candidates) {
+				if (data.getLastUsed() < oldest.getLastUsed()) {
+					oldest = data;
+				}
+			}
+			candidates.remove(oldest);
+			if (oldest.release(reason)) {
+				released++;
+			}
+		}
+		return released;
+	}
+
+	private static int countLoadedLazy() {
+		int n = 0;
+		for (LazyVoiceData<?> data : allData) {
+			if (data.isLazy() && data.isLoaded()) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * A summary of the state and load times of all voices' data, one line per voice.
+	 */
+	public static String getStatistics() {
+		StringBuilder sb = new StringBuilder();
+		long now = System.currentTimeMillis();
+		for (LazyVoiceData<?> data : allData) {
+			sb.append(data.getVoiceName());
+			sb.append(data.isLazy() ? " lazy" : " eager");
+			sb.append(data.isLoaded() ? " loaded" : " released");
+			sb.append(" loads=").append(data.getNumLoads());
+			sb.append(" releases=").append(data.getNumReleases());
+			sb.append(" inUse=").append(data.getInUse());
+			sb.append(" lastLoadMs=").append(data.getLastLoadMillis());
+			sb.append(" totalLoadMs=").append(data.getTotalLoadMillis());
+			if (data.getNumLoads() > 0) {
+				sb.append(" idleSeconds=").append((now - data.getLastUsed()) / 1000);
+			}
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The chunks of one request, processed concurrently on a shared pool, whose results are handed out strictly in chunk order.
+ * Only a limited number of chunks beyond the one currently needed are submitted to the pool, so that a long request does not
+ * start the processing of all its chunks at once.
+ * 
+ * @param <T>
+ *            the type of a chunk's result
+ */
+class ChunkPipeline<T> {
+	private final Executor pool;
+	private final ChunkTask<T>[] tasks;
+	private final int maxAhead;
+	// the chunks below this index have been submitted to the pool or are needed by the calling thread:
+	private int submitted = 0;
+
+	/**
+	 * @param pool
+	 *            the executor on which chunks are processed ahead of time
+	 * @param processors
+	 *            one processor per chunk; null for a chunk which needs no processing
+	 * @param maxAhead
+	 *            the maximum number of chunks which are submitted to the pool beyond the one currently needed
+	 */
+	@SuppressWarnings("unchecked")
+	ChunkPipeline(Executor pool, List<Callable<T>> processors, int maxAhead) {
+		this.pool = pool;
+		this.maxAhead = maxAhead;
+		tasks = new ChunkTask[processors.size()];
+		for (int i = 0; i < tasks.length; i++) {
+			if (processors.get(i) != null) {
+				tasks[i] = new ChunkTask<T>(i, processors.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Get the result of the given chunk. The chunk is processed by the calling thread unless a pool thread has already started
+	 * it; then, the following chunks are submitted to the pool, up to the maximum look-ahead. Chunks must be requested in
+	 * ascending order.
+	 * 
+	 * @param index
+	 *            index of the chunk
+	 * @return the chunk's result, or null for a chunk which needs no processing
+	 * @throws Exception
+	 *             the exception thrown by the chunk's processor
+	 */
+	T get(int index) throws Exception {
+		if (submitted <= index) {
+			submitted = index + 1;
+		}
+		int limit = Math.min(tasks.length, index + 1 + maxAhead);
+		for (; submitted < limit; submitted++) {
+			if (tasks[submitted] != null) {
+				pool.execute(tasks[submitted]);
+			}
+		}
+		ChunkTask<T> task = tasks[index];
+		if (task == null) {
+			return null;
+		}
+		task.run(); // does nothing if a pool thread has already started this chunk
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Cancel all chunks which have not been started yet. Chunks already being processed by a pool thread run to completion.
+	 */
+	void cancel() {
+		for (ChunkTask<T> task : tasks) {
+			if (task != null) {
+				task.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * The processing of one chunk. Chunks which come earlier in their request are processed first, so that streaming audio of
+	 * all requests progresses; among chunks at the same position, older requests go first.
+	 */
+	private static class ChunkTask<T> extends FutureTask<T> implements Comparable<ChunkTask<?>> {
+		private static final AtomicLong sequence = new AtomicLong();
+		private final int index;
+		private final long number;
+
+		ChunkTask(int index, Callable<T> processor) {
+			super(processor);
+			this.index = index;
+			this.number = sequence.getAndIncrement();
+		}
+
+		public int compareTo(ChunkTask<?> other) {
+			if (index != other.index) {
+				return index < other.index ? -1 : 1;
+			}
+			return number < other.number ? -1 : (number == other.number ? 0 : 1);
+		}
+	}
+}
@@ -81,7 +81,8 @@ public class Mary {
 
 	private static Logger logger;
 
-	private static int currentState = STATE_OFF;
+	private static volatile int currentState = STATE_OFF;
+	private static volatile ModuleStartup moduleStartup;
 	private static boolean jarsAdded = false;
 
 	/**
@@ -97,6 +98,30 @@ public class Mary {
 		return currentState;
 	}
 
+	/**
+	 * Inform about the progress of the system startup, e.g. for health checks.
+	 * 
+	 * @return a short description of the current state; while starting up, this lists the modules started so far and those
+	 *         currently starting.
+	 */
+	public static String getStartupProgress() {
+		switch (currentState) {
+		case STATE_RUNNING:
+			return "running";
+		case STATE_STARTING:
+			ModuleStartup startup = moduleStartup;
+			if (startup == null) {
+				return "starting";
+			}
+			return "starting: " + startup.getNumStarted() + " of " + startup.getNumModules() + " modules started, starting "
+					+ startup.getModulesStarting();
+		case STATE_SHUTTING_DOWN:
+			return "shutting down";
+		default:
+			return "off";
+		}
+	}
+
 	/**
 	 * Add jars to classpath. Normally this is called from startup().
 	 * 
@@ -134,29 +159,38 @@ public class Mary {
 		}
 		ModuleRegistry.setRegistrationComplete();
 
-		List<Pair<MaryModule, Long>> startupTimes = new ArrayList<Pair<MaryModule, Long>>();
+		// Only start the modules here if in server mode:
+		boolean commandline = MaryProperties.getProperty("server").equals("commandline");
+		List<MaryModule> modulesToStart = new ArrayList<MaryModule>();
+		for (MaryModule m : ModuleRegistry.getAllModules()) {
+			if (!commandline || m instanceof Synthesis) {
+				modulesToStart.add(m);
+			}
+		}
 
 		// Separate loop for startup allows modules to cross-reference to each
 		// other via Mary.getModule(Class) even if some have not yet been
-		// started.
-		for (MaryModule m : ModuleRegistry.getAllModules()) {
-			// Only start the modules here if in server mode:
-			if (((!MaryProperties.getProperty("server").equals("commandline")) || m instanceof Synthesis)
-					&& m.getState() == MaryModule.MODULE_OFFLINE) {
-				long before = System.currentTimeMillis();
-				try {
-					m.startup();
-				} catch (Throwable t) {
-					throw new Exception("Problem starting module " + m.name(), t);
-				}
-				long after = System.currentTimeMillis();
-				startupTimes.add(new Pair<MaryModule, Long>(m, after - before));
-			}
-			if (MaryProperties.getAutoBoolean("modules.poweronselftest", false)) {
+		// started. Modules which start other modules must declare these as
+		// prerequisites in modules.startup.dependencies.list, so that the
+		// two are not started concurrently.
+		moduleStartup = new ModuleStartup(modulesToStart, ModuleStartup.getNumThreads());
+		moduleStartup.addPrerequisites(MaryProperties.getList("modules.startup.dependencies.list"));
+		moduleStartup.startAll();
+
+		if (MaryProperties.getAutoBoolean("modules.poweronselftest", false)) {
+			for (MaryModule m : ModuleRegistry.getAllModules()) {
 				m.powerOnSelfTest();
 			}
 		}
 
+		List<Pair<MaryModule, Long>> startupTimes = moduleStartup.getStartupTimes();
+		long totalTime = 0;
+		for (Pair<MaryModule, Long> p : startupTimes) {
+			totalTime += p.getSecond();
+		}
+		logger.info("Started " + startupTimes.size() + " modules in " + moduleStartup.getWallTime() + " ms (" + totalTime
+				+ " ms of module startup time, " + ModuleStartup.getNumThreads() + " threads)");
+
 		if (startupTimes.size() > 0) {
 			Collections.sort(startupTimes, new Comparator<Pair<MaryModule, Long>>() {
 				public int compare(Pair<MaryModule, Long> o1, Pair<MaryModule, Long> o2) {
@@ -488,9 +522,22 @@ public class Mary {
 			}
 		}
 
+		// The HTTP server can be started before the modules, so that it can answer health checks during startup:
+		Thread earlyServer = null;
+		if (server.equals("http") && MaryProperties.getBoolean("server.http.startearly", false)) {
+			earlyServer = (Thread) Class.forName("marytts.server.http.MaryHttpServer").newInstance();
+			earlyServer.setDaemon(true); // don't keep the JVM alive if startup fails
+			earlyServer.start();
+		}
+
 		startup();
 		System.err.println(" started in " + (System.currentTimeMillis() - startTime) / 1000. + " s");
 
+		if (earlyServer != null) {
+			earlyServer.join();
+			return;
+		}
+
 		Runnable main = null;
 
 		if (server.equals("socket")) { // socket server mode
@@ -0,0 +1,338 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import marytts.exceptions.MaryConfigurationException;
+import marytts.modules.MaryModule;
+import marytts.util.MaryUtils;
+import marytts.util.Pair;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Starts a list of modules, running the startup of independent modules concurrently. A module is only started once all of its
+ * prerequisites are running; apart from that, modules are started in list order. Prerequisites are declared in the config
+ * setting <code>modules.startup.dependencies.list</code> as pairs <code>dependentClass:prerequisiteClass</code>, and apply to all
+ * modules which are instances of the given classes.
+ * <p>
+ * The progress of the startup can be queried from other threads while {@link #startAll()} is running.
+ */
+public class ModuleStartup {
+	private static Logger logger = MaryUtils.getLogger("ModuleStartup");
+
+	/**
+	 * Get the number of threads to use for starting modules and loading voices, from the config setting
+	 * <code>modules.startup.threads</code> (default: the number of processors). A value of 1 means sequential startup.
+	 */
+	public static int getNumThreads() {
+		return Math.max(1, MaryProperties.getInteger("modules.startup.threads", Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Run the given tasks on up to {@link #getNumThreads()} threads and return their results in the order of the tasks. With only
+	 * one thread or only one task, the tasks are run one after the other in the calling thread.
+	 * 
+	 * @param tasks
+	 *            the tasks to run
+	 * @param threadName
+	 *            prefix for the names of the threads running the tasks
+	 * @return the results of the tasks, in task order
+	 * @throws Exception
+	 *             the exception thrown by the first failing task, in task order; the remaining tasks are cancelled.
+	 */
+	public static <T> List<T> runAll(List<Callable<T>> tasks, String threadName) throws Exception {
+		List<T> results = new ArrayList<T>(tasks.size());
+		int numThreads = Math.min(getNumThreads(), tasks.size());
+		if (numThreads <= 1) {
+			for (Callable<T> task : tasks) {
+				results.add(task.call());
+			}
+			return results;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads, new StartupThreadFactory(threadName));
+		try {
+			List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+			for (Callable<T> task : tasks) {
+				futures.add(pool.submit(task));
+			}
+			for (Future<T> future : futures) {
+				results.add(getResult(future));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return results;
+	}
+
+	private static <T> T getResult(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	private final List<MaryModule> modules;
+	private final int numThreads;
+	private final Map<MaryModule, Set<MaryModule>> prerequisites = new HashMap<MaryModule, Set<MaryModule>>();
+	private final List<Pair<MaryModule, Long>> startupTimes = Collections
+			.synchronizedList(new ArrayList<Pair<MaryModule, Long>>());
+	private final Set<MaryModule> starting = Collections.synchronizedSet(new LinkedHashSet<MaryModule>());
+	private final AtomicInteger numStarted = new AtomicInteger();
+	private volatile long wallTime = -1;
+
+	/**
+	 * @param modules
+	 *            the modules to start; modules which are already running when their turn comes are left alone.
+	 * @param numThreads
+	 *            the maximum number of modules to start at the same time
+	 */
+	public ModuleStartup(List<MaryModule> modules, int numThreads) {
+		this.modules = new ArrayList<MaryModule>(modules);
+		this.numThreads = numThreads;
+		for (MaryModule m : this.modules) {
+			prerequisites.put(m, new LinkedHashSet<MaryModule>());
+		}
+	}
+
+	/**
+	 * Declare that module must not be started before prerequisite is running.
+	 */
+	public void addPrerequisite(MaryModule module, MaryModule prerequisite) {
+		if (module != prerequisite && prerequisites.containsKey(module) && prerequisites.containsKey(prerequisite)) {
+			prerequisites.get(module).add(prerequisite);
+		}
+	}
+
+	/**
+	 * Declare prerequisites between all modules which are instances of the given classes.
+	 * 
+	 * @param dependencies
+	 *            a list of entries <code>dependentClass:prerequisiteClass</code>. Entries naming unknown classes are ignored.
+	 * @throws MaryConfigurationException
+	 *             if an entry is malformed.
+	 */
+	public void addPrerequisites(List<String> dependencies) throws MaryConfigurationException {
+		for (String dependency : dependencies) {
+			int colon = dependency.indexOf(':');
+			if (colon <= 0 || colon == dependency.length() - 1) {
+				throw new MaryConfigurationException("Startup dependency '" + dependency
+						+ "' is not of the form dependentClass:prerequisiteClass");
+			}
+			Class<?> dependentClass;
+			Class<?> prerequisiteClass;
+			try {
+				dependentClass = Class.forName(dependency.substring(0, colon));
+				prerequisiteClass = Class.forName(dependency.substring(colon + 1));
+			} catch (ClassNotFoundException e) {
+				logger.debug("Ignoring startup dependency '" + dependency + "': " + e.getMessage() + " not found");
+				continue;
+			}
+			for (MaryModule m : modules) {
+				if (dependentClass.isInstance(m)) {
+					for (MaryModule p : modules) {
+						if (prerequisiteClass.isInstance(p)) {
+							addPrerequisite(m, p);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Start all modules, respecting the declared prerequisites.
+	 * 
+	 * @throws MaryConfigurationException
+	 *             if the prerequisites are cyclic.
+	 * @throws Exception
+	 *             if a module cannot be started; modules still starting at that time are interrupted.
+	 */
+	public void startAll() throws Exception {
+		long before = System.currentTimeMillis();
+		Map<MaryModule, Integer> numPending = new HashMap<MaryModule, Integer>();
+		Map<MaryModule, List<MaryModule>> dependents = new HashMap<MaryModule, List<MaryModule>>();
+		List<MaryModule> ready = new ArrayList<MaryModule>();
+		for (MaryModule m : modules) {
+			dependents.put(m, new ArrayList<MaryModule>());
+		}
+		for (MaryModule m : modules) {
+			numPending.put(m, prerequisites.get(m).size());
+			for (MaryModule p : prerequisites.get(m)) {
+				dependents.get(p).add(m);
+			}
+			if (prerequisites.get(m).isEmpty()) {
+				ready.add(m);
+			}
+		}
+
+		if (numThreads <= 1) {
+			while (!ready.isEmpty()) {
+				MaryModule m = ready.remove(0);
+				startModule(m);
+				release(m, dependents, numPending, ready);
+			}
+		} else {
+			ExecutorService pool = Executors.newFixedThreadPool(numThreads, new StartupThreadFactory("ModuleStartup"));
+			try {
+				CompletionService<MaryModule> completion = new ExecutorCompletionService<MaryModule>(pool);
+				int numRunning = 0;
+				while (!ready.isEmpty() || numRunning > 0) {
+					while (!ready.isEmpty()) {
+						final MaryModule m = ready.remove(0);
+						completion.submit(new Callable<MaryModule>() {
+							public MaryModule call() throws Exception {
+								startModule(m);
+								return m;
+							}
+						});
+						numRunning++;
+					}
+					MaryModule m = getResult(completion.take());
+					numRunning--;
+					release(m, dependents, numPending, ready);
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+
+		if (numStarted.get() < modules.size()) {
+			List<String> blocked = new ArrayList<String>();
+			for (MaryModule m : modules) {
+				if (numPending.get(m) > 0) {
+					blocked.add(m.name());
+				}
+			}
+			throw new MaryConfigurationException("Cyclic startup dependencies between modules " + blocked);
+		}
+		wallTime = System.currentTimeMillis() - before;
+	}
+
+	private void release(MaryModule m, Map<MaryModule, List<MaryModule>> dependents, Map<MaryModule, Integer> numPending,
+			List<MaryModule> ready) {
+		for (MaryModule d : dependents.get(m)) {
+			int pending = numPending.get(d) - 1;
+			numPending.put(d, pending);
+			if (pending == 0) {
+				ready.add(d);
+			}
+		}
+	}
+
+	private void startModule(MaryModule m) throws Exception {
+		if (m.getState() == MaryModule.MODULE_OFFLINE) {
+			starting.add(m);
+			long before = System.currentTimeMillis();
+			try {
+				m.startup();
+			} catch (Throwable t) {
+				throw new Exception("Problem starting module " + m.name(), t);
+			} finally {
+				starting.remove(m);
+			}
+			long after = System.currentTimeMillis();
+			startupTimes.add(new Pair<MaryModule, Long>(m, after - before));
+		}
+		numStarted.incrementAndGet();
+	}
+
+	/**
+	 * The number of modules to start.
+	 */
+	public int getNumModules() {
+		return modules.size();
+	}
+
+	/**
+	 * The number of modules whose startup has completed so far.
+	 */
+	public int getNumStarted() {
+		return numStarted.get();
+	}
+
+	/**
+	 * The names of the modules currently starting up.
+	 */
+	public List<String> getModulesStarting() {
+		List<String> names = new ArrayList<String>();
+		synchronized (starting) {
+			for (MaryModule m : starting) {
+				names.add(m.name());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * The time each module's startup method took, in milliseconds, in the order in which their startup completed; modules which
+	 * were already running are not included.
+	 */
+	public List<Pair<MaryModule, Long>> getStartupTimes() {
+		synchronized (startupTimes) {
+			return new ArrayList<Pair<MaryModule, Long>>(startupTimes);
+		}
+	}
+
+	/**
+	 * The elapsed time of {@link #startAll()} in milliseconds, or -1 if it has not completed.
+	 */
+	public long getWallTime() {
+		return wallTime;
+	}
+
+	private static class StartupThreadFactory implements ThreadFactory {
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger();
+
+		StartupThreadFactory(String name) {
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
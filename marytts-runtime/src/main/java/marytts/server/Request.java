@@ -26,6 +26,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -34,6 +36,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -45,6 +53,7 @@ import javax.xml.transform.TransformerException;
 import marytts.datatypes.MaryData;
 import marytts.datatypes.MaryDataType;
 import marytts.datatypes.MaryXML;
+import marytts.features.UtteranceIndex;
 import marytts.modules.MaryModule;
 import marytts.modules.ModuleRegistry;
 import marytts.modules.synthesis.Voice;
@@ -52,6 +61,7 @@ import marytts.util.MaryCache;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
 import marytts.util.data.audio.AppendableSequenceAudioInputStream;
+import marytts.util.data.audio.MaryAudioUtils;
 import marytts.util.dom.DomUtils;
 import marytts.util.dom.MaryDomUtils;
 import marytts.util.dom.NameNodeFilter;
@@ -93,7 +103,9 @@ public class Request {
 	protected MaryData inputData;
 	protected MaryData outputData;
 	protected boolean streamAudio = false;;
-	protected boolean abortRequested = false;
+	protected volatile boolean abortRequested = false;
+
+	private static ThreadPoolExecutor chunkPool;
 
 	// Keep track of timing info for each module
 	// (map MaryModule onto Long)
@@ -149,8 +161,9 @@ public class Request {
 
 		// Keep track of timing info for each module
 		// (map MaryModule onto Long)
-		usedModules = new LinkedHashSet<MaryModule>();
-		timingInfo = new HashMap<MaryModule, Long>();
+		// (synchronized, since chunks may be processed in parallel)
+		usedModules = Collections.synchronizedSet(new LinkedHashSet<MaryModule>());
+		timingInfo = Collections.synchronizedMap(new HashMap<MaryModule, Long>());
 	}
 
 	public MaryDataType getInputType() {
@@ -313,6 +326,28 @@ public class Request {
 			outputData.setAudio(appendableAudioStream);
 			outputData.setAudioFileFormat(audioFileFormat);
 		}
+		if (MaryProperties.getBoolean("request.parallelchunks", false) && inputDataList.getLength() > 1) {
+			processChunksInParallel(rawmaryxml, inputDataList);
+		} else {
+			processChunks(rawmaryxml, inputDataList);
+		}
+		long stopTime = System.currentTimeMillis();
+		logger.info("Request processed in " + (stopTime - startTime) + " ms.");
+		// chunks cancelled after an error may still be adding to usedModules:
+		synchronized (usedModules) {
+			for (MaryModule m : usedModules) {
+				logger.info("   " + m.name() + " took " + timingInfo.get(m) + " ms");
+			}
+		}
+		if (appendableAudioStream != null)
+			appendableAudioStream.doneAppending();
+	}
+
+	/**
+	 * Process the paragraph chunks one after the other, replacing them in the rawmaryxml document or appending their output to
+	 * the output data.
+	 */
+	private void processChunks(MaryData rawmaryxml, NodeList inputDataList) throws Exception {
 		int len = inputDataList.getLength();
 		for (int i = 0; i < len && !abortRequested; i++) {
 			Element currentInputParagraph = (Element) inputDataList.item(i);
@@ -343,13 +378,85 @@ public class Request {
 				MaryDomUtils.replaceElement(currentInputParagraph, outputNodeList);
 			}
 		}
-		long stopTime = System.currentTimeMillis();
-		logger.info("Request processed in " + (stopTime - startTime) + " ms.");
-		for (MaryModule m : usedModules) {
-			logger.info("   " + m.name() + " took " + timingInfo.get(m) + " ms");
+	}
+
+	/**
+	 * Process the paragraph chunks concurrently on the shared chunk pool. The results are used in the order of the chunks, exactly
+	 * as in {@link #processChunks(MaryData, NodeList)}. The first chunk is processed right away by the calling thread, so that the
+	 * start of streaming audio is not delayed; the calling thread also processes any later chunk which no pool thread has started
+	 * when its result is needed. At most <code>request.parallelchunks.ahead</code> chunks (default: the number of chunk threads)
+	 * are processed ahead of the one being output.
+	 */
+	private void processChunksInParallel(MaryData rawmaryxml, NodeList inputDataList) throws Exception {
+		int len = inputDataList.getLength();
+		// Extract all chunks up front, so that the pool threads never touch the shared document:
+		Element[] paragraphs = new Element[len];
+		List<Callable<MaryData>> processors = new ArrayList<Callable<MaryData>>(len);
+		for (int i = 0; i < len; i++) {
+			paragraphs[i] = (Element) inputDataList.item(i);
+			assert paragraphs[i].getTagName().equals(MaryXML.PARAGRAPH);
+			// Only process paragraph if there is any text below it:
+			if (MaryDomUtils.getPlainTextBelow(paragraphs[i]).trim().equals("")) {
+				processors.add(null);
+			} else {
+				processors.add(createChunkProcessor(extractParagraphAsMaryData(rawmaryxml, paragraphs[i])));
+			}
 		}
-		if (appendableAudioStream != null)
-			appendableAudioStream.doneAppending();
+		ThreadPoolExecutor pool = getChunkPool();
+		int maxAhead = MaryProperties.getInteger("request.parallelchunks.ahead", pool.getCorePoolSize());
+		ChunkPipeline<MaryData> pipeline = new ChunkPipeline<MaryData>(pool, processors, maxAhead);
+		try {
+			for (int i = 0; i < len && !abortRequested; i++) {
+				NodeList outputNodeList = null;
+				MaryData oneOutputData = pipeline.get(i);
+				if (oneOutputData == null) {
+					outputNodeList = paragraphs[i].getChildNodes();
+				} else if (outputType.isMaryXML()) {
+					outputNodeList = oneOutputData.getDocument().getDocumentElement().getElementsByTagName(MaryXML.PARAGRAPH);
+				} else { // output is not MaryXML, e.g. text or audio
+					assert outputData != null;
+					outputData.append(oneOutputData);
+				}
+				if (outputType.isMaryXML()) {
+					assert outputNodeList != null;
+					MaryDomUtils.replaceElement(paragraphs[i], outputNodeList);
+				}
+			}
+		} finally {
+			// After an abort or error, remaining chunks need not be processed:
+			pipeline.cancel();
+		}
+	}
+
+	private Callable<MaryData> createChunkProcessor(final MaryData oneInputData) {
+		return new Callable<MaryData>() {
+			public MaryData call() throws Exception {
+				return processOrLookupOneChunk(oneInputData, outputType, outputTypeParams);
+			}
+		};
+	}
+
+	/**
+	 * Get the pool on which the chunks of all requests are processed in parallel mode. Its number of threads is given by the
+	 * property <code>request.parallelchunks.threads</code> (default: the number of processors).
+	 */
+	private static synchronized ThreadPoolExecutor getChunkPool() {
+		if (chunkPool == null) {
+			int numThreads = MaryProperties.getInteger("request.parallelchunks.threads", Runtime.getRuntime()
+					.availableProcessors());
+			chunkPool = new ThreadPoolExecutor(numThreads, numThreads, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "ChunkProcessor-" + count.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			chunkPool.allowCoreThreadTimeOut(true);
+		}
+		return chunkPool;
 	}
 
 	/**
@@ -470,8 +577,9 @@ public class Request {
 		AppendableSequenceAudioInputStream as = (AppendableSequenceAudioInputStream) currentData.getAudio();
 		assert as != appendableAudioStream;
 		as.doneAppending();
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(2 * (int) as.getFrameLength() + 100);
-		AudioSystem.write(as, AudioFileFormat.Type.WAVE, baos);
+		AudioInputStream known = MaryAudioUtils.withKnownLength(as);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(2 * (int) known.getFrameLength() + 100);
+		AudioSystem.write(known, AudioFileFormat.Type.WAVE, baos);
 		byte[] wavFileData = baos.toByteArray();
 		cache.insertAudio(inputtype, localeString, voice, outputParams, defaultStyle, defaultEffects, inputtext, wavFileData);
 		AudioInputStream ais = AudioSystem.getAudioInputStream(new ByteArrayInputStream(wavFileData));
@@ -548,6 +656,12 @@ public class Request {
 				outData = m.process(currentData);
 			} catch (Exception e) {
 				throw new Exception("Module " + m.name() + ": Problem processing the data.", e);
+			} finally {
+				// The module's feature computation is done; stop keeping its sentence indexes up to date:
+				UtteranceIndex.release(currentData.getDocument());
+				if (outData != null && outData != currentData) {
+					UtteranceIndex.release(outData.getDocument());
+				}
 			}
 
 			if (outData == null) {
@@ -560,11 +674,13 @@ public class Request {
 			currentData = outData;
 			long moduleStopTime = System.currentTimeMillis();
 			long delta = moduleStopTime - moduleStartTime;
-			Long soFar = timingInfo.get(m);
-			if (soFar != null)
-				timingInfo.put(m, new Long(soFar.longValue() + delta));
-			else
-				timingInfo.put(m, new Long(delta));
+			synchronized (timingInfo) {
+				Long soFar = timingInfo.get(m);
+				if (soFar != null)
+					timingInfo.put(m, new Long(soFar.longValue() + delta));
+				else
+					timingInfo.put(m, new Long(delta));
+			}
 			if (MaryRuntimeUtils.veryLowMemoryCondition()) {
 				logger.info("Very low memory condition detected (only " + MaryUtils.availableMemory()
 						+ " bytes left). Triggering garbage collection.");
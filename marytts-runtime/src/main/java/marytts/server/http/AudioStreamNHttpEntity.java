@@ -23,13 +23,27 @@ package marytts.server.http;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 
+import marytts.server.MaryProperties;
 import marytts.server.Request;
 import marytts.util.MaryUtils;
+import marytts.util.data.audio.AppendableSequenceAudioInputStream;
 
 import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.nio.ContentEncoder;
@@ -41,43 +55,433 @@ import org.apache.http.nio.util.SharedOutputBuffer;
 import org.apache.log4j.Logger;
 
 /**
+ * An entity streaming the audio of a request to the client while it is being synthesized.
+ * <p>
+ * For uncompressed AU and WAVE output, the audio is read and encoded into pooled direct buffers by short tasks on a small shared
+ * pool of reader threads, and handed to the I/O reactor through a short queue. Reading the audio may compute audio effects, so
+ * it is never done on a reactor thread: whenever the channel is writable, {@link #produceContent(ContentEncoder, IOControl)}
+ * only writes the buffers which are ready. If the channel cannot take more data, the remainder of the buffer is kept until the
+ * next writable event; if no buffer is ready, output is suspended until the next one is queued. A reader task never waits: it
+ * reads only the audio synthesized so far, and only while the queue has space, and then ends. It is scheduled again when more
+ * audio is appended, or when the reactor has taken a buffer from a full queue. So no thread is held by a stream that is waiting
+ * for synthesis or for a slow client.
+ * <p>
+ * Other audio types, such as MP3, are encoded by {@link AudioSystem#write(AudioInputStream, AudioFileFormat.Type, OutputStream)},
+ * which blocks; for these, {@link #requiresWriterThread()} returns true and the entity must be run by
+ * {@link #startWriterThread()}. Each such stream holds a writer thread until it is complete; streams beyond the maximum number of
+ * writer threads wait for one to become free.
+ * <p>
+ * The following properties are used:
+ * <ul>
+ * <li><code>server.http.streaming.buffersize</code>: the size of each pooled buffer, in bytes (default: 8192);</li>
+ * <li><code>server.http.streaming.maxidlebuffers</code>: the maximum number of idle buffers kept in the pool (default: 256);</li>
+ * <li><code>server.http.streaming.readerthreads</code>: the number of reader threads (default: the number of processors);</li>
+ * <li><code>server.http.streaming.writerthreads</code>: the maximum number of writer threads (default: 16).</li>
+ * </ul>
+ * 
  * @author marc
  * 
  */
 public class AudioStreamNHttpEntity extends AbstractHttpEntity implements ProducingNHttpEntity, Runnable {
+	/**
+	 * The maximum number of buffers written per writable event, so that a fast client cannot make one request monopolise an I/O
+	 * reactor thread.
+	 */
+	private static final int MAX_BUFFERS_PER_EVENT = 4;
+
+	/**
+	 * The maximum number of encoded buffers waiting to be written, per request.
+	 */
+	private static final int MAX_QUEUED_BUFFERS = 8;
+
+	private static DirectByteBufferPool bufferPool;
+	private static ExecutorService readerPool;
+	private static ExecutorService writerPool;
+
 	private Request maryRequest;
-	private AudioInputStream audio;
+	private AppendableSequenceAudioInputStream audio;
 	private AudioFileFormat.Type audioType;
 	private Logger logger;
+
+	// Incremental encoding, driven by the I/O reactor:
+	private final boolean incremental;
+	private DirectByteBufferPool pool;
+	private byte[] header;
+	private byte[] scratch;
+	private int bytesPerSample;
+	private boolean swapBytes;
+	private boolean flipSign;
+	private int signByteOffset;
+	private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<ByteBuffer>(MAX_QUEUED_BUFFERS);
+	private AppendableSequenceAudioInputStream source;
+	private Runnable reader;
+	private final AtomicInteger readRequests = new AtomicInteger();
+	private final AtomicBoolean waitingForSpace = new AtomicBoolean();
+	private boolean headerQueued; // reader task only
+	private ByteBuffer pending;
+	private boolean completed;
+	private volatile boolean endOfAudio;
+	private volatile IOException readFailure;
+	private volatile boolean finished;
+	private volatile IOControl ioControl;
+
+	// Writer thread, for audio types that cannot be encoded incrementally:
 	private Object mutex;
 	private SharedOutputBuffer out;
 
 	public AudioStreamNHttpEntity(Request maryRequest) {
+		this(maryRequest, maryRequest.getAudio(), maryRequest.getAudioFileFormat().getType(), getBufferPool());
+	}
+
+	AudioStreamNHttpEntity(Request maryRequest, AppendableSequenceAudioInputStream audio, AudioFileFormat.Type audioType,
+			DirectByteBufferPool pool) {
 		this.maryRequest = maryRequest;
-		this.audio = maryRequest.getAudio();
-		this.audioType = maryRequest.getAudioFileFormat().getType();
+		this.audio = audio;
+		this.audioType = audioType;
+		this.logger = MaryUtils.getLogger(maryRequest != null ? "AudioStream " + maryRequest.getId() : "AudioStream");
 		setContentType(MaryHttpServerUtils.getMimeType(audioType));
-		this.mutex = new Object();
+		this.incremental = canEncodeIncrementally(audioType, audio.getFormat());
+		if (incremental) {
+			this.pool = pool;
+			this.source = audio;
+			this.reader = new Runnable() {
+				public void run() {
+					readAudio();
+				}
+			};
+			initEncoding(audio.getFormat());
+		} else {
+			this.mutex = new Object();
+		}
+	}
+
+	/**
+	 * The buffer pool shared by all streaming audio entities, created on first use.
+	 */
+	private static synchronized DirectByteBufferPool getBufferPool() {
+		if (bufferPool == null) {
+			bufferPool = new DirectByteBufferPool(Math.max(256, MaryProperties.getInteger("server.http.streaming.buffersize",
+					8192)), MaryProperties.getInteger("server.http.streaming.maxidlebuffers", 256));
+		}
+		return bufferPool;
+	}
+
+	/**
+	 * The threads reading the audio of all incrementally encoded streams. Reader tasks never wait, so a few threads serve any
+	 * number of streams.
+	 */
+	private static synchronized ExecutorService getReaderPool() {
+		if (readerPool == null) {
+			readerPool = createPool("AudioStreamReader",
+					MaryProperties.getInteger("server.http.streaming.readerthreads", Runtime.getRuntime().availableProcessors()));
+		}
+		return readerPool;
+	}
+
+	/**
+	 * The threads writing the audio of streams which cannot be encoded incrementally, one per stream.
+	 */
+	private static synchronized ExecutorService getWriterPool() {
+		if (writerPool == null) {
+			writerPool = createPool("AudioStreamWriter", MaryProperties.getInteger("server.http.streaming.writerthreads", 16));
+		}
+		return writerPool;
+	}
+
+	private static ExecutorService createPool(final String name, int numThreads) {
+		int n = Math.max(1, numThreads);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(n, n, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Whether audio of the given format can be written as the given type without blocking, i.e. by this class rather than by
+	 * AudioSystem.
+	 * 
+	 * @param type
+	 *            the audio file format type
+	 * @param format
+	 *            the format of the audio data
+	 * @return true for linear PCM audio of 8, 16 or 24 bits to be sent as AU or WAVE.
+	 */
+	static boolean canEncodeIncrementally(AudioFileFormat.Type type, AudioFormat format) {
+		if (!AudioFileFormat.Type.AU.equals(type) && !AudioFileFormat.Type.WAVE.equals(type)) {
+			return false;
+		}
+		if (!AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding())
+				&& !AudioFormat.Encoding.PCM_UNSIGNED.equals(format.getEncoding())) {
+			return false;
+		}
+		int bits = format.getSampleSizeInBits();
+		return (bits == 8 || bits == 16 || bits == 24) && format.getFrameSize() == format.getChannels() * bits / 8;
+	}
+
+	/**
+	 * Whether this entity needs to be run in a thread of its own because the audio type cannot be encoded incrementally.
+	 * 
+	 * @return true if {@link #run()} must be called in a separate thread, false if the entity is driven by the I/O reactor alone.
+	 */
+	public boolean requiresWriterThread() {
+		return !incremental;
+	}
+
+	/**
+	 * Run this entity in one of the shared writer threads, for audio types that cannot be encoded incrementally.
+	 */
+	public void startWriterThread() {
+		if (incremental) {
+			throw new IllegalStateException("Audio is streamed by the I/O reactor, no writer thread is needed");
+		}
+		getWriterPool().execute(this);
+	}
+
+	/**
+	 * Prepare the file header for a stream of unknown length, and work out how samples must be converted to the byte order and
+	 * signedness of the target type.
+	 */
+	private void initEncoding(AudioFormat format) {
+		bytesPerSample = format.getSampleSizeInBits() / 8;
+		boolean sourceSigned = AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding());
+		boolean targetBigEndian;
+		boolean targetSigned;
+		ByteBuffer h;
+		if (AudioFileFormat.Type.AU.equals(audioType)) {
+			// Sun/NeXT audio: big endian signed linear PCM; encodings 2, 3, 4 are 8, 16, 24 bit
+			targetBigEndian = true;
+			targetSigned = true;
+			h = ByteBuffer.allocate(24).order(ByteOrder.BIG_ENDIAN);
+			h.putInt(0x2e736e64); // ".snd"
+			h.putInt(24); // data offset
+			h.putInt(0xffffffff); // data size unknown
+			h.putInt(bytesPerSample + 1);
+			h.putInt((int) format.getSampleRate());
+			h.putInt(format.getChannels());
+		} else {
+			// RIFF WAVE: little endian; 8 bit data is unsigned. Sizes are unknown while streaming.
+			targetBigEndian = false;
+			targetSigned = bytesPerSample > 1;
+			h = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+			h.put(new byte[] { 'R', 'I', 'F', 'F' });
+			h.putInt(0xffffffff);
+			h.put(new byte[] { 'W', 'A', 'V', 'E', 'f', 'm', 't', ' ' });
+			h.putInt(16);
+			h.putShort((short) 1); // PCM
+			h.putShort((short) format.getChannels());
+			h.putInt((int) format.getSampleRate());
+			h.putInt((int) format.getSampleRate() * format.getFrameSize());
+			h.putShort((short) format.getFrameSize());
+			h.putShort((short) format.getSampleSizeInBits());
+			h.put(new byte[] { 'd', 'a', 't', 'a' });
+			h.putInt(0xffffffff);
+		}
+		header = h.array();
+		swapBytes = bytesPerSample > 1 && format.isBigEndian() != targetBigEndian;
+		flipSign = sourceSigned != targetSigned;
+		signByteOffset = targetBigEndian ? 0 : bytesPerSample - 1;
+		int frameSize = format.getFrameSize();
+		scratch = new byte[pool.getBufferSize() / frameSize * frameSize];
 	}
 
 	public void finish() {
-		assert logger != null : "we should never be able to write if run() is not called";
+		if (incremental) {
+			finished = true;
+			source.setAppendListener(null);
+			if (pending != null) {
+				pool.release(pending);
+				pending = null;
+			}
+			releaseQueuedBuffers();
+			if (!completed && maryRequest != null) {
+				logger.info("Client seems to have disconnected before all audio was sent");
+				maryRequest.abort();
+			}
+		}
 		logger.info("Completed sending streaming audio");
 		maryRequest = null;
 		audio = null;
 		audioType = null;
-		logger = null;
 	}
 
 	public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
-		if (out == null) {
-			synchronized (mutex) {
-				out = new SharedOutputBuffer(8192, ioctrl, new HeapByteBufferAllocator());
-				mutex.notify();
+		if (!incremental) {
+			if (out == null) {
+				synchronized (mutex) {
+					out = new SharedOutputBuffer(8192, ioctrl, new HeapByteBufferAllocator());
+					mutex.notify();
+				}
 			}
-		}
-		while (!encoder.isCompleted())
+			// Writes what the writer thread has buffered; output is suspended when the buffer is empty, and requested again
+			// by the writer thread when it writes more.
 			out.produceContent(encoder);
+			return;
+		}
+		if (completed) {
+			return;
+		}
+		if (ioControl == null) {
+			ioControl = ioctrl;
+			source.setAppendListener(new Runnable() {
+				public void run() {
+					scheduleReader();
+				}
+			});
+			scheduleReader();
+		}
+		for (int i = 0; i < MAX_BUFFERS_PER_EVENT; i++) {
+			if (pending == null) {
+				boolean ended = endOfAudio; // read before polling, so that no buffer queued before the end is missed
+				pending = filled.poll();
+				if (pending != null && waitingForSpace.compareAndSet(true, false)) {
+					scheduleReader(); // the reader stopped at a full queue
+				}
+				if (pending == null) {
+					if (ended) {
+						if (readFailure != null) {
+							throw new IOException("Cannot read audio", readFailure);
+						}
+						encoder.complete();
+						completed = true;
+						logger.info("Finished writing output");
+					} else {
+						// Nothing to send until the reader queues the next buffer, which resumes output.
+						ioctrl.suspendOutput();
+						if (!filled.isEmpty() || endOfAudio) {
+							ioctrl.requestOutput();
+						}
+					}
+					return;
+				}
+			}
+			encoder.write(pending);
+			if (pending.hasRemaining()) {
+				return; // channel is full; continue when it becomes writable again
+			}
+			pool.release(pending);
+			pending = null;
+		}
+	}
+
+	/**
+	 * Make sure that a reader task runs after this call. Requests arriving while a task runs make it read once more rather than
+	 * starting another task, so at most one task per stream runs at a time.
+	 */
+	private void scheduleReader() {
+		if (readRequests.getAndIncrement() == 0) {
+			getReaderPool().execute(reader);
+		}
+	}
+
+	/**
+	 * The reader task: read and encode the audio available so far, until no more is available or the queue is full.
+	 */
+	private void readAudio() {
+		int seen = readRequests.get();
+		while (true) {
+			readAvailableAudio();
+			if (readRequests.compareAndSet(seen, 0)) {
+				return;
+			}
+			seen = readRequests.get();
+		}
+	}
+
+	/**
+	 * Queue buffers of the audio synthesized so far, without waiting. The file header is queued first, so that the client gets a
+	 * response before the first audio is synthesized.
+	 */
+	private void readAvailableAudio() {
+		if (endOfAudio) {
+			return;
+		}
+		try {
+			if (!headerQueued) {
+				ByteBuffer buf = pool.acquire();
+				buf.put(header);
+				enqueue(buf);
+				headerQueued = true;
+			}
+			while (!finished) {
+				if (filled.remainingCapacity() == 0) {
+					// The reactor schedules us again when it takes a buffer, unless it has done so before it saw this flag:
+					waitingForSpace.set(true);
+					if (filled.remainingCapacity() == 0 || !waitingForSpace.compareAndSet(true, false)) {
+						return;
+					}
+				}
+				int nRead = source.readAvailable(scratch, 0, scratch.length);
+				if (nRead == 0) {
+					return; // appending more audio schedules us again
+				} else if (nRead == -1) {
+					endOfAudio(null);
+					return;
+				}
+				convert(scratch, nRead);
+				ByteBuffer buf = pool.acquire();
+				buf.put(scratch, 0, nRead);
+				enqueue(buf);
+			}
+		} catch (IOException e) {
+			endOfAudio(e);
+		} catch (RuntimeException e) {
+			endOfAudio(new IOException("Cannot read audio", e));
+		} finally {
+			if (finished) {
+				releaseQueuedBuffers();
+			}
+		}
+	}
+
+	private void endOfAudio(IOException failure) {
+		readFailure = failure;
+		endOfAudio = true;
+		ioControl.requestOutput();
+	}
+
+	/**
+	 * Queue a filled buffer for the I/O reactor. Only the reader task queues buffers, and only when the queue has space.
+	 */
+	private void enqueue(ByteBuffer buf) {
+		buf.flip();
+		boolean queued = filled.offer(buf);
+		assert queued;
+		ioControl.requestOutput();
+	}
+
+	private void releaseQueuedBuffers() {
+		ByteBuffer buf;
+		while ((buf = filled.poll()) != null) {
+			pool.release(buf);
+		}
+	}
+
+	/**
+	 * Convert samples in place to the byte order and signedness of the target type.
+	 */
+	private void convert(byte[] data, int len) {
+		if (swapBytes) {
+			for (int i = 0; i + bytesPerSample <= len; i += bytesPerSample) {
+				for (int lo = i, hi = i + bytesPerSample - 1; lo < hi; lo++, hi--) {
+					byte tmp = data[lo];
+					data[lo] = data[hi];
+					data[hi] = tmp;
+				}
+			}
+		}
+		if (flipSign) {
+			for (int i = signByteOffset; i < len; i += bytesPerSample) {
+				data[i] ^= (byte) 0x80;
+			}
+		}
 	}
 
 	public long getContentLength() {
@@ -101,10 +505,13 @@ public class AudioStreamNHttpEntity extends AbstractHttpEntity implements Produc
 	}
 
 	/**
-	 * Wait for the SharedOutputBuffer to become available, write audio data to it.
+	 * For audio types that cannot be encoded incrementally: wait for the SharedOutputBuffer to become available, write audio data
+	 * to it.
 	 */
 	public void run() {
-		this.logger = MaryUtils.getLogger(Thread.currentThread().getName());
+		if (incremental) {
+			throw new IllegalStateException("Audio is streamed by the I/O reactor, no writer thread is needed");
+		}
 		// We must wait until produceContent() is called:
 		while (out == null) {
 			synchronized (mutex) {
@@ -19,10 +19,7 @@
  */
 package marytts.server.http;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.channels.FileChannel;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -52,19 +49,15 @@ import marytts.util.string.StringUtils;
 import marytts.vocalizations.VocalizationSynthesizer;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.MethodNotSupportedException;
-import org.apache.http.nio.ContentDecoder;
-import org.apache.http.nio.ContentDecoderChannel;
-import org.apache.http.nio.FileContentDecoder;
-import org.apache.http.nio.IOControl;
 import org.apache.http.nio.entity.ConsumingNHttpEntity;
-import org.apache.http.nio.entity.ConsumingNHttpEntityTemplate;
-import org.apache.http.nio.entity.ContentListener;
-import org.apache.http.nio.protocol.SimpleNHttpRequestHandler;
+import org.apache.http.nio.protocol.NHttpRequestHandler;
+import org.apache.http.nio.protocol.NHttpResponseTrigger;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpRequestHandler;
 import org.apache.http.util.EntityUtils;
@@ -75,18 +68,29 @@ import org.apache.log4j.Logger;
  * 
  * @author Oytun T&uuml;rk, Marc Schröder
  */
-public abstract class BaseHttpRequestHandler extends SimpleNHttpRequestHandler implements HttpRequestHandler {
-	private final boolean useFileChannels = true;
-
+public abstract class BaseHttpRequestHandler implements NHttpRequestHandler, HttpRequestHandler {
 	protected static Logger logger;
 	private int runningNumber = 1;
 	private Map<String, Object[]> requestMap;
+	private int maxRequestSize;
 
 	public BaseHttpRequestHandler() {
 		super();
 		logger = MaryUtils.getLogger("server");
 		requestMap = Collections.synchronizedMap(new HashMap<String, Object[]>());
+		maxRequestSize = MaryProperties.getInteger("server.http.maxrequestsize", 1048576);
+
+	}
 
+	/**
+	 * The entry point of the non-blocking http server. By default, the request is handled immediately on the calling I/O
+	 * thread and the response is submitted when {@link #handle(HttpRequest, HttpResponse, HttpContext)} returns; subclasses
+	 * doing expensive work should override this and submit the response via the trigger when ready.
+	 */
+	public void handle(final HttpRequest request, final HttpResponse response, final NHttpResponseTrigger trigger,
+			final HttpContext context) throws HttpException, IOException {
+		handle(request, response, context);
+		trigger.submitResponse(response);
 	}
 
 	/**
@@ -103,6 +107,13 @@ public abstract class BaseHttpRequestHandler extends SimpleNHttpRequestHandler i
 			if (!(method.equals("GET") || method.equals("POST"))) {
 				throw new MethodNotSupportedException(method + " method not supported");
 			}
+			if (request instanceof HttpEntityEnclosingRequest) {
+				HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+				if (entity instanceof LimitedBufferingNHttpEntity && ((LimitedBufferingNHttpEntity) entity).isTooLarge()) {
+					MaryHttpServerUtils.errorRequestEntityTooLarge(response, ((LimitedBufferingNHttpEntity) entity).getMaxLength());
+					return;
+				}
+			}
 
 			String absPath = null;
 			String query = null;
@@ -155,47 +166,14 @@ public abstract class BaseHttpRequestHandler extends SimpleNHttpRequestHandler i
 		return new Address(fullAddress);
 	}
 
+	/**
+	 * Request bodies (of POST requests) are buffered in memory, so that they can be read in full by
+	 * {@link #handle(HttpRequest, HttpResponse, HttpContext)}. Bodies longer than <code>server.http.maxrequestsize</code> bytes
+	 * are discarded while they are received and answered with "413 Request Entity Too Large".
+	 */
 	public ConsumingNHttpEntity entityRequest(final HttpEntityEnclosingRequest request, final HttpContext context)
 			throws HttpException, IOException {
-		return new ConsumingNHttpEntityTemplate(request.getEntity(), new FileWriteListener(useFileChannels));
-	}
-
-	static class FileWriteListener implements ContentListener {
-		private final File file;
-		private final FileInputStream inputFile;
-		private final FileChannel fileChannel;
-		private final boolean useFileChannels;
-		private long idx = 0;
-
-		public FileWriteListener(boolean useFileChannels) throws IOException {
-			this.file = File.createTempFile("tmp", ".tmp", null);
-			this.inputFile = new FileInputStream(file);
-			this.fileChannel = inputFile.getChannel();
-			this.useFileChannels = useFileChannels;
-		}
-
-		public void contentAvailable(ContentDecoder decoder, IOControl ioctrl) throws IOException {
-			long transferred;
-			if (useFileChannels && decoder instanceof FileContentDecoder) {
-				transferred = ((FileContentDecoder) decoder).transfer(fileChannel, idx, Long.MAX_VALUE);
-			} else {
-				transferred = fileChannel.transferFrom(new ContentDecoderChannel(decoder), idx, Long.MAX_VALUE);
-			}
-
-			if (transferred > 0)
-				idx += transferred;
-		}
-
-		public void finished() {
-			try {
-				inputFile.close();
-			} catch (IOException ignored) {
-			}
-			try {
-				fileChannel.close();
-			} catch (IOException ignored) {
-			}
-		}
+		return new LimitedBufferingNHttpEntity(request.getEntity(), maxRequestSize);
 	}
 
 }
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.http;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct byte buffers of a fixed size, shared by the streaming audio entities of the {@link MaryHttpServer}. Direct
+ * buffers are expensive to allocate and are written to the network channel without an intermediate copy, so they are recycled
+ * rather than garbage collected. At most a configured number of idle buffers is kept; further released buffers are dropped.
+ */
+public class DirectByteBufferPool {
+	private final int bufferSize;
+	private final int maxIdle;
+	private final ConcurrentLinkedQueue<ByteBuffer> idle = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final AtomicInteger numIdle = new AtomicInteger();
+	private final AtomicInteger numAllocated = new AtomicInteger();
+
+	/**
+	 * Create a buffer pool.
+	 * 
+	 * @param bufferSize
+	 *            the capacity of each buffer, in bytes; must be positive
+	 * @param maxIdle
+	 *            the maximum number of idle buffers to keep
+	 */
+	public DirectByteBufferPool(int bufferSize, int maxIdle) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer size must be positive, but is " + bufferSize);
+		}
+		this.bufferSize = bufferSize;
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Get a cleared buffer from the pool, allocating a new one if no idle buffer is available.
+	 * 
+	 * @return a direct buffer with position 0 and limit equal to its capacity
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buf = idle.poll();
+		if (buf == null) {
+			numAllocated.incrementAndGet();
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		numIdle.decrementAndGet();
+		buf.clear();
+		return buf;
+	}
+
+	/**
+	 * Return a buffer to the pool. The caller must not use the buffer afterwards.
+	 * 
+	 * @param buf
+	 *            a buffer obtained from {@link #acquire()}, or null
+	 */
+	public void release(ByteBuffer buf) {
+		if (buf == null || buf.capacity() != bufferSize) {
+			return;
+		}
+		if (numIdle.incrementAndGet() > maxIdle) {
+			numIdle.decrementAndGet();
+			return;
+		}
+		idle.offer(buf);
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @return the number of buffers currently idle in the pool
+	 */
+	public int getNumIdle() {
+		return numIdle.get();
+	}
+
+	/**
+	 * @return the total number of buffers allocated by this pool so far
+	 */
+	public int getNumAllocated() {
+		return numAllocated.get();
+	}
+}
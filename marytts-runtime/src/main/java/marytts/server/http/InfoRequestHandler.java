@@ -27,6 +27,8 @@ import java.util.Map;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureRegistry;
 import marytts.modules.synthesis.Voice;
+import marytts.modules.synthesis.VoiceDataManager;
+import marytts.server.Mary;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
 import marytts.util.http.Address;
@@ -41,9 +43,19 @@ import org.apache.http.nio.entity.NStringEntity;
  * @author Oytun T&uuml;rk, Marc Schr&ouml;der
  */
 public class InfoRequestHandler extends BaseHttpRequestHandler {
+	private SynthesisExecutor synthesisExecutor;
 
 	public InfoRequestHandler() {
+		this(null);
+	}
+
+	/**
+	 * @param synthesisExecutor
+	 *            the executor whose statistics to report for "synthesisstatistics" requests, or null.
+	 */
+	public InfoRequestHandler(SynthesisExecutor synthesisExecutor) {
 		super();
+		this.synthesisExecutor = synthesisExecutor;
 	}
 
 	@Override
@@ -75,6 +87,13 @@ public class InfoRequestHandler extends BaseHttpRequestHandler {
 		assert absPath.startsWith("/") : "Absolute path '" + absPath + "' does not start with a slash!";
 		String request = absPath.substring(1); // without the initial slash
 
+		// Answer health checks and version requests also while the system is starting up:
+		if (Mary.currentState() != Mary.STATE_RUNNING && !request.equals("version")) {
+			int retryAfter = synthesisExecutor != null ? synthesisExecutor.getRetryAfterSeconds() : 5;
+			MaryHttpServerUtils.errorServiceUnavailable(response, "MARY is " + Mary.getStartupProgress(), retryAfter);
+			return null;
+		}
+
 		if (request.equals("version"))
 			return MaryRuntimeUtils.getMaryVersion();
 		else if (request.equals("datatypes"))
@@ -208,6 +227,12 @@ public class InfoRequestHandler extends BaseHttpRequestHandler {
 			}
 			MaryHttpServerUtils.errorMissingQueryParameter(response, "'voice'");
 			return null;
+		} else if (request.equals("synthesisstatistics") && synthesisExecutor != null) {
+			return synthesisExecutor.getStatistics();
+		} else if (request.equals("voicestatistics")) {
+			return VoiceDataManager.getStatistics();
+		} else if (request.equals("ready")) {
+			return Mary.getStartupProgress();
 		}
 		MaryHttpServerUtils.errorFileNotFound(response, request);
 		return null;
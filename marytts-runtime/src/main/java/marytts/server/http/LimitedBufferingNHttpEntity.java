@@ -0,0 +1,150 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ConsumingNHttpEntity;
+import org.apache.http.nio.entity.ContentInputStream;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SimpleInputBuffer;
+
+/**
+ * Like {@link org.apache.http.nio.entity.BufferingNHttpEntity}, buffers a request body in memory, but only up to a maximum
+ * number of bytes. Once a body turns out to be longer, either from its Content-Length header or while it is being received, the
+ * buffered content is dropped and the rest of the body is read and discarded, so that the connection stays usable for the
+ * response. The request handler checks {@link #isTooLarge()} and answers with "413 Request Entity Too Large".
+ */
+class LimitedBufferingNHttpEntity extends HttpEntityWrapper implements ConsumingNHttpEntity {
+	private static final int BUFFER_SIZE = 2048;
+
+	private final long maxLength;
+	private SimpleInputBuffer buffer;
+	private ByteBuffer skipBuffer;
+	private long length;
+	private boolean tooLarge;
+	private boolean finished;
+
+	/**
+	 * @param entity
+	 *            the entity of the request, as received so far
+	 * @param maxLength
+	 *            the maximum number of bytes to buffer
+	 */
+	LimitedBufferingNHttpEntity(HttpEntity entity, long maxLength) {
+		super(entity);
+		this.maxLength = maxLength;
+		if (entity.getContentLength() > maxLength) {
+			tooLarge = true;
+		} else {
+			buffer = new SimpleInputBuffer(BUFFER_SIZE, new HeapByteBufferAllocator());
+		}
+	}
+
+	public void consumeContent(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+		if (!tooLarge) {
+			int n = buffer.consumeContent(decoder);
+			if (n > 0) {
+				length += n;
+			}
+			if (length > maxLength) {
+				tooLarge = true;
+				buffer.shutdown();
+				buffer = null;
+			}
+		}
+		if (tooLarge) {
+			if (skipBuffer == null) {
+				skipBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+			}
+			int n;
+			do {
+				skipBuffer.clear();
+				n = decoder.read(skipBuffer);
+			} while (n > 0);
+		}
+		if (decoder.isCompleted()) {
+			finished = true;
+		}
+	}
+
+	public void finish() {
+		finished = true;
+	}
+
+	/**
+	 * Whether the body was longer than the maximum length; its content is then not available.
+	 * 
+	 * @return true if the body was too long
+	 */
+	public boolean isTooLarge() {
+		return tooLarge;
+	}
+
+	/**
+	 * The maximum number of bytes buffered.
+	 * 
+	 * @return maxLength
+	 */
+	public long getMaxLength() {
+		return maxLength;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		if (tooLarge) {
+			throw new IOException("Request body exceeds " + maxLength + " bytes");
+		}
+		if (!finished) {
+			throw new IllegalStateException("Entity content has not been fully received");
+		}
+		return new ContentInputStream(buffer);
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return false;
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return true;
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		if (out == null) {
+			throw new IllegalArgumentException("Output stream may not be null");
+		}
+		InputStream in = getContent();
+		byte[] tmp = new byte[BUFFER_SIZE];
+		int n;
+		while ((n = in.read(tmp)) != -1) {
+			out.write(tmp, 0, n);
+		}
+	}
+}
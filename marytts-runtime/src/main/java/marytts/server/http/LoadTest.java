@@ -0,0 +1,663 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.http;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import marytts.server.Mary;
+import marytts.server.MaryProperties;
+import marytts.util.LatencyStatistics;
+
+/**
+ * A load test and latency benchmark for the {@link MaryHttpServer}. A corpus of requests is replayed against the server, either
+ * with a fixed number of requests in flight (closed loop) or at a fixed request rate (open loop). The report covers the
+ * throughput, the number of errors, and the distribution of request latencies and of the time to the first byte of the
+ * response. For streaming AU and WAVE audio, the server sends the file header before any audio is synthesized, so the time to the
+ * first byte of audio data after the header, which is the time until the client can start playing, is reported as well.
+ * <p>
+ * Usage: <code>java -Dloadtest.concurrency=8 marytts.server.http.LoadTest corpus.txt</code>
+ * <p>
+ * Each line of the corpus is either a text, to be sent with the default request parameters, or six tab-separated fields
+ * <code>INPUT_TYPE OUTPUT_TYPE LOCALE VOICE AUDIO text</code>, where "-" stands for the default of a field. Empty lines and lines
+ * starting with "#" are ignored. The requests are sent in corpus order, starting again from the top if more requests than lines
+ * are requested.
+ * <p>
+ * The following system properties are used:
+ * <ul>
+ * <li><code>loadtest.host</code>, <code>loadtest.port</code>: the server to test (default: localhost, port 59125);</li>
+ * <li><code>loadtest.inprocess</code>: if true, start a MARY server in this JVM on port <code>socket.port</code> and test that
+ * (default: false);</li>
+ * <li><code>loadtest.concurrency</code>: the number of requests in flight (default: 4);</li>
+ * <li><code>loadtest.rate</code>: if positive, send this many requests per second regardless of the response times, with up to
+ * <code>loadtest.concurrency</code> connections; latencies are then measured from the scheduled send time (default: 0);</li>
+ * <li><code>loadtest.requests</code>: the number of requests to measure (default: the number of corpus lines);</li>
+ * <li><code>loadtest.warmup</code>: the number of requests to send before measuring (default: 0);</li>
+ * <li><code>loadtest.timeout</code>: the read timeout per request in milliseconds (default: 60000);</li>
+ * <li><code>loadtest.input.type</code>, <code>loadtest.output.type</code>, <code>loadtest.locale</code>,
+ * <code>loadtest.voice</code>, <code>loadtest.audio</code>: the default request parameters (default: TEXT, AUDIO, en_US, none,
+ * WAVE_FILE);</li>
+ * <li><code>loadtest.max.p99</code>: if set, the test fails when the 99th percentile latency in milliseconds exceeds this value.
+ * </li>
+ * </ul>
+ * The program exits with status 1 if any request failed or the latency limit was exceeded, so that it can be used in regression
+ * runs.
+ */
+public class LoadTest {
+
+	/**
+	 * One request of the corpus.
+	 */
+	public static class RequestSpec {
+		final String inputType;
+		final String outputType;
+		final String locale;
+		final String voice;
+		final String audio;
+		final String text;
+
+		public RequestSpec(String inputType, String outputType, String locale, String voice, String audio, String text) {
+			this.inputType = inputType;
+			this.outputType = outputType;
+			this.locale = locale;
+			this.voice = voice;
+			this.audio = audio;
+			this.text = text;
+		}
+
+		/**
+		 * A label identifying the kind of request, under which its latencies are reported.
+		 */
+		public String getLabel() {
+			StringBuilder label = new StringBuilder();
+			label.append(inputType).append("->").append(outputType);
+			if (audio != null && outputType.equals("AUDIO")) {
+				label.append(" ").append(audio);
+			}
+			if (voice != null) {
+				label.append(" ").append(voice);
+			}
+			return label.toString();
+		}
+
+		public boolean isStreaming() {
+			return audio != null && audio.endsWith("_STREAM");
+		}
+
+		String toRequestBody() throws IOException {
+			StringBuilder params = new StringBuilder();
+			params.append("INPUT_TEXT=").append(URLEncoder.encode(text, "UTF-8"));
+			params.append("&INPUT_TYPE=").append(URLEncoder.encode(inputType, "UTF-8"));
+			params.append("&OUTPUT_TYPE=").append(URLEncoder.encode(outputType, "UTF-8"));
+			if (locale != null) {
+				params.append("&LOCALE=").append(URLEncoder.encode(locale, "UTF-8"));
+			}
+			if (audio != null) {
+				params.append("&AUDIO=").append(URLEncoder.encode(audio, "UTF-8"));
+			}
+			if (voice != null) {
+				params.append("&VOICE=").append(URLEncoder.encode(voice, "UTF-8"));
+			}
+			return params.toString();
+		}
+	}
+
+	/**
+	 * The measurements of a load test.
+	 */
+	public static class Results {
+		private final LatencyStatistics latency = new LatencyStatistics();
+		private final LatencyStatistics firstByte = new LatencyStatistics();
+		private final LatencyStatistics streamingFirstByte = new LatencyStatistics();
+		private final LatencyStatistics streamingFirstAudio = new LatencyStatistics();
+		private final SortedMap<String, LatencyStatistics> latencyByLabel = Collections
+				.synchronizedSortedMap(new TreeMap<String, LatencyStatistics>());
+		private final SortedMap<Integer, AtomicInteger> errorsByStatus = Collections
+				.synchronizedSortedMap(new TreeMap<Integer, AtomicInteger>());
+		private final AtomicInteger numRequests = new AtomicInteger();
+		private final AtomicInteger numErrors = new AtomicInteger();
+		private final AtomicLong numBytes = new AtomicLong();
+		private long elapsedMillis;
+
+		/**
+		 * @param firstAudioMillis
+		 *            the time until the first audio data after the file header, or -1 if not known
+		 */
+		void recordSuccess(RequestSpec spec, long latencyMillis, long firstByteMillis, long firstAudioMillis, long bytes) {
+			numRequests.incrementAndGet();
+			numBytes.addAndGet(bytes);
+			latency.add(latencyMillis);
+			firstByte.add(firstByteMillis);
+			if (spec.isStreaming()) {
+				streamingFirstByte.add(firstByteMillis);
+				if (firstAudioMillis >= 0) {
+					streamingFirstAudio.add(firstAudioMillis);
+				}
+			}
+			LatencyStatistics forLabel;
+			synchronized (latencyByLabel) {
+				forLabel = latencyByLabel.get(spec.getLabel());
+				if (forLabel == null) {
+					forLabel = new LatencyStatistics();
+					latencyByLabel.put(spec.getLabel(), forLabel);
+				}
+			}
+			forLabel.add(latencyMillis);
+		}
+
+		/**
+		 * @param status
+		 *            the HTTP status code, or -1 if no response was received
+		 */
+		void recordError(int status) {
+			numRequests.incrementAndGet();
+			numErrors.incrementAndGet();
+			synchronized (errorsByStatus) {
+				AtomicInteger count = errorsByStatus.get(status);
+				if (count == null) {
+					count = new AtomicInteger();
+					errorsByStatus.put(status, count);
+				}
+				count.incrementAndGet();
+			}
+		}
+
+		public int getNumRequests() {
+			return numRequests.get();
+		}
+
+		public int getNumErrors() {
+			return numErrors.get();
+		}
+
+		public long getNumBytes() {
+			return numBytes.get();
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		/**
+		 * @return the number of requests completed per second
+		 */
+		public double getThroughput() {
+			return elapsedMillis > 0 ? 1000. * numRequests.get() / elapsedMillis : 0;
+		}
+
+		/**
+		 * @return the latencies of successful requests, in milliseconds
+		 */
+		public LatencyStatistics getLatency() {
+			return latency;
+		}
+
+		/**
+		 * @return the times until the first byte of the response body was received, in milliseconds
+		 */
+		public LatencyStatistics getFirstByte() {
+			return firstByte;
+		}
+
+		/**
+		 * @return the times until the first byte of streaming audio, usually the file header, was received, in milliseconds
+		 */
+		public LatencyStatistics getStreamingFirstByte() {
+			return streamingFirstByte;
+		}
+
+		/**
+		 * @return the times until the first audio data after the file header of streaming AU or WAVE audio were received, in
+		 *         milliseconds
+		 */
+		public LatencyStatistics getStreamingFirstAudio() {
+			return streamingFirstAudio;
+		}
+
+		public Map<Integer, AtomicInteger> getErrorsByStatus() {
+			return errorsByStatus;
+		}
+
+		/**
+		 * A human-readable report. The first line is a summary in a fixed format which can be compared across runs.
+		 */
+		public String report() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format(Locale.US,
+					"requests=%d errors=%d elapsed=%.1fs throughput=%.2f/s bytes=%d p50=%d p95=%d p99=%d", getNumRequests(),
+					getNumErrors(), elapsedMillis / 1000., getThroughput(), getNumBytes(), latency.getPercentile(50),
+					latency.getPercentile(95), latency.getPercentile(99)));
+			sb.append("\n");
+			sb.append("Latency (ms):             ").append(latency).append("\n");
+			sb.append("First byte (ms):          ").append(firstByte).append("\n");
+			if (streamingFirstByte.getCount() > 0) {
+				sb.append("Streaming first byte (ms): ").append(streamingFirstByte).append("\n");
+			}
+			if (streamingFirstAudio.getCount() > 0) {
+				sb.append("Streaming first audio (ms): ").append(streamingFirstAudio).append("\n");
+			}
+			synchronized (latencyByLabel) {
+				for (Map.Entry<String, LatencyStatistics> e : latencyByLabel.entrySet()) {
+					sb.append("  ").append(e.getKey()).append(": ").append(e.getValue()).append("\n");
+				}
+			}
+			synchronized (errorsByStatus) {
+				for (Map.Entry<Integer, AtomicInteger> e : errorsByStatus.entrySet()) {
+					sb.append("Errors with status ").append(e.getKey() == -1 ? "(no response)" : e.getKey()).append(": ")
+							.append(e.getValue()).append("\n");
+				}
+			}
+			return sb.toString();
+		}
+	}
+
+	private final String serverUrl;
+	private final List<RequestSpec> corpus;
+	private int concurrency = 4;
+	private double requestRate = 0;
+	private int numRequests;
+	private int numWarmupRequests = 0;
+	private int timeoutMillis = 60000;
+
+	/**
+	 * Create a load test.
+	 * 
+	 * @param host
+	 *            the host of the server
+	 * @param port
+	 *            the port of the server
+	 * @param corpus
+	 *            the requests to send; must not be empty
+	 */
+	public LoadTest(String host, int port, List<RequestSpec> corpus) {
+		if (corpus.isEmpty()) {
+			throw new IllegalArgumentException("Corpus is empty");
+		}
+		this.serverUrl = "http://" + host + ":" + port;
+		this.corpus = corpus;
+		this.numRequests = corpus.size();
+	}
+
+	public void setConcurrency(int concurrency) {
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("Concurrency must be positive, but is " + concurrency);
+		}
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Send requests at a fixed rate instead of keeping a fixed number of requests in flight.
+	 * 
+	 * @param requestsPerSecond
+	 *            the request rate, or 0 for closed-loop operation
+	 */
+	public void setRequestRate(double requestsPerSecond) {
+		this.requestRate = requestsPerSecond;
+	}
+
+	public void setNumRequests(int numRequests) {
+		this.numRequests = numRequests;
+	}
+
+	public void setNumWarmupRequests(int numWarmupRequests) {
+		this.numWarmupRequests = numWarmupRequests;
+	}
+
+	public void setTimeoutMillis(int timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Run the warm-up requests, if any, and then the measured requests.
+	 * 
+	 * @return the measurements of the measured requests
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the requests to complete
+	 */
+	public Results run() throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+		try {
+			if (numWarmupRequests > 0) {
+				sendRequests(pool, 0, numWarmupRequests, 0, new Results());
+			}
+			Results results = new Results();
+			long start = System.nanoTime();
+			sendRequests(pool, numWarmupRequests, numRequests, requestRate, results);
+			results.elapsedMillis = (System.nanoTime() - start) / 1000000;
+			return results;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private void sendRequests(ExecutorService pool, int first, int count, double rate, final Results results)
+			throws InterruptedException {
+		// In closed-loop mode, the semaphore keeps exactly "concurrency" requests in flight. In open-loop mode, requests
+		// queue up in the pool if the server falls behind, and their latency includes the time spent waiting.
+		final boolean openLoop = rate > 0;
+		final Semaphore inFlight = openLoop ? null : new Semaphore(concurrency);
+		final Semaphore done = new Semaphore(0);
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			final RequestSpec spec = corpus.get((first + i) % corpus.size());
+			final long scheduled;
+			if (openLoop) {
+				scheduled = start + (long) (i * 1e9 / rate);
+				long wait = scheduled - System.nanoTime();
+				if (wait > 0) {
+					TimeUnit.NANOSECONDS.sleep(wait);
+				}
+			} else {
+				inFlight.acquire();
+				scheduled = 0; // not used: latency is measured from the actual send time
+			}
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						execute(spec, openLoop ? scheduled : System.nanoTime(), results);
+					} finally {
+						if (inFlight != null) {
+							inFlight.release();
+						}
+						done.release();
+					}
+				}
+			});
+		}
+		done.acquire(count);
+	}
+
+	/**
+	 * Send one request and record its outcome.
+	 * 
+	 * @param startNanos
+	 *            the time from which to measure latency
+	 */
+	void execute(RequestSpec spec, long startNanos, Results results) {
+		HttpURLConnection conn = null;
+		try {
+			byte[] body = spec.toRequestBody().getBytes("UTF-8");
+			conn = (HttpURLConnection) new URL(serverUrl + "/process").openConnection();
+			conn.setRequestMethod("POST");
+			conn.setDoOutput(true);
+			conn.setReadTimeout(timeoutMillis);
+			conn.setRequestProperty("Content-type", "application/x-www-form-urlencoded");
+			conn.setFixedLengthStreamingMode(body.length);
+			OutputStream out = conn.getOutputStream();
+			out.write(body);
+			out.close();
+			int status = conn.getResponseCode();
+			if (status != HttpURLConnection.HTTP_OK) {
+				drain(conn.getErrorStream());
+				results.recordError(status);
+				return;
+			}
+			InputStream in = conn.getInputStream();
+			AudioDataLocator audioData = spec.isStreaming() ? AudioDataLocator.forType(spec.audio) : null;
+			byte[] buf = new byte[8192];
+			long firstByteNanos = 0;
+			long firstAudioNanos = 0;
+			long bytes = 0;
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				if (n > 0 && firstByteNanos == 0) {
+					firstByteNanos = System.nanoTime();
+				}
+				if (audioData != null && firstAudioNanos == 0 && audioData.containsAudio(buf, n)) {
+					firstAudioNanos = System.nanoTime();
+				}
+				bytes += n;
+			}
+			in.close();
+			long endNanos = System.nanoTime();
+			if (firstByteNanos == 0) {
+				firstByteNanos = endNanos;
+			}
+			long firstAudioMillis = firstAudioNanos != 0 ? (firstAudioNanos - startNanos) / 1000000 : -1;
+			results.recordSuccess(spec, (endNanos - startNanos) / 1000000, (firstByteNanos - startNanos) / 1000000,
+					firstAudioMillis, bytes);
+		} catch (IOException e) {
+			if (conn != null) {
+				try {
+					drain(conn.getErrorStream());
+				} catch (IOException ignored) {
+				}
+			}
+			results.recordError(-1);
+		}
+	}
+
+	/**
+	 * Finds where the audio data begin in a streamed AU or WAVE file, from the data offset in bytes 4-7 of an AU header, or from
+	 * the position of the "data" chunk in a WAVE file.
+	 */
+	static class AudioDataLocator {
+		/**
+		 * Headers longer than this are not parsed; the audio is then taken to start right after them.
+		 */
+		private static final int MAX_HEADER = 65536;
+
+		private final boolean au;
+		private byte[] header = new byte[64];
+		private int headerLength;
+		private long dataOffset = -1;
+		private long received;
+
+		private AudioDataLocator(boolean au) {
+			this.au = au;
+		}
+
+		/**
+		 * @param audio
+		 *            the audio type of the request, such as AU_STREAM
+		 * @return a locator, or null if the audio type has no header we know how to skip.
+		 */
+		static AudioDataLocator forType(String audio) {
+			if (audio.startsWith("AU")) {
+				return new AudioDataLocator(true);
+			} else if (audio.startsWith("WAVE")) {
+				return new AudioDataLocator(false);
+			}
+			return null;
+		}
+
+		/**
+		 * Look at the next bytes of the response.
+		 * 
+		 * @return true if the data received so far, including the given bytes, extend beyond the header.
+		 */
+		boolean containsAudio(byte[] buf, int len) {
+			received += len;
+			if (dataOffset < 0) {
+				int toCopy = Math.min(len, MAX_HEADER - headerLength);
+				if (headerLength + toCopy > header.length) {
+					byte[] larger = new byte[Math.max(2 * header.length, headerLength + toCopy)];
+					System.arraycopy(header, 0, larger, 0, headerLength);
+					header = larger;
+				}
+				System.arraycopy(buf, 0, header, headerLength, toCopy);
+				headerLength += toCopy;
+				dataOffset = au ? findAuData() : findWaveData();
+				if (dataOffset < 0 && headerLength == MAX_HEADER) {
+					dataOffset = MAX_HEADER;
+				}
+			}
+			return dataOffset >= 0 && received > dataOffset;
+		}
+
+		private long findAuData() {
+			if (headerLength < 8) {
+				return -1;
+			}
+			if (header[0] != '.' || header[1] != 's' || header[2] != 'n' || header[3] != 'd') {
+				return 0;
+			}
+			return readInt(4, true) & 0xffffffffL;
+		}
+
+		private long findWaveData() {
+			if (headerLength < 12) {
+				return -1;
+			}
+			if (header[0] != 'R' || header[1] != 'I' || header[2] != 'F' || header[3] != 'F' || header[8] != 'W') {
+				return 0;
+			}
+			long pos = 12;
+			while (pos + 8 <= headerLength) {
+				int p = (int) pos;
+				if (header[p] == 'd' && header[p + 1] == 'a' && header[p + 2] == 't' && header[p + 3] == 'a') {
+					return pos + 8;
+				}
+				long size = readInt(p + 4, false) & 0xffffffffL;
+				pos += 8 + size + (size & 1); // chunks are padded to an even length
+			}
+			return -1;
+		}
+
+		private int readInt(int pos, boolean bigEndian) {
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				int b = header[bigEndian ? pos + i : pos + 3 - i] & 0xff;
+				value = (value << 8) | b;
+			}
+			return value;
+		}
+	}
+
+	private static void drain(InputStream in) throws IOException {
+		if (in == null) {
+			return;
+		}
+		byte[] buf = new byte[1024];
+		while (in.read(buf) != -1) {
+		}
+		in.close();
+	}
+
+	/**
+	 * Read a corpus in the format described in the class documentation.
+	 * 
+	 * @param reader
+	 *            the corpus
+	 * @param defaults
+	 *            the request parameters to use where the corpus does not specify them; its text is ignored
+	 * @return the list of requests
+	 * @throws IOException
+	 *             if the corpus cannot be read or a line has the wrong number of fields
+	 */
+	public static List<RequestSpec> readCorpus(BufferedReader reader, RequestSpec defaults) throws IOException {
+		List<RequestSpec> corpus = new ArrayList<RequestSpec>();
+		String line;
+		int lineNo = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNo++;
+			if (line.trim().length() == 0 || line.startsWith("#")) {
+				continue;
+			}
+			String[] fields = line.split("\t", -1);
+			if (fields.length == 1) {
+				corpus.add(new RequestSpec(defaults.inputType, defaults.outputType, defaults.locale, defaults.voice,
+						defaults.audio, line.trim()));
+			} else if (fields.length == 6) {
+				corpus.add(new RequestSpec(field(fields[0], defaults.inputType), field(fields[1], defaults.outputType), field(
+						fields[2], defaults.locale), field(fields[3], defaults.voice), field(fields[4], defaults.audio), fields[5]));
+			} else {
+				throw new IOException("Line " + lineNo + ": expected a text or 6 tab-separated fields, found " + fields.length
+						+ " fields");
+			}
+		}
+		return corpus;
+	}
+
+	private static String field(String value, String defaultValue) {
+		value = value.trim();
+		return value.equals("-") || value.length() == 0 ? defaultValue : value;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 1) {
+			System.err.println("Usage: java [-Dloadtest.concurrency=N] [-Dloadtest.rate=R] ... " + LoadTest.class.getName()
+					+ " corpus.txt");
+			System.exit(2);
+		}
+		RequestSpec defaults = new RequestSpec(System.getProperty("loadtest.input.type", "TEXT"), System.getProperty(
+				"loadtest.output.type", "AUDIO"), System.getProperty("loadtest.locale", "en_US"), System.getProperty(
+				"loadtest.voice"), System.getProperty("loadtest.audio", "WAVE_FILE"), "");
+		BufferedReader corpusReader = new BufferedReader(new InputStreamReader(new FileInputStream(args[0]), "UTF-8"));
+		List<RequestSpec> corpus = readCorpus(corpusReader, defaults);
+		corpusReader.close();
+
+		String host = System.getProperty("loadtest.host", "localhost");
+		int port = Integer.getInteger("loadtest.port", 59125);
+		boolean inProcess = Boolean.getBoolean("loadtest.inprocess");
+		if (inProcess) {
+			Mary.startup();
+			MaryHttpServer server = new MaryHttpServer();
+			server.setDaemon(true);
+			server.start();
+			while (!server.isReady()) {
+				Thread.sleep(100);
+			}
+			host = "localhost";
+			port = MaryProperties.needInteger("socket.port");
+		}
+
+		LoadTest test = new LoadTest(host, port, corpus);
+		test.setConcurrency(Integer.getInteger("loadtest.concurrency", 4));
+		test.setRequestRate(Double.parseDouble(System.getProperty("loadtest.rate", "0")));
+		test.setNumRequests(Integer.getInteger("loadtest.requests", corpus.size()));
+		test.setNumWarmupRequests(Integer.getInteger("loadtest.warmup", 0));
+		test.setTimeoutMillis(Integer.getInteger("loadtest.timeout", 60000));
+		Results results = test.run();
+		System.out.print(results.report());
+
+		if (inProcess) {
+			Mary.shutdown();
+		}
+		boolean failed = results.getNumErrors() > 0;
+		Long maxP99 = Long.getLong("loadtest.max.p99");
+		if (maxP99 != null && results.getLatency().getPercentile(99) > maxP99) {
+			System.out.println("FAILED: p99 latency " + results.getLatency().getPercentile(99) + " ms exceeds limit of "
+					+ maxP99 + " ms");
+			failed = true;
+		}
+		System.exit(failed ? 1 : 0);
+	}
+}
@@ -32,8 +32,9 @@ import org.apache.http.impl.DefaultHttpResponseFactory;
 import org.apache.http.impl.nio.DefaultServerIOEventDispatch;
 import org.apache.http.impl.nio.reactor.DefaultListeningIOReactor;
 import org.apache.http.nio.NHttpConnection;
-import org.apache.http.nio.protocol.BufferingHttpServiceHandler;
+import org.apache.http.nio.protocol.AsyncNHttpServiceHandler;
 import org.apache.http.nio.protocol.EventListener;
+import org.apache.http.nio.protocol.NHttpRequestHandlerRegistry;
 import org.apache.http.nio.reactor.IOEventDispatch;
 import org.apache.http.nio.reactor.ListeningIOReactor;
 import org.apache.http.params.BasicHttpParams;
@@ -42,7 +43,6 @@ import org.apache.http.params.CoreProtocolPNames;
 import org.apache.http.params.HttpParams;
 import org.apache.http.protocol.BasicHttpProcessor;
 import org.apache.http.protocol.ExecutionContext;
-import org.apache.http.protocol.HttpRequestHandlerRegistry;
 import org.apache.http.protocol.ResponseConnControl;
 import org.apache.http.protocol.ResponseContent;
 import org.apache.http.protocol.ResponseDate;
@@ -93,6 +93,8 @@ import org.apache.log4j.Logger;
  * <li><code>vocalizations?voice=dfki-poppy</code> requests the list of vocalization names that are available with the given
  * voice;
  * <li><code>styles?voice=dfki-pavoque-styles</code> requests the list of style names that are available with the given voice;
+ * <li><code>synthesisstatistics</code> requests the current queue length and the queue wait and processing time statistics of
+ * synthesis requests;</li>
  * <li><code>process</code> requests the synthesis of some text (see below).</li>
  * </ul>
  * <p>
@@ -139,6 +141,9 @@ import org.apache.log4j.Logger;
  * VOICE is installed (hmm-slt), the synthesis result should be sent to the web browser for playback or saving (depending on web
  * browser settings).
  * <p>
+ * Synthesis requests are not processed on the I/O threads of the server, but on a bounded pool of worker threads (see
+ * {@link SynthesisExecutor}); if too many requests are waiting, clients receive a "503 Service Unavailable" response.
+ * <p>
  * 
  * @see InfoRequestProcessor, FileRequestProcessor, SynthesisRequestProcessor, BaselineRequestProcessor, RequestHttp,
  *      MaryWebHttpClientHandler
@@ -148,7 +153,7 @@ import org.apache.log4j.Logger;
 public class MaryHttpServer extends Thread {
 	private static Logger logger;
 
-	private boolean isReady = false;
+	private volatile boolean isReady = false;
 
 	public MaryHttpServer() {
 		logger = MaryUtils.getLogger("server");
@@ -177,13 +182,14 @@ public class MaryHttpServer extends Thread {
 		httpproc.addInterceptor(new ResponseContent());
 		httpproc.addInterceptor(new ResponseConnControl());
 
-		BufferingHttpServiceHandler handler = new BufferingHttpServiceHandler(httpproc, new DefaultHttpResponseFactory(),
+		AsyncNHttpServiceHandler handler = new AsyncNHttpServiceHandler(httpproc, new DefaultHttpResponseFactory(),
 				new DefaultConnectionReuseStrategy(), params);
 
 		// Set up request handlers
-		HttpRequestHandlerRegistry registry = new HttpRequestHandlerRegistry();
-		registry.register("/process", new SynthesisRequestHandler());
-		InfoRequestHandler infoRH = new InfoRequestHandler();
+		SynthesisExecutor synthesisExecutor = new SynthesisExecutor();
+		NHttpRequestHandlerRegistry registry = new NHttpRequestHandlerRegistry();
+		registry.register("/process", new SynthesisRequestHandler(synthesisExecutor));
+		InfoRequestHandler infoRH = new InfoRequestHandler(synthesisExecutor);
 		registry.register("/version", infoRH);
 		registry.register("/datatypes", infoRH);
 		registry.register("/locales", infoRH);
@@ -199,6 +205,9 @@ public class MaryHttpServer extends Thread {
 		registry.register("/features-discrete", infoRH);
 		registry.register("/vocalizations", infoRH);
 		registry.register("/styles", infoRH);
+		registry.register("/synthesisstatistics", infoRH);
+		registry.register("/voicestatistics", infoRH);
+		registry.register("/ready", infoRH);
 		registry.register("*", new FileRequestHandler());
 
 		handler.setHandlerResolver(registry);
@@ -222,6 +231,7 @@ public class MaryHttpServer extends Thread {
 		} catch (IOException e) {
 			logger.info("Problem with HTTP connection", e);
 		}
+		synthesisExecutor.shutdown();
 		logger.debug("Shutdown");
 	}
 
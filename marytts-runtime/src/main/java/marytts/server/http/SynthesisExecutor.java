@@ -0,0 +1,312 @@
+/**
+ * Copyright 2000-2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.http;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import marytts.modules.synthesis.Voice;
+import marytts.server.MaryProperties;
+import marytts.util.MaryUtils;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A bounded worker pool on which synthesis requests are processed, so that the I/O reactor threads of the {@link MaryHttpServer}
+ * never block on synthesis. Admission control is done in two places: when a request is submitted, it is rejected if the queue
+ * of waiting requests is full; and when the voice of a request is known, it is rejected if that voice is already processing
+ * the configured maximum number of concurrent requests. A request never waits for its voice on a worker thread, so that a
+ * burst of requests for one busy voice cannot occupy the workers needed by other voices. In both cases, clients should receive a
+ * "503 Service Unavailable" response with a "Retry-After" header.
+ * <p>
+ * The following properties are used:
+ * <ul>
+ * <li><code>server.http.synthesis.threads</code>: the number of worker threads (default: number of processors);</li>
+ * <li><code>server.http.synthesis.queuesize</code>: the maximum number of requests waiting for a worker (default: 50);</li>
+ * <li><code>server.http.synthesis.maxrequestspervoice</code>: the maximum number of requests processed concurrently by any one
+ * voice, or 0 for no limit (default: 0);</li>
+ * <li><code>server.http.synthesis.retryafter</code>: the number of seconds after which rejected clients are asked to retry
+ * (default: 5).</li>
+ * </ul>
+ */
+public class SynthesisExecutor {
+	private Logger logger;
+	private ThreadPoolExecutor pool;
+	private int maxRequestsPerVoice;
+	private int retryAfterSeconds;
+	private ConcurrentMap<String, Semaphore> voicePermits = new ConcurrentHashMap<String, Semaphore>();
+
+	private AtomicLong numAccepted = new AtomicLong();
+	private AtomicLong numRejectedBusy = new AtomicLong();
+	private AtomicLong numRejectedVoice = new AtomicLong();
+	private AtomicLong numCompleted = new AtomicLong();
+	private AtomicLong totalQueueWaitNanos = new AtomicLong();
+	private AtomicLong maxQueueWaitNanos = new AtomicLong();
+	private AtomicLong totalProcessingNanos = new AtomicLong();
+	private AtomicLong maxProcessingNanos = new AtomicLong();
+
+	/**
+	 * Create a synthesis executor configured from the server properties.
+	 */
+	public SynthesisExecutor() {
+		this(MaryProperties.getInteger("server.http.synthesis.threads", Runtime.getRuntime().availableProcessors()),
+				MaryProperties.getInteger("server.http.synthesis.queuesize", 50), MaryProperties.getInteger(
+						"server.http.synthesis.maxrequestspervoice", 0), MaryProperties.getInteger(
+						"server.http.synthesis.retryafter", 5));
+	}
+
+	/**
+	 * Create a synthesis executor.
+	 *
+	 * @param numThreads
+	 *            number of worker threads, must be positive
+	 * @param queueSize
+	 *            maximum number of requests waiting for a worker thread, must be positive
+	 * @param maxRequestsPerVoice
+	 *            maximum number of concurrent requests per voice, or 0 for no limit
+	 * @param retryAfterSeconds
+	 *            the value of the Retry-After header to send when rejecting a request
+	 */
+	public SynthesisExecutor(int numThreads, int queueSize, int maxRequestsPerVoice, int retryAfterSeconds) {
+		if (numThreads <= 0) {
+			throw new IllegalArgumentException("Number of synthesis threads must be positive, but is " + numThreads);
+		}
+		if (queueSize <= 0) {
+			throw new IllegalArgumentException("Synthesis queue size must be positive, but is " + queueSize);
+		}
+		this.logger = MaryUtils.getLogger("server");
+		this.maxRequestsPerVoice = maxRequestsPerVoice;
+		this.retryAfterSeconds = retryAfterSeconds;
+		this.pool = new ThreadPoolExecutor(numThreads, numThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+				queueSize), new SynthesisThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+		logger.info("Synthesis executor: " + numThreads + " threads, queue size " + queueSize + ", "
+				+ (maxRequestsPerVoice > 0 ? "max. " + maxRequestsPerVoice + " requests per voice" : "no per-voice limit"));
+	}
+
+	/**
+	 * Try to schedule the given task for execution on one of the worker threads.
+	 *
+	 * @param task
+	 *            the task to execute
+	 * @return true if the task was accepted, false if the queue is full and the request should be rejected.
+	 */
+	public boolean trySubmit(Runnable task) {
+		try {
+			pool.execute(new TimedTask(task));
+		} catch (RejectedExecutionException e) {
+			numRejectedBusy.incrementAndGet();
+			logger.info("Synthesis queue full (" + pool.getQueue().size() + " requests waiting) -- rejecting request");
+			return false;
+		}
+		numAccepted.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Try to obtain a processing slot for the given voice, without waiting. Each successful call must be matched by a call to
+	 * {@link #releaseVoice(Voice)}.
+	 *
+	 * @param voice
+	 *            the voice to process with, may be null
+	 * @return true if the request may proceed, false if the voice remained busy with the maximum number of requests.
+	 */
+	public boolean tryAcquireVoice(Voice voice) {
+		return tryAcquireVoice(voice == null ? null : voice.getName());
+	}
+
+	boolean tryAcquireVoice(String voiceName) {
+		Semaphore permits = getVoicePermits(voiceName);
+		if (permits == null || permits.tryAcquire()) {
+			return true;
+		}
+		numRejectedVoice.incrementAndGet();
+		logger.info("Voice " + voiceName + " is busy with " + maxRequestsPerVoice + " requests -- rejecting request");
+		return false;
+	}
+
+	/**
+	 * Release a processing slot obtained from {@link #tryAcquireVoice(Voice)}.
+	 *
+	 * @param voice
+	 *            voice
+	 */
+	public void releaseVoice(Voice voice) {
+		releaseVoice(voice == null ? null : voice.getName());
+	}
+
+	void releaseVoice(String voiceName) {
+		Semaphore permits = getVoicePermits(voiceName);
+		if (permits != null) {
+			permits.release();
+		}
+	}
+
+	private Semaphore getVoicePermits(String voiceName) {
+		if (maxRequestsPerVoice <= 0 || voiceName == null) {
+			return null;
+		}
+		Semaphore permits = voicePermits.get(voiceName);
+		if (permits == null) {
+			Semaphore newPermits = new Semaphore(maxRequestsPerVoice);
+			permits = voicePermits.putIfAbsent(voiceName, newPermits);
+			if (permits == null) {
+				permits = newPermits;
+			}
+		}
+		return permits;
+	}
+
+	/**
+	 * The number of seconds after which rejected clients should retry.
+	 *
+	 * @return retryAfterSeconds
+	 */
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+	public int getQueueLength() {
+		return pool.getQueue().size();
+	}
+
+	public int getActiveCount() {
+		return pool.getActiveCount();
+	}
+
+	public long getNumAccepted() {
+		return numAccepted.get();
+	}
+
+	public long getNumRejected() {
+		return numRejectedBusy.get() + numRejectedVoice.get();
+	}
+
+	public long getNumCompleted() {
+		return numCompleted.get();
+	}
+
+	/**
+	 * The average time, in milliseconds, that completed tasks spent waiting in the queue.
+	 *
+	 * @return average queue wait in ms, or 0 if no task has completed yet.
+	 */
+	public double getAverageQueueWaitMillis() {
+		long n = numCompleted.get();
+		return n == 0 ? 0 : totalQueueWaitNanos.get() / (n * 1000000.);
+	}
+
+	/**
+	 * The average time, in milliseconds, that completed tasks spent being processed by a worker thread.
+	 *
+	 * @return average processing time in ms, or 0 if no task has completed yet.
+	 */
+	public double getAverageProcessingMillis() {
+		long n = numCompleted.get();
+		return n == 0 ? 0 : totalProcessingNanos.get() / (n * 1000000.);
+	}
+
+	/**
+	 * A human-readable summary of the executor state and timing statistics.
+	 *
+	 * @return a multi-line string, one statistic per line.
+	 */
+	public String getStatistics() {
+		StringBuilder buf = new StringBuilder();
+		buf.append("threads ").append(pool.getMaximumPoolSize()).append("\n");
+		buf.append("active ").append(getActiveCount()).append("\n");
+		buf.append("queued ").append(getQueueLength()).append("\n");
+		buf.append("accepted ").append(getNumAccepted()).append("\n");
+		buf.append("completed ").append(getNumCompleted()).append("\n");
+		buf.append("rejected.busy ").append(numRejectedBusy.get()).append("\n");
+		buf.append("rejected.voice ").append(numRejectedVoice.get()).append("\n");
+		buf.append("queuewait.avg.ms ").append(getAverageQueueWaitMillis()).append("\n");
+		buf.append("queuewait.max.ms ").append(maxQueueWaitNanos.get() / 1000000.).append("\n");
+		buf.append("processing.avg.ms ").append(getAverageProcessingMillis()).append("\n");
+		buf.append("processing.max.ms ").append(maxProcessingNanos.get() / 1000000.).append("\n");
+		return buf.toString();
+	}
+
+	/**
+	 * Stop accepting new tasks; tasks already submitted are still executed.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long current;
+		while ((current = max.get()) < value) {
+			if (max.compareAndSet(current, value)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Wraps a task in order to measure the time it spends waiting in the queue and the time it takes to process.
+	 */
+	private class TimedTask implements Runnable {
+		private Runnable task;
+		private long submitted;
+
+		TimedTask(Runnable task) {
+			this.task = task;
+			this.submitted = System.nanoTime();
+		}
+
+		public void run() {
+			long started = System.nanoTime();
+			try {
+				task.run();
+			} finally {
+				long finished = System.nanoTime();
+				long queueWait = started - submitted;
+				long processing = finished - started;
+				totalQueueWaitNanos.addAndGet(queueWait);
+				totalProcessingNanos.addAndGet(processing);
+				updateMax(maxQueueWaitNanos, queueWait);
+				updateMax(maxProcessingNanos, processing);
+				numCompleted.incrementAndGet();
+				if (logger.isDebugEnabled()) {
+					logger.debug("Synthesis task waited " + (queueWait / 1000000) + " ms in queue, processed in "
+							+ (processing / 1000000) + " ms");
+				}
+			}
+		}
+	}
+
+	private static class SynthesisThreadFactory implements ThreadFactory {
+		private AtomicInteger threadNumber = new AtomicInteger(1);
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "synthesis-" + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -36,6 +36,7 @@ import javax.sound.sampled.AudioSystem;
 
 import marytts.datatypes.MaryDataType;
 import marytts.modules.synthesis.Voice;
+import marytts.server.Mary;
 import marytts.server.Request;
 import marytts.server.RequestHandler.StreamingOutputPiper;
 import marytts.server.RequestHandler.StreamingOutputWriter;
@@ -44,12 +45,17 @@ import marytts.util.MaryUtils;
 import marytts.util.data.audio.MaryAudioUtils;
 import marytts.util.http.Address;
 
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.nio.protocol.NHttpResponseTrigger;
+import org.apache.http.protocol.HttpContext;
 import org.apache.log4j.Logger;
 
 /**
- * Provides functionality to process synthesis http requests
+ * Provides functionality to process synthesis http requests. Requests are processed on the worker threads of a
+ * {@link SynthesisExecutor}, so that the I/O threads of the http server are never blocked by synthesis.
  * 
  * @author Oytun T&uumlrk
  *
@@ -65,14 +71,52 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 	private StreamingOutputPiper streamToPipe;
 	private PipedOutputStream pipedOutput;
 	private PipedInputStream pipedInput;
+	private SynthesisExecutor synthesisExecutor;
 
 	public SynthesisRequestHandler() {
+		this(new SynthesisExecutor());
+	}
+
+	public SynthesisRequestHandler(SynthesisExecutor synthesisExecutor) {
 		super();
 
 		outputToStream = null;
 		streamToPipe = null;
 		pipedOutput = null;
 		pipedInput = null;
+		this.synthesisExecutor = synthesisExecutor;
+	}
+
+	/**
+	 * Queue the request for processing on a synthesis worker thread, and submit the response when it is ready. If the queue is
+	 * full, a "503 Service Unavailable" response is submitted immediately.
+	 */
+	@Override
+	public void handle(final HttpRequest request, final HttpResponse response, final NHttpResponseTrigger trigger,
+			final HttpContext context) throws HttpException, IOException {
+		boolean accepted = synthesisExecutor.trySubmit(new Runnable() {
+			public void run() {
+				try {
+					handle(request, response, context);
+				} catch (HttpException e) {
+					trigger.handleException(e);
+					return;
+				} catch (IOException e) {
+					trigger.handleException(e);
+					return;
+				} catch (Throwable t) {
+					String message = "Processing failed.";
+					logger.error(message, t);
+					MaryHttpServerUtils.errorInternalServerError(response, message, t);
+				}
+				trigger.submitResponse(response);
+			}
+		});
+		if (!accepted) {
+			MaryHttpServerUtils.errorServiceUnavailable(response, "Server is busy, too many requests are waiting to be processed",
+					synthesisExecutor.getRetryAfterSeconds());
+			trigger.submitResponse(response);
+		}
 	}
 
 	@Override
@@ -93,6 +137,11 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 	}
 
 	public void process(Address serverAddressAtClient, Map<String, String> queryItems, HttpResponse response) {
+		if (Mary.currentState() != Mary.STATE_RUNNING) {
+			MaryHttpServerUtils.errorServiceUnavailable(response, "MARY is " + Mary.getStartupProgress(),
+					synthesisExecutor.getRetryAfterSeconds());
+			return;
+		}
 		if (queryItems == null
 				|| !(queryItems.containsKey("INPUT_TYPE") && queryItems.containsKey("OUTPUT_TYPE")
 						&& queryItems.containsKey("LOCALE") && queryItems.containsKey("INPUT_TEXT"))) {
@@ -211,6 +260,32 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 		}
 		AudioFileFormat audioFileFormat = new AudioFileFormat(audioFileFormatType, audioFormat, AudioSystem.NOT_SPECIFIED);
 
+		if (!synthesisExecutor.tryAcquireVoice(voice)) {
+			MaryHttpServerUtils.errorServiceUnavailable(response, "Voice " + voice.getName()
+					+ " is busy, too many requests are being processed", synthesisExecutor.getRetryAfterSeconds());
+			return;
+		}
+		// Unless processing is handed over to another task, the voice must be released when we are done:
+		boolean voiceReleasedByTask = false;
+		try {
+			voiceReleasedByTask = processRequest(inputType, outputType, locale, voice, effects, style, audioFileFormat,
+					streamingAudio, outputTypeParams, inputText, response);
+		} finally {
+			if (!voiceReleasedByTask) {
+				synthesisExecutor.releaseVoice(voice);
+			}
+		}
+	}
+
+	/**
+	 * Process the request, or for streaming audio, hand it over to a synthesis task.
+	 * 
+	 * @return true if the request is being processed by a streaming synthesis task which will release the voice when done,
+	 *         false otherwise.
+	 */
+	private boolean processRequest(MaryDataType inputType, MaryDataType outputType, Locale locale, final Voice voice,
+			String effects, String style, AudioFileFormat audioFileFormat, boolean streamingAudio, String outputTypeParams,
+			String inputText, HttpResponse response) {
 		final Request maryRequest = new Request(inputType, outputType, locale, voice, effects, style, getId(), audioFileFormat,
 				streamingAudio, outputTypeParams);
 
@@ -227,34 +302,44 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 		}
 		if (ok) {
 			if (streamingAudio) {
-				// Start two separate threads:
-				// 1. one thread to process the request;
-				new Thread("RH " + maryRequest.getId()) {
+				// Two separate activities:
+				// 1. a synthesis task to process the request;
+				boolean accepted = synthesisExecutor.trySubmit(new Runnable() {
 					public void run() {
-						Logger myLogger = MaryUtils.getLogger(this.getName());
+						Logger myLogger = MaryUtils.getLogger("RH " + maryRequest.getId());
 						try {
 							maryRequest.process();
 							myLogger.info("Streaming request processed successfully.");
 						} catch (Throwable t) {
 							myLogger.error("Processing failed.", t);
+						} finally {
+							synthesisExecutor.releaseVoice(voice);
 						}
 					}
-				}.start();
+				});
+				if (!accepted) {
+					MaryHttpServerUtils.errorServiceUnavailable(response,
+							"Server is busy, too many requests are waiting to be processed",
+							synthesisExecutor.getRetryAfterSeconds());
+					return false;
+				}
 
-				// 2. one thread to take the audio data as it becomes available
-				// and write it into the ProducingNHttpEntity.
+				// 2. a ProducingNHttpEntity which sends the audio data as it becomes available.
 				// The second one does not depend on the first one practically,
 				// because the AppendableSequenceAudioInputStream returned by
 				// maryRequest.getAudio() was already created in the constructor of Request.
+				// AU and WAVE audio are encoded for the I/O reactor by a small pool of reader threads;
+				// other types still need a writer thread to take the audio data and write it into the entity.
 				AudioInputStream audio = maryRequest.getAudio();
 				assert audio != null : "Streaming audio but no audio stream -- very strange indeed! :-(";
-				AudioFileFormat.Type audioType = maryRequest.getAudioFileFormat().getType();
 				AudioStreamNHttpEntity entity = new AudioStreamNHttpEntity(maryRequest);
-				new Thread(entity, "HTTPWriter " + maryRequest.getId()).start();
+				if (entity.requiresWriterThread()) {
+					entity.startWriterThread();
+				}
 				// entity knows its contentType, no need to set explicitly here.
 				response.setEntity(entity);
 				response.setStatusCode(HttpStatus.SC_OK);
-				return;
+				return true;
 			} else { // not streaming audio
 				// Process input data to output data
 				try {
@@ -297,6 +382,7 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 			Runtime.getRuntime().gc();
 			logger.info("After garbage collection: " + MaryUtils.availableMemory() + " bytes available.");
 		}
+		return false;
 	}
 
 	protected String toRequestedAudioEffectsString(Map<String, String> keyValuePairs) {
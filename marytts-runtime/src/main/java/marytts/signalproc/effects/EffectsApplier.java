@@ -31,7 +31,6 @@ import javax.sound.sampled.AudioSystem;
 
 import marytts.htsengine.HMMVoice;
 import marytts.modules.synthesis.Voice;
-import marytts.util.data.BufferedDoubleDataSource;
 import marytts.util.data.DoubleDataSource;
 import marytts.util.data.audio.AudioDoubleDataSource;
 import marytts.util.data.audio.DDSAudioInputStream;
@@ -83,11 +82,8 @@ public class EffectsApplier {
 			}
 
 			if (tmpSignal != null) {
-				if (tmpSignal.getDataLength() == DoubleDataSource.NOT_SPECIFIED) {
-					double[] data = tmpSignal.getAllData();
-					tmpSignal = new BufferedDoubleDataSource(data);
-				}
-				assert tmpSignal.getDataLength() != DoubleDataSource.NOT_SPECIFIED;
+				// Do not pull the whole signal through the chain here: the resulting stream may have
+				// an unknown frame length, and consumers that need one (e.g. WAVE output) buffer at the sink.
 				return new DDSAudioInputStream(tmpSignal, audioformat);
 			} else
 				return input;
@@ -30,6 +30,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -42,6 +43,7 @@ import marytts.modules.synthesis.Voice;
 import marytts.modules.synthesis.WaveformSynthesizer;
 import marytts.modules.synthesis.Voice.Gender;
 import marytts.server.MaryProperties;
+import marytts.server.ModuleStartup;
 import marytts.unitselection.concat.UnitConcatenator;
 import marytts.unitselection.concat.BaseUnitConcatenator.UnitData;
 import marytts.unitselection.data.Unit;
@@ -85,14 +87,22 @@ public class UnitSelectionSynthesizer implements WaveformSynthesizer {
 		logger = MaryUtils.getLogger("UnitSelectionSynthesizer");
 		// Register UnitSelection voices:
 		logger.debug("Register UnitSelection voices:");
-		List<String> voiceNames = MaryProperties.getList("unitselection.voices.list");
-		for (String voiceName : voiceNames) {
-			long time = System.currentTimeMillis();
-			Voice unitSelVoice = new UnitSelectionVoice(voiceName, this);
+		// The voices are loaded concurrently, but registered in the configured order:
+		List<Callable<Voice>> voiceLoaders = new ArrayList<Callable<Voice>>();
+		for (final String voiceName : MaryProperties.getList("unitselection.voices.list")) {
+			voiceLoaders.add(new Callable<Voice>() {
+				public Voice call() throws Exception {
+					long time = System.currentTimeMillis();
+					Voice unitSelVoice = new UnitSelectionVoice(voiceName, UnitSelectionSynthesizer.this);
+					long newtime = System.currentTimeMillis() - time;
+					logger.info("Loading of voice " + voiceName + " took " + newtime + " milliseconds");
+					return unitSelVoice;
+				}
+			});
+		}
+		for (Voice unitSelVoice : ModuleStartup.runAll(voiceLoaders, "UnitSelectionVoiceLoader")) {
 			logger.debug("Voice '" + unitSelVoice + "'");
 			Voice.registerVoice(unitSelVoice);
-			long newtime = System.currentTimeMillis() - time;
-			logger.info("Loading of voice " + voiceName + " took " + newtime + " milliseconds");
 		}
 		logger.info("started.");
 	}
@@ -148,7 +158,19 @@ public class UnitSelectionSynthesizer implements WaveformSynthesizer {
 	public AudioInputStream synthesize(List<Element> tokensAndBoundaries, Voice voice, String outputParams)
 			throws SynthesisException {
 		assert voice instanceof UnitSelectionVoice;
-		UnitSelectionVoice v = (UnitSelectionVoice) voice;
+		UnitSelectionVoice usv = (UnitSelectionVoice) voice;
+		// Get all parts of the voice at once, so that they come from the same load of a lazy voice,
+		// and keep that from being released while we use it:
+		UnitSelectionVoice.VoiceData v = usv.acquireVoiceData();
+		try {
+			return synthesize(tokensAndBoundaries, voice, outputParams, v);
+		} finally {
+			usv.releaseVoiceData();
+		}
+	}
+
+	private AudioInputStream synthesize(List<Element> tokensAndBoundaries, Voice voice, String outputParams,
+			UnitSelectionVoice.VoiceData v) throws SynthesisException {
 		UnitDatabase udb = v.getDatabase();
 		// Select:
 		UnitSelector unitSel = v.getUnitSelector();
@@ -158,9 +180,7 @@ public class UnitSelectionSynthesizer implements WaveformSynthesizer {
 		} else {
 			unitConcatenator = v.getConcatenator();
 		}
-		// TODO: check if we actually need to access v.getDatabase() here
-		UnitDatabase database = v.getDatabase();
-		logger.debug("Selecting units with a " + unitSel.getClass().getName() + " from a " + database.getClass().getName());
+		logger.debug("Selecting units with a " + unitSel.getClass().getName() + " from a " + udb.getClass().getName());
 		List<SelectedUnit> selectedUnits = unitSel.selectUnits(tokensAndBoundaries, voice);
 		// if (logger.getEffectiveLevel().equals(Level.DEBUG)) {
 		// StringWriter sw = new StringWriter();
@@ -200,7 +220,7 @@ public class UnitSelectionSynthesizer implements WaveformSynthesizer {
 			// convert to millis only at export time, and re-compute duration in millis
 			// from the end in millis, to avoid discrepancies due to rounding
 			int unitDurationInSamples = unitData.getUnitDuration();
-			float unitDurationInSeconds = unitDurationInSamples / (float) database.getUnitFileReader().getSampleRate();
+			float unitDurationInSeconds = unitDurationInSamples / (float) udb.getUnitFileReader().getSampleRate();
 			int prevEndInMillis = (int) (1000 * endInSeconds);
 			endInSeconds += unitDurationInSeconds;
 			int endInMillis = (int) (1000 * endInSeconds);
@@ -39,6 +39,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.reflect.Constructor;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 
 import javax.sound.sampled.AudioFormat;
 
@@ -48,6 +49,7 @@ import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureRegistry;
+import marytts.modules.synthesis.LazyVoiceData;
 import marytts.modules.synthesis.Voice;
 import marytts.modules.synthesis.WaveformSynthesizer;
 import marytts.server.MaryProperties;
@@ -68,14 +70,51 @@ import marytts.unitselection.select.UnitSelector;
  */
 public class UnitSelectionVoice extends Voice {
 
-	protected UnitDatabase database;
-	protected UnitSelector unitSelector;
-	protected UnitConcatenator concatenator;
-	protected UnitConcatenator modificationConcatenator;
 	protected String domain;
 	protected String name;
-	protected CART[] f0Carts;
 	protected String exampleText;
+	private final LazyVoiceData<VoiceData> data;
+
+	/**
+	 * The parts of the voice which are only loaded when needed, see {@link LazyVoiceData}. All parts come from the same load, so
+	 * a request which gets them from one VoiceData never mixes data from before and after a reload of the voice.
+	 */
+	public static final class VoiceData {
+		private final UnitDatabase database;
+		private final UnitSelector unitSelector;
+		private final UnitConcatenator concatenator;
+		private final UnitConcatenator modificationConcatenator;
+		private final CART[] f0Carts;
+
+		VoiceData(UnitDatabase database, UnitSelector unitSelector, UnitConcatenator concatenator,
+				UnitConcatenator modificationConcatenator, CART[] f0Carts) {
+			this.database = database;
+			this.unitSelector = unitSelector;
+			this.concatenator = concatenator;
+			this.modificationConcatenator = modificationConcatenator;
+			this.f0Carts = f0Carts;
+		}
+
+		public UnitDatabase getDatabase() {
+			return database;
+		}
+
+		public UnitSelector getUnitSelector() {
+			return unitSelector;
+		}
+
+		public UnitConcatenator getConcatenator() {
+			return concatenator;
+		}
+
+		public UnitConcatenator getModificationConcatenator() {
+			return modificationConcatenator;
+		}
+
+		public CART[] getF0Trees() {
+			return f0Carts;
+		}
+	}
 
 	public UnitSelectionVoice(String name, WaveformSynthesizer synthesizer) throws MaryConfigurationException {
 		super(name, synthesizer);
@@ -94,13 +133,38 @@ public class UnitSelectionVoice extends Voice {
 			if (exampleTextStream != null) {
 				readExampleText(exampleTextStream);
 			}
+			getFeatureProcessorManager();
+		} catch (MaryConfigurationException mce) {
+			throw mce;
+		} catch (Exception ex) {
+			throw new MaryConfigurationException("Cannot build unit selection voice '" + name + "'", ex);
+		}
 
-			FeatureProcessorManager featProcManager = FeatureRegistry.getFeatureProcessorManager(this);
-			if (featProcManager == null)
-				featProcManager = FeatureRegistry.getFeatureProcessorManager(getLocale());
-			if (featProcManager == null)
-				throw new MaryConfigurationException("No feature processor manager for voice '" + name + "' (locale "
-						+ getLocale() + ")");
+		data = new LazyVoiceData<VoiceData>(name, new Callable<VoiceData>() {
+			public VoiceData call() throws Exception {
+				return loadData();
+			}
+		});
+		data.init();
+	}
+
+	private FeatureProcessorManager getFeatureProcessorManager() throws MaryConfigurationException {
+		FeatureProcessorManager featProcManager = FeatureRegistry.getFeatureProcessorManager(this);
+		if (featProcManager == null)
+			featProcManager = FeatureRegistry.getFeatureProcessorManager(getLocale());
+		if (featProcManager == null)
+			throw new MaryConfigurationException("No feature processor manager for voice '" + name + "' (locale " + getLocale()
+					+ ")");
+		return featProcManager;
+	}
+
+	/**
+	 * Load the unit database, unit selector, concatenators and f0 trees of this voice.
+	 */
+	private VoiceData loadData() throws MaryConfigurationException {
+		try {
+			String header = "voice." + name;
+			FeatureProcessorManager featProcManager = getFeatureProcessorManager();
 
 			// build and load targetCostFunction
 			logger.debug("...loading target cost function...");
@@ -166,7 +230,7 @@ public class UnitSelectionVoice extends Voice {
 			// build and load database
 			logger.debug("...instantiating database...");
 			String databaseClass = MaryProperties.needProperty(header + ".databaseClass");
-			database = (UnitDatabase) Class.forName(databaseClass).newInstance();
+			UnitDatabase database = (UnitDatabase) Class.forName(databaseClass).newInstance();
 			if (useSCost) {
 				database.load(targetFunction, joinFunction, sCostFunction, unitReader, cart, timelineReader,
 						basenameTimelineReader, backtrace);
@@ -177,7 +241,7 @@ public class UnitSelectionVoice extends Voice {
 			// build Selector
 			logger.debug("...instantiating unit selector...");
 			String selectorClass = MaryProperties.needProperty(header + ".selectorClass");
-			unitSelector = (UnitSelector) Class.forName(selectorClass).newInstance();
+			UnitSelector unitSelector = (UnitSelector) Class.forName(selectorClass).newInstance();
 			float targetCostWeights = Float.parseFloat(MaryProperties.getProperty(header + ".viterbi.wTargetCosts", "0.33"));
 			int beamSize = MaryProperties.getInteger(header + ".viterbi.beamsize", 100);
 			if (!useSCost) {
@@ -186,17 +250,19 @@ public class UnitSelectionVoice extends Voice {
 				float sCostWeights = Float.parseFloat(MaryProperties.getProperty(header + ".viterbi.wSCosts", "0.33"));
 				unitSelector.load(database, targetCostWeights, sCostWeights, beamSize);
 			}
+			unitSelector.setUseCompactViterbi(MaryProperties.getBoolean(header + ".viterbi.compact", false));
+			unitSelector.setBeamThreshold(Double.parseDouble(MaryProperties.getProperty(header + ".viterbi.beamthreshold", "-1")));
 
 			// samplingRate -> bin, audioformat -> concatenator
 			// build Concatenator
 			logger.debug("...instantiating unit concatenator...");
 			String concatenatorClass = MaryProperties.needProperty(header + ".concatenatorClass");
-			concatenator = (UnitConcatenator) Class.forName(concatenatorClass).newInstance();
+			UnitConcatenator concatenator = (UnitConcatenator) Class.forName(concatenatorClass).newInstance();
 			concatenator.load(database);
 
 			// TODO: this can be deleted at the same time as CARTF0Modeller
 			// see if there are any voice-specific duration and f0 models to load
-			f0Carts = null;
+			CART[] f0Carts = null;
 			InputStream leftF0CartStream = MaryProperties.getStream(header + ".f0.cart.left");
 			if (leftF0CartStream != null) {
 				logger.debug("...loading f0 trees...");
@@ -212,12 +278,39 @@ public class UnitSelectionVoice extends Voice {
 				f0Carts[2] = new MaryCARTReader().loadFromStream(rightF0CartStream);
 				rightF0CartStream.close();
 			}
+			return new VoiceData(database, unitSelector, concatenator, createModificationConcatenator(database), f0Carts);
 		} catch (MaryConfigurationException mce) {
 			throw mce;
 		} catch (Exception ex) {
 			throw new MaryConfigurationException("Cannot build unit selection voice '" + name + "'", ex);
 		}
+	}
 
+	/**
+	 * Get the loaded data of this voice, loading them if necessary. Callers which need several parts of the voice for one request
+	 * should get them all from one VoiceData.
+	 * 
+	 * @return the data
+	 */
+	public VoiceData getVoiceData() {
+		return data.get();
+	}
+
+	/**
+	 * Get the loaded data of this voice like {@link #getVoiceData()}, and keep them from being released until
+	 * {@link #releaseVoiceData()} is called.
+	 * 
+	 * @return the data
+	 */
+	public VoiceData acquireVoiceData() {
+		return data.acquire();
+	}
+
+	/**
+	 * Allow the data returned by {@link #acquireVoiceData()} to be released again.
+	 */
+	public void releaseVoiceData() {
+		data.releaseUse();
 	}
 
 	/**
@@ -226,7 +319,7 @@ public class UnitSelectionVoice extends Voice {
 	 * @return the database
 	 */
 	public UnitDatabase getDatabase() {
-		return database;
+		return data.get().database;
 	}
 
 	/**
@@ -235,7 +328,7 @@ public class UnitSelectionVoice extends Voice {
 	 * @return the unit selector
 	 */
 	public UnitSelector getUnitSelector() {
-		return unitSelector;
+		return data.get().unitSelector;
 	}
 
 	/**
@@ -244,7 +337,7 @@ public class UnitSelectionVoice extends Voice {
 	 * @return the unit selector
 	 */
 	public UnitConcatenator getConcatenator() {
-		return concatenator;
+		return data.get().concatenator;
 	}
 
 	/**
@@ -253,32 +346,35 @@ public class UnitSelectionVoice extends Voice {
 	 * @return the modifying UnitConcatenator
 	 */
 	public UnitConcatenator getModificationConcatenator() {
-		if (modificationConcatenator == null) {
-			// get sensible minimum and maximum values:
-			try {
-				// initialize with values from properties:
-				double minTimeScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name
-						+ ".prosody.modification.duration.factor.minimum"));
-				double maxTimeScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name
-						+ ".prosody.modification.duration.factor.maximum"));
-				double minPitchScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name
-						+ ".prosody.modification.f0.factor.minimum"));
-				double maxPitchScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name
-						+ ".prosody.modification.f0.factor.maximum"));
-				logger.debug("Initializing FD-PSOLA unit concatenator with the following parameter thresholds:");
-				logger.debug("minimum duration modification factor: " + minTimeScaleFactor);
-				logger.debug("maximum duration modification factor: " + maxTimeScaleFactor);
-				logger.debug("minimum F0 modification factor: " + minPitchScaleFactor);
-				logger.debug("maximum F0 modification factor: " + maxPitchScaleFactor);
-				modificationConcatenator = new FdpsolaUnitConcatenator(minTimeScaleFactor, maxTimeScaleFactor,
-						minPitchScaleFactor, maxPitchScaleFactor);
-			} catch (Exception e) {
-				// ignore -- defaults will be used
-				logger.debug("Initializing FD-PSOLA unit concatenator with default parameter thresholds.");
-				modificationConcatenator = new FdpsolaUnitConcatenator();
-			}
-			modificationConcatenator.load(database);
+		return data.get().modificationConcatenator;
+	}
+
+	private UnitConcatenator createModificationConcatenator(UnitDatabase database) {
+		UnitConcatenator modificationConcatenator;
+		// get sensible minimum and maximum values:
+		try {
+			// initialize with values from properties:
+			double minTimeScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name
+					+ ".prosody.modification.duration.factor.minimum"));
+			double maxTimeScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name
+					+ ".prosody.modification.duration.factor.maximum"));
+			double minPitchScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name
+					+ ".prosody.modification.f0.factor.minimum"));
+			double maxPitchScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name
+					+ ".prosody.modification.f0.factor.maximum"));
+			logger.debug("Initializing FD-PSOLA unit concatenator with the following parameter thresholds:");
+			logger.debug("minimum duration modification factor: " + minTimeScaleFactor);
+			logger.debug("maximum duration modification factor: " + maxTimeScaleFactor);
+			logger.debug("minimum F0 modification factor: " + minPitchScaleFactor);
+			logger.debug("maximum F0 modification factor: " + maxPitchScaleFactor);
+			modificationConcatenator = new FdpsolaUnitConcatenator(minTimeScaleFactor, maxTimeScaleFactor,
+					minPitchScaleFactor, maxPitchScaleFactor);
+		} catch (Exception e) {
+			// ignore -- defaults will be used
+			logger.debug("Initializing FD-PSOLA unit concatenator with default parameter thresholds.");
+			modificationConcatenator = new FdpsolaUnitConcatenator();
 		}
+		modificationConcatenator.load(database);
 		return modificationConcatenator;
 	}
 
@@ -313,10 +409,11 @@ public class UnitSelectionVoice extends Voice {
 	}
 
 	public CART[] getF0Trees() {
-		return f0Carts;
+		return data.get().f0Carts;
 	}
 
 	public FeatureDefinition getF0CartsFeatDef() {
+		CART[] f0Carts = getF0Trees();
 		if (f0Carts == null || f0Carts.length < 1)
 			return null;
 		return f0Carts[0].getFeatureDefinition();
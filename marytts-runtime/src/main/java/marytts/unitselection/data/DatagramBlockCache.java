@@ -0,0 +1,225 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import marytts.server.MaryProperties;
+
+/**
+ * A cache of fixed-size blocks of timeline files, used by {@link TimelineReader} when a timeline cannot be memory-mapped. Blocks
+ * are held in direct byte buffers and are identified by the reader they belong to and their byte offset in the file. They are
+ * filled using positional reads, so that any number of threads can read from the same file channel concurrently.
+ * <p>
+ * Lookups of cached blocks do not lock. When the cache is full, a block is evicted using the CLOCK algorithm, an approximation of
+ * least-recently-used eviction: blocks are visited in a circle, and the first block that has not been used since the last visit
+ * is replaced. An evicted block's buffer is never reused, so that readers still holding a view of it remain valid.
+ * <p>
+ * By default, all timeline readers share one cache, whose size is given by the property
+ * <code>timeline.blockcache.megabytes</code> (default: 32; 0 disables caching).
+ */
+public class DatagramBlockCache {
+	/**
+	 * The default block size, in bytes.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 0x10000; // 64 kB
+
+	private static DatagramBlockCache sharedCache;
+	private static boolean sharedCacheInitialised = false;
+
+	/**
+	 * Get the block cache shared by all timeline readers, creating it on first use.
+	 * 
+	 * @return the shared cache, or null if caching is disabled by configuration.
+	 */
+	public static synchronized DatagramBlockCache getSharedCache() {
+		if (!sharedCacheInitialised) {
+			int megabytes = MaryProperties.getInteger("timeline.blockcache.megabytes", 32);
+			if (megabytes > 0) {
+				sharedCache = new DatagramBlockCache(DEFAULT_BLOCK_SIZE, (int) ((megabytes * 1024L * 1024L) / DEFAULT_BLOCK_SIZE));
+			}
+			sharedCacheInitialised = true;
+		}
+		return sharedCache;
+	}
+
+	private final int blockSize;
+	private final ConcurrentMap<BlockKey, Block> blocks;
+	// the CLOCK, guarded by itself:
+	private final Block[] clock;
+	private int clockHand = 0;
+	private int numUsed = 0;
+
+	private AtomicLong numHits = new AtomicLong();
+	private AtomicLong numMisses = new AtomicLong();
+	private AtomicLong numEvictions = new AtomicLong();
+
+	/**
+	 * Create a block cache.
+	 * 
+	 * @param blockSize
+	 *            the size of each block, in bytes; must be positive
+	 * @param maxBlocks
+	 *            the maximum number of blocks to keep; must be positive
+	 * @throws IllegalArgumentException
+	 *             if blockSize or maxBlocks is not positive
+	 */
+	public DatagramBlockCache(int blockSize, int maxBlocks) {
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("Block size must be positive, but is " + blockSize);
+		}
+		if (maxBlocks <= 0) {
+			throw new IllegalArgumentException("Number of blocks must be positive, but is " + maxBlocks);
+		}
+		this.blockSize = blockSize;
+		this.blocks = new ConcurrentHashMap<BlockKey, Block>(maxBlocks);
+		this.clock = new Block[maxBlocks];
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public int getMaxBlocks() {
+		return clock.length;
+	}
+
+	/**
+	 * Get the block starting at the given position in the file.
+	 * 
+	 * @param owner
+	 *            a number identifying the file, unique among all users of this cache
+	 * @param channel
+	 *            the channel from which to read the block if it is not in the cache
+	 * @param blockStart
+	 *            the byte position of the block in the file; must be a multiple of the block size
+	 * @param end
+	 *            the byte position up to which data may be read from the file; the block is shorter than the block size if it
+	 *            reaches beyond this position
+	 * @return a read-only buffer with position 0 holding the block's data. The buffer is shared between threads, so callers must
+	 *         use a {@link ByteBuffer#duplicate() duplicate} if they want to change its position or limit.
+	 * @throws IOException
+	 *             if the block cannot be read from channel
+	 */
+	public ByteBuffer getBlock(int owner, FileChannel channel, long blockStart, long end) throws IOException {
+		assert blockStart % blockSize == 0;
+		BlockKey key = new BlockKey(owner, blockStart);
+		Block block = blocks.get(key);
+		if (block != null) {
+			block.referenced = true;
+			numHits.incrementAndGet();
+			return block.data;
+		}
+		numMisses.incrementAndGet();
+		int length = (int) Math.min(blockSize, end - blockStart);
+		ByteBuffer data = ByteBuffer.allocateDirect(length);
+		while (data.hasRemaining()) {
+			if (channel.read(data, blockStart + data.position()) < 0) {
+				break;
+			}
+		}
+		data.flip();
+		Block newBlock = new Block(key, data.asReadOnlyBuffer());
+		block = blocks.putIfAbsent(key, newBlock);
+		if (block != null) { // another thread has loaded the same block in the meantime
+			return block.data;
+		}
+		insertIntoClock(newBlock);
+		return newBlock.data;
+	}
+
+	private void insertIntoClock(Block newBlock) {
+		synchronized (clock) {
+			if (numUsed < clock.length) {
+				clock[numUsed++] = newBlock;
+				return;
+			}
+			while (clock[clockHand].referenced) {
+				clock[clockHand].referenced = false;
+				clockHand = (clockHand + 1) % clock.length;
+			}
+			blocks.remove(clock[clockHand].key);
+			numEvictions.incrementAndGet();
+			clock[clockHand] = newBlock;
+			clockHand = (clockHand + 1) % clock.length;
+		}
+	}
+
+	public long getNumHits() {
+		return numHits.get();
+	}
+
+	public long getNumMisses() {
+		return numMisses.get();
+	}
+
+	public long getNumEvictions() {
+		return numEvictions.get();
+	}
+
+	/**
+	 * The number of blocks currently in the cache.
+	 * 
+	 * @return size
+	 */
+	public int size() {
+		return blocks.size();
+	}
+
+	private static final class BlockKey {
+		private final int owner;
+		private final long blockStart;
+
+		BlockKey(int owner, long blockStart) {
+			this.owner = owner;
+			this.blockStart = blockStart;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof BlockKey)) {
+				return false;
+			}
+			BlockKey other = (BlockKey) o;
+			return owner == other.owner && blockStart == other.blockStart;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * owner + (int) (blockStart ^ (blockStart >>> 32));
+		}
+	}
+
+	private static final class Block {
+		private final BlockKey key;
+		private final ByteBuffer data;
+		private volatile boolean referenced = true;
+
+		Block(BlockKey key, ByteBuffer data) {
+			this.key = key;
+			this.data = data;
+		}
+	}
+}
@@ -24,7 +24,6 @@ import gnu.trove.TIntHashSet;
 import java.util.ArrayList;
 import java.util.List;
 
-import marytts.features.FeatureVector;
 import marytts.unitselection.select.DiphoneTarget;
 import marytts.unitselection.select.HalfPhoneTarget;
 import marytts.unitselection.select.Target;
@@ -78,7 +77,6 @@ public class DiphoneUnitDatabase extends UnitDatabase {
 		int iPhoneme = targetCostFunction.getFeatureDefinition().getFeatureIndex("phone");
 		byte bleftName = targetCostFunction.getFeatureDefinition().getFeatureValueAsByte(iPhoneme, leftName);
 		byte brightName = targetCostFunction.getFeatureDefinition().getFeatureValueAsByte(iPhoneme, rightName);
-		FeatureVector[] fvs = targetCostFunction.getFeatureVectors();
 
 		// HashSet<DiphoneUnit> candidateUnitSet = new HashSet<DiphoneUnit>();
 		TIntHashSet candidateUnitSet = new TIntHashSet();
@@ -91,16 +89,14 @@ public class DiphoneUnitDatabase extends UnitDatabase {
 		// Now, clist is an array of halfphone unit indexes.
 		for (int i = 0; i < clist.length; i++) {
 			Unit unit = unitReader.units[clist[i]];
-			FeatureVector fv = fvs != null ? fvs[unit.index] : targetCostFunction.getFeatureVector(unit);
-			byte bunitName = fv.byteValuedDiscreteFeatures[iPhoneme];
+			byte bunitName = targetCostFunction.getByteFeature(unit, iPhoneme);
 			// force correct phone symbol:
 			if (bunitName != bleftName)
 				continue;
 			int iRightNeighbour = clist[i] + 1;
 			if (iRightNeighbour < numUnits) {
 				Unit rightNeighbour = unitReader.units[iRightNeighbour];
-				FeatureVector rfv = fvs != null ? fvs[iRightNeighbour] : targetCostFunction.getFeatureVector(rightNeighbour);
-				byte brightUnitName = rfv.byteValuedDiscreteFeatures[iPhoneme];
+				byte brightUnitName = targetCostFunction.getByteFeature(rightNeighbour, iPhoneme);
 				if (brightUnitName == brightName) {
 					// Found a diphone -- add it to candidates
 					// DiphoneUnit diphoneUnit = new DiphoneUnit(unit, rightNeighbour);
@@ -117,16 +113,14 @@ public class DiphoneUnitDatabase extends UnitDatabase {
 		// Now, clist is an array of halfphone unit indexes.
 		for (int i = 0; i < clist.length; i++) {
 			Unit unit = unitReader.units[clist[i]];
-			FeatureVector fv = fvs != null ? fvs[unit.index] : targetCostFunction.getFeatureVector(unit);
-			byte bunitName = fv.byteValuedDiscreteFeatures[iPhoneme];
+			byte bunitName = targetCostFunction.getByteFeature(unit, iPhoneme);
 			// force correct phone symbol:
 			if (bunitName != brightName)
 				continue;
 			int iLeftNeighbour = clist[i] - 1;
 			if (iLeftNeighbour >= 0) {
 				Unit leftNeighbour = unitReader.units[iLeftNeighbour];
-				FeatureVector lfv = fvs != null ? fvs[iLeftNeighbour] : targetCostFunction.getFeatureVector(leftNeighbour);
-				byte bleftUnitName = lfv.byteValuedDiscreteFeatures[iPhoneme];
+				byte bleftUnitName = targetCostFunction.getByteFeature(leftNeighbour, iPhoneme);
 				if (bleftUnitName == bleftName) {
 					// Found a diphone -- add it to candidates
 					// DiphoneUnit diphoneUnit = new DiphoneUnit(leftNeighbour, unit);
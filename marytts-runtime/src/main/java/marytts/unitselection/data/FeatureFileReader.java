@@ -20,6 +20,7 @@
 package marytts.unitselection.data;
 
 import java.io.BufferedInputStream;
+import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -29,12 +30,33 @@ import java.nio.channels.FileChannel;
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
 import marytts.features.FeatureVector;
+import marytts.server.MaryProperties;
 import marytts.util.data.MaryHeader;
 
+/**
+ * Read access to a unit feature file. The feature values of all units are held in one array per feature type, in unit order,
+ * or, if the property <code>unitselection.features.mapped</code> is true, are read directly from the memory-mapped file. Either
+ * way, no objects are created per unit: use {@link #getByteFeature(int, int)}, {@link #getShortFeature(int, int)} and
+ * {@link #getContinuousFeature(int, int)} to read single values. {@link FeatureVector} objects are only created when they are
+ * asked for.
+ */
 public class FeatureFileReader {
 	protected MaryHeader hdr;
 	protected FeatureDefinition featureDefinition;
-	protected FeatureVector[] featureVectors;
+	// FeatureVector objects for all units, created on demand by getFeatureVectors()
+	protected volatile FeatureVector[] featureVectors;
+
+	protected int numberOfUnits;
+	protected int numByteFeatures;
+	protected int numShortFeatures;
+	protected int numContinuousFeatures;
+	// Feature values on the heap: the byte features of unit i are at byteFeatures[i * numByteFeatures ...], etc.
+	protected byte[] byteFeatures;
+	protected short[] shortFeatures;
+	protected float[] continuousFeatures;
+	// ... or in the memory-mapped file, as records of recordSize bytes starting at position 0 of this buffer:
+	protected ByteBuffer mappedFeatures;
+	protected int recordSize;
 
 	/**
 	 * Get a feature file reader representing the given feature file.
@@ -83,12 +105,8 @@ public class FeatureFileReader {
 			throw new IOException("File [" + fileName + "] is not a valid Mary feature file.");
 		}
 		featureDefinition = new FeatureDefinition(dis);
-		int numberOfUnits = dis.readInt();
-		featureVectors = new FeatureVector[numberOfUnits];
-		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, dis);
-		}
-
+		readUnitFeatures(dis);
+		dis.close();
 	}
 
 	protected void loadFromByteBuffer(String fileName) throws IOException, MaryConfigurationException {
@@ -104,23 +122,196 @@ public class FeatureFileReader {
 			throw new MaryConfigurationException("File [" + fileName + "] is not a valid Mary feature file.");
 		}
 		featureDefinition = new FeatureDefinition(bb);
-		int numberOfUnits = bb.getInt();
-		featureVectors = new FeatureVector[numberOfUnits];
+		readUnitFeatures(bb, fileName);
+	}
+
+	private void initSizes(int numUnits) {
+		numberOfUnits = numUnits;
+		numByteFeatures = featureDefinition.getNumberOfByteFeatures();
+		numShortFeatures = featureDefinition.getNumberOfShortFeatures();
+		numContinuousFeatures = featureDefinition.getNumberOfContinuousFeatures();
+		recordSize = numByteFeatures + 2 * numShortFeatures + 4 * numContinuousFeatures;
+		featureVectors = null;
+		byteFeatures = null;
+		shortFeatures = null;
+		continuousFeatures = null;
+		mappedFeatures = null;
+	}
+
+	/**
+	 * Read the number of units and the feature values of all units, according to featureDefinition.
+	 * 
+	 * @param input
+	 *            the input, positioned after the feature definition.
+	 * @throws IOException
+	 */
+	protected void readUnitFeatures(DataInput input) throws IOException {
+		initSizes(input.readInt());
+		allocateFeatureArrays();
 		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, bb);
+			input.readFully(byteFeatures, i * numByteFeatures, numByteFeatures);
+			for (int j = i * numShortFeatures, end = j + numShortFeatures; j < end; j++) {
+				shortFeatures[j] = input.readShort();
+			}
+			for (int j = i * numContinuousFeatures, end = j + numContinuousFeatures; j < end; j++) {
+				continuousFeatures[j] = input.readFloat();
+			}
+		}
+	}
+
+	/**
+	 * Read the number of units and the feature values of all units, according to featureDefinition. Depending on the property
+	 * <code>unitselection.features.mapped</code>, the values are either copied to the heap or read from bb whenever they are
+	 * needed.
+	 * 
+	 * @param bb
+	 *            the buffer, positioned after the feature definition.
+	 * @param fileName
+	 *            the file name, for error messages
+	 * @throws MaryConfigurationException
+	 *             if the file is too short for the number of units it claims to contain.
+	 */
+	protected void readUnitFeatures(ByteBuffer bb, String fileName) throws MaryConfigurationException {
+		initSizes(bb.getInt());
+		if ((long) numberOfUnits * recordSize > bb.remaining()) {
+			throw new MaryConfigurationException("File [" + fileName + "] is truncated: expected features for " + numberOfUnits
+					+ " units");
+		}
+		if (MaryProperties.getBoolean("unitselection.features.mapped", false)) {
+			mappedFeatures = bb.slice();
+			return;
+		}
+		allocateFeatureArrays();
+		for (int i = 0; i < numberOfUnits; i++) {
+			bb.get(byteFeatures, i * numByteFeatures, numByteFeatures);
+			for (int j = i * numShortFeatures, end = j + numShortFeatures; j < end; j++) {
+				shortFeatures[j] = bb.getShort();
+			}
+			for (int j = i * numContinuousFeatures, end = j + numContinuousFeatures; j < end; j++) {
+				continuousFeatures[j] = bb.getFloat();
+			}
+		}
+	}
+
+	private void allocateFeatureArrays() {
+		byteFeatures = new byte[numberOfUnits * numByteFeatures];
+		shortFeatures = new short[numberOfUnits * numShortFeatures];
+		continuousFeatures = new float[numberOfUnits * numContinuousFeatures];
+	}
+
+	/**
+	 * Whether the feature values are read from the memory-mapped feature file rather than held on the heap.
+	 * 
+	 * @return true if the features are memory-mapped
+	 */
+	public boolean isMapped() {
+		return mappedFeatures != null;
+	}
+
+	/**
+	 * Get the value of a byte-valued feature of a unit.
+	 * 
+	 * @param unitIndex
+	 *            the absolute index number of a unit in the database
+	 * @param featureIndex
+	 *            the index of a byte-valued feature in the feature definition
+	 * @return the feature value, as in {@link FeatureVector#getByteFeature(int)}
+	 */
+	public byte getByteFeature(int unitIndex, int featureIndex) {
+		if (featureIndex < 0 || featureIndex >= numByteFeatures) {
+			throw new IndexOutOfBoundsException(featureIndex + " is not between 0 and " + numByteFeatures);
+		}
+		if (byteFeatures != null) {
+			return byteFeatures[unitIndex * numByteFeatures + featureIndex];
 		}
+		return mappedFeatures.get(recordStart(unitIndex) + featureIndex);
+	}
 
+	/**
+	 * Get the value of a short-valued feature of a unit.
+	 * 
+	 * @param unitIndex
+	 *            the absolute index number of a unit in the database
+	 * @param featureIndex
+	 *            the index of a short-valued feature in the feature definition
+	 * @return the feature value, as in {@link FeatureVector#getShortFeature(int)}
+	 */
+	public short getShortFeature(int unitIndex, int featureIndex) {
+		int i = featureIndex - numByteFeatures;
+		if (i < 0 || i >= numShortFeatures) {
+			throw new IndexOutOfBoundsException(featureIndex + " is not a short feature index");
+		}
+		if (shortFeatures != null) {
+			return shortFeatures[unitIndex * numShortFeatures + i];
+		}
+		return mappedFeatures.getShort(recordStart(unitIndex) + numByteFeatures + 2 * i);
 	}
 
 	/**
-	 * Get the unit feature vector for the given unit index number.
+	 * Get the value of a continuous feature of a unit.
+	 * 
+	 * @param unitIndex
+	 *            the absolute index number of a unit in the database
+	 * @param featureIndex
+	 *            the index of a continuous feature in the feature definition
+	 * @return the feature value, as in {@link FeatureVector#getContinuousFeature(int)}
+	 */
+	public float getContinuousFeature(int unitIndex, int featureIndex) {
+		int i = featureIndex - numByteFeatures - numShortFeatures;
+		if (i < 0 || i >= numContinuousFeatures) {
+			throw new IndexOutOfBoundsException(featureIndex + " is not a continuous feature index");
+		}
+		if (continuousFeatures != null) {
+			return continuousFeatures[unitIndex * numContinuousFeatures + i];
+		}
+		return mappedFeatures.getFloat(recordStart(unitIndex) + numByteFeatures + 2 * numShortFeatures + 4 * i);
+	}
+
+	private int recordStart(int unitIndex) {
+		if (unitIndex < 0 || unitIndex >= numberOfUnits) {
+			throw new IndexOutOfBoundsException("Unit index " + unitIndex + " is not between 0 and " + numberOfUnits);
+		}
+		return unitIndex * recordSize;
+	}
+
+	/**
+	 * Get the unit feature vector for the given unit index number. Unless {@link #getFeatureVectors()} has been called before,
+	 * this creates a new feature vector holding a copy of the unit's features; use {@link #getByteFeature(int, int)} and its
+	 * siblings to read single values without creating objects.
 	 * 
 	 * @param unitIndex
 	 *            the absolute index number of a unit in the database
 	 * @return the corresponding feature vector
 	 */
 	public FeatureVector getFeatureVector(int unitIndex) {
-		return featureVectors[unitIndex];
+		FeatureVector[] fvs = featureVectors;
+		if (fvs != null) {
+			return fvs[unitIndex];
+		}
+		return createFeatureVector(unitIndex);
+	}
+
+	private FeatureVector createFeatureVector(int unitIndex) {
+		byte[] bytes = new byte[numByteFeatures];
+		short[] shorts = new short[numShortFeatures];
+		float[] floats = new float[numContinuousFeatures];
+		if (mappedFeatures == null) {
+			System.arraycopy(byteFeatures, unitIndex * numByteFeatures, bytes, 0, numByteFeatures);
+			System.arraycopy(shortFeatures, unitIndex * numShortFeatures, shorts, 0, numShortFeatures);
+			System.arraycopy(continuousFeatures, unitIndex * numContinuousFeatures, floats, 0, numContinuousFeatures);
+		} else {
+			int pos = recordStart(unitIndex);
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = mappedFeatures.get(pos++);
+			}
+			for (int i = 0; i < shorts.length; i++, pos += 2) {
+				shorts[i] = mappedFeatures.getShort(pos);
+			}
+			for (int i = 0; i < floats.length; i++, pos += 4) {
+				floats[i] = mappedFeatures.getFloat(pos);
+			}
+		}
+		return new FeatureVector(bytes, shorts, floats, unitIndex);
 	}
 
 	/**
@@ -129,15 +320,23 @@ public class FeatureFileReader {
 	 * @return a new array containing the internal feature vectors
 	 */
 	public FeatureVector[] getCopyOfFeatureVectors() {
-		return (FeatureVector[]) featureVectors.clone();
+		return (FeatureVector[]) getFeatureVectors().clone();
 	}
 
 	/**
-	 * Return the internal array of feature vectors.
+	 * Return the internal array of feature vectors. The feature vectors are created on the first call, which costs one object
+	 * per unit; code that only reads feature values should use {@link #getByteFeature(int, int)} and its siblings instead.
 	 * 
 	 * @return the internal array of feature vectors.
 	 */
-	public FeatureVector[] getFeatureVectors() {
+	public synchronized FeatureVector[] getFeatureVectors() {
+		if (featureVectors == null) {
+			FeatureVector[] fvs = new FeatureVector[numberOfUnits];
+			for (int i = 0; i < numberOfUnits; i++) {
+				fvs[i] = createFeatureVector(i);
+			}
+			featureVectors = fvs;
+		}
 		return featureVectors;
 	}
 
@@ -183,11 +382,11 @@ public class FeatureFileReader {
 
 			for (int j = 0; j < featureIndexes.length; j++) {
 				if (newFeatureDefinition.isByteFeature(j)) {
-					byteFeatures[countByteFeatures++] = featureVectors[i].getByteFeature(featureIndexes[j]);
+					byteFeatures[countByteFeatures++] = getByteFeature(i, featureIndexes[j]);
 				} else if (newFeatureDefinition.isShortFeature(j)) {
-					shortFeatures[countShortFeatures++] = featureVectors[i].getShortFeature(featureIndexes[j]);
+					shortFeatures[countShortFeatures++] = getShortFeature(i, featureIndexes[j]);
 				} else if (newFeatureDefinition.isContinuousFeature(j)) {
-					continiousFeatures[countFloatFeatures++] = featureVectors[i].getContinuousFeature(featureIndexes[j]);
+					continiousFeatures[countFloatFeatures++] = getContinuousFeature(i, featureIndexes[j]);
 				}
 			}
 
@@ -205,7 +404,7 @@ public class FeatureFileReader {
 	 * @return the corresponding feature vector
 	 */
 	public FeatureVector getFeatureVector(Unit unit) {
-		return featureVectors[unit.index];
+		return getFeatureVector(unit.index);
 	}
 
 	public FeatureDefinition getFeatureDefinition() {
@@ -213,6 +412,6 @@ public class FeatureFileReader {
 	}
 
 	public int getNumberOfUnits() {
-		return (featureVectors.length);
+		return numberOfUnits;
 	}
 }
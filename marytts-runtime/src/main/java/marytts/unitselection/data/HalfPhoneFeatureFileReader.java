@@ -28,7 +28,6 @@ import java.nio.channels.FileChannel;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
-import marytts.features.FeatureVector;
 import marytts.util.data.MaryHeader;
 
 public class HalfPhoneFeatureFileReader extends FeatureFileReader {
@@ -57,11 +56,8 @@ public class HalfPhoneFeatureFileReader extends FeatureFileReader {
 		rightWeights = new FeatureDefinition(dis);
 		assert leftWeights.featureEquals(rightWeights) : "Halfphone unit feature file contains incompatible feature definitions for left and right units -- this should not happen!";
 		featureDefinition = leftWeights; // one of them, for super class
-		int numberOfUnits = dis.readInt();
-		featureVectors = new FeatureVector[numberOfUnits];
-		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, dis);
-		}
+		readUnitFeatures(dis);
+		dis.close();
 	}
 
 	@Override
@@ -81,11 +77,7 @@ public class HalfPhoneFeatureFileReader extends FeatureFileReader {
 		rightWeights = new FeatureDefinition(bb);
 		assert leftWeights.featureEquals(rightWeights) : "Halfphone unit feature file contains incompatible feature definitions for left and right units -- this should not happen!";
 		featureDefinition = leftWeights; // one of them, for super class
-		int numberOfUnits = bb.getInt();
-		featureVectors = new FeatureVector[numberOfUnits];
-		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, bb);
-		}
+		readUnitFeatures(bb, fileName);
 	}
 
 	public FeatureDefinition getLeftWeights() {
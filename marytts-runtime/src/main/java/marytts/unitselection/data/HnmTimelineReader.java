@@ -24,6 +24,7 @@ import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.LinkedList;
 import java.util.Properties;
@@ -116,9 +117,7 @@ public class HnmTimelineReader extends TimelineReader {
 		Datagram d = null;
 
 		/* If the end of the datagram zone is reached, refuse to read */
-		if (bb.position() == bb.limit()) {
-			// throw new IndexOutOfBoundsException( "Time out of bounds: you are trying to read a datagram at" +
-			// " a time which is bigger than the total timeline duration." );
+		if (!canReadDatagramHeader(bb)) {
 			return null;
 		}
 		/* Else, pop the datagram out of the file */
@@ -128,6 +127,9 @@ public class HnmTimelineReader extends TimelineReader {
 		/* Detect a possible EOF encounter */
 		catch (IOException e) {
 			return null;
+		} catch (BufferUnderflowException e) {
+			// the datagram is not fully contained in bb
+			return null;
 		}
 
 		return d;
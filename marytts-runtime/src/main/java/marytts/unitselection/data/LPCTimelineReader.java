@@ -21,6 +21,7 @@ package marytts.unitselection.data;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.Properties;
 
@@ -83,7 +84,7 @@ public class LPCTimelineReader extends TimelineReader {
 		Datagram d = null;
 
 		/* If the end of the datagram zone is reached, gracefully refuse to read */
-		if (bb.position() == timeIdxBytePos)
+		if (!canReadDatagramHeader(bb))
 			return (null);
 		/* Else, pop the datagram out of the file */
 		try {
@@ -92,6 +93,9 @@ public class LPCTimelineReader extends TimelineReader {
 		/* Detect a possible EOF encounter */
 		catch (IOException e) {
 			return null;
+		} catch (BufferUnderflowException e) {
+			// the datagram is not fully contained in bb
+			return null;
 		}
 
 		return (d);
@@ -21,6 +21,7 @@ package marytts.unitselection.data;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.Properties;
 
@@ -68,7 +69,7 @@ public class MCepTimelineReader extends TimelineReader {
 		Datagram d = null;
 
 		/* If the end of the datagram zone is reached, gracefully refuse to read */
-		if (bb.position() == timeIdxBytePos)
+		if (!canReadDatagramHeader(bb))
 			return (null);
 		/* Else, pop the datagram out of the file */
 		try {
@@ -77,6 +78,9 @@ public class MCepTimelineReader extends TimelineReader {
 		/* Detect a possible EOF encounter */
 		catch (IOException e) {
 			return null;
+		} catch (BufferUnderflowException e) {
+			// the datagram is not fully contained in bb
+			return null;
 		}
 
 		return (d);
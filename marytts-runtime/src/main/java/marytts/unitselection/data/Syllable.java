@@ -20,7 +20,6 @@
 
 package marytts.unitselection.data;
 
-import marytts.features.FeatureVector;
 
 /**
  * This class represents the section of a feature file which constitutes a sentence.
@@ -58,8 +57,7 @@ public class Syllable {
 		int fiVowel = features.getFeatureDefinition().getFeatureIndex("ph_vc");
 		byte fvVowel_Plus = features.getFeatureDefinition().getFeatureValueAsByte(fiVowel, "+");
 		for (int i = firstUnitIndex; i <= lastUnitIndex; i++) {
-			FeatureVector fv = features.getFeatureVector(i);
-			if (fv.getByteFeature(fiVowel) == fvVowel_Plus) {
+			if (features.getByteFeature(i, fiVowel) == fvVowel_Plus) {
 				return i;
 			}
 		}
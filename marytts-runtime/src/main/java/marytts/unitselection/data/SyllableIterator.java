@@ -24,7 +24,6 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 import marytts.features.FeatureDefinition;
-import marytts.features.FeatureVector;
 
 /**
  * @author marc
@@ -132,20 +131,20 @@ public class SyllableIterator implements Iterator<Syllable> {
 	}
 
 	private boolean isSyllableStart(int index) {
-		FeatureVector fv = features.getFeatureVector(index);
+		byte phone = features.getByteFeature(index, fiPhone);
 
-		return fv.getByteFeature(fiPhone) != fvPhone_0 // not an edge unit
-				&& fv.getByteFeature(fiPhone) != fvPhone_Silence // not silence
-				&& fv.getByteFeature(fiSylStart) == 0 // first segment in syllable
-				&& (!isHalfphone || fv.getByteFeature(fiLR) == fvLR_L); // if halfphone, it's the left half
+		return phone != fvPhone_0 // not an edge unit
+				&& phone != fvPhone_Silence // not silence
+				&& features.getByteFeature(index, fiSylStart) == 0 // first segment in syllable
+				&& (!isHalfphone || features.getByteFeature(index, fiLR) == fvLR_L); // if halfphone, it's the left half
 	}
 
 	private boolean isSyllableEnd(int index) {
-		FeatureVector fv = features.getFeatureVector(index);
+		byte phone = features.getByteFeature(index, fiPhone);
 
-		return fv.getByteFeature(fiPhone) != fvPhone_0 // not an edge unit
-				&& fv.getByteFeature(fiPhone) != fvPhone_Silence // not silence
-				&& fv.getByteFeature(fiSylEnd) == 0 // last segment in syllable
-				&& (!isHalfphone || fv.getByteFeature(fiLR) == fvLR_R); // if halfphone, it's the right half
+		return phone != fvPhone_0 // not an edge unit
+				&& phone != fvPhone_Silence // not silence
+				&& features.getByteFeature(index, fiSylEnd) == 0 // last segment in syllable
+				&& (!isHalfphone || features.getByteFeature(index, fiLR) == fvLR_R); // if halfphone, it's the right half
 	}
 }
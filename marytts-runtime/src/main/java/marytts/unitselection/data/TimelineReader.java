@@ -43,6 +43,7 @@ import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.util.MaryUtils;
@@ -72,12 +73,23 @@ public class TimelineReader {
 	 */
 	protected long totalDuration = -1;
 
-	protected int datagramsBytePos = 0;
-	protected int timeIdxBytePos = 0;
+	protected long datagramsBytePos = 0;
+	protected long timeIdxBytePos = 0;
+
+	/**
+	 * The maximum size of a memory-mapped window of the datagram zone. Timelines with a bigger datagram zone are mapped as a
+	 * sequence of consecutive windows of this size.
+	 */
+	public static final long MAX_MAPPED_SEGMENT_SIZE = Integer.MAX_VALUE;
 
 	// exactly one of the two following variables will be non-null after load():
-	private MappedByteBuffer mappedBB = null;
+	private MappedByteBuffer[] mappedSegments = null; // windows of mappedSegmentSize bytes each, except the last one
+	private long mappedSegmentSize;
 	private FileChannel fileChannel = null;
+	// for piecewise reading, the cache of file blocks (may be null), and our identity in that cache:
+	private DatagramBlockCache blockCache = null;
+	private int blockCacheId;
+	private static AtomicInteger numBlockCacheIds = new AtomicInteger();
 
 	/****************/
 	/* CONSTRUCTORS */
@@ -165,6 +177,30 @@ public class TimelineReader {
 	 */
 	protected void load(String fileName, boolean tryMemoryMapping) throws IOException, BufferUnderflowException,
 			MaryConfigurationException, NullPointerException {
+		load(fileName, tryMemoryMapping, MAX_MAPPED_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Load a timeline from a file.
+	 * 
+	 * @param fileName
+	 *            The file to read the timeline from. Must be non-null and point to a valid timeline file.
+	 * @param tryMemoryMapping
+	 *            if true, will attempt to read audio data via a memory map, and fall back to piecewise reading. If false, will
+	 *            immediately go for piecewise reading using a RandomAccessFile.
+	 * @param maxSegmentSize
+	 *            if the datagram zone is bigger than this many bytes, it is memory-mapped as several windows of this size.
+	 *            Must be positive and not greater than {@link #MAX_MAPPED_SEGMENT_SIZE}.
+	 * @throws IOException
+	 *             if a problem occurs during reading
+	 * @throws BufferUnderflowException
+	 *             if a problem occurs during reading
+	 * @throws MaryConfigurationException
+	 *             if fileName does not point to a valid timeline file
+	 */
+	protected void load(String fileName, boolean tryMemoryMapping, long maxSegmentSize) throws IOException,
+			BufferUnderflowException, MaryConfigurationException, NullPointerException {
+		assert maxSegmentSize > 0 && maxSegmentSize <= MAX_MAPPED_SEGMENT_SIZE;
 		assert fileName != null : "filename is null";
 
 		RandomAccessFile file = new RandomAccessFile(fileName, "r");
@@ -190,8 +226,8 @@ public class TimelineReader {
 		}
 
 		/* Load the positions of the various subsequent components */
-		datagramsBytePos = (int) headerBB.getLong();
-		timeIdxBytePos = (int) headerBB.getLong();
+		datagramsBytePos = headerBB.getLong();
+		timeIdxBytePos = headerBB.getLong();
 		if (timeIdxBytePos < datagramsBytePos) {
 			throw new MaryConfigurationException("File seems corrupt: index is expected after data, not before");
 		}
@@ -206,24 +242,36 @@ public class TimelineReader {
 
 		if (tryMemoryMapping) {
 			// Try if we can use a mapped byte buffer:
+			// if the datagram zone is too big for a single map, use several consecutive windows:
+			long datagramZoneSize = timeIdxBytePos - datagramsBytePos;
+			int numSegments = (int) Math.max(1, (datagramZoneSize + maxSegmentSize - 1) / maxSegmentSize);
 			try {
-				mappedBB = fc.map(FileChannel.MapMode.READ_ONLY, datagramsBytePos, timeIdxBytePos - datagramsBytePos);
+				MappedByteBuffer[] segments = new MappedByteBuffer[numSegments];
+				for (int i = 0; i < numSegments; i++) {
+					long segmentStart = i * maxSegmentSize;
+					segments[i] = fc.map(FileChannel.MapMode.READ_ONLY, datagramsBytePos + segmentStart,
+							Math.min(maxSegmentSize, datagramZoneSize - segmentStart));
+				}
+				mappedSegments = segments;
+				mappedSegmentSize = maxSegmentSize;
 				file.close(); // if map() succeeded, we don't need the file anymore.
 			} catch (IOException ome) {
 				MaryUtils.getLogger("Timeline").warn(
 						"Cannot use memory mapping for timeline file '" + fileName + "' -- falling back to piecewise reading");
 			}
 		}
-		if (!tryMemoryMapping || mappedBB == null) { // use piecewise reading
+		if (!tryMemoryMapping || mappedSegments == null) { // use piecewise reading
 			fileChannel = fc;
 			assert fileChannel != null;
 			// and leave file open
+			blockCache = DatagramBlockCache.getSharedCache();
+			blockCacheId = numBlockCacheIds.incrementAndGet();
 		}
 
 		// postconditions:
 		assert idx != null;
 		assert procHdr != null;
-		assert fileChannel == null && mappedBB != null || fileChannel != null && mappedBB == null;
+		assert fileChannel == null && mappedSegments != null || fileChannel != null && mappedSegments == null;
 	}
 
 	/**
@@ -399,8 +447,8 @@ public class TimelineReader {
 	 */
 	protected Datagram getNextDatagram(ByteBuffer bb) {
 		assert bb != null;
-		// If the end of the datagram zone is reached, refuse to read
-		if (bb.position() == bb.limit()) {
+		// If the end of the datagram zone or of the buffer is reached, refuse to read
+		if (!canReadDatagramHeader(bb)) {
 			return null;
 		}
 		// Else, read the datagram from the file
@@ -474,7 +522,7 @@ public class TimelineReader {
 	 *             , BufferUnderflowException if no byte buffer can be obtained for the requested time.
 	 */
 	protected Pair<ByteBuffer, Long> getByteBufferAtTime(long targetTimeInSamples) throws IOException, BufferUnderflowException {
-		if (mappedBB != null) {
+		if (mappedSegments != null && mappedSegments.length == 1) {
 			return getMappedByteBufferAtTime(targetTimeInSamples);
 		} else {
 			return loadByteBufferAtTime(targetTimeInSamples);
@@ -483,34 +531,29 @@ public class TimelineReader {
 
 	protected Pair<ByteBuffer, Long> getMappedByteBufferAtTime(long targetTimeInSamples) throws IllegalArgumentException,
 			IOException {
-		assert mappedBB != null;
+		assert mappedSegments != null && mappedSegments.length == 1;
 		/* Seek for the time index which comes just before the requested time */
 		IdxField idxFieldBefore = idx.getIdxFieldBefore(targetTimeInSamples);
 		long time = idxFieldBefore.timePtr;
 		int bytePos = (int) (idxFieldBefore.bytePtr - datagramsBytePos);
-		ByteBuffer bb = mappedBB.duplicate();
+		ByteBuffer bb = mappedSegments[0].duplicate();
 		bb.position(bytePos);
 		time = hopToTime(bb, time, targetTimeInSamples);
 		return new Pair<ByteBuffer, Long>(bb, time);
 	}
 
 	protected Pair<ByteBuffer, Long> loadByteBufferAtTime(long targetTimeInSamples) throws IOException {
-		assert fileChannel != null;
-		// we must load a chunk of data from the FileChannel
-		int bufSize = 0x10000; // 64 kB
+		assert fileChannel != null || mappedSegments != null;
 		/* Seek for the time index which comes just before the requested time */
 		IdxField idxFieldBefore = idx.getIdxFieldBefore(targetTimeInSamples);
 		long time = idxFieldBefore.timePtr;
-		long bytePos = idxFieldBefore.bytePtr;
-		if (bytePos + bufSize > timeIdxBytePos) { // must not read index data as datagrams
-			bufSize = (int) (timeIdxBytePos - bytePos);
-		}
-		ByteBuffer bb = loadByteBuffer(bytePos, bufSize);
+		long bytePos = idxFieldBefore.bytePtr; // the file position corresponding to position 0 in bb
+		ByteBuffer bb = loadByteBuffer(bytePos, Datagram.NUM_HEADER_BYTES);
 
 		while (true) {
 			if (!canReadDatagramHeader(bb)) {
-				bb = loadByteBuffer(bytePos, bufSize);
-				assert canReadDatagramHeader(bb);
+				bytePos += bb.position();
+				bb = loadByteBuffer(bytePos, Datagram.NUM_HEADER_BYTES);
 			}
 			int posBefore = bb.position();
 			Datagram d = new Datagram(bb, false);
@@ -519,7 +562,7 @@ public class TimelineReader {
 				int datagramNumBytes = Datagram.NUM_HEADER_BYTES + d.getLength();
 				// need to make sure we return a byte buffer from which d can be read
 				if (!canReadAmount(bb, datagramNumBytes)) {
-					bb = loadByteBuffer(bytePos, Math.max(datagramNumBytes, bufSize));
+					bb = loadByteBuffer(bytePos + posBefore, datagramNumBytes);
 				}
 				assert canReadAmount(bb, datagramNumBytes);
 				break;
@@ -531,7 +574,7 @@ public class TimelineReader {
 				} else {
 					bytePos += bb.position();
 					bytePos += d.getLength();
-					bb = loadByteBuffer(bytePos, bufSize);
+					bb = loadByteBuffer(bytePos, Datagram.NUM_HEADER_BYTES);
 				}
 			}
 		}
@@ -539,27 +582,81 @@ public class TimelineReader {
 	}
 
 	/**
+	 * Get a byte buffer holding the data from the given position in the file. If the timeline is memory-mapped in several
+	 * windows, this is a view of the window containing bytePos; only data which straddles a window boundary is copied. Else, if
+	 * a block cache is available, the data is taken from the cached block containing bytePos, so that no file access is needed;
+	 * only data which is larger than a cache block or straddles a block boundary is read directly from the file.
+	 * 
 	 * @param bytePos
 	 *            position in fileChannel from which to load the byte buffer
-	 * @param bufSize
-	 *            size of the byte buffer
-	 * @return the byte buffer, loaded and set such that limit is bufSize and position is 0
+	 * @param minBytes
+	 *            the number of bytes that must at least be readable from the byte buffer, unless the end of the datagram zone
+	 *            is reached
+	 * @return the byte buffer, set such that position 0 corresponds to bytePos
 	 * @throws IOException
 	 *             if the data cannot be read from fileChannel
 	 */
-	private ByteBuffer loadByteBuffer(long bytePos, int bufSize) throws IOException {
+	private ByteBuffer loadByteBuffer(long bytePos, int minBytes) throws IOException {
+		if (mappedSegments != null) {
+			return getMappedSegmentBuffer(bytePos, minBytes);
+		}
+		if (blockCache != null) {
+			int blockSize = blockCache.getBlockSize();
+			long blockStart = bytePos - bytePos % blockSize;
+			int offset = (int) (bytePos - blockStart);
+			if (offset + minBytes <= blockSize) {
+				ByteBuffer bb = blockCache.getBlock(blockCacheId, fileChannel, blockStart, timeIdxBytePos).duplicate();
+				bb.position(Math.min(offset, bb.limit()));
+				return bb.slice();
+			}
+		}
+		// must not read index data as datagrams:
+		int bufSize = (int) Math.min(Math.max(minBytes, 0x10000), timeIdxBytePos - bytePos);
 		ByteBuffer bb = ByteBuffer.allocate(bufSize);
-		fileChannel.read(bb, bytePos); // this will block if another thread is currently reading from fileChannel
-		bb.limit(bb.position());
-		bb.position(0);
+		while (bb.hasRemaining()) {
+			// positional reads do not block other threads reading from fileChannel
+			if (fileChannel.read(bb, bytePos + bb.position()) < 0) {
+				break;
+			}
+		}
+		bb.flip();
 		return bb;
 	}
 
-	private boolean canReadDatagramHeader(ByteBuffer bb) {
+	private ByteBuffer getMappedSegmentBuffer(long bytePos, int minBytes) {
+		long zonePos = bytePos - datagramsBytePos;
+		int segment = (int) (zonePos / mappedSegmentSize);
+		int offset = (int) (zonePos % mappedSegmentSize);
+		if (segment >= mappedSegments.length) { // at the end of the datagram zone
+			segment = mappedSegments.length - 1;
+			offset = mappedSegments[segment].limit();
+		}
+		ByteBuffer bb = mappedSegments[segment].duplicate();
+		bb.position(offset);
+		if (bb.remaining() >= minBytes || segment == mappedSegments.length - 1) {
+			return bb.slice();
+		}
+		// the requested data straddles one or more window boundaries, so we must copy it:
+		ByteBuffer copy = ByteBuffer.allocate((int) Math.min(minBytes, timeIdxBytePos - bytePos));
+		while (true) {
+			if (bb.remaining() > copy.remaining()) {
+				bb.limit(bb.position() + copy.remaining());
+			}
+			copy.put(bb);
+			if (!copy.hasRemaining()) {
+				break;
+			}
+			bb = mappedSegments[++segment].duplicate();
+		}
+		copy.flip();
+		return copy;
+	}
+
+	protected boolean canReadDatagramHeader(ByteBuffer bb) {
 		return canReadAmount(bb, Datagram.NUM_HEADER_BYTES);
 	}
 
-	private boolean canReadAmount(ByteBuffer bb, int amount) {
+	protected boolean canReadAmount(ByteBuffer bb, int amount) {
 		return bb.limit() - bb.position() >= amount;
 	}
 
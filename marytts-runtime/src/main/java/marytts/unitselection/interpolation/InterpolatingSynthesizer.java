@@ -115,17 +115,35 @@ public class InterpolatingSynthesizer implements WaveformSynthesizer {
 		}
 		UnitSelectionVoice usv1 = (UnitSelectionVoice) voice1;
 		UnitSelectionVoice usv2 = (UnitSelectionVoice) voice2;
+		// Get all parts of each voice at once, so that they come from the same load of a lazy voice,
+		// and keep those from being released while we use them:
+		UnitSelectionVoice.VoiceData data1 = usv1.acquireVoiceData();
+		try {
+			UnitSelectionVoice.VoiceData data2 = usv2.acquireVoiceData();
+			try {
+				return interpolate(tokensAndBoundaries, voice, percent, usv1, data1, usv2, data2);
+			} finally {
+				usv2.releaseVoiceData();
+			}
+		} finally {
+			usv1.releaseVoiceData();
+		}
+	}
+
+	private AudioInputStream interpolate(List<Element> tokensAndBoundaries, Voice voice, int percent, UnitSelectionVoice usv1,
+			UnitSelectionVoice.VoiceData data1, UnitSelectionVoice usv2, UnitSelectionVoice.VoiceData data2)
+			throws SynthesisException {
 
-		UnitSelector unitSel1 = usv1.getUnitSelector();
+		UnitSelector unitSel1 = data1.getUnitSelector();
 		List<SelectedUnit> selectedUnits1 = unitSel1.selectUnits(tokensAndBoundaries, voice);
-		UnitSelector unitSel2 = usv2.getUnitSelector();
+		UnitSelector unitSel2 = data2.getUnitSelector();
 		List<SelectedUnit> selectedUnits2 = unitSel2.selectUnits(tokensAndBoundaries, voice);
 		assert selectedUnits1.size() == selectedUnits2.size() : "Unexpected difference in number of units: "
 				+ selectedUnits1.size() + " vs. " + selectedUnits2.size();
 		int numUnits = selectedUnits1.size();
 
 		// 3. do unit concatenation with each, retrieve actual unit durations from list of units;
-		UnitConcatenator unitConcatenator1 = usv1.getConcatenator();
+		UnitConcatenator unitConcatenator1 = data1.getConcatenator();
 		AudioInputStream audio1;
 		try {
 			audio1 = unitConcatenator1.getAudio(selectedUnits1);
@@ -134,11 +152,11 @@ public class InterpolatingSynthesizer implements WaveformSynthesizer {
 			PrintWriter pw = new PrintWriter(sw);
 			for (Iterator selIt = selectedUnits1.iterator(); selIt.hasNext();)
 				pw.println(selIt.next());
-			throw new SynthesisException("For voice " + voice1.getName() + ", problems generating audio for unit chain: "
+			throw new SynthesisException("For voice " + usv1.getName() + ", problems generating audio for unit chain: "
 					+ sw.toString(), ioe);
 		}
 		DoubleDataSource audioSource1 = new AudioDoubleDataSource(audio1);
-		UnitConcatenator unitConcatenator2 = usv2.getConcatenator();
+		UnitConcatenator unitConcatenator2 = data2.getConcatenator();
 		AudioInputStream audio2;
 		try {
 			audio2 = unitConcatenator2.getAudio(selectedUnits2);
@@ -147,7 +165,7 @@ public class InterpolatingSynthesizer implements WaveformSynthesizer {
 			PrintWriter pw = new PrintWriter(sw);
 			for (Iterator selIt = selectedUnits2.iterator(); selIt.hasNext();)
 				pw.println(selIt.next());
-			throw new SynthesisException("For voice " + voice2.getName() + ", problems generating audio for unit chain: "
+			throw new SynthesisException("For voice " + usv2.getName() + ", problems generating audio for unit chain: "
 					+ sw.toString(), ioe);
 		}
 		DoubleDataSource audioSource2 = new AudioDoubleDataSource(audio2);
@@ -21,6 +21,8 @@ package marytts.unitselection.select;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
@@ -92,7 +94,11 @@ public class DiphoneFFRTargetCostFunction implements TargetCostFunction {
 	}
 
 	public FeatureVector getFeatureVector(Unit unit) {
-		return tcfForHalfphones.featureVectors[unit.index];
+		return tcfForHalfphones.getFeatureVector(unit);
+	}
+
+	public byte getByteFeature(Unit unit, int featureIndex) {
+		return tcfForHalfphones.getByteFeature(unit, featureIndex);
 	}
 
 	/**
@@ -132,6 +138,20 @@ public class DiphoneFFRTargetCostFunction implements TargetCostFunction {
 		}
 	}
 
+	public void computeTargetFeatures(List<? extends Target> targets) {
+		List<Target> halfphones = new ArrayList<Target>(2 * targets.size());
+		for (Target target : targets) {
+			if (!(target instanceof DiphoneTarget)) {
+				halfphones.add(target);
+			} else {
+				DiphoneTarget dt = (DiphoneTarget) target;
+				halfphones.add(dt.left);
+				halfphones.add(dt.right);
+			}
+		}
+		tcfForHalfphones.computeTargetFeatures(halfphones);
+	}
+
 	public FeatureVector[] getFeatureVectors() {
 		if (tcfForHalfphones != null) {
 			return tcfForHalfphones.getFeatureVectors();
@@ -23,6 +23,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
@@ -40,6 +42,9 @@ import marytts.util.MaryUtils;
 public class FFRTargetCostFunction implements TargetCostFunction {
 	protected WeightFunc[] weightFunction;
 	protected TargetFeatureComputer targetFeatureComputer;
+	// unit features, read value by value
+	protected FeatureFileReader featureFile;
+	// unit feature vectors for subclasses which compute their own (otherwise null)
 	protected FeatureVector[] featureVectors;
 	protected FeatureDefinition featureDefinition;
 	protected boolean[] weightsNonZero;
@@ -48,6 +53,13 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	protected double[] cumulWeightedCosts = null;
 	protected int nCostComputations = 0;
 
+	// number of lookups after which a thread adds its cache counts to the shared statistics:
+	private static final int CACHE_STATISTICS_INTERVAL = 1024;
+	protected int costCacheSize = 0;
+	private ThreadLocal<TargetCostCache> costCache;
+	private AtomicLong numCacheHits = new AtomicLong();
+	private AtomicLong numCacheMisses = new AtomicLong();
+
 	public FFRTargetCostFunction() {
 	}
 
@@ -59,20 +71,73 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	 * @return a non-negative number; smaller values mean better fit, i.e. smaller cost.
 	 */
 	public double cost(Target target, Unit unit) {
-		return cost(target, unit, featureDefinition, weightFunction);
+		return cachedCost(target, unit, featureDefinition, weightFunction);
+	}
+
+	/**
+	 * Look up the cost of the given unit for the given target in this thread's target cost cache, computing it with
+	 * {@link #cost(Target, Unit, FeatureDefinition, WeightFunc[])} if it is not known yet.
+	 */
+	protected double cachedCost(Target target, Unit unit, FeatureDefinition weights, WeightFunc[] weightFunctions) {
+		if (costCache == null || debugShowCostGraph) {
+			return cost(target, unit, weights, weightFunctions);
+		}
+		TargetCostCache cache = costCache.get();
+		long key = TargetCostCache.getKey(cache.getTargetId(target.getFeatureVector(), weights), unit.index);
+		double cost = cache.get(key);
+		if (cost != cost) { // NaN, i.e. not in the cache
+			cost = cost(target, unit, weights, weightFunctions);
+			cache.put(key, cost);
+		}
+		long numHits = cache.getNumHits();
+		long numMisses = cache.getNumMisses();
+		if (numHits + numMisses >= CACHE_STATISTICS_INTERVAL) {
+			numCacheHits.addAndGet(numHits);
+			numCacheMisses.addAndGet(numMisses);
+			cache.resetStatistics();
+		}
+		return cost;
+	}
+
+	/**
+	 * The number of target costs that were found in the cache. Each thread adds its counts in batches, so this lags slightly
+	 * behind.
+	 */
+	public long getNumCacheHits() {
+		return numCacheHits.get();
+	}
+
+	/**
+	 * The number of target costs that had to be computed because they were not in the cache.
+	 * 
+	 * @see #getNumCacheHits()
+	 */
+	public long getNumCacheMisses() {
+		return numCacheMisses.get();
+	}
+
+	/**
+	 * The proportion of target cost lookups that were served from the cache.
+	 * 
+	 * @return a number between 0 and 1, or 0 if the cache has not been used yet.
+	 */
+	public double getCacheHitRate() {
+		long hits = numCacheHits.get();
+		long lookups = hits + numCacheMisses.get();
+		return lookups == 0 ? 0 : (double) hits / lookups;
 	}
 
 	protected double cost(Target target, Unit unit, FeatureDefinition weights, WeightFunc[] weightFunctions) {
 		nCostComputations++; // for debug
 		FeatureVector targetFeatures = target.getFeatureVector();
 		assert targetFeatures != null : "Target " + target + " does not have pre-computed feature vector";
-		FeatureVector unitFeatures = featureVectors[unit.index];
+		int unitIndex = unit.index;
 		int nBytes = targetFeatures.byteValuedDiscreteFeatures.length;
 		int nShorts = targetFeatures.shortValuedDiscreteFeatures.length;
 		int nFloats = targetFeatures.continuousFeatures.length;
-		assert nBytes == unitFeatures.byteValuedDiscreteFeatures.length;
-		assert nShorts == unitFeatures.shortValuedDiscreteFeatures.length;
-		assert nFloats == unitFeatures.continuousFeatures.length;
+		assert nBytes == featureFile.getFeatureDefinition().getNumberOfByteFeatures();
+		assert nShorts == featureFile.getFeatureDefinition().getNumberOfShortFeatures();
+		assert nFloats == featureFile.getFeatureDefinition().getNumberOfContinuousFeatures();
 
 		float[] weightVector = weights.getFeatureWeights();
 		// Now the actual computation
@@ -84,12 +149,12 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 					float weight = weightVector[i];
 					if (featureDefinition.hasSimilarityMatrix(i)) {
 						byte targetFeatValueIndex = targetFeatures.byteValuedDiscreteFeatures[i];
-						byte unitFeatValueIndex = unitFeatures.byteValuedDiscreteFeatures[i];
+						byte unitFeatValueIndex = featureFile.getByteFeature(unitIndex, i);
 						float similarity = featureDefinition.getSimilarity(i, unitFeatValueIndex, targetFeatValueIndex);
 						cost += similarity * weight;
 						if (debugShowCostGraph)
 							cumulWeightedCosts[i] += similarity * weight;
-					} else if (targetFeatures.byteValuedDiscreteFeatures[i] != unitFeatures.byteValuedDiscreteFeatures[i]) {
+					} else if (targetFeatures.byteValuedDiscreteFeatures[i] != featureFile.getByteFeature(unitIndex, i)) {
 						cost += weight;
 						if (debugShowCostGraph)
 							cumulWeightedCosts[i] += weight;
@@ -103,8 +168,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 				if (weightsNonZero[i]) {
 					float weight = weightVector[i];
 					// if (targetFeatures.getShortFeature(i) != unitFeatures.getShortFeature(i)) {
-					if (targetFeatures.shortValuedDiscreteFeatures[i - nBytes] != unitFeatures.shortValuedDiscreteFeatures[i
-							- nBytes]) {
+					if (targetFeatures.shortValuedDiscreteFeatures[i - nBytes] != featureFile.getShortFeature(unitIndex, i)) {
 						cost += weight;
 						if (debugShowCostGraph)
 							cumulWeightedCosts[i] += weight;
@@ -121,7 +185,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 					// float a = targetFeatures.getContinuousFeature(i);
 					float a = targetFeatures.continuousFeatures[i - nDiscrete];
 					// float b = unitFeatures.getContinuousFeature(i);
-					float b = unitFeatures.continuousFeatures[i - nDiscrete];
+					float b = featureFile.getContinuousFeature(unitIndex, i);
 					// if (!Float.isNaN(a) && !Float.isNaN(b)) {
 					// Implementation of isNaN() is: (v != v).
 					if (!(a != a) && !(b != b)) {
@@ -162,13 +226,13 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 
 		FeatureVector targetFeatures = target.getFeatureVector();
 		assert targetFeatures != null : "Target " + target + " does not have pre-computed feature vector";
-		FeatureVector unitFeatures = featureVectors[unit.index];
+		int unitIndex = unit.index;
 		int nBytes = targetFeatures.byteValuedDiscreteFeatures.length;
 		int nShorts = targetFeatures.shortValuedDiscreteFeatures.length;
 		int nFloats = targetFeatures.continuousFeatures.length;
-		assert nBytes == unitFeatures.byteValuedDiscreteFeatures.length;
-		assert nShorts == unitFeatures.shortValuedDiscreteFeatures.length;
-		assert nFloats == unitFeatures.continuousFeatures.length;
+		assert nBytes == featureFile.getFeatureDefinition().getNumberOfByteFeatures();
+		assert nShorts == featureFile.getFeatureDefinition().getNumberOfShortFeatures();
+		assert nFloats == featureFile.getFeatureDefinition().getNumberOfContinuousFeatures();
 
 		int featureIndex = this.featureDefinition.getFeatureIndex(featureName);
 		float[] weightVector = weights.getFeatureWeights();
@@ -179,12 +243,13 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 				float weight = weightVector[featureIndex];
 				if (featureDefinition.hasSimilarityMatrix(featureIndex)) {
 					byte targetFeatValueIndex = targetFeatures.byteValuedDiscreteFeatures[featureIndex];
-					byte unitFeatValueIndex = unitFeatures.byteValuedDiscreteFeatures[featureIndex];
+					byte unitFeatValueIndex = featureFile.getByteFeature(unitIndex, featureIndex);
 					float similarity = featureDefinition.getSimilarity(featureIndex, unitFeatValueIndex, targetFeatValueIndex);
 					cost = similarity * weight;
 					if (debugShowCostGraph)
 						cumulWeightedCosts[featureIndex] += similarity * weight;
-				} else if (targetFeatures.byteValuedDiscreteFeatures[featureIndex] != unitFeatures.byteValuedDiscreteFeatures[featureIndex]) {
+				} else if (targetFeatures.byteValuedDiscreteFeatures[featureIndex] != featureFile.getByteFeature(unitIndex,
+						featureIndex)) {
 					cost = weight;
 					if (debugShowCostGraph)
 						cumulWeightedCosts[featureIndex] += weight;
@@ -194,8 +259,8 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 			if (weightsNonZero[featureIndex]) {
 				float weight = weightVector[featureIndex];
 				// if (targetFeatures.getShortFeature(i) != unitFeatures.getShortFeature(i)) {
-				if (targetFeatures.shortValuedDiscreteFeatures[featureIndex - nBytes] != unitFeatures.shortValuedDiscreteFeatures[featureIndex
-						- nBytes]) {
+				if (targetFeatures.shortValuedDiscreteFeatures[featureIndex - nBytes] != featureFile.getShortFeature(unitIndex,
+						featureIndex)) {
 					cost = weight;
 					if (debugShowCostGraph)
 						cumulWeightedCosts[featureIndex] += weight;
@@ -208,7 +273,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 				// float a = targetFeatures.getContinuousFeature(i);
 				float a = targetFeatures.continuousFeatures[featureIndex - nDiscrete];
 				// float b = unitFeatures.getContinuousFeature(i);
-				float b = unitFeatures.continuousFeatures[featureIndex - nDiscrete];
+				float b = featureFile.getContinuousFeature(unitIndex, featureIndex);
 				// if (!Float.isNaN(a) && !Float.isNaN(b)) {
 				// Implementation of isNaN() is: (v != v).
 				if (!(a != a) && !(b != b)) {
@@ -247,7 +312,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	@Override
 	public void load(FeatureFileReader ffr, InputStream weightsStream, FeatureProcessorManager featProc) throws IOException {
 		this.featureDefinition = ffr.getFeatureDefinition();
-		this.featureVectors = ffr.getFeatureVectors();
+		this.featureFile = ffr;
 		if (weightsStream != null) {
 			MaryUtils.getLogger("TargetCostFeatures").debug("Overwriting target cost weights from file");
 			// overwrite weights from file
@@ -273,6 +338,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		this.targetFeatureComputer = new TargetFeatureComputer(featProc, featureDefinition.getFeatureNames());
 
 		rememberWhichWeightsAreNonZero();
+		initCostCache();
 
 		if (MaryProperties.getBoolean("debug.show.cost.graph")) {
 			debugShowCostGraph = true;
@@ -283,6 +349,24 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		}
 	}
 
+	/**
+	 * Set up the per-thread target cost caches, with the number of entries given by the property
+	 * <code>unitselection.targetcost.cache.entries</code> (0 disables the cache).
+	 */
+	protected void initCostCache() {
+		costCacheSize = MaryProperties.getInteger("unitselection.targetcost.cache.entries", 65536);
+		if (costCacheSize > 0) {
+			costCache = new ThreadLocal<TargetCostCache>() {
+				@Override
+				protected TargetCostCache initialValue() {
+					return new TargetCostCache(costCacheSize);
+				}
+			};
+		} else {
+			costCache = null;
+		}
+	}
+
 	protected void rememberWhichWeightsAreNonZero() {
 		// remember which weights are non-zero
 		weightsNonZero = new boolean[featureDefinition.getNumberOfFeatures()];
@@ -303,6 +387,13 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		target.setFeatureVector(fv);
 	}
 
+	public void computeTargetFeatures(List<? extends Target> targets) {
+		FeatureVector[] fvs = targetFeatureComputer.computeFeatureVectors(targets);
+		for (int i = 0; i < fvs.length; i++) {
+			targets.get(i).setFeatureVector(fvs[i]);
+		}
+	}
+
 	/**
 	 * Look up the features for a given unit.
 	 * 
@@ -311,7 +402,17 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	 * @return the FeatureVector for target cost computation associated to this unit
 	 */
 	public FeatureVector getFeatureVector(Unit unit) {
-		return featureVectors[unit.index];
+		if (featureVectors != null) {
+			return featureVectors[unit.index];
+		}
+		return featureFile.getFeatureVector(unit.index);
+	}
+
+	public byte getByteFeature(Unit unit, int featureIndex) {
+		if (featureVectors != null) {
+			return featureVectors[unit.index].getByteFeature(featureIndex);
+		}
+		return featureFile.getByteFeature(unit.index, featureIndex);
 	}
 
 	/**
@@ -327,14 +428,15 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	 */
 	public String getFeature(Unit unit, String featureName) {
 		int featureIndex = featureDefinition.getFeatureIndex(featureName);
+		FeatureVector unitFeatures = getFeatureVector(unit);
 		if (featureDefinition.isByteFeature(featureIndex)) {
-			byte value = featureVectors[unit.index].getByteFeature(featureIndex);
+			byte value = unitFeatures.getByteFeature(featureIndex);
 			return featureDefinition.getFeatureValueAsString(featureIndex, value);
 		} else if (featureDefinition.isShortFeature(featureIndex)) {
-			short value = featureVectors[unit.index].getShortFeature(featureIndex);
+			short value = unitFeatures.getShortFeature(featureIndex);
 			return featureDefinition.getFeatureValueAsString(featureIndex, value);
 		} else { // continuous -- return float as string
-			float value = featureVectors[unit.index].getContinuousFeature(featureIndex);
+			float value = unitFeatures.getContinuousFeature(featureIndex);
 			return String.valueOf(value);
 		}
 	}
@@ -379,8 +481,17 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		}
 	}
 
+	/**
+	 * The feature vectors of all units. For unit features read from a feature file, this creates one object per unit on the
+	 * first call; prefer {@link #getFeatureVector(Unit)} or the feature file's value accessors.
+	 * 
+	 * @return the unit feature vectors
+	 */
 	public FeatureVector[] getFeatureVectors() {
-		return featureVectors;
+		if (featureVectors != null) {
+			return featureVectors;
+		}
+		return featureFile.getFeatureVectors();
 	}
 
 }
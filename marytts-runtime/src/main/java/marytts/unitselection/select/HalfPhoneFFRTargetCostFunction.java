@@ -62,7 +62,7 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction {
 		boolean isLeftHalf = hpTarget.isLeftHalf();
 		FeatureDefinition weights = isLeftHalf ? leftWeights : rightWeights;
 		WeightFunc[] weightFunctions = isLeftHalf ? leftWeightFunction : rightWeightFunction;
-		return cost(target, unit, weights, weightFunctions);
+		return cachedCost(target, unit, weights, weightFunctions);
 	}
 
 	/**
@@ -93,7 +93,7 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction {
 		this.leftWeights = ffr.getLeftWeights();
 		this.featureDefinition = this.leftWeights;
 		this.rightWeights = ffr.getRightWeights();
-		this.featureVectors = ffr.getFeatureVectors();
+		this.featureFile = ffr;
 
 		if (weightsFile != null) {
 			MaryUtils.getLogger("TargetCostFeatures").debug("Overwriting target cost weights from file " + weightsFile);
@@ -147,6 +147,7 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction {
 		this.targetFeatureComputer = new TargetFeatureComputer(featProc, leftWeights.getFeatureNames());
 
 		rememberWhichWeightsAreNonZero();
+		initCostCache();
 
 		if (MaryProperties.getBoolean("debug.show.cost.graph")) {
 			debugShowCostGraph = true;
@@ -177,7 +178,7 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction {
 	 * @return the FeatureVector for target cost computation associated to this unit
 	 */
 	public FeatureVector getUnitFeatures(Unit unit) {
-		return featureVectors[unit.index];
+		return getFeatureVector(unit);
 	}
 
 	/**
@@ -193,14 +194,15 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction {
 	 */
 	public String getFeature(Unit unit, String featureName) {
 		int featureIndex = featureDefinition.getFeatureIndex(featureName);
+		FeatureVector unitFeatures = getFeatureVector(unit);
 		if (featureDefinition.isByteFeature(featureIndex)) {
-			byte value = featureVectors[unit.index].getByteFeature(featureIndex);
+			byte value = unitFeatures.getByteFeature(featureIndex);
 			return featureDefinition.getFeatureValueAsString(featureIndex, value);
 		} else if (featureDefinition.isShortFeature(featureIndex)) {
-			short value = featureVectors[unit.index].getShortFeature(featureIndex);
+			short value = unitFeatures.getShortFeature(featureIndex);
 			return featureDefinition.getFeatureValueAsString(featureIndex, value);
 		} else { // continuous -- return float as string
-			float value = featureVectors[unit.index].getContinuousFeature(featureIndex);
+			float value = unitFeatures.getContinuousFeature(featureIndex);
 			return String.valueOf(value);
 		}
 	}
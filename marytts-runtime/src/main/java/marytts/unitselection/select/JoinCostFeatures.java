@@ -34,6 +34,7 @@ import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.Vector;
 
 import marytts.exceptions.MaryConfigurationException;
@@ -72,8 +73,19 @@ public class JoinCostFeatures implements JoinCostFunction {
 	private WeightFunc[] weightFunction = null;
 	private boolean[] isLinear = null; // wether the i'th weight function is a linear function
 
-	private float[][] leftJCF = null;
-	private float[][] rightJCF = null;
+	// The join cost features of all units, numberOfFeatures values per unit, in one flat array each. Within a unit, the features
+	// are stored in the order given by featureOrder: first all features with a linear weighting function, then the others,
+	// so that the linear ones can be compared in one tight loop.
+	private float[] leftFeatures = null;
+	private float[] rightFeatures = null;
+	private boolean[] leftHasNaN = null; // whether any of the left features of a unit is NaN
+	private boolean[] rightHasNaN = null;
+	private int numberOfUnits = 0;
+	private int[] featureOrder = null; // the original index of each stored feature
+	private int[] featurePosition = null; // the stored position of each original feature
+	private int numberOfLinearFeatures = 0;
+	private float[] orderedWeights = null;
+	private WeightFunc[] orderedWeightFunctions = null;
 
 	/****************/
 	/* CONSTRUCTORS */
@@ -194,14 +206,13 @@ public class JoinCostFeatures implements JoinCostFunction {
 			/* Read the left and right Join Cost Features */
 			int numberOfUnits = bb.getInt();
 			FloatBuffer fb = bb.asFloatBuffer();
-			leftJCF = new float[numberOfUnits][];
-			rightJCF = new float[numberOfUnits][];
+			initFeatureLayout(numberOfUnits);
+			float[] left = new float[numberOfFeatures];
+			float[] right = new float[numberOfFeatures];
 			for (int i = 0; i < numberOfUnits; i++) {
-				// System.out.println("Reading join features for unit "+i+" out of "+numberOfUnits);
-				leftJCF[i] = new float[numberOfFeatures];
-				fb.get(leftJCF[i]);
-				rightJCF[i] = new float[numberOfFeatures];
-				fb.get(rightJCF[i]);
+				fb.get(left);
+				fb.get(right);
+				setUnitFeatures(i, left, right);
 			}
 		} catch (EOFException e) {
 			IOException ioe = new IOException("The currently read Join Cost File has prematurely reached EOF.");
@@ -281,18 +292,17 @@ public class JoinCostFeatures implements JoinCostFunction {
 
 			/* Read the left and right Join Cost Features */
 			int numberOfUnits = raf.readInt();
-			leftJCF = new float[numberOfUnits][];
-			rightJCF = new float[numberOfUnits][];
+			initFeatureLayout(numberOfUnits);
+			float[] left = new float[numberOfFeatures];
+			float[] right = new float[numberOfFeatures];
 			for (int i = 0; i < numberOfUnits; i++) {
-				// System.out.println("Reading join features for unit "+i+" out of "+numberOfUnits);
-				leftJCF[i] = new float[numberOfFeatures];
 				for (int j = 0; j < numberOfFeatures; j++) {
-					leftJCF[i][j] = raf.readFloat();
+					left[j] = raf.readFloat();
 				}
-				rightJCF[i] = new float[numberOfFeatures];
 				for (int j = 0; j < numberOfFeatures; j++) {
-					rightJCF[i][j] = raf.readFloat();
+					right[j] = raf.readFloat();
 				}
+				setUnitFeatures(i, left, right);
 			}
 		} catch (EOFException e) {
 			IOException ioe = new IOException("The currently read Join Cost File has prematurely reached EOF.");
@@ -310,6 +320,71 @@ public class JoinCostFeatures implements JoinCostFunction {
 
 	}
 
+	/**
+	 * Prepare the flat storage of join cost features, once the feature weights and weighting functions are known.
+	 * 
+	 * @param numUnits
+	 *            the number of units
+	 */
+	private void initFeatureLayout(int numUnits) {
+		int numberOfFeatures = featureWeight.length;
+		featureOrder = new int[numberOfFeatures];
+		int k = 0;
+		for (int i = 0; i < numberOfFeatures; i++) {
+			if (isLinear[i]) {
+				featureOrder[k++] = i;
+			}
+		}
+		numberOfLinearFeatures = k;
+		for (int i = 0; i < numberOfFeatures; i++) {
+			if (!isLinear[i]) {
+				featureOrder[k++] = i;
+			}
+		}
+		featurePosition = new int[numberOfFeatures];
+		for (k = 0; k < numberOfFeatures; k++) {
+			featurePosition[featureOrder[k]] = k;
+		}
+		orderedWeights = new float[numberOfFeatures];
+		orderedWeightFunctions = new WeightFunc[numberOfFeatures];
+		for (k = 0; k < numberOfFeatures; k++) {
+			orderedWeights[k] = featureWeight[featureOrder[k]];
+			orderedWeightFunctions[k] = weightFunction[featureOrder[k]];
+		}
+		numberOfUnits = numUnits;
+		leftFeatures = new float[numUnits * numberOfFeatures];
+		rightFeatures = new float[numUnits * numberOfFeatures];
+		leftHasNaN = new boolean[numUnits];
+		rightHasNaN = new boolean[numUnits];
+	}
+
+	/**
+	 * Store the join cost features of one unit.
+	 * 
+	 * @param u
+	 *            the unit index
+	 * @param left
+	 *            the left join cost features of the unit, in the order of the file
+	 * @param right
+	 *            the right join cost features of the unit, in the order of the file
+	 */
+	private void setUnitFeatures(int u, float[] left, float[] right) {
+		int numberOfFeatures = featureOrder.length;
+		int offset = u * numberOfFeatures;
+		for (int k = 0; k < numberOfFeatures; k++) {
+			float l = left[featureOrder[k]];
+			float r = right[featureOrder[k]];
+			leftFeatures[offset + k] = l;
+			rightFeatures[offset + k] = r;
+			if (Float.isNaN(l)) {
+				leftHasNaN[u] = true;
+			}
+			if (Float.isNaN(r)) {
+				rightHasNaN[u] = true;
+			}
+		}
+	}
+
 	/**
 	 * Read the join cost weight specifications from the given file. The weights will be normalized such that they sum to one.
 	 * 
@@ -381,7 +456,7 @@ public class JoinCostFeatures implements JoinCostFunction {
 	 * Get the number of units.
 	 */
 	public int getNumberOfUnits() {
-		return (leftJCF.length);
+		return numberOfUnits;
 	}
 
 	/**
@@ -390,7 +465,7 @@ public class JoinCostFeatures implements JoinCostFunction {
 	 * @param u
 	 *            The index of the considered unit.
 	 * 
-	 * @return The array of left join cost features for the given unit.
+	 * @return A new array holding the left join cost features for the given unit.
 	 */
 	public float[] getLeftJCF(int u) {
 		if (u < 0) {
@@ -400,7 +475,7 @@ public class JoinCostFeatures implements JoinCostFunction {
 			throw new RuntimeException("The unit index [" + u + "] is out of range: this file contains [" + getNumberOfUnits()
 					+ "] units.");
 		}
-		return (leftJCF[u]);
+		return getUnitFeatures(leftFeatures, u);
 	}
 
 	/**
@@ -409,7 +484,7 @@ public class JoinCostFeatures implements JoinCostFunction {
 	 * @param u
 	 *            The index of the considered unit.
 	 * 
-	 * @return The array of right join cost features for the given unit.
+	 * @return A new array holding the right join cost features for the given unit.
 	 */
 	public float[] getRightJCF(int u) {
 		if (u < 0) {
@@ -419,7 +494,49 @@ public class JoinCostFeatures implements JoinCostFunction {
 			throw new RuntimeException("The unit index [" + u + "] is out of range: this file contains [" + getNumberOfUnits()
 					+ "] units.");
 		}
-		return (rightJCF[u]);
+		return getUnitFeatures(rightFeatures, u);
+	}
+
+	private float[] getUnitFeatures(float[] features, int u) {
+		int numberOfFeatures = featureOrder.length;
+		float[] unitFeatures = new float[numberOfFeatures];
+		for (int k = 0; k < numberOfFeatures; k++) {
+			unitFeatures[featureOrder[k]] = features[u * numberOfFeatures + k];
+		}
+		return unitFeatures;
+	}
+
+	/**
+	 * Compute the normalized Euclidean distance between the feature differences at a join and a Gaussian model, reading the
+	 * features directly from the shared storage. This gives the same value as
+	 * <code>DistanceComputer.getNormalizedEuclideanDistance(diff, mean, variance)</code> where
+	 * <code>diff[i] = getRightJCF(u1)[i] - getLeftJCF(u2)[i]</code>, but does not allocate any arrays.
+	 * 
+	 * @param u1
+	 *            the left unit
+	 * @param u2
+	 *            the right unit
+	 * @param mean
+	 *            the mean of the model, one value per feature in the order of the file
+	 * @param variance
+	 *            the variance of the model, one value per feature in the order of the file
+	 * @return the normalized Euclidean distance
+	 */
+	public double getNormalizedDistance(int u1, int u2, double[] mean, double[] variance) {
+		checkUnitIndex(u1, "left");
+		checkUnitIndex(u2, "right");
+		int numberOfFeatures = featureOrder.length;
+		assert mean.length == numberOfFeatures;
+		assert variance.length == numberOfFeatures;
+		int r = u1 * numberOfFeatures;
+		int l = u2 * numberOfFeatures;
+		double dist = 0.0;
+		for (int i = 0; i < numberOfFeatures; i++) {
+			int k = featurePosition[i];
+			double diff = (double) rightFeatures[r + k] - leftFeatures[l + k];
+			dist += (diff - mean[i]) * (diff - mean[i]) / variance[i];
+		}
+		return Math.sqrt(dist);
 	}
 
 	/*****************/
@@ -439,47 +556,130 @@ public class JoinCostFeatures implements JoinCostFunction {
 	 */
 	public double cost(int u1, int u2) {
 		/* Check the given indexes */
-		if (u1 < 0) {
-			throw new RuntimeException("The left unit index [" + u1 + "] is out of range: a unit index can't be negative.");
+		checkUnitIndex(u1, "left");
+		checkUnitIndex(u2, "right");
+		if (debugShowCostGraph) {
+			jcr.tick();
+			return debugCost(u1, u2);
+		}
+		return signalCost(u1, u2);
+	}
+
+	/**
+	 * Deliver the join costs between one left unit and a number of right units. This yields the same values as calling
+	 * {@link #cost(int, int)} for each pair, but looks up the left unit's features only once and runs over the flat feature
+	 * arrays in a single loop.
+	 * 
+	 * @param u1
+	 *            the left unit
+	 * @param u2
+	 *            the right units
+	 * @param n
+	 *            the number of right units to use from u2
+	 * @param costs
+	 *            an array of at least n elements, in which to store the cost of joining u1 with each of the right units
+	 */
+	public void cost(int u1, int[] u2, int n, double[] costs) {
+		checkUnitIndex(u1, "left");
+		for (int j = 0; j < n; j++) {
+			checkUnitIndex(u2[j], "right");
+		}
+		if (debugShowCostGraph) {
+			for (int j = 0; j < n; j++) {
+				jcr.tick();
+				costs[j] = debugCost(u1, u2[j]);
+			}
+			return;
 		}
-		// if ( u1 > getNumberOfUnits() ) {
-		if (u1 > leftJCF.length) {
-			throw new RuntimeException("The left unit index [" + u1 + "] is out of range: this file contains ["
-					+ getNumberOfUnits() + "] units.");
+		int numberOfFeatures = orderedWeights.length;
+		int r = u1 * numberOfFeatures;
+		boolean u1HasNaN = rightHasNaN[u1];
+		for (int j = 0; j < n; j++) {
+			int l = u2[j] * numberOfFeatures;
+			if (u1HasNaN || leftHasNaN[u2[j]]) {
+				costs[j] = signalCostWithNaN(r, l);
+				continue;
+			}
+			double res = 0.0;
+			for (int k = 0; k < numberOfLinearFeatures; k++) {
+				res += orderedWeights[k] * Math.abs(rightFeatures[r + k] - leftFeatures[l + k]);
+			}
+			for (int k = numberOfLinearFeatures; k < numberOfFeatures; k++) {
+				res += orderedWeights[k] * orderedWeightFunctions[k].cost(rightFeatures[r + k], leftFeatures[l + k]);
+			}
+			costs[j] = res;
 		}
-		if (u2 < 0) {
-			throw new RuntimeException("The right unit index [" + u2 + "] is out of range: a unit index can't be negative.");
+	}
+
+	private void checkUnitIndex(int u, String side) {
+		if (u < 0) {
+			throw new RuntimeException("The " + side + " unit index [" + u + "] is out of range: a unit index can't be negative.");
 		}
-		// if ( u2 > getNumberOfUnits() ) {
-		if (u2 > leftJCF.length) {
-			throw new RuntimeException("The right unit index [" + u2 + "] is out of range: this file contains ["
-					+ getNumberOfUnits() + "] units.");
+		if (u >= numberOfUnits) {
+			throw new RuntimeException("The " + side + " unit index [" + u + "] is out of range: this file contains ["
+					+ numberOfUnits + "] units.");
 		}
-		if (debugShowCostGraph) {
-			jcr.tick();
+	}
+
+	/**
+	 * Cumulate the weighted differences between the right join cost features of u1 and the left join cost features of u2. Units
+	 * without any NaN features, which is the normal case, are compared without any per-feature tests.
+	 */
+	private double signalCost(int u1, int u2) {
+		int numberOfFeatures = orderedWeights.length;
+		int r = u1 * numberOfFeatures;
+		int l = u2 * numberOfFeatures;
+		if (rightHasNaN[u1] || leftHasNaN[u2]) {
+			return signalCostWithNaN(r, l);
 		}
-		/* Cumulate the join costs for each feature */
 		double res = 0.0;
-		float[] v1 = rightJCF[u1];
-		float[] v2 = leftJCF[u2];
-		for (int i = 0; i < v1.length; i++) {
-			float a = v1[i];
-			float b = v2[i];
-			// if (!Float.isNaN(v1[i]) && !Float.isNaN(v2[i])) {
-			if (!(a != a) && !(b != b)) {
+		for (int k = 0; k < numberOfLinearFeatures; k++) {
+			res += orderedWeights[k] * Math.abs(rightFeatures[r + k] - leftFeatures[l + k]);
+		}
+		for (int k = numberOfLinearFeatures; k < numberOfFeatures; k++) {
+			res += orderedWeights[k] * orderedWeightFunctions[k].cost(rightFeatures[r + k], leftFeatures[l + k]);
+		}
+		return res;
+	}
+
+	private double signalCostWithNaN(int r, int l) {
+		int numberOfFeatures = orderedWeights.length;
+		double res = 0.0;
+		for (int k = 0; k < numberOfFeatures; k++) {
+			float a = rightFeatures[r + k];
+			float b = leftFeatures[l + k];
+			if (!Float.isNaN(a) && !Float.isNaN(b)) {
+				if (k < numberOfLinearFeatures) {
+					res += orderedWeights[k] * Math.abs(a - b);
+				} else {
+					res += orderedWeights[k] * orderedWeightFunctions[k].cost(a, b);
+				}
+			} // if anything is NaN, count the cost as 0.
+		}
+		return res;
+	}
+
+	/**
+	 * Like signalCost(), but also cumulate the weighted cost of each feature for the cost graph.
+	 */
+	private double debugCost(int u1, int u2) {
+		int numberOfFeatures = orderedWeights.length;
+		double res = 0.0;
+		for (int k = 0; k < numberOfFeatures; k++) {
+			float a = rightFeatures[u1 * numberOfFeatures + k];
+			float b = leftFeatures[u2 * numberOfFeatures + k];
+			if (!Float.isNaN(a) && !Float.isNaN(b)) {
 				double c;
-				if (isLinear[i]) {
-					c = featureWeight[i] * (a > b ? (a - b) : (b - a));
+				if (k < numberOfLinearFeatures) {
+					c = orderedWeights[k] * Math.abs(a - b);
 				} else {
-					c = featureWeight[i] * weightFunction[i].cost(a, b);
+					c = orderedWeights[k] * orderedWeightFunctions[k].cost(a, b);
 				}
 				res += c;
-				if (debugShowCostGraph) {
-					cumulWeightedSignalCosts[i] += wSignal * c;
-				}
-			} // if anything is NaN, count the cost as 0.
+				cumulWeightedSignalCosts[featureOrder[k]] += wSignal * c;
+			}
 		}
-		return (res);
+		return res;
 	}
 
 	/**
@@ -526,6 +726,56 @@ public class JoinCostFeatures implements JoinCostFunction {
 		return cost;
 	}
 
+	/**
+	 * The combined costs of joining one left unit with each of a number of right units, as in
+	 * {@link #cost(Target, Unit, Target, Unit)}. The signal-based costs of all joins that need them are computed in one call to
+	 * {@link #cost(int, int[], int, double[])}.
+	 */
+	public void cost(Target t1, Unit u1, Target[] t2, Unit[] u2, int off, int len, double[] costs) {
+		// Units of length 0 cannot be joined:
+		if (u1.duration == 0) {
+			Arrays.fill(costs, off, off + len, Double.POSITIVE_INFINITY);
+			return;
+		}
+		boolean leftIsDiphone = u1 instanceof DiphoneUnit;
+		if (leftIsDiphone) {
+			u1 = ((DiphoneUnit) u1).right;
+		}
+		// the right units whose signal-based cost is needed, and where to store it:
+		int[] rightUnits = new int[len];
+		int[] positions = new int[len];
+		int n = 0;
+		for (int j = off; j < off + len; j++) {
+			Unit right = u2[j];
+			if (right.duration == 0) {
+				costs[j] = Double.POSITIVE_INFINITY;
+				continue;
+			}
+			boolean bothDiphones = leftIsDiphone && right instanceof DiphoneUnit;
+			if (right instanceof DiphoneUnit) {
+				right = ((DiphoneUnit) right).left;
+			}
+			if (u1.index + 1 == right.index) {
+				costs[j] = 0;
+			} else if (bothDiphones && precompiledCosts != null) {
+				costs[j] = 1 + precompiledCosts.cost(t1, u1, t2[j], right);
+			} else {
+				rightUnits[n] = right.index;
+				positions[n] = j;
+				n++;
+			}
+		}
+		if (n == 0) {
+			return;
+		}
+		double[] signalCosts = new double[n];
+		cost(u1.index, rightUnits, n, signalCosts);
+		for (int i = 0; i < n; i++) {
+			// basic penalty for joins of non-contiguous units, plus the signal-based cost:
+			costs[positions[i]] = 1 + signalCosts[i];
+		}
+	}
+
 	/**
 	 * A phonetic join cost, computed solely from the target.
 	 * 
@@ -47,6 +47,28 @@ public interface JoinCostFunction {
 	 */
 	public double cost(Target t1, Unit u1, Target t2, Unit u2);
 
+	/**
+	 * Compute the goodness-of-fit of joining one left unit with each of a number of right units. This yields the same values as
+	 * calling {@link #cost(Target, Unit, Target, Unit)} for each right unit, but lets implementations evaluate all joins with the
+	 * same left unit in one pass.
+	 * 
+	 * @param t1
+	 *            the left target
+	 * @param u1
+	 *            the proposed left unit
+	 * @param t2
+	 *            the right targets
+	 * @param u2
+	 *            the proposed right units
+	 * @param off
+	 *            the index of the first right target and unit to use
+	 * @param len
+	 *            the number of right targets and units to use
+	 * @param costs
+	 *            the array in which to store the cost of each join, at the same index as the right unit
+	 */
+	public void cost(Target t1, Unit u1, Target[] t2, Unit[] u2, int off, int len, double[] costs);
+
 	/**
 	 * Initialise this join cost function by reading the appropriate settings from the MaryProperties using the given
 	 * configPrefix.
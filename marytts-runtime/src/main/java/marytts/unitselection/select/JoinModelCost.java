@@ -33,7 +33,6 @@ import marytts.features.FeatureVector;
 import marytts.htsengine.PhoneTranslator;
 import marytts.htsengine.HMMData.PdfFileFormat;
 import marytts.server.MaryProperties;
-import marytts.signalproc.analysis.distance.DistanceComputer;
 import marytts.unitselection.data.DiphoneUnit;
 import marytts.unitselection.data.Unit;
 
@@ -171,17 +170,6 @@ public class JoinModelCost implements JoinCostFunction {
 			return 0;
 		double cost = 1; // basic penalty for joins of non-contiguous units.
 
-		float[] v1 = jcf.getRightJCF(u1.index);
-		float[] v2 = jcf.getLeftJCF(u2.index);
-		// double[] diff = new double[v1.length];
-		// for ( int i = 0; i < v1.length; i++ ) {
-		// diff[i] = (double)v1[i] - v2[i];
-		// }
-		double[] diff = new double[v1.length];
-		for (int i = 0; i < v1.length; i++) {
-			diff[i] = (double) v1[i] - v2[i];
-		}
-
 		// Now evaluate likelihood of the diff under the join model
 		// Compute the model name:
 		assert featureDef != null : "Feature Definition was not set";
@@ -207,11 +195,21 @@ public class JoinModelCost implements JoinCostFunction {
 		mean = ((PdfLeafNode) node).getMean();
 		variance = ((PdfLeafNode) node).getVariance();
 
-		double distance = DistanceComputer.getNormalizedEuclideanDistance(diff, mean, variance);
+		// the differences between the right features of u1 and the left features of u2, compared to the model:
+		double distance = jcf.getNormalizedDistance(u1.index, u2.index, mean, variance);
 
 		cost += distance;
 
 		return cost;
 	}
 
+	/**
+	 * {@inheritDoc} The join model is looked up from the targets of each join, so the joins are evaluated one by one.
+	 */
+	public void cost(Target t1, Unit u1, Target[] t2, Unit[] u2, int off, int len, double[] costs) {
+		for (int j = off; j < off + len; j++) {
+			costs[j] = cost(t1, u1, t2[j], u2[j]);
+		}
+	}
+
 }
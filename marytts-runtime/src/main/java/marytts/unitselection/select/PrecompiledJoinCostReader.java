@@ -153,4 +153,10 @@ public class PrecompiledJoinCostReader implements JoinCostFunction {
 		return cost.doubleValue();
 	}
 
+	public void cost(Target t1, Unit u1, Target[] t2, Unit[] u2, int off, int len, double[] costs) {
+		for (int j = off; j < off + len; j++) {
+			costs[j] = cost(t1, u1, t2[j], u2[j]);
+		}
+	}
+
 }
@@ -0,0 +1,231 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import marytts.features.FeatureVector;
+
+/**
+ * A bounded memo of target costs, keyed by the target's feature vector and the candidate unit's index. Targets with identical
+ * feature vectors, which are frequent within a request and across requests, are interned to a small integer id; the costs are
+ * then stored in an open-addressing table of primitive longs and doubles, so that a lookup does not allocate.
+ * <p>
+ * The table has a fixed capacity. A new entry which does not find a free slot within a few probes replaces the entry in its
+ * first slot. When more distinct targets have been seen than the table can reasonably hold, the cache is cleared.
+ * <p>
+ * Instances are not thread-safe; {@link FFRTargetCostFunction} uses one per thread.
+ */
+public class TargetCostCache {
+	private static final long EMPTY = -1;
+	private static final int MAX_PROBES = 8;
+
+	private final long[] keys;
+	private final double[] values;
+	private final int mask;
+	private final int maxTargets;
+
+	private final Map<TargetKey, Integer> targetIds = new HashMap<TargetKey, Integer>();
+	// the last target looked up, since a target's costs are usually requested for all its candidates in a row:
+	private FeatureVector lastFeatureVector;
+	private Object lastWeights;
+	private int lastTargetId;
+
+	private long numHits = 0;
+	private long numMisses = 0;
+
+	/**
+	 * Create a target cost cache.
+	 * 
+	 * @param capacity
+	 *            the maximum number of costs to remember; will be rounded up to a power of two. Must be positive.
+	 * @throws IllegalArgumentException
+	 *             if capacity is not positive
+	 */
+	public TargetCostCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive, but is " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		keys = new long[size];
+		values = new double[size];
+		mask = size - 1;
+		maxTargets = Math.max(16, size / 16);
+		Arrays.fill(keys, EMPTY);
+	}
+
+	/**
+	 * Get the id of the given target feature vector, as used in {@link #getKey(int, int)}.
+	 * 
+	 * @param featureVector
+	 *            the target's feature vector
+	 * @param weights
+	 *            the weights with which the cost is computed; targets costed with different weights get different ids.
+	 * @return a non-negative id which is the same for all feature vectors with identical values, until the cache is cleared.
+	 */
+	public int getTargetId(FeatureVector featureVector, Object weights) {
+		if (featureVector == lastFeatureVector && weights == lastWeights) {
+			return lastTargetId;
+		}
+		TargetKey key = new TargetKey(featureVector, weights);
+		Integer id = targetIds.get(key);
+		if (id == null) {
+			if (targetIds.size() >= maxTargets) {
+				clear();
+			}
+			id = targetIds.size();
+			targetIds.put(key, id);
+		}
+		lastFeatureVector = featureVector;
+		lastWeights = weights;
+		lastTargetId = id;
+		return id;
+	}
+
+	/**
+	 * The key under which to store the cost for the given target and unit.
+	 * 
+	 * @param targetId
+	 *            an id as returned by {@link #getTargetId(FeatureVector, Object)}
+	 * @param unitIndex
+	 *            the index of the candidate unit
+	 * @return the key
+	 */
+	public static long getKey(int targetId, int unitIndex) {
+		return ((long) targetId << 32) | (unitIndex & 0xffffffffL);
+	}
+
+	/**
+	 * Look up a cost.
+	 * 
+	 * @param key
+	 *            the key, as returned by {@link #getKey(int, int)}
+	 * @return the cost stored for key, or NaN if there is none.
+	 */
+	public double get(long key) {
+		int slot = slot(key);
+		for (int i = 0; i < MAX_PROBES; i++) {
+			long k = keys[(slot + i) & mask];
+			if (k == key) {
+				numHits++;
+				return values[(slot + i) & mask];
+			}
+			if (k == EMPTY) {
+				break;
+			}
+		}
+		numMisses++;
+		return Double.NaN;
+	}
+
+	/**
+	 * Remember a cost.
+	 * 
+	 * @param key
+	 *            the key, as returned by {@link #getKey(int, int)}
+	 * @param cost
+	 *            the cost
+	 */
+	public void put(long key, double cost) {
+		int slot = slot(key);
+		for (int i = 0; i < MAX_PROBES; i++) {
+			int s = (slot + i) & mask;
+			if (keys[s] == EMPTY || keys[s] == key) {
+				keys[s] = key;
+				values[s] = cost;
+				return;
+			}
+		}
+		keys[slot] = key;
+		values[slot] = cost;
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * Forget all costs and target ids.
+	 */
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		targetIds.clear();
+		lastFeatureVector = null;
+		lastWeights = null;
+	}
+
+	public int getCapacity() {
+		return keys.length;
+	}
+
+	public long getNumHits() {
+		return numHits;
+	}
+
+	public long getNumMisses() {
+		return numMisses;
+	}
+
+	/**
+	 * Set the hit and miss counts back to zero.
+	 */
+	public void resetStatistics() {
+		numHits = 0;
+		numMisses = 0;
+	}
+
+	private static final class TargetKey {
+		private final byte[] bytes;
+		private final short[] shorts;
+		private final float[] floats;
+		private final Object weights;
+		private final int hash;
+
+		TargetKey(FeatureVector featureVector, Object weights) {
+			this.bytes = featureVector.byteValuedDiscreteFeatures;
+			this.shorts = featureVector.shortValuedDiscreteFeatures;
+			this.floats = featureVector.continuousFeatures;
+			this.weights = weights;
+			this.hash = ((Arrays.hashCode(bytes) * 31 + Arrays.hashCode(shorts)) * 31 + Arrays.hashCode(floats)) * 31
+					+ System.identityHashCode(weights);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof TargetKey)) {
+				return false;
+			}
+			TargetKey other = (TargetKey) o;
+			return hash == other.hash && weights == other.weights && Arrays.equals(bytes, other.bytes)
+					&& Arrays.equals(shorts, other.shorts) && Arrays.equals(floats, other.floats);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -21,6 +21,7 @@ package marytts.unitselection.select;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
@@ -88,6 +89,15 @@ public interface TargetCostFunction {
 	 */
 	public void computeTargetFeatures(Target target);
 
+	/**
+	 * Compute the features for all targets of an utterance, and store them in the targets. This gives the same result as calling
+	 * {@link #computeTargetFeatures(Target)} for each target, but allows implementations to compute the features in one pass.
+	 * 
+	 * @param targets
+	 *            the targets for which to compute the features
+	 */
+	public void computeTargetFeatures(List<? extends Target> targets);
+
 	/**
 	 * Provide access to the Feature Definition used.
 	 * 
@@ -116,6 +126,17 @@ public interface TargetCostFunction {
 	 */
 	public FeatureVector getFeatureVector(Unit unit);
 
+	/**
+	 * Get the value of a byte-valued target cost feature for the given unit, without creating a feature vector.
+	 * 
+	 * @param unit
+	 *            the unit whose feature value is requested
+	 * @param featureIndex
+	 *            the index of a byte-valued feature in the feature definition
+	 * @return the feature value, as in {@link FeatureVector#getByteFeature(int)}
+	 */
+	public byte getByteFeature(Unit unit, int featureIndex);
+
 	/**
 	 * Get all feature vectors. This is useful for more efficient access.
 	 * 
@@ -25,6 +25,7 @@ import java.util.List;
 import marytts.datatypes.MaryXML;
 import marytts.exceptions.SynthesisException;
 import marytts.unitselection.data.UnitDatabase;
+import marytts.unitselection.select.viterbi.CompactViterbi;
 import marytts.unitselection.select.viterbi.Viterbi;
 import marytts.util.MaryUtils;
 
@@ -44,6 +45,8 @@ public class UnitSelector {
 	protected float targetCostWeight;
 	protected float sCostWeight = -1;
 	protected int beamSize;
+	protected boolean useCompactViterbi = false;
+	protected double beamThreshold = -1;
 
 	/**
 	 * Initialise the unit selector. Need to call load() separately.
@@ -67,6 +70,28 @@ public class UnitSelector {
 		this.beamSize = beamSize;
 	}
 
+	/**
+	 * Choose the Viterbi search implementation. Both yield identical results, but the compact one keeps its search space in
+	 * reusable primitive arrays instead of creating objects for every path.
+	 * 
+	 * @param useCompactViterbi
+	 *            true to use {@link CompactViterbi}, false to use {@link Viterbi}
+	 */
+	public void setUseCompactViterbi(boolean useCompactViterbi) {
+		this.useCompactViterbi = useCompactViterbi;
+	}
+
+	/**
+	 * Enable score-based beam pruning in the Viterbi search.
+	 * 
+	 * @param beamThreshold
+	 *            the maximum score difference of a path to the best path, or a negative value to disable pruning
+	 * @see Viterbi#setBeamThreshold(double)
+	 */
+	public void setBeamThreshold(double beamThreshold) {
+		this.beamThreshold = beamThreshold;
+	}
+
 	/**
 	 * Select the units for the targets in the given list of tokens and boundaries. Collect them in a list and return it.
 	 * 
@@ -102,17 +127,22 @@ public class UnitSelector {
 		List<Target> targets = createTargets(segmentsAndBoundaries);
 		// compute target features for each target in the chain
 		TargetCostFunction tcf = database.getTargetCostFunction();
-		for (Target target : targets) {
-			tcf.computeTargetFeatures(target);
-		}
+		tcf.computeTargetFeatures(targets);
 
 		Viterbi viterbi;
 		// Select the best candidates using Viterbi and the join cost function.
-		if (sCostWeight < 0) {
+		if (useCompactViterbi) {
+			if (sCostWeight < 0) {
+				viterbi = new CompactViterbi(targets, database, targetCostWeight, beamSize);
+			} else {
+				viterbi = new CompactViterbi(targets, database, targetCostWeight, sCostWeight, beamSize);
+			}
+		} else if (sCostWeight < 0) {
 			viterbi = new Viterbi(targets, database, targetCostWeight, beamSize);
 		} else {
 			viterbi = new Viterbi(targets, database, targetCostWeight, sCostWeight, beamSize);
 		}
+		viterbi.setBeamThreshold(beamThreshold);
 
 		viterbi.apply();
 		List<SelectedUnit> selectedUnits = viterbi.getSelectedUnits();
@@ -123,6 +153,11 @@ public class UnitSelector {
 		}
 		long newtime = System.currentTimeMillis() - time;
 		logger.debug("Selection took " + newtime + " milliseconds");
+		if (logger.isDebugEnabled() && tcf instanceof FFRTargetCostFunction) {
+			FFRTargetCostFunction ffrTcf = (FFRTargetCostFunction) tcf;
+			logger.debug("Target cost cache: " + ffrTcf.getNumCacheHits() + " hits, " + ffrTcf.getNumCacheMisses()
+					+ " misses, hit rate " + Math.round(100 * ffrTcf.getCacheHitRate()) + "%");
+		}
 		return selectedUnits;
 	}
 
@@ -0,0 +1,343 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select.viterbi;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import marytts.exceptions.SynthesisException;
+import marytts.unitselection.data.Unit;
+import marytts.unitselection.data.UnitDatabase;
+import marytts.unitselection.select.SelectedUnit;
+import marytts.unitselection.select.Target;
+
+import org.apache.log4j.Level;
+
+/**
+ * A Viterbi search which does not build {@link ViterbiPath} objects, but keeps the candidates of all points, their best scores
+ * and their back pointers in flat primitive arrays. These arrays are kept per thread and reused across searches, so that a search
+ * allocates little beyond the candidate lists provided by the unit database.
+ * <p>
+ * The search visits paths and candidates in exactly the same order as {@link Viterbi}, including the (insertion-ordered) list of
+ * paths which the beam is applied to, and compares scores in the same way, so both produce identical selections. Use it by
+ * setting <code>voice.(voicename).viterbi.compact = true</code> in the voice config file.
+ */
+public class CompactViterbi extends Viterbi {
+	private static final int END = -1; // end of a list of paths
+	private static final int START = -2; // the dummy start path
+	private static final int NO_PATH = -3; // back pointer of candidates which no path leads to
+
+	private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	// The result of apply(): the best path, from first to last unit.
+	private Unit[] bestUnits = null;
+	private Target[] bestTargets = null;
+	private double bestScore;
+
+	public CompactViterbi(List<Target> targets, UnitDatabase database, float wTargetCosts, int beamSize) {
+		super(targets, database, wTargetCosts, beamSize);
+	}
+
+	public CompactViterbi(List<Target> targets, UnitDatabase database, float wTargetCosts, float wSCosts, int beamSize) {
+		super(targets, database, wTargetCosts, wSCosts, beamSize);
+	}
+
+	/**
+	 * Carry out the Viterbi search. See {@link Viterbi#apply()} for the algorithm; here, a path is represented by the index of
+	 * the candidate it leads to, which holds the path's score and a back pointer to the candidate before it.
+	 * 
+	 * @throws SynthesisException
+	 *             if for any part of the target chain, no candidates can be found
+	 */
+	@Override
+	public void apply() throws SynthesisException {
+		logger.debug("Compact Viterbi running with beam size " + beamSize
+				+ (beamThreshold >= 0 ? ", beam threshold " + beamThreshold : ""));
+		numPrunedPaths = 0;
+		Scratch s = scratch.get();
+		s.size = 0;
+		try {
+			// The paths leading to the current point, in the order in which they were last improved;
+			// initially, only the dummy start path:
+			int pathsHead = START;
+			for (ViterbiPoint point = firstPoint; point.next != null; point = point.next) {
+				List<ViterbiCandidate> candidates = getCandidates(point);
+				int nCandidates = candidates.size();
+				int first = s.size;
+				s.ensureCapacity(first + nCandidates);
+				for (int c = first; c < first + nCandidates; c++) {
+					ViterbiCandidate candidate = candidates.get(c - first);
+					s.units[c] = candidate.unit;
+					s.targets[c] = candidate.target;
+					s.weightedTargetCosts[c] = candidate.targetCost * wTargetCosts;
+					s.backPointers[c] = NO_PATH;
+				}
+				s.size = first + nCandidates;
+				if (beamThreshold >= 0 && pathsHead != START) {
+					pathsHead = prunePaths(s, pathsHead, first);
+				}
+
+				int iMax = beamSize > 0 ? beamSize : Integer.MAX_VALUE;
+				int jMax = beamSize > 0 && beamSize < nCandidates ? beamSize : nCandidates;
+				int head = END;
+				int tail = END;
+				int i = 0;
+				for (int p = pathsHead; i < iMax && p != END; p = (p == START ? END : s.nextPaths[p]), i++) {
+					double prevScore = p == START ? 0 : s.scores[p];
+					if (p != START) {
+						joinCostFunction.cost(s.targets[p], s.units[p], s.targets, s.units, first, jMax, s.joinCosts);
+					}
+					for (int c = first; c < first + jMax; c++) {
+						double score = getScore(s, p, c) + prevScore;
+						// Keep only the best path leading to c; like Viterbi.addPath(),
+						// an improved path moves to the end of the list of paths.
+						if (s.backPointers[c] == NO_PATH) {
+							s.backPointers[c] = p;
+							s.scores[c] = score;
+							if (tail == END) {
+								head = c;
+							} else {
+								s.nextPaths[tail] = c;
+							}
+							s.prevPaths[c] = tail;
+							s.nextPaths[c] = END;
+							tail = c;
+						} else if (score < s.scores[c]) {
+							s.backPointers[c] = p;
+							s.scores[c] = score;
+							if (c != tail) {
+								// unlink c...
+								int prev = s.prevPaths[c];
+								int next = s.nextPaths[c];
+								if (prev == END) {
+									head = next;
+								} else {
+									s.nextPaths[prev] = next;
+								}
+								s.prevPaths[next] = prev;
+								// ...and append it:
+								s.nextPaths[tail] = c;
+								s.prevPaths[c] = tail;
+								s.nextPaths[c] = END;
+								tail = c;
+							}
+						}
+					}
+				}
+				pathsHead = head;
+			}
+			collectBestPath(s, pathsHead);
+			if (beamThreshold >= 0) {
+				logger.debug("Beam pruning dropped " + numPrunedPaths + " paths");
+			}
+		} finally {
+			// do not keep units alive through the scratch space:
+			Arrays.fill(s.units, 0, s.size, null);
+			Arrays.fill(s.targets, 0, s.size, null);
+		}
+	}
+
+	/**
+	 * Sort the given list of paths by score, and drop the paths outside the beam, as in {@link ViterbiPoint#prunePaths(int, double)}.
+	 * 
+	 * @param s
+	 *            the scratch space
+	 * @param head
+	 *            the first path in the list
+	 * @param nMax
+	 *            an upper bound for the number of paths in the list
+	 * @return the first path of the pruned list
+	 */
+	private int prunePaths(Scratch s, int head, int nMax) {
+		s.ensureSortCapacity(nMax);
+		int[] order = s.sortOrder;
+		int nPaths = 0;
+		for (int p = head; p != END; p = s.nextPaths[p]) {
+			order[nPaths++] = p;
+		}
+		sortByScore(order, s.sortBuffer, nPaths, s.scores);
+		double maxScore = s.scores[order[0]] + beamThreshold;
+		int nKept = 1;
+		while (nKept < nPaths && s.scores[order[nKept]] <= maxScore) {
+			nKept++;
+		}
+		if (beamSize > 0 && nKept > beamSize) {
+			nKept = beamSize;
+		}
+		numPrunedPaths += nPaths - nKept;
+		for (int k = 0; k < nKept; k++) {
+			s.prevPaths[order[k]] = k == 0 ? END : order[k - 1];
+			s.nextPaths[order[k]] = k == nKept - 1 ? END : order[k + 1];
+		}
+		return order[0];
+	}
+
+	/**
+	 * Stable merge sort of the first n entries of a by increasing score, like Collections.sort() on a list of paths.
+	 */
+	private static void sortByScore(int[] a, int[] buffer, int n, double[] scores) {
+		for (int width = 1; width < n; width <<= 1) {
+			for (int lo = 0; lo < n - width; lo += width << 1) {
+				int mid = lo + width;
+				int hi = Math.min(lo + (width << 1), n);
+				System.arraycopy(a, lo, buffer, lo, hi - lo);
+				int i = lo;
+				int j = mid;
+				int k = lo;
+				while (i < mid && j < hi) {
+					a[k++] = Double.compare(scores[buffer[j]], scores[buffer[i]]) < 0 ? buffer[j++] : buffer[i++];
+				}
+				while (i < mid) {
+					a[k++] = buffer[i++];
+				}
+				while (j < hi) {
+					a[k++] = buffer[j++];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compute the score of extending the path leading to candidate p with candidate c, not including the score of the path
+	 * itself. The join cost is taken from s.joinCosts, where the caller has put the costs of joining p with all candidates of the
+	 * current point. This performs the same operations in the same order as Viterbi.getPath(), so that it yields exactly the same
+	 * result.
+	 */
+	private double getScore(Scratch s, int p, int c) {
+		double joinCost;
+		double sCost = 0;
+		double targetCost = s.weightedTargetCosts[c];
+		if (p == START) {
+			joinCost = 0;
+		} else {
+			joinCost = s.joinCosts[c];
+			if (sCostFunction != null)
+				sCost = sCostFunction.cost(s.units[p], s.units[c]);
+		}
+		joinCost *= wJoinCosts;
+		sCost *= wSCosts;
+		double cost = joinCost + targetCost + sCost;
+		if (joinCost < Float.POSITIVE_INFINITY)
+			cumulJoinCosts += joinCost;
+		nJoinCosts++;
+		cumulTargetCosts += targetCost;
+		nTargetCosts++;
+		return cost;
+	}
+
+	/**
+	 * Find the best of the paths leading to the last point, and remember its units and targets. Among paths with equal scores,
+	 * the one that comes first in the list wins, as with the stable sort in Viterbi.findBestPath().
+	 */
+	private void collectBestPath(Scratch s, int pathsHead) {
+		int best = END;
+		for (int p = pathsHead; p != END; p = s.nextPaths[p]) {
+			if (best == END || Double.compare(s.scores[p], s.scores[best]) < 0) {
+				best = p;
+			}
+		}
+		if (best == END) {
+			return;
+		}
+		int length = 0;
+		for (int p = best; p != START; p = s.backPointers[p]) {
+			length++;
+		}
+		bestUnits = new Unit[length];
+		bestTargets = new Target[length];
+		bestScore = s.scores[best];
+		for (int p = best, k = length - 1; p != START; p = s.backPointers[p], k--) {
+			bestUnits[k] = s.units[p];
+			bestTargets[k] = s.targets[p];
+		}
+	}
+
+	/**
+	 * Return the best path found by {@link #apply()}, as a List of SelectedUnit objects.
+	 * 
+	 * @return the list of selected units, or null if no path could be found.
+	 */
+	@Override
+	public List<SelectedUnit> getSelectedUnits() {
+		LinkedList<SelectedUnit> selectedUnits = new LinkedList<SelectedUnit>();
+		if (firstPoint == null || firstPoint.getNext() == null) {
+			return selectedUnits; // null case
+		}
+		if (bestUnits == null) {
+			return null;
+		}
+		for (int k = bestUnits.length - 1; k >= 0; k--) {
+			addFirstSelectedUnit(selectedUnits, bestUnits[k], bestTargets[k]);
+		}
+		if (logger.getEffectiveLevel().equals(Level.DEBUG)) {
+			debugSelectedUnits(selectedUnits, bestScore);
+		}
+		return selectedUnits;
+	}
+
+	/**
+	 * The per-thread arrays holding the candidates of all points of a search, one after the other.
+	 */
+	private static class Scratch {
+		int size = 0;
+		Unit[] units = new Unit[0];
+		Target[] targets = new Target[0];
+		double[] weightedTargetCosts = new double[0];
+		// cost of joining the path being extended with each candidate of the current point:
+		double[] joinCosts = new double[0];
+		// score of the best path leading to each candidate, and the candidate before it on that path:
+		double[] scores = new double[0];
+		int[] backPointers = new int[0];
+		// the doubly linked list of paths leading to a point, in the order in which they were last improved:
+		int[] nextPaths = new int[0];
+		int[] prevPaths = new int[0];
+		// for sorting paths when pruning:
+		int[] sortOrder = new int[0];
+		int[] sortBuffer = new int[0];
+
+		void ensureCapacity(int capacity) {
+			if (capacity <= units.length) {
+				return;
+			}
+			int newCapacity = Math.max(capacity, 2 * units.length);
+			units = Arrays.copyOf(units, newCapacity);
+			targets = Arrays.copyOf(targets, newCapacity);
+			weightedTargetCosts = Arrays.copyOf(weightedTargetCosts, newCapacity);
+			joinCosts = new double[newCapacity];
+			scores = Arrays.copyOf(scores, newCapacity);
+			backPointers = Arrays.copyOf(backPointers, newCapacity);
+			nextPaths = Arrays.copyOf(nextPaths, newCapacity);
+			prevPaths = Arrays.copyOf(prevPaths, newCapacity);
+		}
+
+		void ensureSortCapacity(int capacity) {
+			if (capacity > sortOrder.length) {
+				sortOrder = new int[Math.max(capacity, 2 * sortOrder.length)];
+				sortBuffer = new int[sortOrder.length];
+			}
+		}
+	}
+}
@@ -80,6 +80,11 @@ public class Viterbi {
 	// -1: unlimited search
 	// n>0: beam search, retain only the n best paths at each step.
 	protected int beamSize;
+	// if non-negative, prune the paths at each step by score: drop all paths whose score is worse than
+	// that of the best path by more than this, and keep at most beamSize of the others.
+	protected double beamThreshold = -1;
+	// number of paths dropped by pruning in apply():
+	protected int numPrunedPaths;
 	protected final float wTargetCosts;
 	protected final float wJoinCosts;
 	protected final float wSCosts;
@@ -182,6 +187,20 @@ public class Viterbi {
 		}
 	}
 
+	/**
+	 * Enable score-based beam pruning. Without it, a beam search extends the first beamSize paths in the order in which they were
+	 * found, which are not necessarily the best ones. With it, the paths leading to each point are sorted by score before they
+	 * are extended; paths scoring worse than the best path by more than the threshold are dropped, and of the rest, at most
+	 * beamSize paths are kept (or all of them if beamSize is -1).
+	 * 
+	 * @param beamThreshold
+	 *            the maximum score difference to the best path, or {@link Double#POSITIVE_INFINITY} to prune by beam size only. A
+	 *            negative value disables pruning (the default).
+	 */
+	public void setBeamThreshold(double beamThreshold) {
+		this.beamThreshold = beamThreshold;
+	}
+
 	/**
 	 * Carry out a Viterbi search in for a prepared queue of ViterbiPoints. In a nutshell, each Point represents a target item (a
 	 * target segment); for each target Point, a number of Candidate units in the voice database are determined; a Path structure
@@ -196,39 +215,18 @@ public class Viterbi {
 	 *             if for any part of the target chain, no candidates can be found
 	 */
 	public void apply() throws SynthesisException {
-		logger.debug("Viterbi running with beam size " + beamSize);
+		logger.debug("Viterbi running with beam size " + beamSize
+				+ (beamThreshold >= 0 ? ", beam threshold " + beamThreshold : ""));
+		numPrunedPaths = 0;
 		// go through all but the last point
 		// (since last point has no item)
 		for (ViterbiPoint point = firstPoint; point.next != null; point = point.next) {
-			// The candidates for the current item:
-			// candidate selection is carried out by UnitSelector
-			Target target = point.target;
-			List<ViterbiCandidate> candidates = database.getCandidates(target);
-			if (candidates.size() == 0) {
-				if (target instanceof DiphoneTarget) {
-					logger.debug("No diphone '" + target.getName() + "' -- will build from halfphones");
-					DiphoneTarget dt = (DiphoneTarget) target;
-					// replace diphone viterbi point with two half-phone viterbi points
-					Target left = dt.left;
-					Target right = dt.right;
-					point.setTarget(left);
-					ViterbiPoint newP = new ViterbiPoint(right);
-					newP.next = point.next;
-					point.next = newP;
-					candidates = database.getCandidates(left);
-					if (candidates.size() == 0)
-						throw new SynthesisException("Cannot even find any halfphone unit for target " + left);
-				} else {
-					throw new SynthesisException("Cannot find any units for target " + target);
-				}
-			}
-			assert candidates.size() > 0;
-
-			// absolutely critical since candidates is no longer a SortedSet:
-			Collections.sort(candidates);
-
+			List<ViterbiCandidate> candidates = getCandidates(point);
 			point.candidates = candidates;
 			assert beamSize != 0; // general beam search not implemented
+			if (beamThreshold >= 0) {
+				numPrunedPaths += point.prunePaths(beamSize, beamThreshold);
+			}
 
 			// Now go through all existing paths and all candidates
 			// for the current item;
@@ -240,6 +238,18 @@ public class Viterbi {
 				// beam search, look only at the best n paths:
 				nPaths = beamSize;
 			}
+			// The candidates each path is extended to, for computing their join costs in one go:
+			int nCandidates = candidates.size();
+			if (beamSize != -1 && beamSize < nCandidates) {
+				nCandidates = beamSize;
+			}
+			Target[] candidateTargets = new Target[nCandidates];
+			Unit[] candidateUnits = new Unit[nCandidates];
+			for (int k = 0; k < nCandidates; k++) {
+				candidateTargets[k] = candidates.get(k).target;
+				candidateUnits[k] = candidates.get(k).unit;
+			}
+			double[] joinCosts = new double[nCandidates];
 			// for searchStrategy == -1, no beam -- look at all candidates.
 			int i = 0;
 			int iMax = nPaths;
@@ -249,6 +259,10 @@ public class Viterbi {
 				// or have a usable path to extend
 				candidates = point.candidates;
 				assert candidates != null;
+				if (pp.candidate != null) {
+					joinCostFunction.cost(pp.candidate.target, pp.candidate.unit, candidateTargets, candidateUnits, 0,
+							nCandidates, joinCosts);
+				}
 				int j = 0;
 				int jMax = beamSize;
 				// Go through the candidates as returned by the iterator of the sorted set,
@@ -257,7 +271,7 @@ public class Viterbi {
 					// For the candidate c, create a path extending the
 					// previous path pp to that candidate, taking into
 					// account the target and join costs:
-					ViterbiPath np = getPath(pp, c);
+					ViterbiPath np = getPath(pp, c, joinCosts[j]);
 					// Compare this path to the existing best path
 					// (if any) leading to candidate c; only retain
 					// the one with the better score.
@@ -269,6 +283,49 @@ public class Viterbi {
 					break;
 			}
 		}
+		if (beamThreshold >= 0) {
+			logger.debug("Beam pruning dropped " + numPrunedPaths + " paths");
+		}
+	}
+
+	/**
+	 * Get the candidates for the target of the given point, sorted by increasing target cost. If a diphone target has no
+	 * candidates, the point is replaced with two half-phone points, and the candidates for the left half-phone are returned.
+	 * 
+	 * @param point
+	 *            the point whose target to get candidates for
+	 * @return a non-empty list of candidates
+	 * @throws SynthesisException
+	 *             if no candidates can be found
+	 */
+	protected List<ViterbiCandidate> getCandidates(ViterbiPoint point) throws SynthesisException {
+		// The candidates for the current item:
+		// candidate selection is carried out by UnitSelector
+		Target target = point.target;
+		List<ViterbiCandidate> candidates = database.getCandidates(target);
+		if (candidates.size() == 0) {
+			if (target instanceof DiphoneTarget) {
+				logger.debug("No diphone '" + target.getName() + "' -- will build from halfphones");
+				DiphoneTarget dt = (DiphoneTarget) target;
+				// replace diphone viterbi point with two half-phone viterbi points
+				Target left = dt.left;
+				Target right = dt.right;
+				point.setTarget(left);
+				ViterbiPoint newP = new ViterbiPoint(right);
+				newP.next = point.next;
+				point.next = newP;
+				candidates = database.getCandidates(left);
+				if (candidates.size() == 0)
+					throw new SynthesisException("Cannot even find any halfphone unit for target " + left);
+			} else {
+				throw new SynthesisException("Cannot find any units for target " + target);
+			}
+		}
+		assert candidates.size() > 0;
+
+		// absolutely critical since candidates is no longer a SortedSet:
+		Collections.sort(candidates);
+		return candidates;
 	}
 
 	/**
@@ -318,114 +375,136 @@ public class Viterbi {
 		}
 		for (ViterbiPath path = best; path != null; path = path.getPrevious()) {
 			if (path.candidate != null) {
-				Unit u = path.candidate.unit;
-				Target t = path.candidate.target;
-				if (u instanceof DiphoneUnit) {
-					assert t instanceof DiphoneTarget;
-					DiphoneUnit du = (DiphoneUnit) u;
-					DiphoneTarget dt = (DiphoneTarget) t;
-					selectedUnits.addFirst(new SelectedUnit(du.right, dt.right));
-					selectedUnits.addFirst(new SelectedUnit(du.left, dt.left));
-				} else {
-					selectedUnits.addFirst(new SelectedUnit(u, t));
-				}
+				addFirstSelectedUnit(selectedUnits, path.candidate.unit, path.candidate.target);
 			}
 		}
 		if (logger.getEffectiveLevel().equals(Level.DEBUG)) {
-			StringWriter sw = new StringWriter();
-			PrintWriter pw = new PrintWriter(sw);
-			int prevIndex = -1; // index number of the previous unit
-			int[] lengthHistogram = new int[10];
-			int length = 0;
-			int numUnits = selectedUnits.size();
-			StringBuilder line = new StringBuilder();
-			for (int i = 0; i < numUnits; i++) {
-				SelectedUnit u = (SelectedUnit) selectedUnits.get(i);
-				int index = u.getUnit().index;
-				if (prevIndex + 1 == index) { // adjacent units
-					length++;
-				} else {
-					if (lengthHistogram.length <= length) {
-						int[] dummy = new int[length + 1];
-						System.arraycopy(lengthHistogram, 0, dummy, 0, lengthHistogram.length);
-						lengthHistogram = dummy;
-					}
-					lengthHistogram[length]++;
-					pw.print(line);
-					// Find filename from which the stretch that just finished
-					// stems:
-					if (i > 0) {
-						assert i >= length;
-						Unit firstUnitInStretch = ((SelectedUnit) selectedUnits.get(i - length)).getUnit();
-						String origin = database.getFilenameAndTime(firstUnitInStretch);
-						// Print origin from column 80:
-						for (int col = line.length(); col < 80; col++)
-							pw.print(" ");
-						pw.print(origin);
-					}
-					pw.println();
-					length = 1;
-					line.setLength(0);
-				}
-				line.append(database.getTargetCostFunction().getFeature(u.getUnit(), "phone") + "(" + u.getUnit().index + ")");
-				prevIndex = index;
-			}
-			if (lengthHistogram.length <= length) {
-				int[] dummy = new int[length + 1];
-				System.arraycopy(lengthHistogram, 0, dummy, 0, lengthHistogram.length);
-				lengthHistogram = dummy;
-			}
-			lengthHistogram[length]++;
-			pw.print(line);
-			// Find filename from which the stretch that just finished
-			// stems:
-			Unit firstUnitInStretch = ((SelectedUnit) selectedUnits.get(numUnits - length)).getUnit();
-			String origin = database.getFilenameAndTime(firstUnitInStretch);
-			// Print origin from column 80:
-			for (int col = line.length(); col < 80; col++)
-				pw.print(" ");
-			pw.print(origin);
-			pw.println();
-			logger.debug("Selected units:\n" + sw.toString());
-			// Compute average length of stretches:
-			int total = 0;
-			int nStretches = 0;
-			for (int l = 1; l < lengthHistogram.length; l++) {
-				// lengthHistogram[0] will be 0 anyway
-				total += lengthHistogram[l] * l;
-				nStretches += lengthHistogram[l];
-			}
-			float avgLength = total / (float) nStretches;
-			DecimalFormat df = new DecimalFormat("0.000");
-			logger.debug("Avg. consecutive length: " + df.format(avgLength) + " units");
-			// Cost of best path
-			double totalCost = best.score;
-			int elements = selectedUnits.size();
-			double avgCostBestPath = totalCost / (elements - 1);
-			double avgTargetCost = cumulTargetCosts / nTargetCosts;
-			double avgJoinCost = cumulJoinCosts / nJoinCosts;
-			logger.debug("Avg. cost: best path " + df.format(avgCostBestPath) + ", avg. target " + df.format(avgTargetCost)
-					+ ", join " + df.format(avgJoinCost) + " (n=" + nTargetCosts + ")");
-			DebugStats stats = debugStats.get(database);
-			if (stats == null) {
-				stats = new DebugStats();
-				debugStats.put(database, stats);
-			}
-			stats.n++;
-			// iterative computation of mean:
-			// m(n) = m(n-1) + (x(n) - m(n-1)) / n
-			stats.avgLength += (avgLength - stats.avgLength) / stats.n;
-			stats.avgCostBestPath += (avgCostBestPath - stats.avgCostBestPath) / stats.n;
-			stats.avgTargetCost += (avgTargetCost - stats.avgTargetCost) / stats.n;
-			stats.avgJoinCost += (avgJoinCost - stats.avgJoinCost) / stats.n;
-			logger.debug("Total average of " + stats.n + " utterances for this voice:");
-			logger.debug("Avg. length: " + df.format(stats.avgLength) + ", avg. cost best path: "
-					+ df.format(stats.avgCostBestPath) + ", avg. target cost: " + df.format(stats.avgTargetCost)
-					+ ", avg. join cost: " + df.format(stats.avgJoinCost));
+			debugSelectedUnits(selectedUnits, best.score);
+		}
+		return selectedUnits;
+	}
 
+	/**
+	 * Prepend the given unit to the list of selected units, splitting diphone units into their two halves.
+	 * 
+	 * @param selectedUnits
+	 *            the list to prepend to
+	 * @param u
+	 *            the unit
+	 * @param t
+	 *            the target realised by the unit
+	 */
+	protected static void addFirstSelectedUnit(LinkedList<SelectedUnit> selectedUnits, Unit u, Target t) {
+		if (u instanceof DiphoneUnit) {
+			assert t instanceof DiphoneTarget;
+			DiphoneUnit du = (DiphoneUnit) u;
+			DiphoneTarget dt = (DiphoneTarget) t;
+			selectedUnits.addFirst(new SelectedUnit(du.right, dt.right));
+			selectedUnits.addFirst(new SelectedUnit(du.left, dt.left));
+		} else {
+			selectedUnits.addFirst(new SelectedUnit(u, t));
 		}
+	}
 
-		return selectedUnits;
+	/**
+	 * Log the selected units and statistics about the costs of the selection.
+	 * 
+	 * @param selectedUnits
+	 *            the units on the best path
+	 * @param bestScore
+	 *            the score of the best path
+	 */
+	protected void debugSelectedUnits(List<SelectedUnit> selectedUnits, double bestScore) {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		int prevIndex = -1; // index number of the previous unit
+		int[] lengthHistogram = new int[10];
+		int length = 0;
+		int numUnits = selectedUnits.size();
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < numUnits; i++) {
+			SelectedUnit u = (SelectedUnit) selectedUnits.get(i);
+			int index = u.getUnit().index;
+			if (prevIndex + 1 == index) { // adjacent units
+				length++;
+			} else {
+				if (lengthHistogram.length <= length) {
+					int[] dummy = new int[length + 1];
+					System.arraycopy(lengthHistogram, 0, dummy, 0, lengthHistogram.length);
+					lengthHistogram = dummy;
+				}
+				lengthHistogram[length]++;
+				pw.print(line);
+				// Find filename from which the stretch that just finished
+				// stems:
+				if (i > 0) {
+					assert i >= length;
+					Unit firstUnitInStretch = ((SelectedUnit) selectedUnits.get(i - length)).getUnit();
+					String origin = database.getFilenameAndTime(firstUnitInStretch);
+					// Print origin from column 80:
+					for (int col = line.length(); col < 80; col++)
+						pw.print(" ");
+					pw.print(origin);
+				}
+				pw.println();
+				length = 1;
+				line.setLength(0);
+			}
+			line.append(database.getTargetCostFunction().getFeature(u.getUnit(), "phone") + "(" + u.getUnit().index + ")");
+			prevIndex = index;
+		}
+		if (lengthHistogram.length <= length) {
+			int[] dummy = new int[length + 1];
+			System.arraycopy(lengthHistogram, 0, dummy, 0, lengthHistogram.length);
+			lengthHistogram = dummy;
+		}
+		lengthHistogram[length]++;
+		pw.print(line);
+		// Find filename from which the stretch that just finished
+		// stems:
+		Unit firstUnitInStretch = ((SelectedUnit) selectedUnits.get(numUnits - length)).getUnit();
+		String origin = database.getFilenameAndTime(firstUnitInStretch);
+		// Print origin from column 80:
+		for (int col = line.length(); col < 80; col++)
+			pw.print(" ");
+		pw.print(origin);
+		pw.println();
+		logger.debug("Selected units:\n" + sw.toString());
+		// Compute average length of stretches:
+		int total = 0;
+		int nStretches = 0;
+		for (int l = 1; l < lengthHistogram.length; l++) {
+			// lengthHistogram[0] will be 0 anyway
+			total += lengthHistogram[l] * l;
+			nStretches += lengthHistogram[l];
+		}
+		float avgLength = total / (float) nStretches;
+		DecimalFormat df = new DecimalFormat("0.000");
+		logger.debug("Avg. consecutive length: " + df.format(avgLength) + " units");
+		// Cost of best path
+		double totalCost = bestScore;
+		int elements = selectedUnits.size();
+		double avgCostBestPath = totalCost / (elements - 1);
+		double avgTargetCost = cumulTargetCosts / nTargetCosts;
+		double avgJoinCost = cumulJoinCosts / nJoinCosts;
+		logger.debug("Avg. cost: best path " + df.format(avgCostBestPath) + ", avg. target " + df.format(avgTargetCost)
+				+ ", join " + df.format(avgJoinCost) + " (n=" + nTargetCosts + ")");
+		DebugStats stats = debugStats.get(database);
+		if (stats == null) {
+			stats = new DebugStats();
+			debugStats.put(database, stats);
+		}
+		stats.n++;
+		// iterative computation of mean:
+		// m(n) = m(n-1) + (x(n) - m(n-1)) / n
+		stats.avgLength += (avgLength - stats.avgLength) / stats.n;
+		stats.avgCostBestPath += (avgCostBestPath - stats.avgCostBestPath) / stats.n;
+		stats.avgTargetCost += (avgTargetCost - stats.avgTargetCost) / stats.n;
+		stats.avgJoinCost += (avgJoinCost - stats.avgJoinCost) / stats.n;
+		logger.debug("Total average of " + stats.n + " utterances for this voice:");
+		logger.debug("Avg. length: " + df.format(stats.avgLength) + ", avg. cost best path: "
+				+ df.format(stats.avgCostBestPath) + ", avg. target cost: " + df.format(stats.avgTargetCost)
+				+ ", avg. join cost: " + df.format(stats.avgJoinCost));
 	}
 
 	/**
@@ -439,17 +518,18 @@ public class Viterbi {
 	 *            the previous path, or null if this candidate starts a new path
 	 * @param candiate
 	 *            the candidate to add to the path
+	 * @param joinCost
+	 *            the cost of joining the candidate of the previous path with the given candidate; ignored if there is no previous
+	 *            candidate
 	 *
 	 * @return a new path, consisting of this candidate appended to the previous path, and with the cumulative (penalty) score
 	 *         calculated.
 	 */
-	private ViterbiPath getPath(ViterbiPath path, ViterbiCandidate candidate) {
+	private ViterbiPath getPath(ViterbiPath path, ViterbiCandidate candidate, double joinCost) {
 		double cost;
 
-		Target candidateTarget = candidate.target;
 		Unit candidateUnit = candidate.unit;
 
-		double joinCost;
 		double sCost = 0;
 		double targetCost;
 		// Target costs:
@@ -458,11 +538,8 @@ public class Viterbi {
 		if (path == null || path.candidate == null) {
 			joinCost = 0;
 		} else {
-			// Join costs:
-			ViterbiCandidate prevCandidate = path.candidate;
-			Target prevTarget = prevCandidate.target;
-			Unit prevUnit = prevCandidate.unit;
-			joinCost = joinCostFunction.cost(prevTarget, prevUnit, candidateTarget, candidateUnit);
+			// Join costs were computed by the caller; statistical costs:
+			Unit prevUnit = path.candidate.unit;
 			if (sCostFunction != null)
 				sCost = sCostFunction.cost(prevUnit, candidateUnit);
 		}
@@ -32,6 +32,7 @@
 package marytts.unitselection.select.viterbi;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import marytts.unitselection.select.Target;
@@ -104,6 +105,34 @@ public class ViterbiPoint {
 		return paths;
 	}
 
+	/**
+	 * Sort the paths leading to this point by increasing score, and drop the ones outside the beam: those whose score exceeds the
+	 * best score by more than threshold, and all but the best beamSize ones.
+	 * 
+	 * @param beamSize
+	 *            the maximum number of paths to keep, or a value &lt;= 0 for no limit
+	 * @param threshold
+	 *            the maximum score difference to the best path
+	 * @return the number of paths dropped
+	 */
+	public int prunePaths(int beamSize, double threshold) {
+		int nPaths = paths.size();
+		if (nPaths == 0) {
+			return 0;
+		}
+		Collections.sort(paths);
+		double maxScore = paths.get(0).score + threshold;
+		int nKept = 1;
+		while (nKept < nPaths && paths.get(nKept).score <= maxScore) {
+			nKept++;
+		}
+		if (beamSize > 0 && nKept > beamSize) {
+			nKept = beamSize;
+		}
+		paths.subList(nKept, nPaths).clear();
+		return nPaths - nKept;
+	}
+
 	/**
 	 * Gets the next point in the queue
 	 * 
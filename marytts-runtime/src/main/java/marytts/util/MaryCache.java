@@ -21,23 +21,44 @@
 package marytts.util;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import marytts.server.MaryProperties;
+import marytts.util.cache.CacheKey;
+import marytts.util.cache.CacheTier;
+import marytts.util.cache.HsqlCacheTier;
+import marytts.util.cache.OffHeapAudioTier;
+import marytts.util.cache.TextMemoryTier;
 
 /**
+ * A cache of MARY request results, consisting of one or more {@link CacheTier}s which are consulted in order. A result found in
+ * a later tier is copied into the earlier tiers; new results are inserted into all tiers.
+ * <p>
+ * The default configuration, set up by {@link #getCache()}, consists of an in-heap LRU tier for text results, an off-heap tier
+ * for audio results, and optionally a persistent HSQL database tier. It is controlled by the following properties:
+ * <ul>
+ * <li><code>cache.memory.text.entries</code>: the number of text results to keep in memory (0 to disable the tier);</li>
+ * <li><code>cache.memory.audio.megabytes</code>: the amount of off-heap memory to use for audio results (0 to disable the
+ * tier);</li>
+ * <li><code>cache.persistent</code>: whether to store results in the database file given by <code>cache.file</code>;</li>
+ * <li><code>cache.clearOnStart</code>: whether to clear the database file at startup.</li>
+ * </ul>
+ * 
  * @author marc
  * 
  */
 public class MaryCache {
-	private static MaryCache maryCache;
+	public static final int DEFAULT_TEXT_ENTRIES = 10000;
+	public static final int DEFAULT_AUDIO_MEGABYTES = 64;
+	private static final int NUM_TEXT_STRIPES = 16;
+	private static final int NUM_AUDIO_SEGMENTS = 8;
+
+	private static volatile MaryCache maryCache;
 
 	/**
 	 * Try to get the MaryCache object. This will either return the previously created MaryCache, or if none exists, it will try
@@ -51,20 +72,40 @@ public class MaryCache {
 	 */
 	public static MaryCache getCache() {
 		if (maryCache == null) {
-			try {
-				File targetFile = new File(MaryProperties.getFilename("cache.file", "maryCache"));
-				File directory = targetFile.getParentFile();
-				if (!directory.isDirectory()) {
-					directory.mkdirs();
+			synchronized (MaryCache.class) {
+				if (maryCache == null) {
+					try {
+						maryCache = createCache();
+					} catch (Exception e) {
+						MaryUtils.getLogger(MaryCache.class).warn("Cannot set up cache", e);
+					}
 				}
-				maryCache = new MaryCache(targetFile, MaryProperties.getBoolean("cache.clearOnStart", false));
-			} catch (Exception e) {
-				MaryUtils.getLogger(MaryCache.class).warn("Cannot set up cache", e);
 			}
 		}
 		return maryCache;
 	}
 
+	private static MaryCache createCache() throws ClassNotFoundException, SQLException {
+		List<CacheTier> tiers = new ArrayList<CacheTier>();
+		int textEntries = MaryProperties.getInteger("cache.memory.text.entries", DEFAULT_TEXT_ENTRIES);
+		if (textEntries > 0) {
+			tiers.add(new TextMemoryTier(textEntries, NUM_TEXT_STRIPES));
+		}
+		int audioMegabytes = MaryProperties.getInteger("cache.memory.audio.megabytes", DEFAULT_AUDIO_MEGABYTES);
+		if (audioMegabytes > 0) {
+			tiers.add(new OffHeapAudioTier(audioMegabytes * 1024L * 1024L, NUM_AUDIO_SEGMENTS));
+		}
+		if (MaryProperties.getBoolean("cache.persistent", true)) {
+			File targetFile = new File(MaryProperties.getFilename("cache.file", "maryCache"));
+			File directory = targetFile.getParentFile();
+			if (!directory.isDirectory()) {
+				directory.mkdirs();
+			}
+			tiers.add(new HsqlCacheTier(targetFile, MaryProperties.getBoolean("cache.clearOnStart", false)));
+		}
+		return new MaryCache(tiers.toArray(new CacheTier[tiers.size()]));
+	}
+
 	/**
 	 * Indicate whether there is a MaryCache currently available.
 	 * 
@@ -76,12 +117,15 @@ public class MaryCache {
 
 	// //////////////////////////// non-static code /////////////////////////////
 
-	private Connection connection;
+	private final CacheTier[] tiers;
+	private final AtomicLong[] textHits;
+	private final AtomicLong[] audioHits;
+	private final AtomicLong textMisses = new AtomicLong();
+	private final AtomicLong audioMisses = new AtomicLong();
 
 	/**
-	 * Create a MaryCache with the given file prefix. This constructor is public only for tests; it should not normally be called.
-	 * User code should call {@link #getCache()} instead. TODO: Find a more elegant way to create a custom MaryCache from test
-	 * code.
+	 * Create a MaryCache with the given file prefix, backed by in-memory tiers of default size. This constructor is public only
+	 * for tests; it should not normally be called. User code should call {@link #getCache()} instead.
 	 * 
 	 * @param cacheFile
 	 *            the file name prefix with which to create the cache database.
@@ -93,49 +137,31 @@ public class MaryCache {
 	 *             if the database connection cannot be set up
 	 */
 	public MaryCache(File cacheFile, boolean clearCache) throws ClassNotFoundException, SQLException {
-		// Load the HSQL Database Engine JDBC driver
-		Class.forName("org.hsqldb.jdbcDriver");
-		connection = DriverManager.getConnection("jdbc:hsqldb:" + cacheFile.toURI().toString(), "sa", "");
-		boolean mustCreateTable = false;
-		if (clearCache) {
-			Statement st = connection.createStatement();
-			st.executeUpdate("DROP TABLE MARYCACHE IF EXISTS");
-			st.close();
-			mustCreateTable = true;
-		} else { // don't clear -- check if table exists
-			DatabaseMetaData dbInfo = connection.getMetaData();
-			ResultSet rs = dbInfo.getTables(null, null, "MARYCACHE", new String[] { "TABLE" });
-			if (rs.next()) {
-				// table exists
-			} else {
-				mustCreateTable = true;
-			}
-		}
-		if (mustCreateTable) {
-			String query = "CREATE CACHED TABLE MARYCACHE (id INTEGER IDENTITY, " + "inputtype VARCHAR(50), "
-					+ "outputtype VARCHAR(50), " + "locale VARCHAR(10), " + "voice VARCHAR(100), "
-					+ "outputparams VARCHAR(1000), " + "style VARCHAR(50), " + "effects VARCHAR(1000), "
-					+ "inputtext LONGVARCHAR, " + "outputtext LONGVARCHAR, " + "outputaudio LONGVARBINARY, "
-					+ "UNIQUE(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext)" + ")";
-			update(query);
-		}
+		this(new TextMemoryTier(DEFAULT_TEXT_ENTRIES, NUM_TEXT_STRIPES), new OffHeapAudioTier(
+				DEFAULT_AUDIO_MEGABYTES * 1024L * 1024L, NUM_AUDIO_SEGMENTS), new HsqlCacheTier(cacheFile, clearCache));
 	}
 
 	/**
-	 * Carry out an UPDATE SQL command on the database.
+	 * Create a MaryCache from the given tiers.
 	 * 
-	 * @param query
-	 *            the UPDATE SQL command to carry out
-	 * @throws SQLException
-	 *             if there is a problem executing the update.
+	 * @param tiers
+	 *            the tiers, in the order in which they are to be consulted, i.e. fastest first.
 	 */
-	private synchronized void update(String query) throws SQLException {
-		Statement st = connection.createStatement();
-		int ok = st.executeUpdate(query);
-		if (ok == -1) {
-			throw new SQLException("DB problem with query: " + query);
+	public MaryCache(CacheTier... tiers) {
+		this.tiers = tiers.clone();
+		textHits = new AtomicLong[tiers.length];
+		audioHits = new AtomicLong[tiers.length];
+		for (int i = 0; i < tiers.length; i++) {
+			textHits[i] = new AtomicLong();
+			audioHits[i] = new AtomicLong();
 		}
-		st.close();
+	}
+
+	private static SQLException toSQLException(IOException e) {
+		if (e.getCause() instanceof SQLException) {
+			return (SQLException) e.getCause();
+		}
+		return new SQLException(e.getMessage(), e);
 	}
 
 	/**
@@ -191,38 +217,19 @@ public class MaryCache {
 	 * @throws SQLException
 	 *             if the record could not be entered into the cache.
 	 */
-	public synchronized void insertText(String inputtype, String outputtype, String locale, String voice, String outputparams,
+	public void insertText(String inputtype, String outputtype, String locale, String voice, String outputparams,
 			String style, String effects, String inputtext, String outputtext) throws SQLException {
 		if (inputtype == null || outputtype == null || locale == null || voice == null || inputtext == null || outputtext == null) {
 			throw new NullPointerException("Null argument");
 		}
-		// Need to verify, here in the synchronized code, once again that really we don't have this entry already.
-		// If we do, we ignore this call.
-		if (lookupText(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext) != null) {
-			return;
+		CacheKey key = new CacheKey(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext);
+		try {
+			for (CacheTier tier : tiers) {
+				tier.insertText(key, outputtext);
+			}
+		} catch (IOException e) {
+			throw toSQLException(e);
 		}
-
-		String query = "INSERT INTO MARYCACHE (inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext, outputtext) VALUES ('"
-				+ inputtype
-				+ "','"
-				+ outputtype
-				+ "','"
-				+ locale
-				+ "','"
-				+ voice
-				+ "','"
-				+ outputparams
-				+ "','"
-				+ style
-				+ "','"
-				+ effects + "',?,?)";
-
-		PreparedStatement st = connection.prepareStatement(query);
-		// We set the input and output text separately because they could contain single quote characters
-		st.setString(1, inputtext);
-		st.setString(2, outputtext);
-		st.executeUpdate();
-		st.close();
 	}
 
 	/**
@@ -273,36 +280,19 @@ public class MaryCache {
 	 * @throws SQLException
 	 *             if the record could not be entered into the cache.
 	 */
-	public synchronized void insertAudio(String inputtype, String locale, String voice, String outputparams, String style,
+	public void insertAudio(String inputtype, String locale, String voice, String outputparams, String style,
 			String effects, String inputtext, byte[] audio) throws SQLException {
 		if (inputtype == null || locale == null || voice == null || inputtext == null) {
 			throw new NullPointerException("Null argument");
 		}
-		// Need to verify, here in the synchronized code, once again that really we don't have this entry already.
-		// If we do, we ignore this call.
-		if (lookupAudio(inputtype, locale, voice, outputparams, style, effects, inputtext) != null) {
-			return;
+		CacheKey key = new CacheKey(inputtype, CacheKey.AUDIO, locale, voice, outputparams, style, effects, inputtext);
+		try {
+			for (CacheTier tier : tiers) {
+				tier.insertAudio(key, audio);
+			}
+		} catch (IOException e) {
+			throw toSQLException(e);
 		}
-
-		String query = "INSERT INTO MARYCACHE (inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext, outputaudio) VALUES('"
-				+ inputtype
-				+ "','AUDIO','"
-				+ locale
-				+ "','"
-				+ voice
-				+ "','"
-				+ outputparams
-				+ "','"
-				+ style
-				+ "','"
-				+ effects
-				+ "',?,?)";
-
-		PreparedStatement st = connection.prepareStatement(query);
-		st.setString(1, inputtext);
-		st.setBytes(2, audio);
-		st.executeUpdate();
-		st.close();
 	}
 
 	/**
@@ -356,24 +346,29 @@ public class MaryCache {
 	 * @throws SQLException
 	 *             if there is a problem querying the cache.
 	 */
-	public synchronized String lookupText(String inputtype, String outputtype, String locale, String voice, String outputparams,
+	public String lookupText(String inputtype, String outputtype, String locale, String voice, String outputparams,
 			String style, String effects, String inputtext) throws SQLException {
 		if (inputtype == null || outputtype == null || locale == null || voice == null || inputtext == null) {
 			throw new NullPointerException("Null argument");
 		}
-		String outputtext = null;
-		String query = "SELECT outputtext FROM marycache WHERE inputtype = '" + inputtype + "' AND outputtype = '" + outputtype
-				+ "' AND locale = '" + locale + "' AND voice = '" + voice + "' AND outputparams = '" + outputparams
-				+ "' AND style = '" + style + "' AND effects = '" + effects + "' AND inputtext = ?";
-
-		PreparedStatement st = connection.prepareStatement(query);
-		st.setString(1, inputtext);
-		ResultSet results = st.executeQuery();
-		if (results.next()) { // we expect only a single result, if any, so no while loop
-			outputtext = results.getString(1);
+		CacheKey key = new CacheKey(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext);
+		try {
+			for (int i = 0; i < tiers.length; i++) {
+				String outputtext = tiers[i].lookupText(key);
+				if (outputtext != null) {
+					textHits[i].incrementAndGet();
+					// promote to the faster tiers:
+					for (int j = 0; j < i; j++) {
+						tiers[j].insertText(key, outputtext);
+					}
+					return outputtext;
+				}
+			}
+		} catch (IOException e) {
+			throw toSQLException(e);
 		}
-		st.close();
-		return outputtext;
+		textMisses.incrementAndGet();
+		return null;
 	}
 
 	/**
@@ -422,35 +417,64 @@ public class MaryCache {
 	 * @throws SQLException
 	 *             if there is a problem querying the cache.
 	 */
-	public synchronized byte[] lookupAudio(String inputtype, String locale, String voice, String outputparams, String style,
+	public byte[] lookupAudio(String inputtype, String locale, String voice, String outputparams, String style,
 			String effects, String inputtext) throws SQLException {
 		if (inputtype == null || locale == null || voice == null || inputtext == null) {
 			throw new NullPointerException("Null argument");
 		}
-		byte[] audio = null;
-		String query = "Select outputaudio FROM marycache WHERE inputtype = '" + inputtype
-				+ "' AND outputtype = 'AUDIO' AND locale = '" + locale + "' AND voice = '" + voice + "' AND outputparams = '"
-				+ outputparams + "' AND style = '" + style + "' AND effects = '" + effects + "' AND inputtext = ?";
-		PreparedStatement st = connection.prepareStatement(query);
-		st.setString(1, inputtext);
-		ResultSet results = st.executeQuery();
-		if (results.next()) {
-			audio = results.getBytes(1);
+		CacheKey key = new CacheKey(inputtype, CacheKey.AUDIO, locale, voice, outputparams, style, effects, inputtext);
+		try {
+			for (int i = 0; i < tiers.length; i++) {
+				byte[] audio = tiers[i].lookupAudio(key);
+				if (audio != null) {
+					audioHits[i].incrementAndGet();
+					// promote to the faster tiers:
+					for (int j = 0; j < i; j++) {
+						tiers[j].insertAudio(key, audio);
+					}
+					return audio;
+				}
+			}
+		} catch (IOException e) {
+			throw toSQLException(e);
 		}
-		return audio;
+		audioMisses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * A human-readable summary of the cache hits per tier, misses and evictions.
+	 * 
+	 * @return a multi-line string, one statistic per line.
+	 */
+	public String getStatistics() {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < tiers.length; i++) {
+			String name = tiers[i].getName();
+			buf.append(name).append(".text.hits ").append(textHits[i].get()).append("\n");
+			buf.append(name).append(".audio.hits ").append(audioHits[i].get()).append("\n");
+			buf.append(name).append(".evictions ").append(tiers[i].getEvictionCount()).append("\n");
+		}
+		buf.append("text.misses ").append(textMisses.get()).append("\n");
+		buf.append("audio.misses ").append(audioMisses.get()).append("\n");
+		return buf.toString();
 	}
 
 	/**
 	 * Shut down the cache. After this has been called, any further calls to the object will throw exceptions.
 	 * 
 	 * @throws SQLException
-	 *             if there is a problem executing the database SHUTDOWN command.
+	 *             if there is a problem shutting down a tier, such as executing the database SHUTDOWN command.
 	 */
 	public void shutdown() throws SQLException {
-
-		Statement st = connection.createStatement();
-		st.execute("SHUTDOWN");
-		connection.close(); // if there are no other open connection
+		MaryUtils.getLogger(MaryCache.class).info("Cache statistics:\n" + getStatistics());
+		try {
+			for (CacheTier tier : tiers) {
+				tier.shutdown();
+			}
+		} catch (IOException e) {
+			throw toSQLException(e);
+		}
 	}
 
 	/**
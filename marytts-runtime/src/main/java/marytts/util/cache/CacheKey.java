@@ -0,0 +1,123 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+/**
+ * The lookup key of a cached MARY request result: all request parameters except the output data itself. Any of the
+ * optional parameters may be null.
+ */
+public final class CacheKey {
+	public static final String AUDIO = "AUDIO";
+
+	private final String inputtype;
+	private final String outputtype;
+	private final String locale;
+	private final String voice;
+	private final String outputparams;
+	private final String style;
+	private final String effects;
+	private final String inputtext;
+	private final int hash;
+
+	public CacheKey(String inputtype, String outputtype, String locale, String voice, String outputparams, String style,
+			String effects, String inputtext) {
+		this.inputtype = inputtype;
+		this.outputtype = outputtype;
+		this.locale = locale;
+		this.voice = voice;
+		this.outputparams = outputparams;
+		this.style = style;
+		this.effects = effects;
+		this.inputtext = inputtext;
+		int h = 17;
+		h = 31 * h + hashCode(inputtype);
+		h = 31 * h + hashCode(outputtype);
+		h = 31 * h + hashCode(locale);
+		h = 31 * h + hashCode(voice);
+		h = 31 * h + hashCode(outputparams);
+		h = 31 * h + hashCode(style);
+		h = 31 * h + hashCode(effects);
+		h = 31 * h + hashCode(inputtext);
+		this.hash = h;
+	}
+
+	public String getInputType() {
+		return inputtype;
+	}
+
+	public String getOutputType() {
+		return outputtype;
+	}
+
+	public String getLocale() {
+		return locale;
+	}
+
+	public String getVoice() {
+		return voice;
+	}
+
+	public String getOutputParams() {
+		return outputparams;
+	}
+
+	public String getStyle() {
+		return style;
+	}
+
+	public String getEffects() {
+		return effects;
+	}
+
+	public String getInputText() {
+		return inputtext;
+	}
+
+	public boolean isAudio() {
+		return AUDIO.equals(outputtype);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CacheKey)) {
+			return false;
+		}
+		CacheKey other = (CacheKey) obj;
+		return hash == other.hash && equals(inputtext, other.inputtext) && equals(inputtype, other.inputtype)
+				&& equals(outputtype, other.outputtype) && equals(locale, other.locale) && equals(voice, other.voice)
+				&& equals(outputparams, other.outputparams) && equals(style, other.style) && equals(effects, other.effects);
+	}
+
+	private static int hashCode(String s) {
+		return s == null ? 0 : s.hashCode();
+	}
+
+	private static boolean equals(String s1, String s2) {
+		return s1 == null ? s2 == null : s1.equals(s2);
+	}
+}
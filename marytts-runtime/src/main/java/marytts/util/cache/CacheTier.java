@@ -0,0 +1,99 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.io.IOException;
+
+/**
+ * One storage tier of the {@link marytts.util.MaryCache}. A tier may store text results, audio results, or both; a tier that
+ * does not store a given kind of result simply returns null on lookup and ignores inserts.
+ * <p>
+ * Implementations must be safe for concurrent use by several request threads.
+ */
+public interface CacheTier {
+
+	/**
+	 * A short name of this tier, for statistics and log messages.
+	 * 
+	 * @return name
+	 */
+	public String getName();
+
+	/**
+	 * Look up a text result.
+	 * 
+	 * @param key
+	 *            the lookup key
+	 * @return the output text, or null if this tier does not contain a text result for key.
+	 * @throws IOException
+	 *             if there is a problem accessing the storage.
+	 */
+	public String lookupText(CacheKey key) throws IOException;
+
+	/**
+	 * Store a text result. If the tier already has a result for key, it may ignore this call.
+	 * 
+	 * @param key
+	 *            the lookup key
+	 * @param outputtext
+	 *            the output text
+	 * @throws IOException
+	 *             if there is a problem accessing the storage.
+	 */
+	public void insertText(CacheKey key, String outputtext) throws IOException;
+
+	/**
+	 * Look up an audio result.
+	 * 
+	 * @param key
+	 *            the lookup key
+	 * @return the audio file data, or null if this tier does not contain an audio result for key.
+	 * @throws IOException
+	 *             if there is a problem accessing the storage.
+	 */
+	public byte[] lookupAudio(CacheKey key) throws IOException;
+
+	/**
+	 * Store an audio result. If the tier already has a result for key, it may ignore this call.
+	 * 
+	 * @param key
+	 *            the lookup key
+	 * @param audio
+	 *            the audio file data
+	 * @throws IOException
+	 *             if there is a problem accessing the storage.
+	 */
+	public void insertAudio(CacheKey key, byte[] audio) throws IOException;
+
+	/**
+	 * The number of entries this tier has dropped in order to make room for new ones.
+	 * 
+	 * @return the eviction count, 0 for tiers which never evict.
+	 */
+	public long getEvictionCount();
+
+	/**
+	 * Release all resources held by this tier. After this has been called, the tier must not be used any more.
+	 * 
+	 * @throws IOException
+	 *             if there is a problem closing the storage.
+	 */
+	public void shutdown() throws IOException;
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A persistent cache tier for both text and audio results, stored in an HSQL database file.
+ * <p>
+ * All database accesses are serialised, so this tier should normally be placed behind the in-memory tiers.
+ * 
+ * @author marc
+ */
+public class HsqlCacheTier implements CacheTier {
+	private Connection connection;
+
+	/**
+	 * Create a cache tier with the given file prefix.
+	 * 
+	 * @param cacheFile
+	 *            the file name prefix with which to create the cache database.
+	 * @param clearCache
+	 *            if true, clear the cache; if false, keep it.
+	 * @throws ClassNotFoundException
+	 *             if the HSQL JDBC driver is not in the classpath.
+	 * @throws SQLException
+	 *             if the database connection cannot be set up
+	 */
+	public HsqlCacheTier(File cacheFile, boolean clearCache) throws ClassNotFoundException, SQLException {
+		// Load the HSQL Database Engine JDBC driver
+		Class.forName("org.hsqldb.jdbcDriver");
+		connection = DriverManager.getConnection("jdbc:hsqldb:" + cacheFile.toURI().toString(), "sa", "");
+		boolean mustCreateTable = false;
+		if (clearCache) {
+			Statement st = connection.createStatement();
+			st.executeUpdate("DROP TABLE MARYCACHE IF EXISTS");
+			st.close();
+			mustCreateTable = true;
+		} else { // don't clear -- check if table exists
+			DatabaseMetaData dbInfo = connection.getMetaData();
+			ResultSet rs = dbInfo.getTables(null, null, "MARYCACHE", new String[] { "TABLE" });
+			if (rs.next()) {
+				// table exists
+			} else {
+				mustCreateTable = true;
+			}
+		}
+		if (mustCreateTable) {
+			String query = "CREATE CACHED TABLE MARYCACHE (id INTEGER IDENTITY, " + "inputtype VARCHAR(50), "
+					+ "outputtype VARCHAR(50), " + "locale VARCHAR(10), " + "voice VARCHAR(100), "
+					+ "outputparams VARCHAR(1000), " + "style VARCHAR(50), " + "effects VARCHAR(1000), "
+					+ "inputtext LONGVARCHAR, " + "outputtext LONGVARCHAR, " + "outputaudio LONGVARBINARY, "
+					+ "UNIQUE(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext)" + ")";
+			update(query);
+		}
+	}
+
+	public String getName() {
+		return "hsql";
+	}
+
+	/**
+	 * Carry out an UPDATE SQL command on the database.
+	 * 
+	 * @param query
+	 *            the UPDATE SQL command to carry out
+	 * @throws SQLException
+	 *             if there is a problem executing the update.
+	 */
+	private synchronized void update(String query) throws SQLException {
+		Statement st = connection.createStatement();
+		int ok = st.executeUpdate(query);
+		if (ok == -1) {
+			throw new SQLException("DB problem with query: " + query);
+		}
+		st.close();
+	}
+
+	private static String whereClause(CacheKey key) {
+		return "WHERE inputtype = '" + key.getInputType() + "' AND outputtype = '" + key.getOutputType() + "' AND locale = '"
+				+ key.getLocale() + "' AND voice = '" + key.getVoice() + "' AND outputparams = '" + key.getOutputParams()
+				+ "' AND style = '" + key.getStyle() + "' AND effects = '" + key.getEffects() + "' AND inputtext = ?";
+	}
+
+	private static String insertStatement(CacheKey key, String outputColumn) {
+		return "INSERT INTO MARYCACHE (inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext, "
+				+ outputColumn + ") VALUES ('" + key.getInputType() + "','" + key.getOutputType() + "','" + key.getLocale()
+				+ "','" + key.getVoice() + "','" + key.getOutputParams() + "','" + key.getStyle() + "','" + key.getEffects()
+				+ "',?,?)";
+	}
+
+	public synchronized String lookupText(CacheKey key) throws IOException {
+		try {
+			String outputtext = null;
+			PreparedStatement st = connection.prepareStatement("SELECT outputtext FROM marycache " + whereClause(key));
+			st.setString(1, key.getInputText());
+			ResultSet results = st.executeQuery();
+			if (results.next()) { // we expect only a single result, if any, so no while loop
+				outputtext = results.getString(1);
+			}
+			st.close();
+			return outputtext;
+		} catch (SQLException e) {
+			throw new IOException("Cannot look up text in cache database", e);
+		}
+	}
+
+	public synchronized void insertText(CacheKey key, String outputtext) throws IOException {
+		// Need to verify, here in the synchronized code, once again that really we don't have this entry already.
+		// If we do, we ignore this call.
+		if (lookupText(key) != null) {
+			return;
+		}
+		try {
+			PreparedStatement st = connection.prepareStatement(insertStatement(key, "outputtext"));
+			// We set the input and output text separately because they could contain single quote characters
+			st.setString(1, key.getInputText());
+			st.setString(2, outputtext);
+			st.executeUpdate();
+			st.close();
+		} catch (SQLException e) {
+			throw new IOException("Cannot insert text into cache database", e);
+		}
+	}
+
+	public synchronized byte[] lookupAudio(CacheKey key) throws IOException {
+		try {
+			byte[] audio = null;
+			PreparedStatement st = connection.prepareStatement("SELECT outputaudio FROM marycache " + whereClause(key));
+			st.setString(1, key.getInputText());
+			ResultSet results = st.executeQuery();
+			if (results.next()) {
+				audio = results.getBytes(1);
+			}
+			st.close();
+			return audio;
+		} catch (SQLException e) {
+			throw new IOException("Cannot look up audio in cache database", e);
+		}
+	}
+
+	public synchronized void insertAudio(CacheKey key, byte[] audio) throws IOException {
+		// Need to verify, here in the synchronized code, once again that really we don't have this entry already.
+		// If we do, we ignore this call.
+		if (lookupAudio(key) != null) {
+			return;
+		}
+		try {
+			PreparedStatement st = connection.prepareStatement(insertStatement(key, "outputaudio"));
+			st.setString(1, key.getInputText());
+			st.setBytes(2, audio);
+			st.executeUpdate();
+			st.close();
+		} catch (SQLException e) {
+			throw new IOException("Cannot insert audio into cache database", e);
+		}
+	}
+
+	public long getEvictionCount() {
+		return 0;
+	}
+
+	/**
+	 * Shut down the database. After this has been called, any further calls to the object will throw exceptions.
+	 * 
+	 * @throws IOException
+	 *             if there is a problem executing the database SHUTDOWN command.
+	 */
+	public synchronized void shutdown() throws IOException {
+		try {
+			Statement st = connection.createStatement();
+			st.execute("SHUTDOWN");
+			connection.close(); // if there are no other open connection
+		} catch (SQLException e) {
+			throw new IOException("Cannot shut down cache database", e);
+		}
+	}
+}
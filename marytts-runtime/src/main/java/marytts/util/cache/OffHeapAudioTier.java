@@ -0,0 +1,208 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A cache tier for audio results which keeps the audio data outside the Java heap, in a fixed number of direct byte buffer
+ * segments. New entries are appended to the current segment; when it is full, the next segment in the ring is recycled, i.e.
+ * all of its entries are evicted at once. This gives a strict bound on the memory used, at the price of FIFO rather than LRU
+ * eviction. Text results are not stored in this tier.
+ * <p>
+ * Lookups only take the read lock of the segment they read from, so concurrent lookups do not block each other.
+ */
+public class OffHeapAudioTier implements CacheTier {
+	private final Segment[] segments;
+	private final int segmentSize;
+	private final ConcurrentMap<CacheKey, Location> index = new ConcurrentHashMap<CacheKey, Location>();
+	private final Object allocationLock = new Object();
+	private int current = 0; // guarded by allocationLock
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxBytes
+	 *            the total amount of memory to use for audio data
+	 * @param numSegments
+	 *            the number of segments into which maxBytes is divided; this is the granularity of eviction, and no single
+	 *            entry can be larger than maxBytes / numSegments.
+	 */
+	public OffHeapAudioTier(long maxBytes, int numSegments) {
+		if (numSegments < 2) {
+			throw new IllegalArgumentException("Need at least two segments, got " + numSegments);
+		}
+		long size = maxBytes / numSegments;
+		if (size <= 0 || size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Cannot divide " + maxBytes + " bytes into " + numSegments + " segments");
+		}
+		segmentSize = (int) size;
+		segments = new Segment[numSegments];
+		for (int i = 0; i < numSegments; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	public String getName() {
+		return "audio-offheap";
+	}
+
+	public String lookupText(CacheKey key) {
+		return null;
+	}
+
+	public void insertText(CacheKey key, String outputtext) {
+		// text is not stored in this tier
+	}
+
+	public byte[] lookupAudio(CacheKey key) {
+		Location loc = index.get(key);
+		if (loc == null) {
+			return null;
+		}
+		Segment segment = segments[loc.segment];
+		segment.lock.readLock().lock();
+		try {
+			if (segment.generation != loc.generation) {
+				// segment was recycled after we looked up the location
+				return null;
+			}
+			byte[] audio = new byte[loc.length];
+			ByteBuffer buf = segment.buffer.duplicate();
+			buf.position(loc.offset);
+			buf.get(audio);
+			return audio;
+		} finally {
+			segment.lock.readLock().unlock();
+		}
+	}
+
+	public void insertAudio(CacheKey key, byte[] audio) {
+		if (audio.length > segmentSize || index.containsKey(key)) {
+			return;
+		}
+		synchronized (allocationLock) {
+			Segment segment = segments[current];
+			if (segment.buffer == null) {
+				segment.buffer = ByteBuffer.allocateDirect(segmentSize);
+			}
+			if (segment.used + audio.length > segmentSize) {
+				current = (current + 1) % segments.length;
+				segment = segments[current];
+				if (segment.buffer == null) {
+					segment.buffer = ByteBuffer.allocateDirect(segmentSize);
+				} else {
+					recycle(segment);
+				}
+			}
+			// Readers never look at the unused part of a segment, so we can write without the segment lock:
+			ByteBuffer buf = segment.buffer.duplicate();
+			buf.position(segment.used);
+			buf.put(audio);
+			Location loc = new Location(key, current, segment.generation, segment.used, audio.length);
+			segment.used += audio.length;
+			segment.entries.add(loc);
+			index.put(key, loc);
+		}
+	}
+
+	/**
+	 * Evict all entries of the given segment and make it available for new entries. Must be called with the allocation lock
+	 * held.
+	 */
+	private void recycle(Segment segment) {
+		segment.lock.writeLock().lock();
+		try {
+			segment.generation++;
+			for (Location loc : segment.entries) {
+				if (index.remove(loc.key, loc)) {
+					evictions.incrementAndGet();
+				}
+			}
+			segment.entries.clear();
+			segment.used = 0;
+		} finally {
+			segment.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * The number of audio results currently held.
+	 * 
+	 * @return size
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public void shutdown() {
+		synchronized (allocationLock) {
+			index.clear();
+			for (Segment segment : segments) {
+				segment.lock.writeLock().lock();
+				try {
+					segment.generation++;
+					segment.entries.clear();
+					segment.used = 0;
+					segment.buffer = null;
+				} finally {
+					segment.lock.writeLock().unlock();
+				}
+			}
+		}
+	}
+
+	private static class Segment {
+		final ReadWriteLock lock = new ReentrantReadWriteLock();
+		// buffer is allocated under the allocation lock and published to readers through the index;
+		// generation is changed under both the allocation lock and the write lock:
+		ByteBuffer buffer;
+		int generation;
+		// used and entries are guarded by the allocation lock:
+		int used;
+		final List<Location> entries = new ArrayList<Location>();
+	}
+
+	private static class Location {
+		final CacheKey key;
+		final int segment;
+		final int generation;
+		final int offset;
+		final int length;
+
+		Location(CacheKey key, int segment, int generation, int offset, int length) {
+			this.key = key;
+			this.segment = segment;
+			this.generation = generation;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded least-recently-used map which is split into a number of independently locked stripes, so that concurrent
+ * accesses to different keys rarely contend for the same lock. The LRU order and the size bound are maintained per stripe,
+ * so eviction is only approximately global LRU.
+ * 
+ * @param <K>
+ *            key type
+ * @param <V>
+ *            value type
+ */
+public class StripedLruCache<K, V> {
+	private final Stripe<K, V>[] stripes;
+	private final int mask;
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Create a striped LRU cache.
+	 * 
+	 * @param numStripes
+	 *            the number of independently locked stripes; rounded up to a power of two.
+	 * @param maxEntries
+	 *            the maximum total number of entries.
+	 */
+	@SuppressWarnings("unchecked")
+	public StripedLruCache(int numStripes, int maxEntries) {
+		if (numStripes <= 0) {
+			throw new IllegalArgumentException("Need at least one stripe, got " + numStripes);
+		}
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("Need room for at least one entry, got " + maxEntries);
+		}
+		int n = 1;
+		while (n < numStripes) {
+			n <<= 1;
+		}
+		mask = n - 1;
+		int perStripe = Math.max(1, (maxEntries + n - 1) / n);
+		stripes = new Stripe[n];
+		for (int i = 0; i < n; i++) {
+			stripes[i] = new Stripe<K, V>(perStripe, evictions);
+		}
+	}
+
+	private Stripe<K, V> stripeFor(Object key) {
+		int h = key.hashCode();
+		// spread the higher bits, as in java.util.HashMap:
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return stripes[h & mask];
+	}
+
+	/**
+	 * Get the value for key, marking it as recently used.
+	 * 
+	 * @param key
+	 *            key, must not be null
+	 * @return the value, or null if there is none.
+	 */
+	public V get(K key) {
+		Stripe<K, V> stripe = stripeFor(key);
+		synchronized (stripe) {
+			return stripe.get(key);
+		}
+	}
+
+	/**
+	 * Associate value with key, evicting the least recently used entry of the key's stripe if it is full.
+	 * 
+	 * @param key
+	 *            key, must not be null
+	 * @param value
+	 *            value, must not be null
+	 */
+	public void put(K key, V value) {
+		Stripe<K, V> stripe = stripeFor(key);
+		synchronized (stripe) {
+			stripe.put(key, value);
+		}
+	}
+
+	/**
+	 * Remove the value for key.
+	 * 
+	 * @param key
+	 *            key
+	 * @return the previous value, or null if there was none.
+	 */
+	public V remove(K key) {
+		Stripe<K, V> stripe = stripeFor(key);
+		synchronized (stripe) {
+			return stripe.remove(key);
+		}
+	}
+
+	/**
+	 * The current number of entries.
+	 * 
+	 * @return size
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe<K, V> stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Remove all entries.
+	 */
+	public void clear() {
+		for (Stripe<K, V> stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	/**
+	 * The number of entries which were dropped because their stripe was full.
+	 * 
+	 * @return eviction count
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	private static class Stripe<K, V> extends LinkedHashMap<K, V> {
+		private final int maxEntries;
+		private final AtomicLong evictions;
+
+		Stripe(int maxEntries, AtomicLong evictions) {
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+			this.evictions = evictions;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			if (size() > maxEntries) {
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+}
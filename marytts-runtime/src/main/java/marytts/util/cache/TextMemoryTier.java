@@ -0,0 +1,65 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+/**
+ * An in-heap cache tier for text results, held in a lock-striped LRU map. Audio results are not stored in this tier.
+ */
+public class TextMemoryTier implements CacheTier {
+	private final StripedLruCache<CacheKey, String> texts;
+
+	/**
+	 * @param maxEntries
+	 *            the maximum number of text results to keep
+	 * @param numStripes
+	 *            the number of independently locked stripes
+	 */
+	public TextMemoryTier(int maxEntries, int numStripes) {
+		texts = new StripedLruCache<CacheKey, String>(numStripes, maxEntries);
+	}
+
+	public String getName() {
+		return "text-memory";
+	}
+
+	public String lookupText(CacheKey key) {
+		return texts.get(key);
+	}
+
+	public void insertText(CacheKey key, String outputtext) {
+		texts.put(key, outputtext);
+	}
+
+	public byte[] lookupAudio(CacheKey key) {
+		return null;
+	}
+
+	public void insertAudio(CacheKey key, byte[] audio) {
+		// audio is not stored in this tier
+	}
+
+	public long getEvictionCount() {
+		return texts.getEvictionCount();
+	}
+
+	public void shutdown() {
+		texts.clear();
+	}
+}
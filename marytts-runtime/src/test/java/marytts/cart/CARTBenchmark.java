@@ -0,0 +1,71 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.cart;
+
+import java.util.Random;
+
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+
+/**
+ * Compares the speed of walking a CART through its node objects and through its compiled form, on random trees. This is not a
+ * unit test; run it with
+ * 
+ * <pre>
+ * java marytts.cart.CARTBenchmark [depth] [numFeatureVectors] [repetitions]
+ * </pre>
+ */
+public class CARTBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int depth = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int numVectors = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		Random random = new Random(1);
+		FeatureDefinition fd = CompiledCARTTest.createFeatureDefinition(40, 5, 10);
+		CART cart = CompiledCARTTest.randomCART(random, fd, depth, false);
+		CompiledCART compiled = CompiledCART.compile(cart.getRootNode());
+		FeatureVector[] vectors = new FeatureVector[numVectors];
+		for (int i = 0; i < numVectors; i++) {
+			vectors[i] = CompiledCARTTest.randomFeatureVector(random, fd);
+		}
+		System.out.println("Tree with " + compiled.getNumberOfNodes() + " nodes");
+		for (int round = 0; round < 3; round++) { // the first rounds are warm-up
+			long sum = 0;
+			long start = System.nanoTime();
+			for (int r = 0; r < repetitions; r++) {
+				for (int i = 0; i < numVectors; i++) {
+					sum += cart.interpretToNode(vectors[i], 0).getNumberOfData();
+				}
+			}
+			long nodes = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int r = 0; r < repetitions; r++) {
+				for (int i = 0; i < numVectors; i++) {
+					sum -= compiled.interpretToNode(vectors[i], 0).getNumberOfData();
+				}
+			}
+			long flat = System.nanoTime() - start;
+			double numWalks = (double) repetitions * numVectors;
+			System.out.printf("Round %d: nodes %.1f ns/walk, compiled %.1f ns/walk (checksum %d)%n", round + 1, nodes / numWalks,
+					flat / numWalks, sum);
+		}
+	}
+}
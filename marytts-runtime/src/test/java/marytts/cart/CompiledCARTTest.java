@@ -0,0 +1,226 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.cart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import marytts.cart.LeafNode.IntArrayLeafNode;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CompiledCARTTest {
+	private static final int NUM_BYTE_VALUES = 5;
+	private static final int NUM_SHORT_VALUES = 4;
+
+	private static FeatureDefinition featureDefinition;
+
+	@BeforeClass
+	public static void createFeatureDefinition() throws IOException {
+		featureDefinition = createFeatureDefinition(4, 2, 2);
+	}
+
+	static FeatureDefinition createFeatureDefinition(int numByte, int numShort, int numContinuous) throws IOException {
+		StringBuilder def = new StringBuilder();
+		def.append(FeatureDefinition.BYTEFEATURES).append("\n");
+		for (int i = 0; i < numByte; i++) {
+			def.append("byte").append(i);
+			for (int v = 0; v < NUM_BYTE_VALUES; v++) {
+				def.append(" b").append(v);
+			}
+			def.append("\n");
+		}
+		def.append(FeatureDefinition.SHORTFEATURES).append("\n");
+		for (int i = 0; i < numShort; i++) {
+			def.append("short").append(i);
+			for (int v = 0; v < NUM_SHORT_VALUES; v++) {
+				def.append(" s").append(v);
+			}
+			def.append("\n");
+		}
+		def.append(FeatureDefinition.CONTINUOUSFEATURES).append("\n");
+		for (int i = 0; i < numContinuous; i++) {
+			def.append("float").append(i).append("\n");
+		}
+		return new FeatureDefinition(new BufferedReader(new StringReader(def.toString())), false);
+	}
+
+	/**
+	 * Create a random tree using all kinds of decision nodes.
+	 * 
+	 * @param withEmptyDaughters
+	 *            whether some daughters may be null
+	 */
+	static Node randomTree(Random random, FeatureDefinition fd, int depth, boolean withEmptyDaughters) {
+		if (depth == 0 || random.nextInt(8) == 0) {
+			int[] data = new int[1 + random.nextInt(5)];
+			for (int i = 0; i < data.length; i++) {
+				data[i] = random.nextInt(1000);
+			}
+			return new IntArrayLeafNode(data);
+		}
+		int numByte = fd.getNumberOfByteFeatures();
+		int numShort = fd.getNumberOfShortFeatures();
+		int numContinuous = fd.getNumberOfContinuousFeatures();
+		DecisionNode node;
+		switch (random.nextInt(6)) {
+		case 0:
+			node = new DecisionNode.BinaryByteDecisionNode(random.nextInt(numByte), (byte) random.nextInt(NUM_BYTE_VALUES), fd);
+			break;
+		case 1:
+			node = new DecisionNode.BinaryShortDecisionNode(numByte + random.nextInt(numShort),
+					(short) random.nextInt(NUM_SHORT_VALUES), fd);
+			break;
+		case 2:
+			node = new DecisionNode.BinaryFloatDecisionNode(numByte + numShort + random.nextInt(numContinuous), random.nextFloat(),
+					fd);
+			break;
+		case 3: // a pseudo-float on a byte feature
+			node = new DecisionNode.BinaryFloatDecisionNode(random.nextInt(numByte), random.nextFloat() * NUM_BYTE_VALUES, fd);
+			break;
+		case 4:
+			node = new DecisionNode.ByteDecisionNode(random.nextInt(numByte), NUM_BYTE_VALUES, fd);
+			break;
+		default:
+			node = new DecisionNode.ShortDecisionNode(numByte + random.nextInt(numShort), NUM_SHORT_VALUES, fd);
+			break;
+		}
+		for (int i = 0; i < node.getNumberOfDaugthers(); i++) {
+			if (withEmptyDaughters && random.nextInt(6) == 0) {
+				node.addDaughter(null);
+			} else {
+				node.addDaughter(randomTree(random, fd, depth - 1, withEmptyDaughters));
+			}
+		}
+		return node;
+	}
+
+	static CART randomCART(Random random, FeatureDefinition fd, int depth, boolean withEmptyDaughters) {
+		Node root = randomTree(random, fd, depth, withEmptyDaughters);
+		if (root instanceof DecisionNode) {
+			((DecisionNode) root).countData();
+		}
+		root.setIsRoot(true);
+		return new CART(root, fd);
+	}
+
+	static FeatureVector randomFeatureVector(Random random, FeatureDefinition fd) {
+		byte[] bytes = new byte[fd.getNumberOfByteFeatures()];
+		short[] shorts = new short[fd.getNumberOfShortFeatures()];
+		float[] floats = new float[fd.getNumberOfContinuousFeatures()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) random.nextInt(NUM_BYTE_VALUES);
+		}
+		for (int i = 0; i < shorts.length; i++) {
+			shorts[i] = (short) random.nextInt(NUM_SHORT_VALUES);
+		}
+		for (int i = 0; i < floats.length; i++) {
+			floats[i] = random.nextFloat();
+		}
+		return new FeatureVector(bytes, shorts, floats, 0);
+	}
+
+	@Test
+	public void compiledTreeFindsSameNodes() {
+		Random random = new Random(42);
+		for (int t = 0; t < 50; t++) {
+			CART cart = randomCART(random, featureDefinition, 8, false);
+			CompiledCART compiled = CompiledCART.compile(cart.getRootNode());
+			assertNotNull(compiled);
+			assertEquals(cart.getNumNodes(), compiled.getNumberOfNodes());
+			for (int i = 0; i < 200; i++) {
+				FeatureVector fv = randomFeatureVector(random, featureDefinition);
+				for (int min : new int[] { 0, 1, 3, 10, 50 }) {
+					assertSame(cart.interpretToNode(fv, min), compiled.interpretToNode(fv, min));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void compiledTreeFindsSameLeavesWithEmptyDaughters() {
+		Random random = new Random(7);
+		for (int t = 0; t < 50; t++) {
+			CART cart = randomCART(random, featureDefinition, 8, true);
+			CompiledCART compiled = CompiledCART.compile(cart.getRootNode());
+			assertNotNull(compiled);
+			for (int i = 0; i < 200; i++) {
+				FeatureVector fv = randomFeatureVector(random, featureDefinition);
+				Object expected = cart.interpret(fv);
+				LeafNode leaf = compiled.interpretToLeaf(fv);
+				assertSame(expected, leaf == null ? null : leaf.getAllData());
+			}
+		}
+	}
+
+	@Test
+	public void cartUsesCompiledFormUntilRootChanges() {
+		Random random = new Random(3);
+		CART cart = randomCART(random, featureDefinition, 6, false);
+		assertNull(cart.getCompiled());
+		assertTrue(cart.compile());
+		assertNotNull(cart.getCompiled());
+		FeatureVector fv = randomFeatureVector(random, featureDefinition);
+		Node leaf = cart.interpretToNode(fv, 0);
+		assertSame(leaf.getAllData(), cart.interpret(fv));
+		cart.setRootNode(randomTree(random, featureDefinition, 6, false));
+		assertNull(cart.getCompiled());
+	}
+
+	@Test
+	public void singleLeafTree() {
+		Node leaf = new IntArrayLeafNode(new int[] { 1, 2 });
+		CART cart = new CART(leaf, featureDefinition);
+		assertTrue(cart.compile());
+		FeatureVector fv = randomFeatureVector(new Random(1), featureDefinition);
+		assertSame(leaf, cart.interpretToNode(fv, 0));
+		assertSame(leaf, cart.interpretToNode(fv, 5));
+	}
+
+	@Test
+	public void graphsAreNotCompiled() {
+		DirectedGraphNode graphNode = new DirectedGraphNode(null, new IntArrayLeafNode(new int[] { 1 }));
+		assertFalse(new CART(graphNode, featureDefinition).compile());
+		assertFalse(new CART(null, featureDefinition).compile());
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void outOfRangeValueFailsAsBefore() {
+		DecisionNode node = new DecisionNode.ByteDecisionNode(0, 2, featureDefinition);
+		node.addDaughter(new IntArrayLeafNode(new int[] { 1 }));
+		node.addDaughter(new IntArrayLeafNode(new int[] { 2 }));
+		node.countData();
+		CompiledCART compiled = CompiledCART.compile(node);
+		FeatureVector fv = new FeatureVector(new byte[] { 3, 0, 0, 0 }, new short[2], new float[2], 0);
+		compiled.interpretToNode(fv, 0);
+	}
+}
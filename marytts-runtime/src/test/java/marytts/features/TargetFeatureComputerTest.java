@@ -2,16 +2,24 @@ package marytts.features;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
+import marytts.datatypes.MaryXML;
 import marytts.unitselection.select.Target;
+import marytts.util.dom.DomUtils;
 import marytts.util.string.ByteStringTranslator;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 public class TargetFeatureComputerTest {
 
+	private FeatureProcessorManager manager;
 	private TestByteValuedFeatureProcessor processor;
 	private TargetFeatureComputer computer;
 
@@ -26,7 +34,7 @@ public class TargetFeatureComputerTest {
 	@Before
 	public void setUp() throws Exception {
 		System.setProperty(".allophoneset", "jar:/marytts/features/allophones.ROOT.xml");
-		FeatureProcessorManager manager = new FeatureProcessorManager(Locale.ROOT);
+		manager = new FeatureProcessorManager(Locale.ROOT);
 		processor = new TestByteValuedFeatureProcessor();
 		manager.addFeatureProcessor(processor);
 		computer = new TargetFeatureComputer(manager, processor.getName());
@@ -44,6 +52,49 @@ public class TargetFeatureComputerTest {
 		}
 	}
 
+	@Test
+	public void testBatchComputationMatchesSingleTargets() throws Exception {
+		Document doc = DomUtils.parseDocument("<maryxml xmlns=\"http://mary.dfki.de/2002/MaryXML\" version=\"0.5\" xml:lang=\"en\">"
+				+ "<p><s><phrase><t ph=\"' a m\">am<syllable ph=\"a m\" stress=\"1\" accent=\"H*\"><ph p=\"a\" d=\"80\"/>"
+				+ "<ph p=\"m\" d=\"60\"/></syllable></t><t ph=\"m a\">ma<syllable ph=\"m a\"><ph p=\"m\"/><ph p=\"a\"/>"
+				+ "</syllable></t><t>.</t><boundary breakindex=\"5\" tone=\"L-L%\" duration=\"200\"/></phrase></s></p></maryxml>");
+		List<Target> targets = new ArrayList<Target>();
+		NodeList elements = doc.getElementsByTagName("*");
+		for (int i = 0; i < elements.getLength(); i++) {
+			Element e = (Element) elements.item(i);
+			if (e.getTagName().equals(MaryXML.PHONE) || e.getTagName().equals(MaryXML.BOUNDARY)) {
+				targets.add(new Target(e.getTagName().equals(MaryXML.PHONE) ? e.getAttribute("p") : "_", e));
+			}
+		}
+		TargetFeatureComputer all = new TargetFeatureComputer(manager, manager.listByteValuedFeatureProcessorNames() + " "
+				+ manager.listShortValuedFeatureProcessorNames() + " " + manager.listContinuousFeatureProcessorNames());
+		assertTrue(all.getByteValuedFeatureProcessors().length > 0);
+		assertTrue(all.getContinuousFeatureProcessors().length > 0);
+
+		FeatureVector[] batch = all.computeFeatureVectors(targets);
+		assertEquals(targets.size(), batch.length);
+		for (int i = 0; i < batch.length; i++) {
+			FeatureVector single = all.computeFeatureVector(targets.get(i));
+			assertEquals(all.toStringValues(single), all.toStringValues(batch[i]));
+		}
+		assertEquals(0, all.computeFeatureVectors(new ArrayList<Target>()).length);
+	}
+
+	@Test
+	public void testSetMissingFeatureVectors() {
+		Target first = new Target("a", null);
+		Target second = new Target("b", null);
+		FeatureVector existing = new FeatureVector(new byte[] { 5 }, new short[0], new float[0], 0);
+		first.setFeatureVector(existing);
+		List<Target> targets = new ArrayList<Target>();
+		targets.add(first);
+		targets.add(second);
+		computer.setMissingFeatureVectors(targets);
+		assertSame(existing, first.getFeatureVector());
+		assertNotNull(second.getFeatureVector());
+		assertEquals(0, second.getFeatureVector().getByteFeature(0));
+	}
+
 	public class TestByteValuedFeatureProcessor implements ByteValuedFeatureProcessor {
 
 		private ByteStringTranslator values;
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.features;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import marytts.datatypes.MaryXML;
+import marytts.features.MaryGenericFeatureProcessors.TargetElementNavigator;
+import marytts.unitselection.select.Target;
+import marytts.util.dom.DomUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Checks that the feature processors compute the same values with and without an {@link UtteranceIndex}.
+ */
+public class UtteranceIndexTest {
+
+	private Document doc;
+	private List<Target> targets;
+	private List<TargetElementNavigator> navigators;
+	private List<ByteValuedFeatureProcessor> processors;
+
+	@Before
+	public void setUp() throws Exception {
+		UtteranceIndex.setEnabled(true);
+		StringBuilder xml = new StringBuilder();
+		xml.append("<maryxml xmlns=\"http://mary.dfki.de/2002/MaryXML\" version=\"0.5\" xml:lang=\"en-US\"><p>");
+		xml.append("<s><phrase>");
+		xml.append("<t ph=\"' a m\">am<syllable ph=\"a m\" stress=\"1\" accent=\"H*\"><ph p=\"a\"/><ph p=\"m\"/></syllable></t>");
+		xml.append("<t ph=\"m a - ' m a\">mama<syllable ph=\"m a\"><ph p=\"m\"/><ph p=\"a\"/></syllable>");
+		xml.append("<syllable ph=\"m a\" stress=\"1\" accent=\"\"><ph p=\"m\"/><ph p=\"a\"/></syllable></t>");
+		xml.append("<t>,</t><boundary breakindex=\"4\" tone=\"H-%\" duration=\"200\"/></phrase>");
+		xml.append("<phrase><mtu orig=\"2x\"><t ph=\"a\">a<syllable ph=\"a\" accent=\"L+H*\"><ph p=\"a\"/></syllable></t>");
+		xml.append("<t ph=\"m a m\">mam<syllable ph=\"m a m\" stress=\"1\">");
+		xml.append("<ph p=\"m\"/><ph p=\"a\"/><ph p=\"m\"/></syllable></t></mtu>");
+		xml.append("<prosody rate=\"+10%\"><t ph=\"a - m a\">ama<syllable ph=\"a\"><ph p=\"a\"/></syllable>");
+		xml.append("<syllable ph=\"m a\" stress=\"1\" accent=\"H*\"><ph p=\"m\"/><ph p=\"a\"/></syllable></t></prosody>");
+		xml.append("<t>\"</t><t>.</t><boundary breakindex=\"6\" tone=\"L-L%\"/></phrase></s>");
+		// a long sentence, to check that counts are capped in the same way
+		xml.append("<s><phrase>");
+		for (int i = 0; i < 30; i++) {
+			if (i == 12) {
+				xml.append("<t>;</t><boundary breakindex=\"3\" tone=\"L-\"/></phrase><phrase>");
+			}
+			xml.append("<t ph=\"m a\">ma<syllable ph=\"m a\"");
+			if (i % 3 == 0) {
+				xml.append(" stress=\"1\"");
+			}
+			if (i % 7 == 0) {
+				xml.append(" accent=\"H*\"");
+			}
+			xml.append("><ph p=\"m\"/><ph p=\"a\"/></syllable></t>");
+		}
+		xml.append("<t>!</t><boundary breakindex=\"5\"/></phrase></s>");
+		// a sentence without phrases and boundaries
+		xml.append("<s><t ph=\"a\">a<syllable ph=\"a\"><ph p=\"a\"/></syllable></t></s>");
+		xml.append("</p></maryxml>");
+		doc = DomUtils.parseDocument(xml.toString());
+
+		targets = new ArrayList<Target>();
+		NodeList segments = doc.getElementsByTagName("*");
+		for (int i = 0; i < segments.getLength(); i++) {
+			Element e = (Element) segments.item(i);
+			if (e.getTagName().equals(MaryXML.PHONE)) {
+				targets.add(new Target(e.getAttribute("p"), e));
+			} else if (e.getTagName().equals(MaryXML.BOUNDARY)) {
+				targets.add(new Target("_", e));
+			}
+		}
+
+		navigators = new ArrayList<TargetElementNavigator>();
+		processors = new ArrayList<ByteValuedFeatureProcessor>();
+		Class<?>[] classes = MaryGenericFeatureProcessors.class.getClasses();
+		for (Class<?> c : classes) {
+			if (TargetElementNavigator.class.isAssignableFrom(c) && !c.isInterface()) {
+				navigators.add((TargetElementNavigator) c.newInstance());
+			}
+		}
+		for (Class<?> c : classes) {
+			if (!ByteValuedFeatureProcessor.class.isAssignableFrom(c) || Modifier.isAbstract(c.getModifiers())) {
+				continue;
+			}
+			for (Constructor<?> constructor : c.getConstructors()) {
+				Class<?>[] params = constructor.getParameterTypes();
+				if (params.length == 0) {
+					processors.add((ByteValuedFeatureProcessor) constructor.newInstance());
+				} else if (params.length == 1 && params[0] == TargetElementNavigator.class) {
+					for (TargetElementNavigator navigator : navigators) {
+						processors.add((ByteValuedFeatureProcessor) constructor.newInstance(navigator));
+					}
+				} else if (params.length == 2 && params[0] == String.class && params[1] == TargetElementNavigator.class) {
+					for (TargetElementNavigator navigator : navigators) {
+						processors.add((ByteValuedFeatureProcessor) constructor.newInstance(c.getSimpleName(), navigator));
+					}
+				}
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		UtteranceIndex.setEnabled(true);
+	}
+
+	private List<Object> computeAll() {
+		List<Object> results = new ArrayList<Object>();
+		for (Target t : targets) {
+			for (TargetElementNavigator navigator : navigators) {
+				results.add(navigator.getElement(t));
+			}
+			for (ByteValuedFeatureProcessor processor : processors) {
+				try {
+					results.add(processor.process(t));
+				} catch (RuntimeException e) {
+					results.add(e.getClass());
+				} catch (AssertionError e) { // processor combined with a navigator for a different kind of element
+					results.add(e.getClass());
+				}
+			}
+		}
+		return results;
+	}
+
+	private void assertSameAsDom() {
+		UtteranceIndex.setEnabled(false);
+		List<Object> expected = computeAll();
+		UtteranceIndex.setEnabled(true);
+		List<Object> actual = computeAll();
+		assertEquals(expected.size(), actual.size());
+		int perTarget = navigators.size() + processors.size();
+		for (int i = 0; i < expected.size(); i++) {
+			String where = targets.get(i / perTarget) + " (" + (i / perTarget) + ") / " + describe(i % perTarget);
+			if (expected.get(i) instanceof Element) {
+				assertSame(where, expected.get(i), actual.get(i));
+			} else {
+				assertEquals(where, expected.get(i), actual.get(i));
+			}
+		}
+	}
+
+	private String describe(int i) {
+		if (i < navigators.size()) {
+			return navigators.get(i).getClass().getSimpleName();
+		}
+		ByteValuedFeatureProcessor processor = processors.get(i - navigators.size());
+		return processor.getClass().getSimpleName() + " " + processor.getName();
+	}
+
+	@Test
+	public void testIndexIsUsed() {
+		assertTrue(processors.size() > 50);
+		for (Target t : targets) {
+			assertNotNull(t.toString(), UtteranceIndex.forSegment(t.getMaryxmlElement()));
+		}
+		Element sentence = (Element) doc.getElementsByTagName(MaryXML.SENTENCE).item(0);
+		UtteranceIndex index = UtteranceIndex.forSegment(targets.get(0).getMaryxmlElement());
+		assertSame(sentence, index.getSentence());
+		assertSame(index, UtteranceIndex.forSegment(targets.get(1).getMaryxmlElement()));
+		assertEquals(8, index.getNumTokens());
+		assertEquals(5, index.getNumWords());
+		assertEquals(2, index.getNumPhrases());
+	}
+
+	@Test
+	public void testSameValuesAsDom() {
+		assertSameAsDom();
+	}
+
+	@Test
+	public void testStructureChangeInvalidatesIndex() {
+		UtteranceIndex before = UtteranceIndex.forSegment(targets.get(0).getMaryxmlElement());
+		Element comma = (Element) doc.getElementsByTagName(MaryXML.TOKEN).item(2);
+		comma.getParentNode().removeChild(comma);
+		UtteranceIndex after = UtteranceIndex.forSegment(targets.get(0).getMaryxmlElement());
+		assertFalse(before == after);
+		assertEquals(7, after.getNumTokens());
+		assertSameAsDom();
+	}
+
+	@Test
+	public void testAttributeChangeInvalidatesIndex() {
+		computeAll();
+		Element token = (Element) doc.getElementsByTagName(MaryXML.TOKEN).item(3);
+		token.removeAttribute("ph");
+		Element syllable = (Element) doc.getElementsByTagName(MaryXML.SYLLABLE).item(1);
+		syllable.setAttribute("stress", "1");
+		syllable.setAttribute("accent", "L*");
+		assertSameAsDom();
+	}
+
+	@Test
+	public void testOtherAttributesKeepIndex() {
+		UtteranceIndex before = UtteranceIndex.forSegment(targets.get(0).getMaryxmlElement());
+		targets.get(0).getMaryxmlElement().setAttribute("d", "50");
+		assertSame(before, UtteranceIndex.forSegment(targets.get(0).getMaryxmlElement()));
+	}
+
+	@Test
+	public void testReleaseRemovesListeners() {
+		Element segment = targets.get(0).getMaryxmlElement();
+		Element sentence = (Element) doc.getElementsByTagName(MaryXML.SENTENCE).item(0);
+		UtteranceIndex before = UtteranceIndex.forSegment(segment);
+		assertTrue(UtteranceIndex.isListening(sentence));
+		UtteranceIndex.release(doc);
+		assertFalse(UtteranceIndex.isListening(sentence));
+		UtteranceIndex after = UtteranceIndex.forSegment(segment);
+		assertFalse(before == after);
+		assertTrue(UtteranceIndex.isListening(sentence));
+		// once indexed again, changes are tracked again:
+		Element token = (Element) doc.getElementsByTagName(MaryXML.TOKEN).item(3);
+		token.removeAttribute("ph");
+		assertSameAsDom();
+	}
+
+	@Test
+	public void testUnsupportedStructureFallsBackToDom() {
+		Element syllable = (Element) doc.getElementsByTagName(MaryXML.SYLLABLE).item(0);
+		Element boundary = MaryXML.createElement(doc, MaryXML.BOUNDARY);
+		syllable.appendChild(boundary);
+		targets.add(new Target("_", boundary));
+		assertNull(UtteranceIndex.forSegment(boundary));
+		assertNull(UtteranceIndex.forSegment(targets.get(0).getMaryxmlElement()));
+		assertSameAsDom();
+	}
+}
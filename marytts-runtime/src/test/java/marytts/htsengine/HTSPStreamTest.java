@@ -0,0 +1,100 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HTSPStreamTest {
+
+	private static final int ORDER = 4;
+	private static final int NUM_FRAMES = 400;
+
+	private static HTSPStream createStream() throws Exception {
+		HTSPStream pst = new HTSPStream(HTSPStream.NUM * ORDER, NUM_FRAMES, HMMData.FeatureType.MGC, 0);
+		Random random = new Random(5);
+		for (int t = 0; t < NUM_FRAMES; t++) {
+			double[] mean = new double[HTSPStream.NUM * ORDER];
+			double[] var = new double[HTSPStream.NUM * ORDER];
+			for (int m = 0; m < ORDER; m++) {
+				// piecewise constant static means, as from a sequence of HMM states:
+				mean[m] = Math.sin((t / 7) * 0.3 + m) + 0.1 * random.nextGaussian();
+				var[m] = 0.5 + random.nextDouble();
+				var[ORDER + m] = 0.05;
+				var[2 * ORDER + m] = 0.05;
+			}
+			pst.setMseq(t, mean);
+			pst.setVseq(t, var);
+		}
+		pst.fixDynFeatOnBoundaries();
+		return pst;
+	}
+
+	private static HMMData windowedData(int windowSize, int lookAhead) {
+		HMMData htsData = new HMMData();
+		htsData.setMlpgWindowSize(windowSize);
+		htsData.setMlpgLookAhead(lookAhead);
+		return htsData;
+	}
+
+	@Test
+	public void windowedGenerationIsCloseToFullGeneration() throws Exception {
+		HTSPStream full = createStream();
+		full.mlpg(new HMMData(), false);
+		HTSPStream windowed = createStream();
+		windowed.mlpg(windowedData(50, 40), false);
+		HTSPStream noLookAhead = createStream();
+		noLookAhead.mlpg(windowedData(50, 0), false);
+
+		double windowedError = MLPGWindowComparison.maxDifference(full, windowed);
+		double noLookAheadError = MLPGWindowComparison.maxDifference(full, noLookAhead);
+		assertTrue("error with look-ahead: " + windowedError, windowedError < 1e-3);
+		assertTrue(noLookAheadError > 10 * windowedError);
+	}
+
+	@Test
+	public void windowLargerThanUtteranceIsFullGeneration() throws Exception {
+		HTSPStream full = createStream();
+		full.mlpg(new HMMData(), false);
+		HTSPStream windowed = createStream();
+		windowed.mlpg(windowedData(NUM_FRAMES, 0), false);
+		assertEquals(0, MLPGWindowComparison.maxDifference(full, windowed), 0);
+	}
+
+	@Test
+	public void deferredGenerationEqualsWindowedGeneration() throws Exception {
+		HMMData htsData = windowedData(30, 20);
+		HTSPStream windowed = createStream();
+		windowed.mlpg(htsData, false);
+		HTSPStream deferred = createStream();
+		deferred.deferMlpg(htsData, false);
+		deferred.generateUpTo(0);
+		assertEquals(windowed.getPar(29, 1), deferred.getPar(29, 1), 0);
+		assertEquals(0, deferred.getPar(30, 1), 0); // not generated yet
+		for (int t = 0; t < NUM_FRAMES; t++) {
+			deferred.generateUpTo(t);
+		}
+		assertEquals(0, MLPGWindowComparison.maxDifference(windowed, deferred), 0);
+	}
+}
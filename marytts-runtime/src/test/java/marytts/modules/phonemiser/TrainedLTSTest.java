@@ -0,0 +1,116 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.modules.phonemiser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Properties;
+
+import marytts.cart.CART;
+import marytts.cart.DecisionNode;
+import marytts.cart.LeafNode.StringAndFloatLeafNode;
+import marytts.cart.Node;
+import marytts.features.FeatureDefinition;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TrainedLTSTest {
+	private static TrainedLTS lts;
+
+	/**
+	 * A letter-to-sound tree with one letter of context on each side, which pronounces "a" as "A", "b" as "B", "c" as "K" before
+	 * "a" and as "S" elsewhere, and all other letters as nothing.
+	 */
+	@BeforeClass
+	public static void createLTS() throws Exception {
+		String def = FeatureDefinition.BYTEFEATURES + "\n" //
+				+ "att1 null a b c\n" //
+				+ "att2 null a b c\n" //
+				+ "att3 null a b c\n" //
+				+ TrainedLTS.PREDICTED_STRING_FEATURENAME + " [] [A] [B] [K] [S]\n" //
+				+ FeatureDefinition.SHORTFEATURES + "\n" //
+				+ FeatureDefinition.CONTINUOUSFEATURES + "\n";
+		FeatureDefinition fd = new FeatureDefinition(new BufferedReader(new StringReader(def)), false);
+		DecisionNode root = new DecisionNode.ByteDecisionNode(1, 4, fd);
+		root.addDaughter(leaf(0));
+		root.addDaughter(leaf(1));
+		root.addDaughter(leaf(2));
+		DecisionNode c = new DecisionNode.BinaryByteDecisionNode(2, fd.getFeatureValueAsByte(2, "a"), fd);
+		c.addDaughter(leaf(3));
+		c.addDaughter(leaf(4));
+		root.addDaughter(c);
+		root.countData();
+		root.setIsRoot(true);
+		Properties props = new Properties();
+		props.setProperty("lowercase", "false");
+		props.setProperty("context", "1");
+		CART tree = new CART(root, fd, props);
+		tree.compile();
+		lts = new TrainedLTS(null, tree);
+	}
+
+	private static Node leaf(int prediction) {
+		return new StringAndFloatLeafNode(new int[] { prediction }, new float[] { 1 });
+	}
+
+	@Test
+	public void predictsFromContext() {
+		assertEquals("KAB", lts.predictPronunciation("cab"));
+		assertEquals("BAS", lts.predictPronunciation("bac"));
+		assertEquals("SKA", lts.predictPronunciation("cca"));
+	}
+
+	@Test
+	public void unknownLettersCountAsNull() {
+		assertEquals("SS", lts.predictPronunciation("cxc"));
+		assertEquals("A", lts.predictPronunciation("äa"));
+		assertEquals("", lts.predictPronunciation(""));
+	}
+
+	@Test
+	public void predictsConcurrently() throws Exception {
+		Thread[] threads = new Thread[4];
+		final Throwable[] failure = new Throwable[1];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int i = 0; i < 2000; i++) {
+							assertEquals("KAB", lts.predictPronunciation("cab"));
+							assertEquals("SSKA", lts.predictPronunciation("ccca"));
+						}
+					} catch (Throwable e) {
+						failure[0] = e;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure[0] != null) {
+			throw new AssertionError(failure[0]);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.modules.synthesis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import marytts.exceptions.MaryConfigurationException;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class LazyVoiceDataTest {
+	private List<LazyVoiceData<?>> created = new ArrayList<LazyVoiceData<?>>();
+
+	@After
+	public void unregister() {
+		for (LazyVoiceData<?> data : created) {
+			VoiceDataManager.unregister(data);
+		}
+	}
+
+	private LazyVoiceData<Object> create(String name, boolean lazy, final AtomicInteger loadCount) throws Exception {
+		LazyVoiceData<Object> data = new LazyVoiceData<Object>(name, lazy, new Callable<Object>() {
+			public Object call() throws Exception {
+				loadCount.incrementAndGet();
+				return new Object();
+			}
+		});
+		data.init();
+		created.add(data);
+		return data;
+	}
+
+	@Test
+	public void lazyDataAreLoadedOnFirstUse() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		LazyVoiceData<Object> data = create("lazy", true, loads);
+		assertFalse(data.isLoaded());
+		assertEquals(0, loads.get());
+		Object first = data.get();
+		assertSame(first, data.get());
+		assertEquals(1, loads.get());
+		assertEquals(1, data.getNumLoads());
+		assertTrue(data.getLastLoadMillis() >= 0);
+	}
+
+	@Test
+	public void eagerDataAreLoadedAtOnceAndNeverReleased() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		LazyVoiceData<Object> data = create("eager", false, loads);
+		assertTrue(data.isLoaded());
+		assertEquals(1, loads.get());
+		assertFalse(data.release("test"));
+		assertEquals(0, VoiceDataManager.releaseIdle(System.currentTimeMillis() + 1000000, 1));
+		assertTrue(data.isLoaded());
+	}
+
+	@Test
+	public void releasedDataAreLoadedAgain() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		LazyVoiceData<Object> data = create("lazy", true, loads);
+		Object first = data.get();
+		assertTrue(data.release("test"));
+		assertFalse(data.isLoaded());
+		Object second = data.get();
+		assertTrue(first != second);
+		assertEquals(2, loads.get());
+		assertEquals(1, data.getNumReleases());
+	}
+
+	@Test
+	public void idleDataAreReleased() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		LazyVoiceData<Object> used = create("used", true, loads);
+		LazyVoiceData<Object> idle = create("idle", true, loads);
+		idle.get();
+		used.get();
+		long now = used.getLastUsed();
+		assertEquals(0, VoiceDataManager.releaseIdle(now, 60000));
+		assertEquals(2, VoiceDataManager.releaseIdle(now + 60000, 60000));
+		assertFalse(idle.isLoaded());
+		assertFalse(used.isLoaded());
+	}
+
+	@Test
+	public void leastRecentlyUsedAreReleasedFirst() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		LazyVoiceData<Object> a = create("a", true, loads);
+		LazyVoiceData<Object> b = create("b", true, loads);
+		LazyVoiceData<Object> c = create("c", true, loads);
+		a.get();
+		Thread.sleep(5);
+		b.get();
+		Thread.sleep(5);
+		c.get();
+		Thread.sleep(5);
+		a.get();
+		assertEquals(1, VoiceDataManager.releaseLeastRecentlyUsed(null, 1, "test"));
+		assertFalse(b.isLoaded());
+		assertTrue(a.isLoaded());
+		assertTrue(c.isLoaded());
+		assertEquals(1, VoiceDataManager.releaseLeastRecentlyUsed(c, 2, "test"));
+		assertFalse(a.isLoaded());
+		assertTrue(c.isLoaded());
+	}
+
+	@Test
+	public void dataInUseAreNotReleased() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		LazyVoiceData<Object> busy = create("busy", true, loads);
+		LazyVoiceData<Object> other = create("other", true, loads);
+		Object acquired = busy.acquire();
+		Thread.sleep(5);
+		other.get();
+		assertEquals(1, busy.getInUse());
+		assertFalse(busy.release("test"));
+		assertEquals(1, VoiceDataManager.releaseIdle(System.currentTimeMillis() + 60000, 60000));
+		assertTrue(busy.isLoaded());
+		assertFalse(other.isLoaded());
+		other.get();
+		// the least recently used voice is in use, so the other one goes:
+		assertEquals(1, VoiceDataManager.releaseLeastRecentlyUsed(null, 1, "test"));
+		assertTrue(busy.isLoaded());
+		assertFalse(other.isLoaded());
+		assertEquals(0, VoiceDataManager.releaseLeastRecentlyUsed(null, 1, "test"));
+		assertSame(acquired, busy.get());
+		busy.releaseUse();
+		assertEquals(0, busy.getInUse());
+		assertTrue(busy.release("test"));
+		assertEquals(3, loads.get());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void unmatchedReleaseUseIsReported() throws Exception {
+		LazyVoiceData<Object> data = create("v", true, new AtomicInteger());
+		data.get();
+		data.releaseUse();
+	}
+
+	@Test
+	public void listenersAreNotified() throws Exception {
+		final List<String> events = new ArrayList<String>();
+		VoiceDataManager.Listener listener = new VoiceDataManager.Listener() {
+			public void dataLoaded(String voiceName, long millis) {
+				events.add("loaded " + voiceName);
+			}
+
+			public void dataReleased(String voiceName, String reason) {
+				events.add("released " + voiceName + " " + reason);
+			}
+		};
+		VoiceDataManager.addListener(listener);
+		try {
+			LazyVoiceData<Object> data = create("v", true, new AtomicInteger());
+			data.get();
+			data.release("test");
+		} finally {
+			VoiceDataManager.removeListener(listener);
+		}
+		assertEquals(2, events.size());
+		assertEquals("loaded v", events.get(0));
+		assertEquals("released v test", events.get(1));
+		assertTrue(VoiceDataManager.getStatistics().contains("v lazy released loads=1 releases=1"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void loadingProblemsAreReported() throws Exception {
+		LazyVoiceData<Object> data = new LazyVoiceData<Object>("broken", true, new Callable<Object>() {
+			public Object call() throws Exception {
+				throw new MaryConfigurationException("missing file");
+			}
+		});
+		data.init();
+		created.add(data);
+		data.get();
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+public class ChunkPipelineTest {
+
+	/**
+	 * An executor which only collects the submitted tasks, so that the test decides when they run.
+	 */
+	private static class QueueingExecutor implements Executor {
+		final List<Runnable> queued = new ArrayList<Runnable>();
+
+		public void execute(Runnable command) {
+			queued.add(command);
+		}
+
+		void runAll() {
+			for (Runnable r : queued) {
+				r.run();
+			}
+		}
+	}
+
+	private static List<Callable<String>> chunks(final List<Integer> processed, int n, final int failing) {
+		List<Callable<String>> processors = new ArrayList<Callable<String>>();
+		for (int i = 0; i < n; i++) {
+			final int index = i;
+			processors.add(new Callable<String>() {
+				public String call() throws Exception {
+					processed.add(index);
+					if (index == failing) {
+						throw new IOException("chunk " + index + " failed");
+					}
+					return "chunk " + index;
+				}
+			});
+		}
+		return processors;
+	}
+
+	@Test
+	public void resultsInChunkOrder() throws Exception {
+		List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+		List<Callable<String>> processors = chunks(processed, 5, -1);
+		processors.set(2, null);
+		QueueingExecutor pool = new QueueingExecutor();
+		ChunkPipeline<String> pipeline = new ChunkPipeline<String>(pool, processors, 4);
+		assertEquals("chunk 0", pipeline.get(0));
+		// the pool processes the later chunks in reverse order:
+		Collections.reverse(pool.queued);
+		pool.runAll();
+		assertEquals("chunk 1", pipeline.get(1));
+		assertNull(pipeline.get(2));
+		assertEquals("chunk 3", pipeline.get(3));
+		assertEquals("chunk 4", pipeline.get(4));
+		assertEquals(4, processed.size());
+		assertEquals(Integer.valueOf(4), processed.get(1));
+	}
+
+	@Test
+	public void boundedLookAhead() throws Exception {
+		List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+		QueueingExecutor pool = new QueueingExecutor();
+		ChunkPipeline<String> pipeline = new ChunkPipeline<String>(pool, chunks(processed, 10, -1), 2);
+		pipeline.get(0);
+		assertEquals(2, pool.queued.size());
+		pipeline.get(1);
+		assertEquals(3, pool.queued.size());
+		pipeline.get(5); // chunks 2 to 5 are needed now, and 6 and 7 are processed ahead
+		assertEquals(5, pool.queued.size());
+		assertEquals(3, processed.size());
+	}
+
+	@Test
+	public void errorCancelsRemainingChunks() throws Exception {
+		List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+		QueueingExecutor pool = new QueueingExecutor();
+		ChunkPipeline<String> pipeline = new ChunkPipeline<String>(pool, chunks(processed, 5, 1), 2);
+		assertEquals("chunk 0", pipeline.get(0));
+		try {
+			pipeline.get(1);
+			fail("expected the chunk's exception");
+		} catch (IOException e) {
+			assertEquals("chunk 1 failed", e.getMessage());
+		}
+		pipeline.cancel();
+		assertFalse(pool.queued.isEmpty());
+		pool.runAll();
+		assertEquals(2, processed.size());
+		assertTrue(processed.contains(1));
+	}
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import marytts.datatypes.MaryData;
+import marytts.datatypes.MaryDataType;
+import marytts.exceptions.MaryConfigurationException;
+import marytts.modules.MaryModule;
+
+import org.junit.Test;
+
+public class ModuleStartupTest {
+
+	@Test
+	public void prerequisitesAreRunningFirst() throws Exception {
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		TestModule base = new SlowModule("base", log, 50);
+		TestModule dependent = new TestModule("dependent", log);
+		TestModule other = new TestModule("other", log);
+		ModuleStartup startup = new ModuleStartup(Arrays.<MaryModule> asList(dependent, base, other), 4);
+		startup.addPrerequisites(Arrays.asList(TestModule.class.getName() + ":" + SlowModule.class.getName(),
+				"no.such.Module:" + SlowModule.class.getName()));
+		startup.startAll();
+		assertTrue(log.indexOf("base") < log.indexOf("dependent"));
+		assertEquals(3, startup.getNumStarted());
+		assertEquals(3, startup.getStartupTimes().size());
+		assertTrue(startup.getWallTime() >= 0);
+		assertTrue(startup.getModulesStarting().isEmpty());
+	}
+
+	@Test
+	public void independentModulesStartConcurrently() throws Exception {
+		final CountDownLatch allStarting = new CountDownLatch(4);
+		List<MaryModule> modules = new ArrayList<MaryModule>();
+		for (int i = 0; i < 4; i++) {
+			modules.add(new TestModule("m" + i, null) {
+				@Override
+				public void startup() throws Exception {
+					allStarting.countDown();
+					if (!allStarting.await(10, TimeUnit.SECONDS)) {
+						throw new Exception("modules were not started concurrently");
+					}
+					super.startup();
+				}
+			});
+		}
+		new ModuleStartup(modules, 4).startAll();
+		for (MaryModule m : modules) {
+			assertEquals(MaryModule.MODULE_RUNNING, m.getState());
+		}
+	}
+
+	@Test
+	public void sequentialStartupKeepsListOrder() throws Exception {
+		List<String> log = new ArrayList<String>();
+		TestModule a = new TestModule("a", log);
+		TestModule b = new TestModule("b", log);
+		TestModule c = new TestModule("c", log);
+		ModuleStartup startup = new ModuleStartup(Arrays.<MaryModule> asList(a, b, c), 1);
+		startup.addPrerequisite(a, c);
+		startup.startAll();
+		assertEquals(Arrays.asList("b", "c", "a"), log);
+	}
+
+	@Test(expected = MaryConfigurationException.class)
+	public void cyclicPrerequisitesAreRejected() throws Exception {
+		TestModule a = new TestModule("a", null);
+		TestModule b = new TestModule("b", null);
+		TestModule c = new TestModule("c", null);
+		ModuleStartup startup = new ModuleStartup(Arrays.<MaryModule> asList(a, b, c), 2);
+		startup.addPrerequisite(a, b);
+		startup.addPrerequisite(b, a);
+		startup.startAll();
+	}
+
+	@Test
+	public void failingModuleIsReported() throws Exception {
+		TestModule broken = new TestModule("broken", null) {
+			@Override
+			public void startup() throws Exception {
+				throw new RuntimeException("cannot load");
+			}
+		};
+		ModuleStartup startup = new ModuleStartup(Arrays.<MaryModule> asList(new TestModule("ok", null), broken), 2);
+		try {
+			startup.startAll();
+			fail("expected an exception");
+		} catch (Exception e) {
+			assertEquals("Problem starting module broken", e.getMessage());
+			assertEquals("cannot load", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void runAllReturnsResultsInTaskOrder() throws Exception {
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int i = 0; i < 10; i++) {
+			final int value = i;
+			tasks.add(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					Thread.sleep(10 - value);
+					return value;
+				}
+			});
+		}
+		List<Integer> results = ModuleStartup.runAll(tasks, "Test");
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i, results.get(i).intValue());
+		}
+	}
+
+	public static class TestModule implements MaryModule {
+		private final String name;
+		private final List<String> log;
+		private volatile int state = MODULE_OFFLINE;
+
+		TestModule(String name, List<String> log) {
+			this.name = name;
+			this.log = log;
+		}
+
+		public String name() {
+			return name;
+		}
+
+		public MaryDataType inputType() {
+			return null;
+		}
+
+		public MaryDataType getInputType() {
+			return null;
+		}
+
+		public MaryDataType outputType() {
+			return null;
+		}
+
+		public MaryDataType getOutputType() {
+			return null;
+		}
+
+		public Locale getLocale() {
+			return null;
+		}
+
+		public void startup() throws Exception {
+			if (log != null) {
+				log.add(name);
+			}
+			state = MODULE_RUNNING;
+		}
+
+		public int getState() {
+			return state;
+		}
+
+		public void powerOnSelfTest() throws Error {
+		}
+
+		public void shutdown() {
+			state = MODULE_OFFLINE;
+		}
+
+		public MaryData process(MaryData d) throws Exception {
+			return d;
+		}
+	}
+
+	public static class SlowModule extends TestModule {
+		private final long millis;
+
+		SlowModule(String name, List<String> log, long millis) {
+			super(name, log);
+			this.millis = millis;
+		}
+
+		@Override
+		public void startup() throws Exception {
+			Thread.sleep(millis);
+			super.startup();
+		}
+	}
+}
@@ -0,0 +1,327 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import marytts.util.data.audio.AppendableSequenceAudioInputStream;
+
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.junit.Test;
+
+public class AudioStreamNHttpEntityTest {
+
+	/**
+	 * An encoder which accepts at most a given number of bytes per write, like a slow network channel.
+	 */
+	private static class SlowEncoder implements ContentEncoder {
+		ByteArrayOutputStream written = new ByteArrayOutputStream();
+		int maxPerWrite;
+		boolean completed;
+
+		SlowEncoder(int maxPerWrite) {
+			this.maxPerWrite = maxPerWrite;
+		}
+
+		public int write(ByteBuffer src) throws IOException {
+			int n = Math.min(maxPerWrite, src.remaining());
+			for (int i = 0; i < n; i++) {
+				written.write(src.get());
+			}
+			return n;
+		}
+
+		public void complete() {
+			completed = true;
+		}
+
+		public boolean isCompleted() {
+			return completed;
+		}
+	}
+
+	private static class RecordingIOControl implements IOControl {
+		volatile boolean outputSuspended;
+
+		public void requestInput() {
+		}
+
+		public void suspendInput() {
+		}
+
+		public void requestOutput() {
+			outputSuspended = false;
+		}
+
+		public void suspendOutput() {
+			outputSuspended = true;
+		}
+
+		public void shutdown() {
+		}
+	}
+
+	private static byte[] ramp(int n) {
+		byte[] data = new byte[n];
+		for (int i = 0; i < n; i++) {
+			data[i] = (byte) (i * 7);
+		}
+		return data;
+	}
+
+	private static AudioInputStream stream(byte[] data, AudioFormat format) {
+		return new AudioInputStream(new ByteArrayInputStream(data), format, data.length / format.getFrameSize());
+	}
+
+	/**
+	 * Act like the I/O reactor: produce content whenever output is not suspended, until the given number of bytes has been
+	 * written or the entity has completed.
+	 */
+	private static void produceUntil(int numBytes, AudioStreamNHttpEntity entity, SlowEncoder encoder, RecordingIOControl ioctrl)
+			throws Exception {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (encoder.written.size() < numBytes && !encoder.isCompleted()) {
+			assertTrue("Timed out waiting for audio", System.currentTimeMillis() < deadline);
+			if (ioctrl.outputSuspended) {
+				Thread.sleep(1);
+			} else {
+				entity.produceContent(encoder, ioctrl);
+			}
+		}
+	}
+
+	private static void produceUntilCompleted(AudioStreamNHttpEntity entity, SlowEncoder encoder, RecordingIOControl ioctrl)
+			throws Exception {
+		produceUntil(Integer.MAX_VALUE, entity, encoder, ioctrl);
+	}
+
+	/**
+	 * Wait until the reader has nothing more to hand over and the entity has suspended output.
+	 */
+	private static void awaitSuspended(AudioStreamNHttpEntity entity, SlowEncoder encoder, RecordingIOControl ioctrl)
+			throws Exception {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!ioctrl.outputSuspended) {
+			assertTrue("Timed out waiting for output to be suspended", System.currentTimeMillis() < deadline);
+			entity.produceContent(encoder, ioctrl);
+		}
+	}
+
+	@Test
+	public void streamsAuFromReaderThread() throws Exception {
+		AudioFormat format = new AudioFormat(16000, 16, 1, true, false);
+		AppendableSequenceAudioInputStream audio = new AppendableSequenceAudioInputStream(format, null);
+		DirectByteBufferPool pool = new DirectByteBufferPool(1024, 4);
+		AudioStreamNHttpEntity entity = new AudioStreamNHttpEntity(null, audio, AudioFileFormat.Type.AU, pool);
+		assertFalse(entity.requiresWriterThread());
+		SlowEncoder encoder = new SlowEncoder(100);
+		RecordingIOControl ioctrl = new RecordingIOControl();
+
+		// Before any audio is available, only the header is sent and output is suspended:
+		produceUntil(24, entity, encoder, ioctrl);
+		awaitSuspended(entity, encoder, ioctrl);
+		assertEquals(24, encoder.written.size());
+
+		// Appending audio resumes output:
+		byte[] part1 = ramp(3000);
+		audio.append(stream(part1, format));
+		produceUntil(24 + part1.length, entity, encoder, ioctrl);
+		awaitSuspended(entity, encoder, ioctrl);
+		assertFalse(encoder.isCompleted());
+		assertEquals(24 + part1.length, encoder.written.size());
+
+		byte[] part2 = ramp(2000);
+		audio.append(stream(part2, format));
+		audio.doneAppending();
+		produceUntilCompleted(entity, encoder, ioctrl);
+		entity.finish();
+		assertTrue(pool.getNumIdle() > 0);
+
+		AudioInputStream result = AudioSystem.getAudioInputStream(new ByteArrayInputStream(encoder.written.toByteArray()));
+		AudioFormat resultFormat = result.getFormat();
+		assertEquals(16000, resultFormat.getSampleRate(), 0);
+		assertEquals(16, resultFormat.getSampleSizeInBits());
+		assertTrue(resultFormat.isBigEndian());
+		byte[] data = new byte[part1.length + part2.length];
+		assertEquals(data.length, result.read(data));
+		for (int i = 0; i < part1.length; i += 2) {
+			assertEquals(part1[i], data[i + 1]);
+			assertEquals(part1[i + 1], data[i]);
+		}
+	}
+
+	@Test
+	public void backPressureKeepsPendingData() throws Exception {
+		AudioFormat format = new AudioFormat(16000, 16, 1, true, true);
+		AppendableSequenceAudioInputStream audio = new AppendableSequenceAudioInputStream(format, null);
+		byte[] samples = ramp(5000);
+		audio.append(stream(samples, format));
+		audio.doneAppending();
+		AudioStreamNHttpEntity entity = new AudioStreamNHttpEntity(null, audio, AudioFileFormat.Type.AU,
+				new DirectByteBufferPool(512, 4));
+		SlowEncoder encoder = new SlowEncoder(10);
+		RecordingIOControl ioctrl = new RecordingIOControl();
+		// each writable event only gets a few bytes through:
+		produceUntil(1, entity, encoder, ioctrl);
+		assertEquals(10, encoder.written.size());
+		produceUntilCompleted(entity, encoder, ioctrl);
+		byte[] written = encoder.written.toByteArray();
+		assertEquals(24 + samples.length, written.length);
+		byte[] data = new byte[samples.length];
+		System.arraycopy(written, 24, data, 0, data.length);
+		assertArrayEquals(samples, data);
+	}
+
+	@Test
+	public void streamsEightBitWaveAsUnsigned() throws Exception {
+		AudioFormat format = new AudioFormat(8000, 8, 1, true, false);
+		AppendableSequenceAudioInputStream audio = new AppendableSequenceAudioInputStream(format, null);
+		byte[] samples = ramp(1000);
+		audio.append(stream(samples, format));
+		audio.doneAppending();
+		AudioStreamNHttpEntity entity = new AudioStreamNHttpEntity(null, audio, AudioFileFormat.Type.WAVE,
+				new DirectByteBufferPool(256, 4));
+		SlowEncoder encoder = new SlowEncoder(1000);
+		produceUntilCompleted(entity, encoder, new RecordingIOControl());
+		byte[] written = encoder.written.toByteArray();
+		assertEquals(44 + samples.length, written.length);
+		assertEquals("RIFF", new String(written, 0, 4, "ASCII"));
+		assertEquals("data", new String(written, 36, 4, "ASCII"));
+		for (int i = 0; i < samples.length; i++) {
+			assertEquals((byte) (samples[i] ^ 0x80), written[44 + i]);
+		}
+	}
+
+	@Test
+	public void slowAudioDoesNotBlockReactor() throws Exception {
+		AudioFormat format = new AudioFormat(16000, 16, 1, true, false);
+		final CountDownLatch release = new CountDownLatch(1);
+		// audio whose computation takes a while, like an effects chain or a vocoder waiting for its producer:
+		InputStream slow = new ByteArrayInputStream(ramp(1000)) {
+			public synchronized int read(byte[] b, int off, int len) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+				return super.read(b, off, len);
+			}
+		};
+		AppendableSequenceAudioInputStream audio = new AppendableSequenceAudioInputStream(format, null);
+		audio.append(new AudioInputStream(slow, format, 500));
+		audio.doneAppending();
+		AudioStreamNHttpEntity entity = new AudioStreamNHttpEntity(null, audio, AudioFileFormat.Type.AU,
+				new DirectByteBufferPool(512, 4));
+		SlowEncoder encoder = new SlowEncoder(1000);
+		RecordingIOControl ioctrl = new RecordingIOControl();
+		long start = System.currentTimeMillis();
+		produceUntil(24, entity, encoder, ioctrl);
+		awaitSuspended(entity, encoder, ioctrl);
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals(24, encoder.written.size());
+		release.countDown();
+		produceUntilCompleted(entity, encoder, ioctrl);
+		assertEquals(24 + 1000, encoder.written.size());
+	}
+
+	@Test
+	public void waitingStreamsDoNotHoldReaderThreads() throws Exception {
+		AudioFormat format = new AudioFormat(16000, 16, 1, true, false);
+		DirectByteBufferPool pool = new DirectByteBufferPool(1024, 16);
+		int numStreams = 50;
+		AppendableSequenceAudioInputStream[] audio = new AppendableSequenceAudioInputStream[numStreams];
+		AudioStreamNHttpEntity[] entities = new AudioStreamNHttpEntity[numStreams];
+		SlowEncoder[] encoders = new SlowEncoder[numStreams];
+		RecordingIOControl[] ioctrls = new RecordingIOControl[numStreams];
+		for (int i = 0; i < numStreams; i++) {
+			audio[i] = new AppendableSequenceAudioInputStream(format, null);
+			entities[i] = new AudioStreamNHttpEntity(null, audio[i], AudioFileFormat.Type.AU, pool);
+			encoders[i] = new SlowEncoder(1000);
+			ioctrls[i] = new RecordingIOControl();
+			produceUntil(24, entities[i], encoders[i], ioctrls[i]);
+		}
+		// all streams are waiting for more audio:
+		for (int i = 0; i < numStreams; i++) {
+			audio[i].append(stream(ramp(500), format));
+			produceUntil(24 + 500, entities[i], encoders[i], ioctrls[i]);
+			awaitSuspended(entities[i], encoders[i], ioctrls[i]);
+		}
+		int readers = 0;
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.getName().startsWith("AudioStreamReader-")) {
+				readers++;
+			}
+		}
+		assertTrue(readers + " reader threads", readers <= Runtime.getRuntime().availableProcessors());
+		for (int i = 0; i < numStreams; i++) {
+			audio[i].doneAppending();
+			produceUntilCompleted(entities[i], encoders[i], ioctrls[i]);
+			entities[i].finish();
+			assertEquals(24 + 500, encoders[i].written.size());
+		}
+	}
+
+	@Test
+	public void otherTypesNeedWriterThread() {
+		AudioFormat format = new AudioFormat(16000, 16, 1, true, false);
+		assertTrue(AudioStreamNHttpEntity.canEncodeIncrementally(AudioFileFormat.Type.WAVE, format));
+		assertFalse(AudioStreamNHttpEntity.canEncodeIncrementally(AudioFileFormat.Type.AIFF, format));
+		assertFalse(AudioStreamNHttpEntity.canEncodeIncrementally(AudioFileFormat.Type.AU, new AudioFormat(
+				AudioFormat.Encoding.ULAW, 8000, 8, 1, 1, 8000, false)));
+		AppendableSequenceAudioInputStream audio = new AppendableSequenceAudioInputStream(format, null);
+		AudioStreamNHttpEntity entity = new AudioStreamNHttpEntity(null, audio, AudioFileFormat.Type.AIFF,
+				new DirectByteBufferPool(256, 4));
+		assertNotNull(entity);
+		assertTrue(entity.requiresWriterThread());
+	}
+
+	@Test
+	public void poolRecyclesBuffers() {
+		DirectByteBufferPool pool = new DirectByteBufferPool(128, 1);
+		ByteBuffer a = pool.acquire();
+		ByteBuffer b = pool.acquire();
+		assertTrue(a.isDirect());
+		assertEquals(2, pool.getNumAllocated());
+		pool.release(a);
+		pool.release(b); // more than maxIdle, dropped
+		assertEquals(1, pool.getNumIdle());
+		a.put((byte) 1);
+		ByteBuffer c = pool.acquire();
+		assertTrue(c == a);
+		assertEquals(0, c.position());
+		assertEquals(2, pool.getNumAllocated());
+	}
+}
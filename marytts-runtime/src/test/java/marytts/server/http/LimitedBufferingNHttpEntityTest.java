@@ -0,0 +1,114 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+public class LimitedBufferingNHttpEntityTest {
+
+	/**
+	 * Delivers a body in chunks of at most chunkSize bytes per read, like a connection receiving data.
+	 */
+	private static class ChunkedDecoder implements ContentDecoder {
+		private final byte[] data;
+		private final int chunkSize;
+		private int pos;
+
+		ChunkedDecoder(byte[] data, int chunkSize) {
+			this.data = data;
+			this.chunkSize = chunkSize;
+		}
+
+		public int read(ByteBuffer dst) throws IOException {
+			if (pos == data.length) {
+				return -1;
+			}
+			int n = Math.min(Math.min(chunkSize, dst.remaining()), data.length - pos);
+			dst.put(data, pos, n);
+			pos += n;
+			return n;
+		}
+
+		public boolean isCompleted() {
+			return pos == data.length;
+		}
+	}
+
+	private static BasicHttpEntity entity(long contentLength) {
+		BasicHttpEntity entity = new BasicHttpEntity();
+		entity.setContentLength(contentLength);
+		return entity;
+	}
+
+	private static LimitedBufferingNHttpEntity receive(byte[] body, long contentLength, long maxLength) throws IOException {
+		LimitedBufferingNHttpEntity entity = new LimitedBufferingNHttpEntity(entity(contentLength), maxLength);
+		ChunkedDecoder decoder = new ChunkedDecoder(body, 1000);
+		while (!decoder.isCompleted()) {
+			entity.consumeContent(decoder, null);
+		}
+		entity.finish();
+		return entity;
+	}
+
+	private static byte[] body(int length) {
+		byte[] body = new byte[length];
+		for (int i = 0; i < length; i++) {
+			body[i] = (byte) ('a' + i % 26);
+		}
+		return body;
+	}
+
+	@Test
+	public void buffersBodyUpToLimit() throws Exception {
+		byte[] body = body(5000);
+		LimitedBufferingNHttpEntity entity = receive(body, body.length, body.length);
+		assertFalse(entity.isTooLarge());
+		assertEquals(new String(body, "ASCII"), EntityUtils.toString(entity, "ASCII"));
+	}
+
+	@Test
+	public void discardsBodyBeyondLimit() throws Exception {
+		// chunked transfer, length not known in advance:
+		LimitedBufferingNHttpEntity entity = receive(body(5000), -1, 4000);
+		assertTrue(entity.isTooLarge());
+		assertEquals(4000, entity.getMaxLength());
+	}
+
+	@Test
+	public void rejectsDeclaredLengthBeyondLimit() throws Exception {
+		LimitedBufferingNHttpEntity entity = new LimitedBufferingNHttpEntity(entity(1 << 30), 4000);
+		assertTrue(entity.isTooLarge());
+	}
+
+	@Test(expected = IOException.class)
+	public void noContentWhenTooLarge() throws Exception {
+		receive(body(5000), -1, 10).getContent();
+	}
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import marytts.server.http.LoadTest.RequestSpec;
+import marytts.server.http.LoadTest.Results;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the {@link LoadTest} against a minimal fake server. Requests for streaming audio get an AU header at once, and then their
+ * audio in two parts, with pauses in between; requests with the text "fail" get an error.
+ */
+public class LoadTestTest {
+	private HttpServer server;
+	private final AtomicInteger numReceived = new AtomicInteger();
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/process", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				numReceived.incrementAndGet();
+				String body = readAll(exchange.getRequestBody());
+				OutputStream out;
+				if (body.contains("INPUT_TEXT=fail")) {
+					exchange.sendResponseHeaders(500, -1);
+				} else if (body.contains("_STREAM")) {
+					exchange.sendResponseHeaders(200, 0);
+					out = exchange.getResponseBody();
+					out.write(auHeader(28));
+					out.flush();
+					sleep(100);
+					out.write(new byte[100]);
+					out.flush();
+					sleep(100);
+					out.write(new byte[100]);
+					out.close();
+				} else {
+					sleep(10);
+					exchange.sendResponseHeaders(200, 50);
+					out = exchange.getResponseBody();
+					out.write(new byte[50]);
+					out.close();
+				}
+				exchange.close();
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+		}
+	}
+
+	/**
+	 * An AU header whose audio data start at the given offset.
+	 */
+	private static byte[] auHeader(int dataOffset) {
+		byte[] header = new byte[dataOffset];
+		header[0] = '.';
+		header[1] = 's';
+		header[2] = 'n';
+		header[3] = 'd';
+		header[7] = (byte) dataOffset;
+		return header;
+	}
+
+	private static String readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		int n;
+		while ((n = in.read(buf)) != -1)
+			baos.write(buf, 0, n);
+		return new String(baos.toByteArray(), "UTF-8");
+	}
+
+	private static RequestSpec text(String text) {
+		return new RequestSpec("TEXT", "AUDIO", "en_US", null, "WAVE_FILE", text);
+	}
+
+	private LoadTest newLoadTest(List<RequestSpec> corpus) {
+		return new LoadTest("localhost", server.getAddress().getPort(), corpus);
+	}
+
+	@Test
+	public void readCorpus() throws IOException {
+		String corpus = "# comment\n" + "Hello world.\n" + "\n" + "RAWMARYXML\tAUDIO\t-\tcmu-slt-hsmm\tAU_STREAM\t<maryxml/>\n";
+		List<RequestSpec> specs = LoadTest.readCorpus(new BufferedReader(new StringReader(corpus)), text(""));
+		assertEquals(2, specs.size());
+		assertEquals("Hello world.", specs.get(0).text);
+		assertEquals("TEXT->AUDIO WAVE_FILE", specs.get(0).getLabel());
+		assertEquals("en_US", specs.get(1).locale);
+		assertEquals("RAWMARYXML->AUDIO AU_STREAM cmu-slt-hsmm", specs.get(1).getLabel());
+		assertTrue(specs.get(1).isStreaming());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectMalformedCorpusLine() throws IOException {
+		LoadTest.readCorpus(new BufferedReader(new StringReader("TEXT\tAUDIO\tsome text\n")), text(""));
+	}
+
+	@Test
+	public void closedLoop() throws Exception {
+		LoadTest test = newLoadTest(Arrays.asList(text("one"), text("two"), text("fail")));
+		test.setConcurrency(3);
+		test.setNumRequests(30);
+		test.setNumWarmupRequests(3);
+		Results results = test.run();
+		assertEquals(33, numReceived.get());
+		assertEquals(30, results.getNumRequests());
+		assertEquals(10, results.getNumErrors());
+		assertEquals(10, results.getErrorsByStatus().get(500).get());
+		assertEquals(20, results.getLatency().getCount());
+		assertEquals(20 * 50, results.getNumBytes());
+		assertTrue(results.getLatency().getPercentile(50) >= 10);
+		assertTrue(results.getThroughput() > 0);
+		assertTrue(results.report().startsWith("requests=30 errors=10 "));
+	}
+
+	@Test
+	public void streamingFirstByte() throws Exception {
+		RequestSpec streaming = new RequestSpec("TEXT", "AUDIO", "en_US", null, "AU_STREAM", "streamed");
+		LoadTest test = newLoadTest(Arrays.asList(streaming));
+		test.setNumRequests(4);
+		Results results = test.run();
+		assertEquals(0, results.getNumErrors());
+		assertEquals(4, results.getStreamingFirstByte().getCount());
+		assertEquals(4, results.getStreamingFirstAudio().getCount());
+		assertTrue(results.getLatency().getPercentile(50) >= 200);
+		// the header comes at once, the audio only after the first pause:
+		assertTrue(results.getStreamingFirstByte().getMax() < 100);
+		assertTrue(results.getStreamingFirstAudio().getPercentile(0) >= 100);
+		assertTrue(results.getStreamingFirstAudio().getMax() < results.getLatency().getPercentile(50));
+		assertTrue(results.report().contains("Streaming first audio (ms): "));
+	}
+
+	@Test
+	public void locateAuData() {
+		LoadTest.AudioDataLocator locator = LoadTest.AudioDataLocator.forType("AU_STREAM");
+		byte[] header = auHeader(28);
+		assertFalse(locator.containsAudio(Arrays.copyOf(header, 6), 6));
+		assertFalse(locator.containsAudio(Arrays.copyOfRange(header, 6, 28), 22));
+		assertTrue(locator.containsAudio(new byte[1], 1));
+	}
+
+	@Test
+	public void locateWaveData() {
+		LoadTest.AudioDataLocator locator = LoadTest.AudioDataLocator.forType("WAVE_STREAM");
+		// RIFF header, a "fmt " chunk of 16 bytes, a "LIST" chunk of 3 bytes plus padding, and the "data" chunk header:
+		byte[] header = new byte[12 + 8 + 16 + 8 + 4 + 8];
+		System.arraycopy("RIFF".getBytes(), 0, header, 0, 4);
+		System.arraycopy("WAVEfmt ".getBytes(), 0, header, 8, 8);
+		header[16] = 16;
+		System.arraycopy("LIST".getBytes(), 0, header, 36, 4);
+		header[40] = 3;
+		System.arraycopy("data".getBytes(), 0, header, 48, 4);
+		byte[] response = Arrays.copyOf(header, header.length + 10);
+		assertFalse(locator.containsAudio(response, 30));
+		assertFalse(locator.containsAudio(Arrays.copyOfRange(response, 30, 56), 26));
+		assertTrue(locator.containsAudio(Arrays.copyOfRange(response, 56, 57), 1));
+		assertNull(LoadTest.AudioDataLocator.forType("MP3_STREAM"));
+	}
+
+	@Test
+	public void openLoopRate() throws Exception {
+		LoadTest test = newLoadTest(Arrays.asList(text("one")));
+		test.setRequestRate(50);
+		test.setNumRequests(25);
+		Results results = test.run();
+		assertEquals(25, results.getNumRequests());
+		assertEquals(0, results.getNumErrors());
+		// 25 requests at 50 per second take about half a second
+		assertTrue("elapsed: " + results.getElapsedMillis(), results.getElapsedMillis() >= 450);
+	}
+
+	@Test
+	public void connectionRefusedIsAnError() throws Exception {
+		server.stop(0);
+		LoadTest test = new LoadTest("localhost", server.getAddress().getPort(), Arrays.asList(text("one")));
+		test.setNumRequests(2);
+		Results results = test.run();
+		assertEquals(2, results.getNumErrors());
+		assertEquals(2, results.getErrorsByStatus().get(-1).get());
+	}
+}
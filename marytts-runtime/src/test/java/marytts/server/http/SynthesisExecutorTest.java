@@ -0,0 +1,145 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.server.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SynthesisExecutorTest {
+
+	@Test
+	public void rejectWhenQueueFull() throws Exception {
+		SynthesisExecutor executor = new SynthesisExecutor(1, 1, 0, 7);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(2);
+		Runnable blocking = new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+				done.countDown();
+			}
+		};
+		Runnable quick = new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		};
+		assertTrue(executor.trySubmit(blocking));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		// the only worker is busy, so this one is queued:
+		assertTrue(executor.trySubmit(quick));
+		// and the queue is now full:
+		assertFalse(executor.trySubmit(quick));
+		assertEquals(1, executor.getQueueLength());
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		executor.shutdown();
+
+		assertEquals(2, executor.getNumAccepted());
+		assertEquals(1, executor.getNumRejected());
+		assertEquals(7, executor.getRetryAfterSeconds());
+	}
+
+	@Test
+	public void busyVoiceDoesNotBlockWorkers() throws Exception {
+		final int maxPerVoice = 2;
+		// as many workers as one voice may use:
+		final SynthesisExecutor executor = new SynthesisExecutor(maxPerVoice, 20, maxPerVoice, 5);
+		// voice "a" is busy with the maximum number of requests:
+		for (int i = 0; i < maxPerVoice; i++) {
+			assertTrue(executor.tryAcquireVoice("a"));
+		}
+		// a burst of further requests for "a", followed by one for "b":
+		final int burst = 10;
+		final CountDownLatch burstDone = new CountDownLatch(burst);
+		final AtomicInteger burstAcquired = new AtomicInteger();
+		for (int i = 0; i < burst; i++) {
+			assertTrue(executor.trySubmit(new Runnable() {
+				public void run() {
+					if (executor.tryAcquireVoice("a")) {
+						burstAcquired.incrementAndGet();
+						executor.releaseVoice("a");
+					}
+					burstDone.countDown();
+				}
+			}));
+		}
+		final CountDownLatch otherVoiceDone = new CountDownLatch(1);
+		assertTrue(executor.trySubmit(new Runnable() {
+			public void run() {
+				if (executor.tryAcquireVoice("b")) {
+					otherVoiceDone.countDown();
+					executor.releaseVoice("b");
+				}
+			}
+		}));
+
+		// the requests for the busy voice are rejected without holding on to a worker,
+		// so the other voice gets through promptly:
+		assertTrue(burstDone.await(2, TimeUnit.SECONDS));
+		assertTrue(otherVoiceDone.await(2, TimeUnit.SECONDS));
+		assertEquals(0, burstAcquired.get());
+		assertEquals(burst, executor.getNumRejected());
+		// once a request for "a" finishes, the next one is admitted:
+		executor.releaseVoice("a");
+		assertTrue(executor.tryAcquireVoice("a"));
+		executor.shutdown();
+	}
+
+	@Test
+	public void busyVoiceRejectedAtOnce() {
+		SynthesisExecutor executor = new SynthesisExecutor(1, 1, 1, 5);
+		assertTrue(executor.tryAcquireVoice("a"));
+		long start = System.nanoTime();
+		assertFalse(executor.tryAcquireVoice("a"));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+		assertEquals(1, executor.getNumRejected());
+		executor.releaseVoice("a");
+		assertTrue(executor.tryAcquireVoice("a"));
+		executor.shutdown();
+	}
+
+	@Test
+	public void noVoiceLimit() {
+		SynthesisExecutor executor = new SynthesisExecutor(1, 1, 1, 5);
+		// without a voice, there is nothing to limit:
+		assertTrue(executor.tryAcquireVoice((String) null));
+		assertTrue(executor.tryAcquireVoice((String) null));
+		executor.releaseVoice((String) null);
+		executor.shutdown();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void needThreads() {
+		new SynthesisExecutor(0, 1, 0, 5);
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.signalproc.effects;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import marytts.util.data.audio.MaryAudioUtils;
+
+import org.junit.Test;
+
+public class EffectsApplierTest {
+
+	private static final int SAMPLING_RATE = 16000;
+	private static final AudioFormat FORMAT = new AudioFormat(SAMPLING_RATE, 16, 1, true, false);
+
+	/**
+	 * An input stream that remembers how many bytes have been pulled from it.
+	 */
+	private static class CountingInputStream extends ByteArrayInputStream {
+		int consumed = 0;
+
+		CountingInputStream(byte[] data) {
+			super(data);
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				consumed += n;
+			return n;
+		}
+	}
+
+	private static byte[] sine(int numSamples) {
+		byte[] data = new byte[2 * numSamples];
+		for (int i = 0; i < numSamples; i++) {
+			int sample = (int) (8000 * Math.sin(2 * Math.PI * 220 * i / SAMPLING_RATE));
+			data[2 * i] = (byte) (sample & 0xFF);
+			data[2 * i + 1] = (byte) (sample >> 8);
+		}
+		return data;
+	}
+
+	private static byte[] readAll(AudioInputStream ais) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while ((n = ais.read(buf)) != -1)
+			baos.write(buf, 0, n);
+		return baos.toByteArray();
+	}
+
+	private void assertStreams(String effects) throws Exception {
+		byte[] input = sine(10 * SAMPLING_RATE);
+		CountingInputStream counting = new CountingInputStream(input);
+		AudioInputStream ais = new AudioInputStream(counting, FORMAT, AudioSystem.NOT_SPECIFIED);
+		AudioInputStream out = new EffectsApplier().apply(ais, effects);
+		byte[] buf = new byte[1024];
+		int n = out.read(buf);
+		assertTrue(effects + ": no output", n > 0);
+		assertTrue(effects + ": whole input was consumed before first output", counting.consumed < input.length / 2);
+		assertTrue(effects + ": no further output", readAll(out).length > 0);
+	}
+
+	@Test
+	public void volumeStreams() throws Exception {
+		assertStreams("Volume(amount:2.0)");
+	}
+
+	@Test
+	public void robotStreams() throws Exception {
+		assertStreams("Robot(amount:100.0)");
+	}
+
+	@Test
+	public void whisperStreams() throws Exception {
+		assertStreams("Whisper(amount:100.0)");
+	}
+
+	@Test
+	public void chorusStreams() throws Exception {
+		assertStreams("Chorus");
+	}
+
+	@Test
+	public void stadiumStreams() throws Exception {
+		assertStreams("Stadium");
+	}
+
+	@Test
+	public void jetPilotStreams() throws Exception {
+		assertStreams("JetPilot");
+	}
+
+	@Test
+	public void chainStreams() throws Exception {
+		assertStreams("Robot(amount:50.0)+Volume(amount:0.5)+FIRFilter");
+	}
+
+	@Test
+	public void volumeScalesEverySample() throws Exception {
+		byte[] input = sine(12345);
+		AudioInputStream ais = new AudioInputStream(new ByteArrayInputStream(input), FORMAT, AudioSystem.NOT_SPECIFIED);
+		AudioInputStream out = new EffectsApplier().apply(ais, "Volume(amount:0.5)");
+		assertEquals(AudioSystem.NOT_SPECIFIED, out.getFrameLength());
+		byte[] output = readAll(out);
+		assertEquals(input.length, output.length);
+		for (int i = 0; i < input.length; i += 2) {
+			int in = (input[i] & 0xFF) | (input[i + 1] << 8);
+			int res = (output[i] & 0xFF) | (output[i + 1] << 8);
+			assertEquals(in * 0.5, res, 1.0);
+		}
+	}
+
+	@Test
+	public void unknownLengthCanBeWrittenAsWave() throws Exception {
+		byte[] input = sine(4000);
+		AudioInputStream ais = new AudioInputStream(new ByteArrayInputStream(input), FORMAT, AudioSystem.NOT_SPECIFIED);
+		AudioInputStream out = new EffectsApplier().apply(ais, "Volume(amount:1.0)");
+		AudioInputStream known = MaryAudioUtils.withKnownLength(out);
+		assertEquals(4000, known.getFrameLength());
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DatagramBlockCacheTest {
+	private File file;
+	private RandomAccessFile raf;
+	private FileChannel channel;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("blockcache", ".bin");
+		FileOutputStream out = new FileOutputStream(file);
+		for (int i = 0; i < 1000; i++) {
+			out.write(i % 256);
+		}
+		out.close();
+		raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		raf.close();
+		file.delete();
+	}
+
+	@Test
+	public void readsBlocks() throws Exception {
+		DatagramBlockCache cache = new DatagramBlockCache(100, 4);
+		ByteBuffer block = cache.getBlock(1, channel, 300, 1000);
+		assertEquals(0, block.position());
+		assertEquals(100, block.limit());
+		assertEquals(300 % 256, block.get(0) & 0xFF);
+		assertEquals(399 % 256, block.get(99) & 0xFF);
+		// the last block is cut at the given end position:
+		assertEquals(50, cache.getBlock(1, channel, 900, 950).limit());
+	}
+
+	@Test
+	public void hitsAndMisses() throws Exception {
+		DatagramBlockCache cache = new DatagramBlockCache(100, 4);
+		ByteBuffer block = cache.getBlock(1, channel, 0, 1000);
+		assertSame(block, cache.getBlock(1, channel, 0, 1000));
+		// different owners do not share blocks:
+		cache.getBlock(2, channel, 0, 1000);
+		assertEquals(1, cache.getNumHits());
+		assertEquals(2, cache.getNumMisses());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void clockEviction() throws Exception {
+		DatagramBlockCache cache = new DatagramBlockCache(100, 2);
+		ByteBuffer b0 = cache.getBlock(1, channel, 0, 1000);
+		cache.getBlock(1, channel, 100, 1000);
+		// the clock clears both reference bits, then evicts block 0:
+		cache.getBlock(1, channel, 200, 1000);
+		assertEquals(1, cache.getNumEvictions());
+		assertEquals(2, cache.size());
+		// block 100 has not been used since the clock passed it, so it goes now, and block 200 is kept:
+		cache.getBlock(1, channel, 300, 1000);
+		assertEquals(2, cache.getNumEvictions());
+		cache.getBlock(1, channel, 200, 1000);
+		assertEquals(1, cache.getNumHits());
+		// evicted blocks remain readable by those who hold them:
+		assertEquals(50, b0.get(50));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void needBlocks() {
+		new DatagramBlockCache(100, 0);
+	}
+}
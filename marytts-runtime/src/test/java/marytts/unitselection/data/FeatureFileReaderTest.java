@@ -0,0 +1,152 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.Random;
+
+import marytts.exceptions.MaryConfigurationException;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+import marytts.util.data.MaryHeader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FeatureFileReaderTest {
+	private static final int NUM_UNITS = 500;
+
+	private File file;
+	private FeatureVector[] expected;
+
+	@Before
+	public void setUp() throws Exception {
+		String def = FeatureDefinition.BYTEFEATURES + "\n" //
+				+ "phone 0 a b c\n" //
+				+ "stressed 0 1\n" //
+				+ FeatureDefinition.SHORTFEATURES + "\n" //
+				+ "word 0 w1 w2 w3 w4\n" //
+				+ FeatureDefinition.CONTINUOUSFEATURES + "\n" //
+				+ "duration\n" //
+				+ "f0\n";
+		FeatureDefinition fd = new FeatureDefinition(new BufferedReader(new StringReader(def)), false);
+		Random random = new Random(5);
+		expected = new FeatureVector[NUM_UNITS];
+		for (int i = 0; i < NUM_UNITS; i++) {
+			expected[i] = new FeatureVector(new byte[] { (byte) random.nextInt(4), (byte) random.nextInt(2) },
+					new short[] { (short) random.nextInt(5) }, new float[] { random.nextFloat(), random.nextFloat() * 300 }, i);
+		}
+		file = File.createTempFile("features", ".mry");
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			new MaryHeader(MaryHeader.UNITFEATS).writeTo(out);
+			fd.writeBinaryTo(out);
+			out.writeInt(NUM_UNITS);
+			for (FeatureVector fv : expected) {
+				fv.writeTo(out);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty("unitselection.features.mapped");
+		file.delete();
+	}
+
+	private void assertSameFeatures(FeatureFileReader ffr) {
+		assertEquals(NUM_UNITS, ffr.getNumberOfUnits());
+		for (int i = 0; i < NUM_UNITS; i++) {
+			FeatureVector fv = expected[i];
+			assertEquals(fv.getByteFeature(0), ffr.getByteFeature(i, 0));
+			assertEquals(fv.getByteFeature(1), ffr.getByteFeature(i, 1));
+			assertEquals(fv.getShortFeature(2), ffr.getShortFeature(i, 2));
+			assertEquals(fv.getContinuousFeature(3), ffr.getContinuousFeature(i, 3), 0);
+			assertEquals(fv.getContinuousFeature(4), ffr.getContinuousFeature(i, 4), 0);
+			FeatureVector copy = ffr.getFeatureVector(i);
+			assertEquals(i, copy.getUnitIndex());
+			assertArrayEquals(fv.byteValuedDiscreteFeatures, copy.byteValuedDiscreteFeatures);
+			assertArrayEquals(fv.shortValuedDiscreteFeatures, copy.shortValuedDiscreteFeatures);
+			assertArrayEquals(fv.continuousFeatures, copy.continuousFeatures, 0);
+		}
+	}
+
+	@Test
+	public void readsFeaturesToHeap() throws Exception {
+		FeatureFileReader ffr = new FeatureFileReader(file.getPath());
+		assertFalse(ffr.isMapped());
+		assertSameFeatures(ffr);
+	}
+
+	@Test
+	public void readsMappedFeatures() throws Exception {
+		System.setProperty("unitselection.features.mapped", "true");
+		FeatureFileReader ffr = new FeatureFileReader(file.getPath());
+		assertTrue(ffr.isMapped());
+		assertSameFeatures(ffr);
+	}
+
+	@Test
+	public void readsFeaturesFromStream() throws Exception {
+		FeatureFileReader ffr = new FeatureFileReader();
+		ffr.loadFromStream(file.getPath());
+		assertSameFeatures(ffr);
+	}
+
+	@Test
+	public void createsFeatureVectorsOnce() throws Exception {
+		FeatureFileReader ffr = new FeatureFileReader(file.getPath());
+		FeatureVector[] fvs = ffr.getFeatureVectors();
+		assertEquals(NUM_UNITS, fvs.length);
+		assertSame(fvs, ffr.getFeatureVectors());
+		assertSame(fvs[7], ffr.getFeatureVector(7));
+		assertArrayEquals(expected[7].continuousFeatures, fvs[7].continuousFeatures, 0);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void rejectsWrongFeatureType() throws Exception {
+		new FeatureFileReader(file.getPath()).getShortFeature(0, 1);
+	}
+
+	@Test(expected = MaryConfigurationException.class)
+	public void rejectsTruncatedFile() throws Exception {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() - 3);
+		} finally {
+			raf.close();
+		}
+		new FeatureFileReader(file.getPath());
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import java.io.File;
+import java.util.Random;
+
+import marytts.unitselection.weightingfunctions.WeightFunc;
+import marytts.unitselection.weightingfunctions.WeightFunctionManager;
+
+/**
+ * Measures the speed of join cost evaluation on a synthetic join cost feature file. Three ways of computing the same costs are
+ * timed: the per-unit feature arrays and weighting functions of the previous implementation, the pairwise
+ * {@link JoinCostFeatures#cost(int, int)}, and the batched {@link JoinCostFeatures#cost(int, int[], int, double[])}. This is
+ * not a unit test; run it with
+ * 
+ * <pre>
+ * java marytts.unitselection.select.JoinCostBenchmark [numUnits] [numCandidates] [repetitions]
+ * </pre>
+ */
+public class JoinCostBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int numUnits = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int numCandidates = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		String[] weightFunctions = new String[20];
+		float[] weights = new float[weightFunctions.length];
+		for (int i = 0; i < weightFunctions.length; i++) {
+			weightFunctions[i] = i == weightFunctions.length - 1 ? "step 20%" : "linear";
+			weights[i] = 1.0f / weightFunctions.length;
+		}
+		Random random = new Random(1);
+		float[][] left = JoinCostFeaturesTest.randomFeatures(random, numUnits, weights.length);
+		float[][] right = JoinCostFeaturesTest.randomFeatures(random, numUnits, weights.length);
+		File joinFile = File.createTempFile("joinCostBenchmark", ".mry");
+		try {
+			JoinCostFeaturesTest.writeJoinFile(joinFile, weightFunctions, weights, left, right);
+			JoinCostFeatures jcf = new JoinCostFeatures(joinFile.getPath());
+			int[] leftUnits = new int[numCandidates];
+			int[] rightUnits = new int[numCandidates];
+			for (int i = 0; i < numCandidates; i++) {
+				leftUnits[i] = random.nextInt(numUnits);
+				rightUnits[i] = random.nextInt(numUnits);
+			}
+			// the previous implementation kept one feature array per unit, as returned by getLeftJCF()/getRightJCF():
+			float[][] leftJCF = new float[numUnits][];
+			float[][] rightJCF = new float[numUnits][];
+			for (int u = 0; u < numUnits; u++) {
+				leftJCF[u] = jcf.getLeftJCF(u);
+				rightJCF[u] = jcf.getRightJCF(u);
+			}
+			WeightFunctionManager wfm = new WeightFunctionManager();
+			WeightFunc[] weightFunction = new WeightFunc[weights.length];
+			boolean[] isLinear = new boolean[weights.length];
+			for (int i = 0; i < weights.length; i++) {
+				weightFunction[i] = wfm.getWeightFunction(weightFunctions[i]);
+				isLinear[i] = weightFunction[i].whoAmI().equals("linear");
+			}
+			double numCosts = (double) repetitions * numCandidates * numCandidates;
+			double[] costs = new double[numCandidates];
+			for (int round = 0; round < 3; round++) { // the first rounds are warm-up
+				double sum = 0;
+				long start = System.nanoTime();
+				for (int r = 0; r < repetitions; r++) {
+					for (int i = 0; i < numCandidates; i++) {
+						float[] v1 = rightJCF[leftUnits[i]];
+						for (int j = 0; j < numCandidates; j++) {
+							float[] v2 = leftJCF[rightUnits[j]];
+							double res = 0.0;
+							for (int k = 0; k < v1.length; k++) {
+								float a = v1[k];
+								float b = v2[k];
+								if (!(a != a) && !(b != b)) {
+									if (isLinear[k]) {
+										res += weights[k] * (a > b ? (a - b) : (b - a));
+									} else {
+										res += weights[k] * weightFunction[k].cost(a, b);
+									}
+								}
+							}
+							sum += res;
+						}
+					}
+				}
+				long previous = System.nanoTime() - start;
+				double pairwiseSum = 0;
+				start = System.nanoTime();
+				for (int r = 0; r < repetitions; r++) {
+					for (int i = 0; i < numCandidates; i++) {
+						for (int j = 0; j < numCandidates; j++) {
+							pairwiseSum += jcf.cost(leftUnits[i], rightUnits[j]);
+						}
+					}
+				}
+				long pairwise = System.nanoTime() - start;
+				double batchedSum = 0;
+				start = System.nanoTime();
+				for (int r = 0; r < repetitions; r++) {
+					for (int i = 0; i < numCandidates; i++) {
+						jcf.cost(leftUnits[i], rightUnits, numCandidates, costs);
+						for (int j = 0; j < numCandidates; j++) {
+							batchedSum += costs[j];
+						}
+					}
+				}
+				long batched = System.nanoTime() - start;
+				System.out.printf("Round %d: previous %.1f, pairwise %.1f, batched %.1f ns/cost (checksums %g, %g, %g)%n",
+						round + 1, previous / numCosts, pairwise / numCosts, batched / numCosts, sum, pairwiseSum, batchedSum);
+			}
+		} finally {
+			joinFile.delete();
+		}
+	}
+}
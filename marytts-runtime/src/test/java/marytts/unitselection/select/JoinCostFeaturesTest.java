@@ -0,0 +1,223 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import marytts.signalproc.analysis.distance.DistanceComputer;
+import marytts.unitselection.data.DiphoneUnit;
+import marytts.unitselection.data.Unit;
+import marytts.unitselection.weightingfunctions.WeightFunc;
+import marytts.unitselection.weightingfunctions.WeightFunctionManager;
+import marytts.util.data.MaryHeader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class JoinCostFeaturesTest {
+
+	private static final String[] WEIGHT_FUNCTIONS = { "linear", "step 20%", "", "linear", "step 20%", "linear" };
+	private static final float[] WEIGHTS = { 0.1f, 0.3f, 0.15f, 0.2f, 0.05f, 0.2f };
+	private static final int NUM_UNITS = 60;
+
+	private static File joinFile;
+	private static float[][] left;
+	private static float[][] right;
+	private static JoinCostFeatures jcf;
+
+	/**
+	 * Write a join cost feature file in the format of JoinCostFileMaker.
+	 */
+	static void writeJoinFile(File file, String[] weightFunctions, float[] weights, float[][] leftFeatures,
+			float[][] rightFeatures) throws IOException {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			new MaryHeader(MaryHeader.JOINFEATS).writeTo(out);
+			out.writeInt(weights.length);
+			for (int i = 0; i < weights.length; i++) {
+				out.writeFloat(weights[i]);
+				out.writeUTF(weightFunctions[i]);
+			}
+			out.writeInt(leftFeatures.length);
+			for (int u = 0; u < leftFeatures.length; u++) {
+				for (float f : leftFeatures[u]) {
+					out.writeFloat(f);
+				}
+				for (float f : rightFeatures[u]) {
+					out.writeFloat(f);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	static float[][] randomFeatures(Random random, int numUnits, int numFeatures) {
+		float[][] features = new float[numUnits][numFeatures];
+		for (int u = 0; u < numUnits; u++) {
+			for (int i = 0; i < numFeatures; i++) {
+				features[u][i] = 1 + 10 * random.nextFloat();
+			}
+		}
+		return features;
+	}
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		Random random = new Random(42);
+		left = randomFeatures(random, NUM_UNITS, WEIGHTS.length);
+		right = randomFeatures(random, NUM_UNITS, WEIGHTS.length);
+		// edge units, as written by JoinCostFileMaker:
+		for (int i = 0; i < WEIGHTS.length; i++) {
+			left[0][i] = right[0][i] = Float.NaN;
+			left[NUM_UNITS - 1][i] = right[NUM_UNITS - 1][i] = Float.NaN;
+		}
+		// units with single undefined features:
+		left[5][1] = Float.NaN;
+		right[7][3] = Float.NaN;
+		joinFile = File.createTempFile("joinCostFeatures", ".mry");
+		writeJoinFile(joinFile, WEIGHT_FUNCTIONS, WEIGHTS, left, right);
+		jcf = new JoinCostFeatures(joinFile.getPath());
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		joinFile.delete();
+	}
+
+	private double referenceCost(int u1, int u2) {
+		WeightFunctionManager wfm = new WeightFunctionManager();
+		double res = 0;
+		for (int i = 0; i < WEIGHTS.length; i++) {
+			float a = right[u1][i];
+			float b = left[u2][i];
+			if (Float.isNaN(a) || Float.isNaN(b)) {
+				continue;
+			}
+			WeightFunc wf = wfm.getWeightFunction(WEIGHT_FUNCTIONS[i].equals("") ? "linear" : WEIGHT_FUNCTIONS[i]);
+			res += WEIGHTS[i] * wf.cost(a, b);
+		}
+		return res;
+	}
+
+	@Test
+	public void canReadFeatures() {
+		assertEquals(NUM_UNITS, jcf.getNumberOfUnits());
+		assertEquals(WEIGHTS.length, jcf.getNumberOfFeatures());
+		assertArrayEquals(left[3], jcf.getLeftJCF(3), 0);
+		assertArrayEquals(right[7], jcf.getRightJCF(7), 0);
+	}
+
+	@Test
+	public void costMatchesReference() {
+		for (int u1 = 0; u1 < NUM_UNITS; u1++) {
+			for (int u2 = 0; u2 < NUM_UNITS; u2++) {
+				assertEquals(referenceCost(u1, u2), jcf.cost(u1, u2), 1e-6);
+			}
+		}
+		assertEquals(0, jcf.cost(0, 1), 0);
+	}
+
+	@Test
+	public void batchedCostMatchesPairwise() {
+		int[] rights = new int[NUM_UNITS];
+		for (int u2 = 0; u2 < NUM_UNITS; u2++) {
+			rights[u2] = NUM_UNITS - 1 - u2;
+		}
+		double[] costs = new double[NUM_UNITS];
+		for (int u1 = 0; u1 < NUM_UNITS; u1++) {
+			jcf.cost(u1, rights, NUM_UNITS, costs);
+			for (int j = 0; j < NUM_UNITS; j++) {
+				assertEquals(jcf.cost(u1, rights[j]), costs[j], 0);
+			}
+		}
+	}
+
+	@Test
+	public void batchedUnitCostMatchesPairwise() {
+		Unit[] units = new Unit[NUM_UNITS];
+		Target[] targets = new Target[NUM_UNITS];
+		for (int u = 0; u < NUM_UNITS; u++) {
+			units[u] = new Unit(10 * u, u == 9 ? 0 : 10, u);
+			targets[u] = new Target("a", null);
+		}
+		// a few diphones, made of consecutive half-phones:
+		Unit[] rights = new Unit[NUM_UNITS + 3];
+		Target[] rightTargets = new Target[rights.length];
+		for (int j = 0; j < rights.length; j++) {
+			rights[j] = j < NUM_UNITS ? units[j] : new DiphoneUnit(units[j - NUM_UNITS + 20], units[j - NUM_UNITS + 21]);
+			rightTargets[j] = new Target("a", null);
+		}
+		double[] costs = new double[rights.length];
+		for (int u1 = 0; u1 < NUM_UNITS; u1++) {
+			Unit left = u1 % 10 == 3 ? new DiphoneUnit(units[u1 - 1], units[u1]) : units[u1];
+			jcf.cost(targets[u1], left, rightTargets, rights, 2, rights.length - 2, costs);
+			for (int j = 2; j < rights.length; j++) {
+				assertEquals(jcf.cost(targets[u1], left, rightTargets[j], rights[j]), costs[j], 0);
+			}
+		}
+	}
+
+	@Test
+	public void normalizedDistanceMatchesCopiedFeatures() {
+		Random random = new Random(3);
+		double[] mean = new double[WEIGHTS.length];
+		double[] variance = new double[WEIGHTS.length];
+		for (int i = 0; i < WEIGHTS.length; i++) {
+			mean[i] = random.nextGaussian();
+			variance[i] = 0.5 + random.nextDouble();
+		}
+		for (int u1 = 0; u1 < NUM_UNITS; u1++) {
+			for (int u2 = 0; u2 < NUM_UNITS; u2++) {
+				float[] v1 = jcf.getRightJCF(u1);
+				float[] v2 = jcf.getLeftJCF(u2);
+				double[] diff = new double[v1.length];
+				for (int i = 0; i < v1.length; i++) {
+					diff[i] = (double) v1[i] - v2[i];
+				}
+				assertEquals(DistanceComputer.getNormalizedEuclideanDistance(diff, mean, variance),
+						jcf.getNormalizedDistance(u1, u2, mean, variance), 0);
+			}
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void rejectsUnitBeyondRange() {
+		jcf.cost(0, NUM_UNITS);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void batchRejectsUnitBeyondRange() {
+		jcf.cost(0, new int[] { 1, NUM_UNITS }, 2, new double[2]);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void distanceRejectsUnitBeyondRange() {
+		jcf.getNormalizedDistance(0, NUM_UNITS, new double[WEIGHTS.length], new double[WEIGHTS.length]);
+	}
+}
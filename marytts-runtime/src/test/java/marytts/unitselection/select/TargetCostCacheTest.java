@@ -0,0 +1,87 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import marytts.features.FeatureVector;
+
+import org.junit.Test;
+
+public class TargetCostCacheTest {
+
+	private static FeatureVector featureVector(int value) {
+		return new FeatureVector(new byte[] { (byte) value, 1 }, new short[] { 2 }, new float[] { 0.5f }, 0);
+	}
+
+	@Test
+	public void identicalFeatureVectorsShareId() {
+		TargetCostCache cache = new TargetCostCache(64);
+		Object weights = new Object();
+		int id = cache.getTargetId(featureVector(3), weights);
+		assertEquals(id, cache.getTargetId(featureVector(3), weights));
+		assertTrue(id != cache.getTargetId(featureVector(4), weights));
+		assertTrue(id != cache.getTargetId(featureVector(3), new Object()));
+	}
+
+	@Test
+	public void canStoreAndRetrieveCosts() {
+		TargetCostCache cache = new TargetCostCache(64);
+		int id = cache.getTargetId(featureVector(3), this);
+		long key = TargetCostCache.getKey(id, 17);
+		assertTrue(Double.isNaN(cache.get(key)));
+		cache.put(key, 1.25);
+		assertEquals(1.25, cache.get(key), 0);
+		assertTrue(Double.isNaN(cache.get(TargetCostCache.getKey(id, 18))));
+		assertEquals(1, cache.getNumHits());
+		assertEquals(2, cache.getNumMisses());
+	}
+
+	@Test
+	public void staysBoundedAndCorrectWhenFull() {
+		TargetCostCache cache = new TargetCostCache(10);
+		assertEquals(16, cache.getCapacity());
+		for (int unit = 0; unit < 1000; unit++) {
+			cache.put(TargetCostCache.getKey(1, unit), unit);
+		}
+		int found = 0;
+		for (int unit = 0; unit < 1000; unit++) {
+			double cost = cache.get(TargetCostCache.getKey(1, unit));
+			if (!Double.isNaN(cost)) {
+				assertEquals(unit, cost, 0);
+				found++;
+			}
+		}
+		assertTrue(found > 0 && found <= 16);
+	}
+
+	@Test
+	public void clearsWhenTooManyTargets() {
+		TargetCostCache cache = new TargetCostCache(16);
+		int id = cache.getTargetId(featureVector(0), this);
+		long key = TargetCostCache.getKey(id, 5);
+		cache.put(key, 2);
+		for (int i = 1; i < 100; i++) {
+			assertTrue(cache.getTargetId(featureVector(i), this) < 16);
+		}
+		assertTrue(Double.isNaN(cache.get(key)));
+	}
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select.viterbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureProcessorManager;
+import marytts.features.FeatureVector;
+import marytts.unitselection.data.FeatureFileReader;
+import marytts.unitselection.data.Unit;
+import marytts.unitselection.data.UnitDatabase;
+import marytts.unitselection.select.JoinCostFunction;
+import marytts.unitselection.select.SelectedUnit;
+import marytts.unitselection.select.StatisticalCostFunction;
+import marytts.unitselection.select.Target;
+import marytts.unitselection.select.TargetCostFunction;
+
+import org.junit.Test;
+
+/**
+ * Check that {@link CompactViterbi} selects exactly the same units as {@link Viterbi}. Costs are drawn from a few discrete
+ * values, so that there are many ties, which the two implementations must break in the same way.
+ */
+public class CompactViterbiTest {
+
+	@Test
+	public void sameAsViterbiWithBeam() throws Exception {
+		for (long seed = 0; seed < 20; seed++) {
+			assertSameSelection(new RandomDatabase(seed, false), 0.5f, -1, 5);
+		}
+	}
+
+	@Test
+	public void sameAsViterbiWithoutBeam() throws Exception {
+		for (long seed = 0; seed < 20; seed++) {
+			assertSameSelection(new RandomDatabase(seed, false), 0.3f, -1, -1);
+		}
+	}
+
+	@Test
+	public void sameAsViterbiWithSCost() throws Exception {
+		for (long seed = 0; seed < 20; seed++) {
+			assertSameSelection(new RandomDatabase(seed, true), 0.3f, 0.2f, 3);
+		}
+	}
+
+	@Test
+	public void sameAsViterbiWithPruning() throws Exception {
+		for (long seed = 0; seed < 20; seed++) {
+			assertSameSelection(new RandomDatabase(seed, false), 0.5f, -1, 4, 0.5);
+			assertSameSelection(new RandomDatabase(seed, false), 0.5f, -1, -1, 0.25);
+			assertSameSelection(new RandomDatabase(seed, true), 0.3f, 0.2f, 3, Double.POSITIVE_INFINITY);
+		}
+	}
+
+	private void assertSameSelection(RandomDatabase db, float wTargetCosts, float wSCosts, int beamSize) throws Exception {
+		assertSameSelection(db, wTargetCosts, wSCosts, beamSize, -1);
+	}
+
+	private void assertSameSelection(RandomDatabase db, float wTargetCosts, float wSCosts, int beamSize, double beamThreshold)
+			throws Exception {
+		List<Target> targets = db.getTargets();
+		Viterbi viterbi;
+		Viterbi compact;
+		if (wSCosts < 0) {
+			viterbi = new Viterbi(targets, db, wTargetCosts, beamSize);
+			compact = new CompactViterbi(targets, db, wTargetCosts, beamSize);
+		} else {
+			viterbi = new Viterbi(targets, db, wTargetCosts, wSCosts, beamSize);
+			compact = new CompactViterbi(targets, db, wTargetCosts, wSCosts, beamSize);
+		}
+		viterbi.setBeamThreshold(beamThreshold);
+		compact.setBeamThreshold(beamThreshold);
+		viterbi.apply();
+		compact.apply();
+		List<SelectedUnit> expected = viterbi.getSelectedUnits();
+		List<SelectedUnit> actual = compact.getSelectedUnits();
+		assertEquals(targets.size(), expected.size());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSame(expected.get(i).getUnit(), actual.get(i).getUnit());
+			assertSame(expected.get(i).getTarget(), actual.get(i).getTarget());
+		}
+		assertEquals(viterbi.nJoinCosts, compact.nJoinCosts);
+		assertEquals(viterbi.numPrunedPaths, compact.numPrunedPaths);
+	}
+
+	/**
+	 * A unit database offering random subsets of its units as candidates, with random but reproducible costs.
+	 */
+	private static class RandomDatabase extends UnitDatabase implements TargetCostFunction, JoinCostFunction,
+			StatisticalCostFunction {
+		private List<Target> targets = new ArrayList<Target>();
+		private List<List<Unit>> candidateUnits = new ArrayList<List<Unit>>();
+		private boolean useSCost;
+
+		RandomDatabase(long seed, boolean useSCost) {
+			this.useSCost = useSCost;
+			Random random = new Random(seed);
+			Unit[] units = new Unit[50];
+			for (int i = 0; i < units.length; i++) {
+				units[i] = new Unit(i * 100, 100, i);
+			}
+			int numTargets = 10 + random.nextInt(20);
+			for (int t = 0; t < numTargets; t++) {
+				targets.add(new Target("t" + t, null));
+				List<Unit> candidates = new ArrayList<Unit>();
+				int numCandidates = 1 + random.nextInt(12);
+				for (int c = 0; c < numCandidates; c++) {
+					candidates.add(units[random.nextInt(units.length)]);
+				}
+				candidateUnits.add(candidates);
+			}
+		}
+
+		List<Target> getTargets() {
+			return targets;
+		}
+
+		private static double discreteCost(int a, int b, int c) {
+			int h = (a * 31 + b) * 17 + c;
+			h ^= h >>> 7;
+			return (h & 3) * 0.25;
+		}
+
+		@Override
+		public List<ViterbiCandidate> getCandidates(Target target) {
+			List<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>();
+			for (Unit unit : candidateUnits.get(targets.indexOf(target))) {
+				candidates.add(new ViterbiCandidate(target, unit, this));
+			}
+			return candidates;
+		}
+
+		@Override
+		public TargetCostFunction getTargetCostFunction() {
+			return this;
+		}
+
+		@Override
+		public JoinCostFunction getJoinCostFunction() {
+			return this;
+		}
+
+		@Override
+		public StatisticalCostFunction getSCostFunction() {
+			return useSCost ? this : null;
+		}
+
+		public double cost(Target target, Unit unit) {
+			return discreteCost(targets.indexOf(target), unit.index, 1);
+		}
+
+		public double cost(Target t1, Unit u1, Target t2, Unit u2) {
+			return u1.index + 1 == u2.index ? 0 : discreteCost(u1.index, u2.index, 2);
+		}
+
+		public void cost(Target t1, Unit u1, Target[] t2, Unit[] u2, int off, int len, double[] costs) {
+			for (int j = off; j < off + len; j++) {
+				costs[j] = cost(t1, u1, t2[j], u2[j]);
+			}
+		}
+
+		public double cost(Unit u1, Unit u2) {
+			return discreteCost(u1.index, u2.index, 3);
+		}
+
+		public void init(String configPrefix) {
+		}
+
+		public void load(String joinFileName, InputStream weightStream, String precompiledCostFileName, float wSignal) {
+		}
+
+		public void load(String featureFileName, InputStream weightsStream, FeatureProcessorManager featProc) {
+		}
+
+		public void load(FeatureFileReader featureFileReader, InputStream weightsStream, FeatureProcessorManager featProc) {
+		}
+
+		public void computeTargetFeatures(Target target) {
+		}
+
+		public void computeTargetFeatures(List<? extends Target> targets) {
+		}
+
+		public FeatureDefinition getFeatureDefinition() {
+			return null;
+		}
+
+		public String getFeature(Unit unit, String featureName) {
+			return null;
+		}
+
+		public FeatureVector getFeatureVector(Unit unit) {
+			return null;
+		}
+
+		public byte getByteFeature(Unit unit, int featureIndex) {
+			return 0;
+		}
+
+		public FeatureVector[] getFeatureVectors() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select.viterbi;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ViterbiPointTest {
+
+	private ViterbiPoint createPoint(double... scores) {
+		ViterbiPoint point = new ViterbiPoint(null);
+		for (double score : scores) {
+			point.getPaths().add(new ViterbiPath(null, null, score));
+		}
+		return point;
+	}
+
+	@Test
+	public void pruneByThreshold() {
+		ViterbiPoint point = createPoint(3, 1, 2.5, 1.5, 4);
+		assertEquals(2, point.prunePaths(-1, 1.5));
+		assertEquals(3, point.getPaths().size());
+		assertEquals(1, point.getPaths().get(0).getScore(), 0);
+		assertEquals(1.5, point.getPaths().get(1).getScore(), 0);
+		assertEquals(2.5, point.getPaths().get(2).getScore(), 0);
+	}
+
+	@Test
+	public void pruneByBeamSize() {
+		ViterbiPoint point = createPoint(3, 1, 2.5, 1.5, 4);
+		assertEquals(3, point.prunePaths(2, Double.POSITIVE_INFINITY));
+		assertEquals(2, point.getPaths().size());
+		assertEquals(1.5, point.getPaths().get(1).getScore(), 0);
+	}
+
+	@Test
+	public void keepBestPath() {
+		ViterbiPoint point = createPoint(2, 1);
+		assertEquals(1, point.prunePaths(5, 0));
+		assertEquals(1, point.getPaths().get(0).getScore(), 0);
+		assertEquals(0, createPoint().prunePaths(5, 0));
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package marytts.util.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import marytts.util.MaryCache;
+
+import org.junit.Test;
+
+public class MemoryCacheTiersTest {
+
+	private static CacheKey key(String inputtext) {
+		return new CacheKey("TEXT", CacheKey.AUDIO, "en_US", "cmu-slt-hsmm", null, "", "", inputtext);
+	}
+
+	@Test
+	public void keysWithNullsAreEqual() {
+		assertEquals(key("hello"), key("hello"));
+		assertEquals(key("hello").hashCode(), key("hello").hashCode());
+		assertTrue(!key("hello").equals(key("world")));
+	}
+
+	@Test
+	public void lruEvictsLeastRecentlyUsed() {
+		StripedLruCache<String, String> lru = new StripedLruCache<String, String>(1, 2);
+		lru.put("a", "1");
+		lru.put("b", "2");
+		lru.get("a");
+		lru.put("c", "3");
+		assertEquals("1", lru.get("a"));
+		assertNull(lru.get("b"));
+		assertEquals("3", lru.get("c"));
+		assertEquals(1, lru.getEvictionCount());
+	}
+
+	@Test
+	public void lruSizeIsBounded() {
+		StripedLruCache<Integer, Integer> lru = new StripedLruCache<Integer, Integer>(4, 100);
+		for (int i = 0; i < 1000; i++) {
+			lru.put(i, i);
+		}
+		assertTrue(lru.size() <= 100);
+		assertEquals(1000 - lru.size(), lru.getEvictionCount());
+	}
+
+	@Test
+	public void audioRoundTrip() {
+		OffHeapAudioTier tier = new OffHeapAudioTier(4096, 4);
+		byte[] audio = new byte[500];
+		for (int i = 0; i < audio.length; i++) {
+			audio[i] = (byte) i;
+		}
+		tier.insertAudio(key("hello"), audio);
+		assertArrayEquals(audio, tier.lookupAudio(key("hello")));
+		assertNull(tier.lookupAudio(key("world")));
+		assertNull(tier.lookupText(key("hello")));
+	}
+
+	@Test
+	public void audioIsEvictedWhenFull() {
+		// four segments of 1024 bytes each, two entries per segment
+		OffHeapAudioTier tier = new OffHeapAudioTier(4096, 4);
+		for (int i = 0; i < 8; i++) {
+			tier.insertAudio(key("text " + i), new byte[512]);
+		}
+		assertEquals(8, tier.size());
+		assertEquals(0, tier.getEvictionCount());
+		// the ninth entry recycles the first segment:
+		tier.insertAudio(key("text 8"), new byte[512]);
+		assertEquals(2, tier.getEvictionCount());
+		assertNull(tier.lookupAudio(key("text 0")));
+		assertNull(tier.lookupAudio(key("text 1")));
+		assertNotNull(tier.lookupAudio(key("text 2")));
+		assertNotNull(tier.lookupAudio(key("text 8")));
+		// entries which cannot fit into a segment are not stored:
+		tier.insertAudio(key("too long"), new byte[2000]);
+		assertNull(tier.lookupAudio(key("too long")));
+	}
+
+	@Test
+	public void lowerTierHitIsPromoted() throws Exception {
+		TextMemoryTier upper = new TextMemoryTier(10, 1);
+		TextMemoryTier lower = new TextMemoryTier(10, 1);
+		lower.insertText(new CacheKey("TEXT", "RAWMARYXML", "de", "de1", null, null, null, "Hallo"), "<rawmaryxml/>");
+		MaryCache cache = new MaryCache(upper, lower);
+		assertEquals("<rawmaryxml/>", cache.lookupText("TEXT", "RAWMARYXML", "de", "de1", "Hallo"));
+		assertEquals("<rawmaryxml/>", upper.lookupText(new CacheKey("TEXT", "RAWMARYXML", "de", "de1", null, null, null,
+				"Hallo")));
+		assertNull(cache.lookupText("TEXT", "RAWMARYXML", "de", "de1", "Tschüss"));
+		assertTrue(cache.getStatistics().contains("text.misses 1"));
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.vocalizations;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+
+import marytts.exceptions.MaryConfigurationException;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+import marytts.unitselection.data.FeatureFileReader;
+import marytts.util.data.MaryHeader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VocalizationFeatureFileReaderTest {
+	private File file;
+	private FeatureVector[] expected;
+
+	@Before
+	public void setUp() throws Exception {
+		String def = FeatureDefinition.BYTEFEATURES + "\n" //
+				+ "name 0 laugh sigh breath\n" //
+				+ "intonation 0 rise fall\n" //
+				+ FeatureDefinition.SHORTFEATURES + "\n" //
+				+ FeatureDefinition.CONTINUOUSFEATURES + "\n" //
+				+ "duration\n";
+		FeatureDefinition fd = new FeatureDefinition(new BufferedReader(new StringReader(def)), false);
+		expected = new FeatureVector[] { new FeatureVector(new byte[] { 1, 2 }, new short[0], new float[] { 0.5f }, 0),
+				new FeatureVector(new byte[] { 3, 0 }, new short[0], new float[] { 1.25f }, 1),
+				new FeatureVector(new byte[] { 2, 1 }, new short[0], new float[] { 0.75f }, 2) };
+		file = File.createTempFile("vocalization_features", ".mry");
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			new MaryHeader(MaryHeader.LISTENERFEATS).writeTo(out);
+			fd.writeBinaryTo(out);
+			out.writeInt(expected.length);
+			for (FeatureVector fv : expected) {
+				fv.writeTo(out);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	private void assertSameFeatures(FeatureFileReader ffr) {
+		assertEquals(expected.length, ffr.getNumberOfUnits());
+		for (int i = 0; i < expected.length; i++) {
+			FeatureVector fv = ffr.getFeatureVector(i);
+			assertEquals(i, fv.getUnitIndex());
+			assertArrayEquals(expected[i].byteValuedDiscreteFeatures, fv.byteValuedDiscreteFeatures);
+			assertArrayEquals(expected[i].continuousFeatures, fv.continuousFeatures, 0);
+		}
+		assertEquals(expected.length, ffr.getFeatureVectors().length);
+		assertEquals(expected.length, ffr.featureVectorMapping(ffr.getFeatureDefinition()).length);
+	}
+
+	@Test
+	public void loadsUnits() throws Exception {
+		assertSameFeatures(new VocalizationFeatureFileReader(file.getPath()));
+	}
+
+	@Test
+	public void loadsUnitsFromStream() throws Exception {
+		VocalizationFeatureFileReader ffr = new VocalizationFeatureFileReader(file.getPath());
+		ffr.loadFromStream(file.getPath());
+		assertSameFeatures(ffr);
+	}
+
+	@Test(expected = MaryConfigurationException.class)
+	public void rejectsUnitFeatureFile() throws Exception {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			new MaryHeader(MaryHeader.UNITFEATS).writeTo(out);
+		} finally {
+			out.close();
+		}
+		new VocalizationFeatureFileReader(file.getPath());
+	}
+}
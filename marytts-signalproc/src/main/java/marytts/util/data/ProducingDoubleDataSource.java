@@ -20,21 +20,82 @@
 
 package marytts.util.data;
 
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import marytts.signalproc.process.InlineDataProcessor;
+import marytts.util.MaryUtils;
 
 /**
+ * A double data source whose data is produced by a separate task, {@link #run()}, while it is being read. The producer hands its
+ * data to the reader through a ring buffer of primitive doubles, in blocks.
+ * <p>
+ * Producers run on a pool of daemon threads shared by all producing data sources. Idle threads are reused, and a new thread is
+ * created whenever all threads are busy, so that a producer never waits behind other producers whose readers are slow. There are
+ * at most <code>signalproc.producer.maxthreads</code> threads (default: 256); a producer started while all of them are busy is
+ * rejected rather than queued, since it might wait for ever behind producers whose readers are waiting for it. A producer which
+ * cannot put its data for <code>signalproc.producer.timeout</code> milliseconds (default: 60000), because nobody is reading it,
+ * gives up, so that abandoned data sources do not keep their threads for ever.
+ * <p>
+ * If the producer fails, including when it gives up or is rejected, the reader gets the data produced so far, and then a
+ * {@link ProductionFailedException} instead of the end of the stream.
+ * 
  * @author marc
  *
  */
 public abstract class ProducingDoubleDataSource extends BufferedDoubleDataSource implements Runnable {
-	private static final Double END_OF_STREAM = Double.NEGATIVE_INFINITY;
+	/**
+	 * The number of values by which the producer can be ahead of the reader.
+	 */
+	public static final int RING_BUFFER_SIZE = 8192;
+	private static final int PRODUCER_BLOCK_SIZE = 256;
+	private static final long PRODUCER_TIMEOUT = Long.getLong("signalproc.producer.timeout", 60000).longValue();
+	private static final int MAX_PRODUCER_THREADS = Integer.getInteger("signalproc.producer.maxthreads", 256).intValue();
+
+	private static ExecutorService producerPool;
+
+	private static synchronized ExecutorService getProducerPool() {
+		if (producerPool == null) {
+			producerPool = createProducerPool(MAX_PRODUCER_THREADS);
+		}
+		return producerPool;
+	}
+
+	/**
+	 * A pool which runs each producer in a thread of its own, up to the given number of threads, and rejects producers beyond
+	 * that.
+	 */
+	static ExecutorService createProducerPool(int maxThreads) {
+		return new ThreadPoolExecutor(0, Math.max(1, maxThreads), 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "ProducingDoubleDataSource-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	// The ring buffer, guarded by itself:
+	private final double[] ring = new double[RING_BUFFER_SIZE];
+	private int ringStart = 0; // position of the oldest value in the ring
+	private int ringCount = 0; // number of values in the ring
+	private boolean endOfStream = false; // whether the producer has finished
+	private Throwable failure = null; // why the producer has finished early, if it failed
 
-	protected ArrayBlockingQueue<Double> queue = new ArrayBlockingQueue<Double>(1024);
-	private Thread dataProducingThread = null;
+	// Used by the producing thread only:
+	private final double[] pending = new double[PRODUCER_BLOCK_SIZE];
+	private int numPending = 0;
 	private boolean hasSentEndOfStream = false;
-	private boolean hasReceivedEndOfStream = false;
+
+	private volatile boolean started = false;
 
 	protected ProducingDoubleDataSource() {
 		this(DoubleDataSource.NOT_SPECIFIED);
@@ -53,57 +114,155 @@ public abstract class ProducingDoubleDataSource extends BufferedDoubleDataSource
 		this.dataLength = numDataThatWillBeProduced;
 	}
 
+	/**
+	 * Start producing the data, by running {@link #run()} on the shared producer pool. If all producer threads are busy, the
+	 * production fails at once, and the reader gets a {@link ProductionFailedException}.
+	 */
 	public void start() {
-		dataProducingThread = new Thread(this);
-		dataProducingThread.setDaemon(true);
-		dataProducingThread.start();
+		start(getProducerPool());
+	}
+
+	void start(ExecutorService pool) {
+		started = true;
+		try {
+			pool.execute(new Runnable() {
+				public void run() {
+					produce();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			MaryUtils.getLogger(ProducingDoubleDataSource.class).warn("Cannot start producer, all producer threads are busy");
+			markFailed(e);
+		}
+	}
+
+	private void produce() {
+		try {
+			run();
+			if (!hasSentEndOfStream) {
+				putEndOfStream();
+			}
+		} catch (Throwable t) {
+			MaryUtils.getLogger(ProducingDoubleDataSource.class).warn("Data production failed", t);
+			if (!hasSentEndOfStream) {
+				markFailed(t);
+			}
+			if (t instanceof Error) {
+				throw (Error) t;
+			}
+		}
 	}
 
 	/**
-	 * Subclasses must implement this method such that it produces data and sends it through {@link #putOneDataPoint(double)}.
-	 * When all data is sent, the subclass must call {@link #putEndOfStream()} exactly once.
+	 * Subclasses must implement this method such that it produces data and sends it through {@link #putOneDataPoint(double)} or
+	 * {@link #putData(double[], int, int)}. When all data is sent, the subclass must call {@link #putEndOfStream()} exactly
+	 * once.
 	 */
 	public abstract void run();
 
 	/**
-	 * The producing thread tries to put ont data item into the queue.
+	 * The producing thread puts one data item. Items are passed on to the reader in blocks.
 	 * 
 	 * @param value
 	 */
 	public void putOneDataPoint(double value) {
-		try {
-			queue.put(value);
-		} catch (InterruptedException e) {
-			throw new RuntimeException("Unexpected interruption", e);
+		pending[numPending++] = value;
+		if (numPending == pending.length) {
+			flushPending();
+		}
+	}
+
+	/**
+	 * The producing thread puts a block of data, waiting while the reader is too far behind.
+	 * 
+	 * @param data
+	 * @param off
+	 *            the position of the first value to put
+	 * @param len
+	 *            the number of values to put
+	 */
+	public void putData(double[] data, int off, int len) {
+		flushPending();
+		putIntoRing(data, off, len);
+	}
+
+	private void flushPending() {
+		if (numPending > 0) {
+			int n = numPending;
+			numPending = 0;
+			putIntoRing(pending, 0, n);
+		}
+	}
+
+	private void putIntoRing(double[] data, int off, int len) {
+		synchronized (ring) {
+			long lastProgress = System.currentTimeMillis();
+			while (len > 0) {
+				while (ringCount == ring.length) {
+					long timeLeft = lastProgress + PRODUCER_TIMEOUT - System.currentTimeMillis();
+					if (timeLeft <= 0) {
+						throw new IllegalStateException("Nobody has read the produced data for " + PRODUCER_TIMEOUT + " ms");
+					}
+					waitForRing(timeLeft);
+				}
+				int writePos = (ringStart + ringCount) % ring.length;
+				int n = Math.min(len, Math.min(ring.length - ringCount, ring.length - writePos));
+				System.arraycopy(data, off, ring, writePos, n);
+				ringCount += n;
+				off += n;
+				len -= n;
+				lastProgress = System.currentTimeMillis();
+				ring.notifyAll();
+			}
 		}
 	}
 
 	protected void putEndOfStream() {
-		putOneDataPoint(END_OF_STREAM);
+		flushPending();
+		markEndOfStream();
+	}
+
+	private void markEndOfStream() {
+		hasSentEndOfStream = true;
+		synchronized (ring) {
+			endOfStream = true;
+			ring.notifyAll();
+		}
+	}
+
+	private void markFailed(Throwable t) {
 		hasSentEndOfStream = true;
+		synchronized (ring) {
+			failure = t;
+			endOfStream = true;
+			ring.notifyAll();
+		}
+	}
+
+	private void waitForRing(long timeout) {
+		try {
+			ring.wait(timeout);
+		} catch (InterruptedException e) {
+			throw new RuntimeException("Unexpected interruption", e);
+		}
 	}
 
 	@Override
 	public boolean hasMoreData() {
 		checkStarted();
-		return !isAllProductionDataRead() || available() > 0;
+		return available() > 0 || !isAllProductionDataRead();
 	}
 
 	@Override
 	public int available() {
 		checkStarted();
-		return currentlyInBuffer() + currentlyInQueue();
+		return currentlyInBuffer() + currentlyInRing();
 	}
 
-	private int currentlyInQueue() {
-		if (isAllProductionDataRead()) {
-			return 0;
-		}
-		int inQueue = queue.size();
-		if (hasSentEndOfStream && !hasReceivedEndOfStream) {
-			inQueue -= 1;
+	private int currentlyInRing() {
+		synchronized (ring) {
+			return ringCount;
 		}
-		return inQueue;
 	}
 
 	@Override
@@ -120,17 +279,8 @@ public abstract class ProducingDoubleDataSource extends BufferedDoubleDataSource
 			compact(); // create a contiguous space for the new data
 		}
 		// Now we have a buffer that can hold at least minLength new data points
-		int readSum = 0;
-		while (readSum < minLength) {
-			double data = getOneDataPoint();
-			if (data == END_OF_STREAM) {
-				hasReceivedEndOfStream = true;
-				break;
-			}
-			buf[writePos] = data;
-			writePos++;
-			readSum++;
-		}
+		int readSum = getFromRing(buf, writePos, minLength);
+		writePos += readSum;
 		if (dataProcessor != null) {
 			dataProcessor.applyInline(buf, writePos - readSum, readSum);
 		}
@@ -138,16 +288,30 @@ public abstract class ProducingDoubleDataSource extends BufferedDoubleDataSource
 	}
 
 	/**
-	 * The reading thread tries to get one data item from the queue.
+	 * The reading thread takes data from the ring, waiting until length values are available or the producer has finished.
 	 * 
-	 * @return
+	 * @return the number of values read, which is less than length only at the end of the stream.
 	 */
-	private double getOneDataPoint() {
-		try {
-			return queue.take();
-		} catch (InterruptedException e) {
-			throw new RuntimeException("Unexpected interruption", e);
+	private int getFromRing(double[] target, int pos, int length) {
+		int readSum = 0;
+		synchronized (ring) {
+			while (readSum < length) {
+				while (ringCount == 0 && !endOfStream) {
+					waitForRing(0);
+				}
+				if (ringCount == 0) {
+					checkFailure();
+					break;
+				}
+				int n = Math.min(length - readSum, Math.min(ringCount, ring.length - ringStart));
+				System.arraycopy(ring, ringStart, target, pos + readSum, n);
+				ringStart = (ringStart + n) % ring.length;
+				ringCount -= n;
+				readSum += n;
+				ring.notifyAll();
+			}
 		}
+		return readSum;
 	}
 
 	/**
@@ -155,15 +319,44 @@ public abstract class ProducingDoubleDataSource extends BufferedDoubleDataSource
 	 */
 	private void checkStarted() throws IllegalStateException {
 		if (!isStarted()) {
-			throw new IllegalStateException("Producer thread has not been started -- call start()");
+			throw new IllegalStateException("Producer has not been started -- call start()");
 		}
 	}
 
 	private boolean isStarted() {
-		return dataProducingThread != null;
+		return started;
 	}
 
+	/**
+	 * Whether the producer has finished and all its data has been taken from the ring.
+	 * 
+	 * @throws ProductionFailedException
+	 *             if the producer has failed and all the data it produced has been taken from the ring
+	 */
 	private boolean isAllProductionDataRead() {
-		return hasReceivedEndOfStream;
+		synchronized (ring) {
+			if (endOfStream && ringCount == 0) {
+				checkFailure();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private void checkFailure() throws ProductionFailedException {
+		assert Thread.holdsLock(ring);
+		if (failure != null) {
+			throw new ProductionFailedException("Data production failed", failure);
+		}
+	}
+
+	/**
+	 * Thrown to the reader of a producing data source when the producer has failed, rather than letting the data end early as if
+	 * it was complete.
+	 */
+	public static class ProductionFailedException extends RuntimeException {
+		public ProductionFailedException(String message, Throwable cause) {
+			super(message, cause);
+		}
 	}
 }
@@ -18,6 +18,7 @@ import javax.sound.sampled.AudioSystem;
  */
 public class AppendableSequenceAudioInputStream extends SequenceAudioInputStream {
 	protected boolean doneAppending = false;
+	private Runnable appendListener;
 
 	/**
 	 * Create a sequence audio input stream to which more AudioInputStreams can be appended after creation. When the currently
@@ -39,24 +40,74 @@ public class AppendableSequenceAudioInputStream extends SequenceAudioInputStream
 	 * @throws IllegalArgumentException
 	 *             if this method is called after doneAppending() was called.
 	 */
-	public synchronized void append(AudioInputStream ais) {
-		if (ais == this)
-			throw new IllegalArgumentException("Cannot append me to myself");
-		if (doneAppending)
-			throw new IllegalArgumentException("Cannot append after doneAppending() was called!");
-		m_audioInputStreamList.add(ais);
-		// System.err.println("Appending audio");
-		notifyAll();
+	public void append(AudioInputStream ais) {
+		Runnable listener;
+		synchronized (this) {
+			if (ais == this)
+				throw new IllegalArgumentException("Cannot append me to myself");
+			if (doneAppending)
+				throw new IllegalArgumentException("Cannot append after doneAppending() was called!");
+			m_audioInputStreamList.add(ais);
+			// System.err.println("Appending audio");
+			notifyAll();
+			listener = appendListener;
+		}
+		if (listener != null) {
+			listener.run();
+		}
 	}
 
 	/**
 	 * Inform this audio input stream not to expect any further calls to append(), and report end-of-stream when all data has been
 	 * read.
 	 */
-	public synchronized void doneAppending() {
-		doneAppending = true;
-		// System.err.println("Done appending");
-		notifyAll();
+	public void doneAppending() {
+		Runnable listener;
+		synchronized (this) {
+			doneAppending = true;
+			// System.err.println("Done appending");
+			notifyAll();
+			listener = appendListener;
+		}
+		if (listener != null) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Set a listener to be run whenever audio is appended or doneAppending() is called, so that a reader using
+	 * {@link #readAvailable(byte[], int, int)} knows when to read again. The listener is run in the appending thread and must not
+	 * block.
+	 * 
+	 * @param listener
+	 *            the listener, or null to remove it
+	 */
+	public synchronized void setAppendListener(Runnable listener) {
+		this.appendListener = listener;
+	}
+
+	/**
+	 * Read like {@link #read(byte[], int, int)}, but never wait for more audio to be appended.
+	 * 
+	 * @param buf
+	 * @param off
+	 * @param len
+	 * @return the number of bytes read; 0 if no data are available until more audio is appended; -1 when all audio has been read
+	 *         and doneAppending() was called.
+	 * @throws IOException
+	 */
+	public synchronized int readAvailable(byte[] buf, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (m_nCurrentStream < m_audioInputStreamList.size()) {
+			int n = super.read(buf, off, len);
+			if (n >= 0) {
+				return n;
+			}
+			// all audio appended so far has been read
+		}
+		return doneAppending ? -1 : 0;
 	}
 
 	public synchronized int read() throws IOException {
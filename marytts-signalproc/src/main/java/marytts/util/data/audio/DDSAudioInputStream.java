@@ -27,6 +27,7 @@ import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 
 import marytts.util.data.DoubleDataSource;
+import marytts.util.data.ProducingDoubleDataSource;
 
 /**
  * @author Marc Schr&ouml;der An audio input stream that draws its audio data from a DoubleDataSource.
@@ -86,6 +87,14 @@ public class DDSAudioInputStream extends AudioInputStream {
 	 * @see #available
 	 */
 	public int read(byte[] b, int off, int len) throws IOException {
+		try {
+			return readFromSource(b, off, len);
+		} catch (ProducingDoubleDataSource.ProductionFailedException e) {
+			throw new IOException("Cannot read audio data", e);
+		}
+	}
+
+	private int readFromSource(byte[] b, int off, int len) {
 		int nSamples = len / frameSize;
 		int totalRead = 0;
 		int currentPos = off;
@@ -158,8 +167,24 @@ public class DDSAudioInputStream extends AudioInputStream {
 	 * @see #available
 	 */
 	public long skip(long n) throws IOException {
-		double[] data = source.getData((int) n);
-		return data.length;
+		try {
+			return skipInSource(n);
+		} catch (ProducingDoubleDataSource.ProductionFailedException e) {
+			throw new IOException("Cannot read audio data", e);
+		}
+	}
+
+	private long skipInSource(long n) {
+		long nSamples = n / frameSize;
+		long skipped = 0;
+		while (skipped < nSamples) {
+			int toSkip = (int) Math.min(nSamples - skipped, sampleBuf.length);
+			int nRead = source.getData(sampleBuf, 0, toSkip);
+			skipped += nRead;
+			if (nRead < toSkip && !source.hasMoreData())
+				break;
+		}
+		return skipped * frameSize;
 	}
 
 	/**
@@ -19,6 +19,8 @@
  */
 package marytts.util.data.audio;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.Vector;
@@ -258,4 +260,42 @@ public class MaryAudioUtils {
 
 		AudioSystem.write(outputAudio, AudioFileFormat.Type.WAVE, new File(outputFile));
 	}
+
+	/**
+	 * Whether the given audio file format type must know the total length of the audio data before the header can be written.
+	 * Streams of unknown length can be written as AU or raw data, but not as WAVE or AIFF.
+	 * 
+	 * @param type
+	 *            the audio file format type
+	 * @return true if the type needs a stream of known frame length
+	 */
+	public static boolean requiresKnownLength(AudioFileFormat.Type type) {
+		return AudioFileFormat.Type.WAVE.equals(type) || AudioFileFormat.Type.AIFF.equals(type)
+				|| AudioFileFormat.Type.AIFC.equals(type);
+	}
+
+	/**
+	 * Make sure the given audio input stream has a known frame length. Streams that already know their length are returned
+	 * unchanged; streams of unknown length (such as the output of streaming audio effects) are read completely into memory.
+	 * 
+	 * @param ais
+	 *            the audio input stream
+	 * @return an audio input stream with the same format and content, whose frame length is known
+	 * @throws IOException
+	 *             if the audio data cannot be read
+	 */
+	public static AudioInputStream withKnownLength(AudioInputStream ais) throws IOException {
+		if (ais.getFrameLength() != AudioSystem.NOT_SPECIFIED) {
+			return ais;
+		}
+		AudioFormat format = ais.getFormat();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buf = new byte[Math.max(1, 4096 / format.getFrameSize()) * format.getFrameSize()];
+		int nRead;
+		while ((nRead = ais.read(buf)) != -1) {
+			baos.write(buf, 0, nRead);
+		}
+		byte[] data = baos.toByteArray();
+		return new AudioInputStream(new ByteArrayInputStream(data), format, data.length / format.getFrameSize());
+	}
 }
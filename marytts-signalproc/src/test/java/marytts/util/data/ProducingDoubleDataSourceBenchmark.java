@@ -0,0 +1,80 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data;
+
+/**
+ * Measures how many samples per second can be handed from producers to readers through {@link ProducingDoubleDataSource}. This
+ * is not a unit test; run it with
+ * 
+ * <pre>
+ * java marytts.util.data.ProducingDoubleDataSourceBenchmark [numStreams] [samplesPerStream]
+ * </pre>
+ */
+public class ProducingDoubleDataSourceBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		final int numStreams = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		final int samplesPerStream = args.length > 1 ? Integer.parseInt(args[1]) : 2000000;
+		for (int round = 0; round < 3; round++) { // the first rounds are warm-up
+			Thread[] readers = new Thread[numStreams];
+			final double[] checksums = new double[numStreams];
+			long start = System.nanoTime();
+			for (int s = 0; s < numStreams; s++) {
+				final int stream = s;
+				readers[s] = new Thread() {
+					public void run() {
+						ProducingDoubleDataSource producer = new SampleProducer(samplesPerStream);
+						producer.start();
+						double[] block = new double[512];
+						double sum = 0;
+						int read;
+						while ((read = producer.getData(block, 0, block.length)) > 0) {
+							for (int i = 0; i < read; i++) {
+								sum += block[i];
+							}
+						}
+						checksums[stream] = sum;
+					}
+				};
+				readers[s].start();
+			}
+			for (Thread reader : readers) {
+				reader.join();
+			}
+			long time = System.nanoTime() - start;
+			double samplesPerSecond = (double) numStreams * samplesPerStream / (time / 1.e9);
+			System.out.printf("Round %d: %d streams, %.1f million samples per second (checksum %g)%n", round + 1, numStreams,
+					samplesPerSecond / 1.e6, checksums[0]);
+		}
+	}
+
+	private static class SampleProducer extends ProducingDoubleDataSource {
+		SampleProducer(int numSamples) {
+			super(numSamples);
+		}
+
+		public void run() {
+			for (long i = 0, n = getDataLength(); i < n; i++) {
+				putOneDataPoint((i % 100) / 100.);
+			}
+			putEndOfStream();
+		}
+	}
+}
@@ -1,8 +1,14 @@
 package marytts.util.data;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -103,6 +109,133 @@ public class ProducingDoubleDataSourceTest {
 		}
 	}
 
+	@Test
+	public void canReadBlocksLargerThanRingBuffer() {
+		final int numDoubles = 3 * ProducingDoubleDataSource.RING_BUFFER_SIZE + 17;
+		ProducingDoubleDataSource producer = new ProducingDoubleDataSource(numDoubles) {
+			public void run() {
+				double[] data = new double[numDoubles];
+				for (int i = 0; i < numDoubles; i++) {
+					data[i] = i;
+				}
+				putData(data, 0, 5);
+				putOneDataPoint(5);
+				putData(data, 6, numDoubles - 6);
+				putEndOfStream();
+			}
+		};
+		producer.start();
+		double[] result = producer.getAllData();
+		assertEquals(numDoubles, result.length);
+		for (int i = 0; i < numDoubles; i++) {
+			assertEquals(i, result[i], 0);
+		}
+	}
+
+	@Test
+	public void canReadNegativeInfinity() {
+		ProducingDoubleDataSource producer = new ProducingDoubleDataSource() {
+			public void run() {
+				putOneDataPoint(Double.NEGATIVE_INFINITY);
+				putOneDataPoint(1);
+				putEndOfStream();
+			}
+		};
+		producer.start();
+		double[] result = producer.getAllData();
+		assertEquals(2, result.length);
+		assertEquals(Double.NEGATIVE_INFINITY, result[0], 0);
+	}
+
+	@Test
+	public void failingProducerFailsReader() {
+		ProducingDoubleDataSource producer = new ProducingDoubleDataSource() {
+			public void run() {
+				putData(new double[] { 1, 2, 3 }, 0, 3);
+				throw new RuntimeException("Test failure");
+			}
+		};
+		producer.start();
+		double[] buf = new double[3];
+		assertEquals(3, producer.getData(buf, 0, 3));
+		try {
+			producer.getData(buf, 0, 3);
+			fail("Expected a ProductionFailedException");
+		} catch (ProducingDoubleDataSource.ProductionFailedException e) {
+			assertEquals("Test failure", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void failingProducerFailsAudioStream() throws Exception {
+		ProducingDoubleDataSource producer = new ProducingDoubleDataSource() {
+			public void run() {
+				putData(new double[100], 0, 100);
+				throw new RuntimeException("Test failure");
+			}
+		};
+		producer.start();
+		AudioInputStream ais = new DDSAudioInputStream(producer, getTestAudioFormat());
+		byte[] buf = new byte[1000];
+		try {
+			while (ais.read(buf) != -1) {
+			}
+			fail("Expected an IOException instead of the end of the stream");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof ProducingDoubleDataSource.ProductionFailedException);
+		}
+	}
+
+	@Test
+	public void blockedProducersDoNotDelayOthers() throws Exception {
+		// Producers that nobody reads fill their ring and then keep their thread:
+		int numBlocked = 2 * Runtime.getRuntime().availableProcessors() + 4;
+		for (int i = 0; i < numBlocked; i++) {
+			new TestProducer(2 * ProducingDoubleDataSource.RING_BUFFER_SIZE).start();
+		}
+		final TestProducer producer = new TestProducer(10);
+		producer.start();
+		final double[][] result = new double[1][];
+		Thread reader = new Thread() {
+			public void run() {
+				result[0] = producer.getAllData();
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+		reader.join(5000);
+		assertNotNull("Producer was queued behind blocked producers", result[0]);
+		assertEquals(10, result[0].length);
+	}
+
+	@Test
+	public void producersBeyondMaximumAreRejected() throws Exception {
+		ExecutorService pool = ProducingDoubleDataSource.createProducerPool(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ProducingDoubleDataSource busy = new ProducingDoubleDataSource() {
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+				putOneDataPoint(1);
+				putEndOfStream();
+			}
+		};
+		busy.start(pool);
+		TestProducer rejected = new TestProducer(10);
+		rejected.start(pool);
+		try {
+			rejected.getAllData();
+			fail("Expected a ProductionFailedException");
+		} catch (ProducingDoubleDataSource.ProductionFailedException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		release.countDown();
+		assertEquals(1, busy.getAllData().length);
+		pool.shutdown();
+	}
+
 	private static class TestProducer extends ProducingDoubleDataSource {
 		double DUMMY = 0.23;
 
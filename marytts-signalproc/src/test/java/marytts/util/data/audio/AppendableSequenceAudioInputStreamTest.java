@@ -0,0 +1,68 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data.audio;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AppendableSequenceAudioInputStreamTest {
+	private static AudioFormat format = new AudioFormat(16000, 16, 1, true, false);
+
+	private static AudioInputStream stream(int numBytes) {
+		return new AudioInputStream(new ByteArrayInputStream(new byte[numBytes]), format, numBytes / 2);
+	}
+
+	@Test
+	public void readAvailableDoesNotWait() throws Exception {
+		AppendableSequenceAudioInputStream audio = new AppendableSequenceAudioInputStream(format, null);
+		byte[] buf = new byte[100];
+		Assert.assertEquals(0, audio.readAvailable(buf, 0, buf.length));
+		audio.append(stream(60));
+		Assert.assertEquals(60, audio.readAvailable(buf, 0, buf.length));
+		Assert.assertEquals(0, audio.readAvailable(buf, 0, buf.length));
+		audio.append(stream(40));
+		audio.append(stream(30));
+		Assert.assertEquals(40, audio.readAvailable(buf, 0, buf.length));
+		Assert.assertEquals(30, audio.readAvailable(buf, 0, buf.length));
+		Assert.assertEquals(0, audio.readAvailable(buf, 0, buf.length));
+		audio.doneAppending();
+		Assert.assertEquals(-1, audio.readAvailable(buf, 0, buf.length));
+	}
+
+	@Test
+	public void listenerIsRunOnAppend() {
+		AppendableSequenceAudioInputStream audio = new AppendableSequenceAudioInputStream(format, null);
+		final AtomicInteger calls = new AtomicInteger();
+		audio.setAppendListener(new Runnable() {
+			public void run() {
+				calls.incrementAndGet();
+			}
+		});
+		audio.append(stream(10));
+		audio.doneAppending();
+		Assert.assertEquals(2, calls.get());
+	}
+}